@@ -0,0 +1,177 @@
+package main.java.edu.uw.ajs.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+import edu.uw.ext.framework.dao.AccountDao;
+import edu.uw.ext.framework.dao.DaoFactory;
+import main.java.edu.uw.ajs.account.SimpleAccount;
+import main.java.edu.uw.ajs.account.SimpleAddress;
+import main.java.edu.uw.ajs.account.SimpleCreditCard;
+import main.java.edu.uw.ajs.dao.FileDaoFactory;
+import main.java.edu.uw.ajs.dao.JournalDaoFactory;
+import main.java.edu.uw.ajs.dao.JsonDaoFactory;
+import main.java.edu.uw.ajs.dao.MappedDaoFactory;
+
+/**
+ * Account persistence throughput, AccountDao reads and writes for each of the
+ * DAO implementations.
+ *
+ * @author chq-alexs
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountPersistenceBenchmark {
+
+	/** Number of accounts stored, a power of two */
+	private static final int ACCOUNT_COUNT = 128;
+
+	/** The DAO implementation: json, file, journal or mapped */
+	@Param({ "json", "file", "journal", "mapped" })
+	public String dao;
+
+	/** The DAO under test */
+	private AccountDao accountDao;
+
+	/** The stored accounts */
+	private Account[] accounts;
+
+	/** Index of the next account to use */
+	private int next;
+
+	/**
+	 * Creates the DAO and stores the accounts.
+	 *
+	 * @throws Exception
+	 *             if the DAO can't be created or written
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		accountDao = newDaoFactory(dao).getAccountDao();
+		accountDao.reset();
+
+		accounts = new Account[ACCOUNT_COUNT];
+		for (int i = 0; i < ACCOUNT_COUNT; i++) {
+			accounts[i] = newAccount(String.format("account%04d", i));
+			accountDao.setAccount(accounts[i]);
+		}
+	}
+
+	/**
+	 * Removes the stored accounts and closes the DAO.
+	 *
+	 * @throws AccountException
+	 *             if the DAO can't be reset or closed
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws AccountException {
+		try {
+			accountDao.reset();
+		} finally {
+			accountDao.close();
+		}
+	}
+
+	/**
+	 * Reads a stored account.
+	 *
+	 * @return the account read
+	 */
+	@Benchmark
+	public Account read() {
+		return accountDao.getAccount(accounts[next++ & (ACCOUNT_COUNT - 1)].getName());
+	}
+
+	/**
+	 * Updates the balance of a stored account and writes it.
+	 *
+	 * @throws AccountException
+	 *             if the account can't be written
+	 */
+	@Benchmark
+	public void write() throws AccountException {
+		final Account account = accounts[next++ & (ACCOUNT_COUNT - 1)];
+		account.setBalance(account.getBalance() + 1);
+		accountDao.setAccount(account);
+	}
+
+	/**
+	 * Creates the factory for a DAO implementation, the journal and mapped
+	 * stores are kept apart from the default directories.
+	 *
+	 * @param dao
+	 *            json, file, journal or mapped
+	 * @return the factory
+	 */
+	private static DaoFactory newDaoFactory(final String dao) {
+		switch (dao) {
+		case "json":
+			return new JsonDaoFactory();
+		case "file":
+			return new FileDaoFactory();
+		case "journal":
+			final JournalDaoFactory journal = new JournalDaoFactory();
+			journal.setDirectory("target/benchmark/journal");
+			return journal;
+		case "mapped":
+			final MappedDaoFactory mapped = new MappedDaoFactory();
+			mapped.setDirectory("target/benchmark/accountstore");
+			return mapped;
+		default:
+			throw new IllegalArgumentException("Unknown DAO, " + dao);
+		}
+	}
+
+	/**
+	 * Creates a fully populated account.
+	 *
+	 * @param name
+	 *            the account name
+	 * @return the account
+	 * @throws AccountException
+	 *             if the account can't be created
+	 */
+	static Account newAccount(final String name) throws AccountException {
+		final Account account = new SimpleAccount(name, "password".getBytes(), 100000);
+		account.setFullName("Benchmark Account " + name);
+		account.setPhone("206-555-1212");
+		account.setEmail(name + "@example.com");
+
+		final Address address = new SimpleAddress();
+		address.setStreetAddress("1 Main Street");
+		address.setCity("Seattle");
+		address.setState("WA");
+		address.setZipCode("98101");
+		account.setAddress(address);
+
+		final CreditCard card = new SimpleCreditCard();
+		card.setIssuer("Bank");
+		card.setType("Visa");
+		card.setHolder("Benchmark Account");
+		card.setAccountNumber("4111111111111111");
+		card.setExpirationDate("12/30");
+		account.setCreditCard(card);
+		return account;
+	}
+}
@@ -0,0 +1,147 @@
+package main.java.edu.uw.ajs.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import main.java.edu.uw.ajs.dao.AccountSer;
+
+/**
+ * AccountSer serialization throughput, an account written to a byte stream
+ * and read back. The readPerCallContext variant is the baseline, reading the
+ * way AccountSer did before the Spring context was shared, with a new
+ * context created for each read.
+ *
+ * @author chq-alexs
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountSerBenchmark {
+
+	/** The account serialized */
+	private Account account;
+
+	/** The serialized account */
+	private byte[] serialized;
+
+	/** Buffer reused for writing */
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+
+	/**
+	 * Creates the account.
+	 *
+	 * @throws AccountException
+	 *             if the account can't be created or written
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws AccountException {
+		account = AccountPersistenceBenchmark.newAccount("account0000");
+		AccountSer.write(buffer, account);
+		serialized = buffer.toByteArray();
+	}
+
+	/**
+	 * Writes the account.
+	 *
+	 * @return the number of bytes written
+	 * @throws AccountException
+	 *             if the account can't be written
+	 */
+	@Benchmark
+	public int write() throws AccountException {
+		buffer.reset();
+		AccountSer.write(buffer, account);
+		return buffer.size();
+	}
+
+	/**
+	 * Reads the account.
+	 *
+	 * @return the account read
+	 * @throws AccountException
+	 *             if the account can't be read
+	 */
+	@Benchmark
+	public Account read() throws AccountException {
+		return AccountSer.read(new ByteArrayInputStream(serialized));
+	}
+
+	/**
+	 * Reads the account as AccountSer did before the Spring context was
+	 * shared, creating and closing a context to obtain the account bean.
+	 *
+	 * @return the account read
+	 * @throws IOException
+	 *             if the account can't be read
+	 * @throws AccountException
+	 *             if the account name is invalid
+	 */
+	@Benchmark
+	public Account readPerCallContext() throws IOException, AccountException {
+		final DataInputStream din = new DataInputStream(new ByteArrayInputStream(serialized));
+		try (ClassPathXmlApplicationContext appContext = new ClassPathXmlApplicationContext("context.xml")) {
+			final Account acct = appContext.getBean(Account.class);
+			acct.setName(din.readUTF());
+			final int len = din.readInt();
+			if (len >= 0) {
+				final byte[] hash = new byte[len];
+				din.readFully(hash);
+				acct.setPasswordHash(hash);
+			}
+			acct.setBalance(din.readInt());
+			acct.setFullName(readString(din));
+			acct.setPhone(readString(din));
+			acct.setEmail(readString(din));
+			return acct;
+		}
+	}
+
+	/**
+	 * Writes the account and reads it back.
+	 *
+	 * @return the account read
+	 * @throws AccountException
+	 *             if the account can't be written or read
+	 */
+	@Benchmark
+	public Account roundTrip() throws AccountException {
+		buffer.reset();
+		AccountSer.write(buffer, account);
+		return AccountSer.read(new ByteArrayInputStream(buffer.toByteArray()));
+	}
+
+	/**
+	 * Reads a string written by AccountSer.
+	 *
+	 * @param in
+	 *            the stream to read from
+	 * @return the string, null if a null string was written
+	 * @throws IOException
+	 *             if the string can't be read
+	 */
+	private static String readString(final DataInputStream in) throws IOException {
+		final String s = in.readUTF();
+		return "<null>".equals(s) ? null : s;
+	}
+}
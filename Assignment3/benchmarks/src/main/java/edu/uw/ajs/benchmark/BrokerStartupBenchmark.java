@@ -0,0 +1,136 @@
+package main.java.edu.uw.ajs.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uw.ext.framework.broker.BrokerException;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+import main.java.edu.uw.ajs.broker.SimpleBrokerConfig;
+
+/**
+ * Time to construct SimpleBroker on a large exchange, with order managers
+ * created for every ticker up front or lazily with each ticker's first stop
+ * order. After each construction the heap retained by the broker is reported
+ * as the retainedKb secondary result, measured as the used heap after a full
+ * GC with the broker reachable, less the used heap after a full GC once it
+ * has been released, along with the number of order managers created.
+ *
+ * @author chq-alexs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class BrokerStartupBenchmark {
+
+	/** The opening price of every ticker */
+	private static final int OPENING_PRICE = 10000;
+
+	/** Number of tickers listed by the exchange */
+	@Param({ "10000", "50000", "100000" })
+	public int tickers;
+
+	/** Create order managers with each ticker's first stop order */
+	@Param({ "false", "true" })
+	public boolean lazyOrderManagers;
+
+	/** The exchange stand-in */
+	private LocalStockExchange exchange;
+
+	/** The account manager */
+	private InMemoryAccountManager acctMgr;
+
+	/**
+	 * The broker constructed by an iteration and its footprint, reported with
+	 * the iteration's results.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Footprint {
+		/** Heap retained by the broker, in KB */
+		public long retainedKb;
+
+		/** Number of order managers the broker created */
+		public long orderManagers;
+
+		/** The broker constructed by the last invocation */
+		private SimpleBroker broker;
+
+		/**
+		 * Measures the heap retained by the broker, and closes it.
+		 *
+		 * @throws BrokerException
+		 *             if the broker can't be closed
+		 */
+		@TearDown(Level.Iteration)
+		public void tearDown() throws BrokerException {
+			orderManagers = broker.getOrderManagerCount();
+			final long withBroker = usedHeap();
+			broker.close();
+			broker = null;
+			retainedKb = (withBroker - usedHeap()) / 1024;
+		}
+	}
+
+	/**
+	 * Creates the exchange.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		exchange = new LocalStockExchange(tickers, OPENING_PRICE);
+		acctMgr = new InMemoryAccountManager();
+	}
+
+	/**
+	 * Constructs the broker. The broker is kept only in the footprint state,
+	 * so it can be released before the retained heap is measured.
+	 *
+	 * @param footprint
+	 *            the footprint of the broker
+	 */
+	@Benchmark
+	public void construct(final Footprint footprint) {
+		final SimpleBrokerConfig config = new SimpleBrokerConfig();
+		config.setLazyOrderManagers(lazyOrderManagers);
+		footprint.broker = new SimpleBroker("benchmark", acctMgr, exchange, config);
+	}
+
+	/**
+	 * Gets the used heap after a full GC, from the heap pools' usage after
+	 * collection rather than the free memory, which counts the unused space
+	 * left in the allocation buffers.
+	 *
+	 * @return the used heap, in bytes
+	 */
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null) {
+				used += pool.getCollectionUsage().getUsed();
+			}
+		}
+		return used;
+	}
+}
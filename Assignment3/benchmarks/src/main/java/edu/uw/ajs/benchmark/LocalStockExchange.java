@@ -0,0 +1,82 @@
+package main.java.edu.uw.ajs.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.uw.ext.framework.exchange.ExchangeListener;
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * An always open, in process StockExchange stand-in for the benchmarks. Trades
+ * execute immediately at the last price set for the ticker. Listeners are not
+ * retained, the benchmarks deliver events to the broker directly.
+ *
+ * @author chq-alexs
+ */
+final class LocalStockExchange implements StockExchange {
+
+	/** The current price of each ticker */
+	private final Map<String, Integer> prices = new ConcurrentHashMap<>();
+
+	/** The tickers traded */
+	private final String[] tickers;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param tickerCount
+	 *            the number of tickers to trade, named T0, T1, ...
+	 * @param openingPrice
+	 *            the opening price of every ticker
+	 */
+	LocalStockExchange(final int tickerCount, final int openingPrice) {
+		tickers = new String[tickerCount];
+		for (int i = 0; i < tickerCount; i++) {
+			tickers[i] = "T" + i;
+			prices.put(tickers[i], openingPrice);
+		}
+	}
+
+	/**
+	 * Sets the current price of a ticker.
+	 *
+	 * @param ticker
+	 *            the ticker
+	 * @param price
+	 *            the new price
+	 */
+	void setPrice(final String ticker, final int price) {
+		prices.put(ticker, price);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return true;
+	}
+
+	@Override
+	public String[] getTickers() {
+		return tickers.clone();
+	}
+
+	@Override
+	public StockQuote getQuote(final String ticker) {
+		final Integer price = prices.get(ticker);
+		return price == null ? null : new StockQuote(ticker, price);
+	}
+
+	@Override
+	public void addExchangeListener(final ExchangeListener l) {
+	}
+
+	@Override
+	public void removeExchangeListener(final ExchangeListener l) {
+	}
+
+	@Override
+	public int executeTrade(final Order order) {
+		return prices.get(order.getStockTicker());
+	}
+}
@@ -0,0 +1,89 @@
+package main.java.edu.uw.ajs.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.StopBuyOrder;
+
+/**
+ * Measures a single tick releasing every order in a stop order queue. The
+ * queue is refilled before each invocation, so the time reported is for the
+ * dispatch of <code>depth</code> orders.
+ *
+ * @author chq-alexs
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderDispatchBenchmark {
+
+	/** The threshold the orders are priced above until released */
+	private static final int THRESHOLD = 1000;
+
+	/** Number of orders released by the tick */
+	@Param({ "10", "1000", "100000" })
+	public int depth;
+
+	/** The queue implementation: simple, concurrent or priceLevel */
+	@Param({ "simple", "concurrent", "priceLevel" })
+	public String queueType;
+
+	/** The queue under test */
+	private OrderQueue<Integer, StopBuyOrder> queue;
+
+	/** Orders placed in the queue before each invocation */
+	private StopBuyOrder[] orders;
+
+	/** Number of orders dispatched */
+	private long dispatched;
+
+	/**
+	 * Builds the orders.
+	 */
+	@Setup(Level.Trial)
+	public void createOrders() {
+		orders = new StopBuyOrder[depth];
+		for (int i = 0; i < depth; i++) {
+			orders[i] = new StopBuyOrder("account" + i % 100, 100, "TICK", THRESHOLD + 1 + i % 500);
+		}
+	}
+
+	/**
+	 * Fills a fresh queue with the orders.
+	 */
+	@Setup(Level.Invocation)
+	public void fill() {
+		queue = OrderQueueBenchmark.newQueue(queueType, THRESHOLD);
+		queue.setOrderProcessor((StopBuyOrder o) -> dispatched++);
+		for (StopBuyOrder order : orders) {
+			queue.enqueue(order);
+		}
+	}
+
+	/**
+	 * Releases every order with a single tick.
+	 *
+	 * @return the number of orders dispatched
+	 */
+	@Benchmark
+	public long dispatchAll() {
+		queue.setThreshold(Integer.MAX_VALUE);
+		return dispatched;
+	}
+}
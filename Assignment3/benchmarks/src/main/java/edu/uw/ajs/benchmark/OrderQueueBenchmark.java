@@ -0,0 +1,135 @@
+package main.java.edu.uw.ajs.benchmark;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import main.java.edu.uw.ajs.broker.ConcurrentOrderQueue;
+import main.java.edu.uw.ajs.broker.PriceLevelOrderBook;
+import main.java.edu.uw.ajs.broker.SimpleOrderQueue;
+
+/**
+ * Stop order queue benchmarks at various queue depths. The queue holds
+ * <code>depth</code> resting stop buy orders priced above the threshold, so
+ * they stay in the queue for the whole run.
+ *
+ * @author chq-alexs
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderQueueBenchmark {
+
+	/** The threshold the resting orders are priced above */
+	private static final int THRESHOLD = 1000;
+
+	/** Number of pre-built orders cycled through by the insert benchmark */
+	private static final int ORDER_POOL_SIZE = 1024;
+
+	/** Number of resting orders in the queue */
+	@Param({ "10", "1000", "100000" })
+	public int depth;
+
+	/** The queue implementation: simple, concurrent or priceLevel */
+	@Param({ "simple", "concurrent", "priceLevel" })
+	public String queueType;
+
+	/** The queue under test */
+	private OrderQueue<Integer, StopBuyOrder> queue;
+
+	/** Orders priced at the threshold, dispatched as soon as enqueued */
+	private StopBuyOrder[] triggering;
+
+	/** Next order to use from the pool */
+	private int next;
+
+	/** Number of orders dispatched, keeps the processor from being elided */
+	private long dispatched;
+
+	/** Threshold toggled by the tick benchmark */
+	private int tickPrice = THRESHOLD;
+
+	/**
+	 * Creates the queue and fills it with the resting orders.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		queue = newQueue(queueType, THRESHOLD);
+		queue.setOrderProcessor((StopBuyOrder o) -> dispatched++);
+		for (int i = 0; i < depth; i++) {
+			queue.enqueue(new StopBuyOrder("account" + i % 100, 100, "TICK", THRESHOLD + 1 + i % 500));
+		}
+
+		triggering = new StopBuyOrder[ORDER_POOL_SIZE];
+		for (int i = 0; i < triggering.length; i++) {
+			triggering[i] = new StopBuyOrder("trigger" + i, 100, "TICK", THRESHOLD);
+		}
+	}
+
+	/**
+	 * Inserts an order that is immediately dispatched, measuring insertion and
+	 * dispatch alongside the resting orders.
+	 *
+	 * @return the number of orders dispatched
+	 */
+	@Benchmark
+	public long insertAndDispatch() {
+		queue.enqueue(triggering[next++ & (ORDER_POOL_SIZE - 1)]);
+		return dispatched;
+	}
+
+	/**
+	 * Moves the threshold without triggering any orders, the common case for a
+	 * price tick.
+	 *
+	 * @return the threshold
+	 */
+	@Benchmark
+	public int tickNoTrigger() {
+		tickPrice = tickPrice == THRESHOLD ? THRESHOLD - 1 : THRESHOLD;
+		queue.setThreshold(tickPrice);
+		return tickPrice;
+	}
+
+	/**
+	 * Creates a stop buy queue, configured as SimpleOrderManager configures
+	 * its queues.
+	 *
+	 * @param queueType
+	 *            simple, concurrent or priceLevel
+	 * @param threshold
+	 *            the initial threshold
+	 * @return the queue
+	 */
+	static OrderQueue<Integer, StopBuyOrder> newQueue(final String queueType, final int threshold) {
+		final Comparator<StopBuyOrder> cmp = Comparator.comparing(StopBuyOrder::getPrice)
+				.thenComparing(StopBuyOrder::compareTo);
+		switch (queueType) {
+		case "simple":
+			return new SimpleOrderQueue<>(threshold, (Integer t, StopBuyOrder o) -> o.getPrice() <= t, cmp);
+		case "concurrent":
+			return new ConcurrentOrderQueue<>(threshold, (Integer t, StopBuyOrder o) -> o.getPrice() <= t, cmp);
+		case "priceLevel":
+			return new PriceLevelOrderBook<>(threshold, StopBuyOrder::getPrice, true);
+		default:
+			throw new IllegalArgumentException("Unknown queue type, " + queueType);
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package main.java.edu.uw.ajs.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uw.ext.framework.broker.BrokerException;
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+import main.java.edu.uw.ajs.broker.SimpleBrokerConfig;
+
+/**
+ * Price tick storms through SimpleBroker.priceChanged, using a local
+ * StockExchange stand-in and in memory accounts. Every ticker has resting
+ * stop buy orders above and stop sell orders below the band the ticks move
+ * in, so the no-fill benchmarks measure the order book scan alone.
+ *
+ * @author chq-alexs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceChangedBenchmark {
+
+	/** The opening price of every ticker */
+	private static final int OPENING_PRICE = 10000;
+
+	/** Ticks move the price up to this far either side of the opening price */
+	private static final int TICK_BAND = 100;
+
+	/** Number of pre-built tick events, a power of two */
+	private static final int EVENT_COUNT = 4096;
+
+	/** Number of tickers traded */
+	@Param({ "10", "100" })
+	public int tickers;
+
+	/** Number of resting stop orders per ticker */
+	@Param({ "100", "10000" })
+	public int ordersPerTicker;
+
+	/** Use price level order books */
+	@Param({ "false", "true" })
+	public boolean priceLevelOrderBook;
+
+	/** The exchange stand-in */
+	private LocalStockExchange exchange;
+
+	/** The broker under test */
+	private SimpleBroker broker;
+
+	/** Pre-built price change events within the tick band */
+	private ExchangeEvent[] events;
+
+	/**
+	 * Position of a thread in the event stream.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		/** Index of the next event */
+		private int next;
+
+		/**
+		 * Starts each thread at a different point in the stream.
+		 */
+		@Setup(Level.Trial)
+		public void setUp() {
+			next = new Random().nextInt(EVENT_COUNT);
+		}
+	}
+
+	/**
+	 * Creates the broker and places the resting orders.
+	 *
+	 * @throws Exception
+	 *             if the broker can't be set up
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		exchange = new LocalStockExchange(tickers, OPENING_PRICE);
+		final InMemoryAccountManager acctMgr = new InMemoryAccountManager();
+		final SimpleBrokerConfig config = new SimpleBrokerConfig();
+		config.setPriceLevelOrderBook(priceLevelOrderBook);
+		broker = new SimpleBroker("benchmark", acctMgr, exchange, config);
+
+		final Random rnd = new Random(42);
+		final String[] symbols = exchange.getTickers();
+		for (String ticker : symbols) {
+			final String acctName = "account" + ticker;
+			acctMgr.createAccount(acctName, "password", Integer.MAX_VALUE / 2);
+			for (int i = 0; i < ordersPerTicker / 2; i++) {
+				broker.placeOrder(new StopBuyOrder(acctName, 10, ticker,
+						OPENING_PRICE + TICK_BAND + 1 + rnd.nextInt(1000)));
+				broker.placeOrder(new StopSellOrder(acctName, 10, ticker,
+						OPENING_PRICE - TICK_BAND - 1 - rnd.nextInt(1000)));
+			}
+		}
+
+		events = new ExchangeEvent[EVENT_COUNT];
+		for (int i = 0; i < events.length; i++) {
+			final String ticker = symbols[rnd.nextInt(symbols.length)];
+			final int price = OPENING_PRICE - TICK_BAND + rnd.nextInt(2 * TICK_BAND + 1);
+			events[i] = ExchangeEvent.newPriceChangedEvent(exchange, ticker, price);
+		}
+	}
+
+	/**
+	 * Closes the broker.
+	 *
+	 * @throws BrokerException
+	 *             if the broker can't be closed
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws BrokerException {
+		broker.close();
+	}
+
+	/**
+	 * A single thread delivering ticks that don't trigger any orders.
+	 *
+	 * @param cursor
+	 *            the thread's position in the event stream
+	 */
+	@Benchmark
+	@Threads(1)
+	public void tickNoFill(final Cursor cursor) {
+		broker.priceChanged(events[cursor.next++ & (EVENT_COUNT - 1)]);
+	}
+
+	/**
+	 * Four threads delivering ticks for random tickers at once.
+	 *
+	 * @param cursor
+	 *            the thread's position in the event stream
+	 */
+	@Benchmark
+	@Threads(4)
+	public void tickStorm(final Cursor cursor) {
+		broker.priceChanged(events[cursor.next++ & (EVENT_COUNT - 1)]);
+	}
+
+	/**
+	 * Places a stop buy just above the band and ticks up to it so exactly one
+	 * order is filled, then ticks back into the band.
+	 *
+	 * @param cursor
+	 *            the thread's position in the event stream
+	 * @throws BrokerException
+	 *             if the order can't be placed
+	 */
+	@Benchmark
+	@Threads(1)
+	public void tickWithFill(final Cursor cursor) throws BrokerException {
+		final ExchangeEvent event = events[cursor.next++ & (EVENT_COUNT - 1)];
+		final String ticker = event.getTicker();
+		final int fillPrice = OPENING_PRICE + TICK_BAND;
+
+		broker.placeOrder(new StopBuyOrder("account" + ticker, 10, ticker, fillPrice));
+		exchange.setPrice(ticker, fillPrice);
+		broker.priceChanged(ExchangeEvent.newPriceChangedEvent(exchange, ticker, fillPrice));
+		exchange.setPrice(ticker, event.getPrice());
+		broker.priceChanged(event);
+	}
+}
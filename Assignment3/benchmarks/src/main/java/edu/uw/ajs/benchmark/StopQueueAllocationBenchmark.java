@@ -0,0 +1,104 @@
+package main.java.edu.uw.ajs.benchmark;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.broker.SimpleOrderManager;
+import main.java.edu.uw.ajs.broker.SimpleOrderQueue;
+
+/**
+ * Allocation per price tick for the stop order queues when the tick triggers
+ * nothing. Run with the GC profiler (the benchmarks profile enables it) and
+ * compare gc.alloc.rate.norm: SimpleOrderManager with its int price queues is
+ * expected to report 0 bytes per operation, the boxed SimpleOrderQueue pair
+ * it replaced allocates an Integer threshold per queue per tick.
+ *
+ * @author chq-alexs
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StopQueueAllocationBenchmark {
+
+	/** The price ticks alternate around, outside the Integer cache */
+	private static final int PRICE = 10000;
+
+	/** Number of resting orders of each kind */
+	private static final int DEPTH = 1000;
+
+	/** Order manager using the int price queues */
+	private SimpleOrderManager orderManager;
+
+	/** Stop buy queue configured as SimpleOrderManager configured it before */
+	private SimpleOrderQueue<Integer, StopBuyOrder> boxedBuyQueue;
+
+	/** Stop sell queue configured as SimpleOrderManager configured it before */
+	private SimpleOrderQueue<Integer, StopSellOrder> boxedSellQueue;
+
+	/** Price of the next tick */
+	private int tickPrice = PRICE;
+
+	/**
+	 * Creates the queues and places the resting orders, priced away from the
+	 * ticks so they never trigger.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		orderManager = new SimpleOrderManager("TICK", PRICE);
+		boxedBuyQueue = new SimpleOrderQueue<Integer, StopBuyOrder>(PRICE, (t, o) -> o.getPrice() <= t,
+				Comparator.comparing(StopBuyOrder::getPrice).thenComparing(StopBuyOrder::compareTo));
+		boxedSellQueue = new SimpleOrderQueue<Integer, StopSellOrder>(PRICE, (t, o) -> o.getPrice() >= t,
+				Comparator.comparing(StopSellOrder::getPrice).reversed().thenComparing(StopSellOrder::compareTo));
+
+		for (int i = 0; i < DEPTH; i++) {
+			final StopBuyOrder buy = new StopBuyOrder("account", 10, "TICK", PRICE + 10 + i);
+			final StopSellOrder sell = new StopSellOrder("account", 10, "TICK", PRICE - 10 - i);
+			orderManager.queueOrder(buy);
+			orderManager.queueOrder(sell);
+			boxedBuyQueue.enqueue(buy);
+			boxedSellQueue.enqueue(sell);
+		}
+	}
+
+	/**
+	 * A non-triggering tick through SimpleOrderManager.adjustPrice.
+	 *
+	 * @return the tick price
+	 */
+	@Benchmark
+	public int primitiveTick() {
+		tickPrice = tickPrice == PRICE ? PRICE + 1 : PRICE;
+		orderManager.adjustPrice(tickPrice);
+		return tickPrice;
+	}
+
+	/**
+	 * A non-triggering tick through the boxed queues.
+	 *
+	 * @return the tick price
+	 */
+	@Benchmark
+	public int boxedTick() {
+		tickPrice = tickPrice == PRICE ? PRICE + 1 : PRICE;
+		boxedBuyQueue.setThreshold(tickPrice);
+		boxedSellQueue.setThreshold(tickPrice);
+		return tickPrice;
+	}
+}
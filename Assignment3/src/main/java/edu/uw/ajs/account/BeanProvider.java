@@ -0,0 +1,69 @@
+package main.java.edu.uw.ajs.account;
+
+import org.springframework.beans.BeansException;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * Provides beans from the shared application context. The context is loaded
+ * from context.xml the first time a bean is requested and is then reused for
+ * the life of the application, rather than being loaded for each request.
+ *
+ * @author chq-alexs
+ */
+public final class BeanProvider {
+
+	/** The name of the context configuration file */
+	private static final String CONTEXT_FILE = "context.xml";
+
+	/** The shared application context, loaded on first use */
+	private static volatile ClassPathXmlApplicationContext appContext;
+
+	/**
+	 * Utility class - disable constructor.
+	 */
+	private BeanProvider() {
+		// no-op
+	}
+
+	/**
+	 * Gets a bean of the specified type from the shared application context.
+	 * Prototype scoped beans result in a new instance for each call.
+	 *
+	 * @param <T>
+	 *            the bean type
+	 * @param type
+	 *            the type of bean to obtain
+	 *
+	 * @return the bean
+	 *
+	 * @throws BeansException
+	 *             if the context can't be loaded or the bean can't be created
+	 */
+	public static <T> T getBean(final Class<T> type) throws BeansException {
+		return getContext().getBean(type);
+	}
+
+	/**
+	 * Gets the shared application context, loading it if necessary. The
+	 * context is closed when the JVM shuts down.
+	 *
+	 * @return the application context
+	 *
+	 * @throws BeansException
+	 *             if the context can't be loaded
+	 */
+	private static ClassPathXmlApplicationContext getContext() throws BeansException {
+		ClassPathXmlApplicationContext ctx = appContext;
+		if (ctx == null) {
+			synchronized (BeanProvider.class) {
+				ctx = appContext;
+				if (ctx == null) {
+					ctx = new ClassPathXmlApplicationContext(CONTEXT_FILE);
+					ctx.registerShutdownHook();
+					appContext = ctx;
+				}
+			}
+		}
+		return ctx;
+	}
+}
@@ -0,0 +1,36 @@
+package main.java.edu.uw.ajs.account;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.AccountManager;
+
+/**
+ * An AccountManager that can defer persisting account changes, so several
+ * changes to the same account are written as a single update.
+ *
+ * @author chq-alexs
+ */
+public interface CoalescingAccountManager extends AccountManager {
+
+	/**
+	 * Marks an account as changed. The account will be persisted no later
+	 * than the next flush, subsequent changes before then are written in the
+	 * same update.
+	 *
+	 * @param account
+	 *            the changed account
+	 *
+	 * @exception AccountException
+	 *                if the account can't be persisted
+	 */
+	void persistLater(Account account) throws AccountException;
+
+	/**
+	 * Persists all accounts with deferred changes. When this method returns
+	 * all previously deferred changes have been written.
+	 *
+	 * @exception AccountException
+	 *                if any account can't be persisted
+	 */
+	void flush() throws AccountException;
+}
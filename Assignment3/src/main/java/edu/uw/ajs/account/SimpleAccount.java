@@ -286,6 +286,8 @@ public final class SimpleAccount implements Account {
 	 * Incorporates the effect of an order in the balance. Increments or
 	 * decrements the account balance by the execution price * number of shares
 	 * in the order and then persists the account, using the account manager.
+	 * If the account manager supports deferred persistence the account is only
+	 * marked as changed and is written on the manager's next flush.
 	 *
 	 * @param order
 	 *            the order to be reflected in the account
@@ -295,7 +297,9 @@ public final class SimpleAccount implements Account {
 	public void reflectOrder(final Order order, final int executionPrice) {
 		try {
 			balance += order.valueOfOrder(executionPrice);
-			if (acctMngr != null) {
+			if (acctMngr instanceof CoalescingAccountManager) {
+				((CoalescingAccountManager) acctMngr).persistLater(this);
+			} else if (acctMngr != null) {
 				acctMngr.persist(this);
 			} else {
 				logger.error("Account manager has not been initialized.", new Exception());
@@ -3,24 +3,34 @@ package main.java.edu.uw.ajs.account;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.BeansException;
-import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.AccountFactory;
-import edu.uw.ext.framework.account.AccountManager;
 import edu.uw.ext.framework.dao.AccountDao;
 
 /**
  * A simple account manager that has no persistence, and accepts every login.
  *
+ * Changes reported through persistLater may be coalesced: when a flush window
+ * is configured the changed accounts are held and written once per window,
+ * however many times they changed. Accounts with pending changes are served
+ * from memory so no change is lost.
+ *
  * @author Russ Moul
  */
-public final class SimpleAccountManager implements AccountManager {
+public final class SimpleAccountManager implements CoalescingAccountManager {
 	/** This class' logger. */
 	private static final Logger log = LoggerFactory.getLogger(SimpleAccountManager.class);
 
@@ -36,6 +46,12 @@ public final class SimpleAccountManager implements AccountManager {
 	/** The factory to use for creating accounts */
 	private AccountFactory accountFactory;
 
+	/** Accounts with changes waiting to be persisted, by account name */
+	private final Map<String, Account> pending = new LinkedHashMap<>();
+
+	/** Performs the periodic flush, null if changes are persisted immediately */
+	private ScheduledExecutorService flusher;
+
 	/**
 	 * Creates a new Simple account manager using the specified AccountDao for
 	 * persistence.
@@ -45,13 +61,42 @@ public final class SimpleAccountManager implements AccountManager {
 	 */
 	public SimpleAccountManager(final AccountDao dao) {
 		this.dao = dao;
-		try (ClassPathXmlApplicationContext appContext = new ClassPathXmlApplicationContext("context.xml")) {
-			accountFactory = appContext.getBean(AccountFactory.class);
+		try {
+			accountFactory = BeanProvider.getBean(AccountFactory.class);
 		} catch (final BeansException ex) {
 			log.error("Unable to create account manager.", ex);
 		}
 	}
 
+	/**
+	 * Creates a new Simple account manager using the specified AccountDao for
+	 * persistence, coalescing deferred account changes into one write per
+	 * flush window.
+	 *
+	 * @param dao
+	 *            the DAO to use for persistence
+	 * @param flushWindowMillis
+	 *            the interval between writes of deferred changes, 0 or less
+	 *            to persist each change immediately
+	 */
+	public SimpleAccountManager(final AccountDao dao, final long flushWindowMillis) {
+		this(dao);
+		if (flushWindowMillis > 0) {
+			flusher = Executors.newSingleThreadScheduledExecutor((r) -> {
+				final Thread t = new Thread(r, "account-persist");
+				t.setDaemon(true);
+				return t;
+			});
+			flusher.scheduleWithFixedDelay(() -> {
+				try {
+					flush();
+				} catch (final AccountException ex) {
+					log.error("Unable to persist deferred account changes.", ex);
+				}
+			}, flushWindowMillis, flushWindowMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
 	/**
 	 * Used to persist an account.
 	 *
@@ -65,6 +110,50 @@ public final class SimpleAccountManager implements AccountManager {
 		dao.setAccount(account);
 	}
 
+	/**
+	 * Marks an account as changed. If no flush window is configured the
+	 * account is persisted immediately.
+	 *
+	 * @param account
+	 *            the changed account
+	 *
+	 * @exception AccountException
+	 *                if operation fails
+	 */
+	public synchronized void persistLater(final Account account) throws AccountException {
+		if (flusher == null) {
+			persist(account);
+		} else {
+			pending.put(account.getName(), account);
+		}
+	}
+
+	/**
+	 * Persists all accounts with deferred changes.
+	 *
+	 * @exception AccountException
+	 *                if any account can't be persisted, accounts that failed
+	 *                remain pending
+	 */
+	public synchronized void flush() throws AccountException {
+		AccountException failure = null;
+		final Iterator<Account> it = pending.values().iterator();
+		while (it.hasNext()) {
+			final Account account = it.next();
+			try {
+				dao.setAccount(account);
+				it.remove();
+			} catch (final AccountException ex) {
+				log.error(String.format("Unable to persist account '%s'", account.getName()), ex);
+				failure = ex;
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
 	/**
 	 * Lookup an account based on username.
 	 *
@@ -78,6 +167,11 @@ public final class SimpleAccountManager implements AccountManager {
 	 */
 	public synchronized Account getAccount(final String accountName) throws AccountException {
 
+		final Account pendingAcct = pending.get(accountName);
+		if (pendingAcct != null) {
+			return pendingAcct;
+		}
+
 		final Account acct = dao.getAccount(accountName);
 
 		if (acct != null) {
@@ -102,6 +196,7 @@ public final class SimpleAccountManager implements AccountManager {
 
 		log.info("Getting acct: " + acct);
 
+		pending.remove(accountName);
 		if (acct != null) {
 			dao.deleteAccount(accountName);
 		}
@@ -189,13 +284,23 @@ public final class SimpleAccountManager implements AccountManager {
 	}
 
 	/**
-	 * Closes the account manager.
+	 * Closes the account manager, persisting any deferred changes.
 	 *
 	 * @exception AccountException
-	 *                if the DAO can't be closed
+	 *                if the deferred changes can't be persisted or the DAO
+	 *                can't be closed
 	 */
 	public void close() throws AccountException {
-		dao.close();
-		dao = null;
+		if (flusher != null) {
+			flusher.shutdown();
+		}
+		synchronized (this) {
+			try {
+				flush();
+			} finally {
+				dao.close();
+				dao = null;
+			}
+		}
 	}
 }
@@ -13,6 +13,19 @@ import edu.uw.ext.framework.dao.AccountDao;
  */
 public final class SimpleAccountManagerFactory implements AccountManagerFactory
 {
+    /** Interval between writes of deferred account changes, in milliseconds */
+    private long flushWindowMillis;
+
+    /**
+     * Sets the interval between writes of deferred account changes, 0 or less
+     * persists each change immediately.
+     *
+     * @param flushWindowMillis the flush window in milliseconds
+     */
+    public void setFlushWindowMillis(final long flushWindowMillis) {
+        this.flushWindowMillis = flushWindowMillis;
+    }
+
     /**
      * Instantiates a new SimpleAccountManager instance.
      *
@@ -21,7 +34,7 @@ public final class SimpleAccountManagerFactory implements AccountManagerFactory
      * @return a newly instantiated SimpleAccountManager
      */
     public AccountManager newAccountManager(final AccountDao dao) {
-        return new SimpleAccountManager(dao);
+        return new SimpleAccountManager(dao, flushWindowMillis);
     }
 }
 
@@ -0,0 +1,220 @@
+package main.java.edu.uw.ajs.backtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.broker.SimpleOrderManager;
+
+/**
+ * A single backtest: one strategy run over the ticks of one ticker. The
+ * strategy's orders are held by a SimpleOrderManager, so they are triggered
+ * exactly as by the broker, and filled at the price of the triggering tick
+ * into a BacktestLedger. Orders are queued with the order manager between
+ * ticks, so an order placed while a tick is being processed never re-enters
+ * the order manager's dispatch.
+ *
+ * @author chq-alexs
+ */
+public final class BacktestContext {
+
+	/** The ticks */
+	private final TickFile ticks;
+
+	/** The strategy */
+	private final BacktestStrategy strategy;
+
+	/** The ledger */
+	private final BacktestLedger ledger;
+
+	/** Holds and triggers the strategy's orders */
+	private SimpleOrderManager orderMgr;
+
+	/** Orders placed, waiting to be queued with the order manager */
+	private List<Runnable> pending = new ArrayList<>();
+
+	/** Index of the current tick */
+	private int index;
+
+	/** Price of the current tick */
+	private int price;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param ticks
+	 *            - the ticks
+	 * @param strategy
+	 *            - the strategy
+	 * @param startingCash
+	 *            - the opening cash balance, in cents
+	 */
+	BacktestContext(final TickFile ticks, final BacktestStrategy strategy, final long startingCash) {
+		this.ticks = ticks;
+		this.strategy = strategy;
+		this.ledger = new BacktestLedger(startingCash);
+	}
+
+	/**
+	 * Runs the strategy over every tick.
+	 *
+	 * @return the ledger after the last tick
+	 */
+	BacktestLedger run() {
+		if (ticks.size() == 0) {
+			return ledger;
+		}
+
+		price = ticks.price(0);
+		orderMgr = new SimpleOrderManager(ticks.getTicker(), price);
+		orderMgr.setBuyOrderProcessor((order) -> fill(order, true));
+		orderMgr.setSellOrderProcessor((order) -> fill(order, false));
+		orderMgr.setTrailingBuyProcessor((order) -> fill(order, true));
+		orderMgr.setTrailingSellProcessor((order) -> fill(order, false));
+
+		strategy.start(this);
+		queuePending();
+
+		final int count = ticks.size();
+		for (index = 1; index < count; index++) {
+			price = ticks.price(index);
+			orderMgr.adjustPrice(price);
+			if (!pending.isEmpty()) {
+				queuePending();
+			}
+		}
+		index = count - 1;
+		return ledger;
+	}
+
+	/**
+	 * Places a stop buy order.
+	 *
+	 * @param order
+	 *            - the order
+	 */
+	public void placeOrder(final StopBuyOrder order) {
+		pending.add(() -> orderMgr.queueOrder(order));
+	}
+
+	/**
+	 * Places a stop sell order.
+	 *
+	 * @param order
+	 *            - the order
+	 */
+	public void placeOrder(final StopSellOrder order) {
+		pending.add(() -> orderMgr.queueOrder(order));
+	}
+
+	/**
+	 * Places a trailing stop buy.
+	 *
+	 * @param order
+	 *            - the order
+	 * @param trail
+	 *            - the trail, in cents, or if percent is true in hundredths
+	 *            of a percent
+	 * @param percent
+	 *            - true if the trail is a percentage
+	 */
+	public void placeTrailingStop(final MarketBuyOrder order, final int trail, final boolean percent) {
+		pending.add(() -> orderMgr.queueTrailingStop(order, trail, percent));
+	}
+
+	/**
+	 * Places a trailing stop sell.
+	 *
+	 * @param order
+	 *            - the order
+	 * @param trail
+	 *            - the trail, in cents, or if percent is true in hundredths
+	 *            of a percent
+	 * @param percent
+	 *            - true if the trail is a percentage
+	 */
+	public void placeTrailingStop(final MarketSellOrder order, final int trail, final boolean percent) {
+		pending.add(() -> orderMgr.queueTrailingStop(order, trail, percent));
+	}
+
+	/**
+	 * Cancels a resting stop order.
+	 *
+	 * @param orderId
+	 *            - id of the order
+	 */
+	public void cancelOrder(final int orderId) {
+		pending.add(() -> orderMgr.cancel(orderId));
+	}
+
+	/**
+	 * Gets the ticker.
+	 *
+	 * @return the ticker
+	 */
+	public String getTicker() {
+		return ticks.getTicker();
+	}
+
+	/**
+	 * Gets the current price.
+	 *
+	 * @return the price of the current tick, in cents
+	 */
+	public int getPrice() {
+		return price;
+	}
+
+	/**
+	 * Gets the current time.
+	 *
+	 * @return the time of the current tick, in milliseconds since the epoch
+	 */
+	public long getTimeMillis() {
+		return ticks.timeMillis(index);
+	}
+
+	/**
+	 * Gets the ledger.
+	 *
+	 * @return the ledger
+	 */
+	public BacktestLedger getLedger() {
+		return ledger;
+	}
+
+	/**
+	 * Fills a triggered order at the current price.
+	 *
+	 * @param order
+	 *            - the order
+	 * @param buy
+	 *            - true if the order is a buy
+	 */
+	private void fill(final Order order, final boolean buy) {
+		if (buy) {
+			ledger.buy(order.getNumberOfShares(), price);
+		} else {
+			ledger.sell(order.getNumberOfShares(), price);
+		}
+		strategy.onFill(this, order, price);
+	}
+
+	/**
+	 * Queues the placed orders with the order manager, including orders
+	 * placed by fills they trigger.
+	 */
+	private void queuePending() {
+		while (!pending.isEmpty()) {
+			final List<Runnable> placed = pending;
+			pending = new ArrayList<>();
+			for (Runnable action : placed) {
+				action.run();
+			}
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package main.java.edu.uw.ajs.backtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Backtests stop order strategies against historical ticks. Every strategy
+ * is run over every tick file, each run on its own with its own order manager
+ * and ledger, so the runs share nothing but the read only tick files and are
+ * executed in parallel. Within a run nothing is locked or persisted, a tick
+ * costs a price comparison in the order manager unless it triggers orders.
+ *
+ * @author chq-alexs
+ */
+public final class BacktestEngine {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(BacktestEngine.class);
+
+	/** Number of threads running backtests */
+	private final int threads;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threads
+	 *            - number of threads running backtests
+	 */
+	public BacktestEngine(final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one thread is required.");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Runs every strategy over every tick file.
+	 *
+	 * @param tickFiles
+	 *            - the tick files, one for each ticker
+	 * @param strategies
+	 *            - create the strategies, or one strategy with different
+	 *            parameters, a new instance for each run
+	 * @param startingCash
+	 *            - the opening cash balance of each run, in cents
+	 * @return the results, by tick file then strategy, in the order given
+	 *
+	 * @throws IOException
+	 *             if a tick file can't be mapped
+	 */
+	public List<BacktestResult> run(final List<File> tickFiles,
+			final List<? extends Supplier<? extends BacktestStrategy>> strategies, final long startingCash)
+			throws IOException {
+		final List<TickFile> ticks = new ArrayList<>(tickFiles.size());
+		for (File file : tickFiles) {
+			ticks.add(new TickFile(file));
+		}
+
+		final List<Callable<BacktestResult>> runs = new ArrayList<>(ticks.size() * strategies.size());
+		for (TickFile tickFile : ticks) {
+			for (int s = 0; s < strategies.size(); s++) {
+				final int strategy = s;
+				runs.add(() -> runOne(tickFile, strategy, strategies.get(strategy).get(), startingCash));
+			}
+		}
+
+		final AtomicInteger threadCount = new AtomicInteger();
+		final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, runs.size())),
+				(r) -> {
+					final Thread t = new Thread(r, "backtest-" + threadCount.getAndIncrement());
+					t.setDaemon(true);
+					return t;
+				});
+		final long start = System.nanoTime();
+		final List<BacktestResult> results = new ArrayList<>(runs.size());
+		try {
+			for (Future<BacktestResult> result : pool.invokeAll(runs)) {
+				results.add(result.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted running backtests.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Backtest failed.", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		long tickCount = 0;
+		for (BacktestResult result : results) {
+			tickCount += result.getTicks();
+		}
+		logger.info(String.format("Ran %d backtests over %d ticks in %d ms", results.size(), tickCount,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+		return results;
+	}
+
+	/**
+	 * Runs a strategy over a tick file.
+	 *
+	 * @param ticks
+	 *            - the ticks
+	 * @param strategyIndex
+	 *            - index of the strategy in the strategy list
+	 * @param strategy
+	 *            - the strategy
+	 * @param startingCash
+	 *            - the opening cash balance, in cents
+	 * @return the result
+	 */
+	private static BacktestResult runOne(final TickFile ticks, final int strategyIndex,
+			final BacktestStrategy strategy, final long startingCash) {
+		final long start = System.nanoTime();
+		final BacktestLedger ledger = new BacktestContext(ticks, strategy, startingCash).run();
+		final int lastPrice = ticks.size() == 0 ? 0 : ticks.price(ticks.size() - 1);
+		return new BacktestResult(ticks.getTicker(), strategyIndex, ticks.size(), ledger, lastPrice,
+				System.nanoTime() - start);
+	}
+}
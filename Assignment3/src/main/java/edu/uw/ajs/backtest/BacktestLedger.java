@@ -0,0 +1,112 @@
+package main.java.edu.uw.ajs.backtest;
+
+/**
+ * The in memory cash and position of a single backtest, in place of the
+ * accounts and their persistence. A backtest runs on one thread, so the
+ * ledger isn't synchronized.
+ *
+ * @author chq-alexs
+ */
+public final class BacktestLedger {
+
+	/** Cash balance, in cents */
+	private long cash;
+
+	/** Shares held, negative if short */
+	private long position;
+
+	/** Number of fills */
+	private int fills;
+
+	/** Total value traded, in cents */
+	private long turnover;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param startingCash
+	 *            - the opening cash balance, in cents
+	 */
+	public BacktestLedger(final long startingCash) {
+		this.cash = startingCash;
+	}
+
+	/**
+	 * Records a buy.
+	 *
+	 * @param shares
+	 *            - the number of shares bought
+	 * @param price
+	 *            - the price, in cents
+	 */
+	void buy(final int shares, final int price) {
+		final long value = (long) shares * price;
+		cash -= value;
+		position += shares;
+		turnover += value;
+		fills++;
+	}
+
+	/**
+	 * Records a sale.
+	 *
+	 * @param shares
+	 *            - the number of shares sold
+	 * @param price
+	 *            - the price, in cents
+	 */
+	void sell(final int shares, final int price) {
+		final long value = (long) shares * price;
+		cash += value;
+		position -= shares;
+		turnover += value;
+		fills++;
+	}
+
+	/**
+	 * Gets the cash balance.
+	 *
+	 * @return the balance, in cents
+	 */
+	public long getCash() {
+		return cash;
+	}
+
+	/**
+	 * Gets the number of shares held.
+	 *
+	 * @return the shares, negative if short
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Gets the number of fills.
+	 *
+	 * @return the number of fills
+	 */
+	public int getFills() {
+		return fills;
+	}
+
+	/**
+	 * Gets the total value traded.
+	 *
+	 * @return the value, in cents
+	 */
+	public long getTurnover() {
+		return turnover;
+	}
+
+	/**
+	 * Gets the value of the cash and position at a price.
+	 *
+	 * @param price
+	 *            - the share price, in cents
+	 * @return the value, in cents
+	 */
+	public long equity(final int price) {
+		return cash + position * price;
+	}
+}
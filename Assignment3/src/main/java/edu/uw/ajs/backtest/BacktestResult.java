@@ -0,0 +1,113 @@
+package main.java.edu.uw.ajs.backtest;
+
+/**
+ * The outcome of one strategy run over the ticks of one ticker.
+ *
+ * @author chq-alexs
+ */
+public final class BacktestResult {
+
+	/** The ticker */
+	private final String ticker;
+
+	/** Index of the strategy in the engine's strategy list */
+	private final int strategy;
+
+	/** Number of ticks processed */
+	private final int ticks;
+
+	/** The ledger after the last tick */
+	private final BacktestLedger ledger;
+
+	/** Price of the last tick, in cents */
+	private final int lastPrice;
+
+	/** Duration of the run, in nanoseconds */
+	private final long elapsedNanos;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param ticker
+	 *            - the ticker
+	 * @param strategy
+	 *            - index of the strategy in the engine's strategy list
+	 * @param ticks
+	 *            - number of ticks processed
+	 * @param ledger
+	 *            - the ledger after the last tick
+	 * @param lastPrice
+	 *            - price of the last tick, in cents
+	 * @param elapsedNanos
+	 *            - duration of the run, in nanoseconds
+	 */
+	BacktestResult(final String ticker, final int strategy, final int ticks, final BacktestLedger ledger,
+			final int lastPrice, final long elapsedNanos) {
+		this.ticker = ticker;
+		this.strategy = strategy;
+		this.ticks = ticks;
+		this.ledger = ledger;
+		this.lastPrice = lastPrice;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * Gets the ticker.
+	 *
+	 * @return the ticker
+	 */
+	public String getTicker() {
+		return ticker;
+	}
+
+	/**
+	 * Gets the strategy run.
+	 *
+	 * @return index of the strategy in the engine's strategy list
+	 */
+	public int getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * Gets the number of ticks processed.
+	 *
+	 * @return the number of ticks
+	 */
+	public int getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * Gets the ledger after the last tick.
+	 *
+	 * @return the ledger
+	 */
+	public BacktestLedger getLedger() {
+		return ledger;
+	}
+
+	/**
+	 * Gets the value of the cash and position at the last tick's price.
+	 *
+	 * @return the value, in cents
+	 */
+	public long getEquity() {
+		return ledger.equity(lastPrice);
+	}
+
+	/**
+	 * Gets the duration of the run.
+	 *
+	 * @return the duration, in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s strategy %d: %d ticks, %d fills, cash %d, position %d, equity %d", ticker,
+				strategy, ticks, ledger.getFills(), ledger.getCash(), ledger.getPosition(), getEquity());
+	}
+}
@@ -0,0 +1,33 @@
+package main.java.edu.uw.ajs.backtest;
+
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * A stop order strategy under test. A new instance is used for each backtest,
+ * so a strategy may keep state without synchronization.
+ *
+ * @author chq-alexs
+ */
+public interface BacktestStrategy {
+
+	/**
+	 * Places the strategy's initial orders, at the first tick's price.
+	 *
+	 * @param context
+	 *            - the backtest
+	 */
+	void start(BacktestContext context);
+
+	/**
+	 * Called when one of the strategy's orders is filled. Orders placed here
+	 * are queued once the tick that triggered the fill has been processed.
+	 *
+	 * @param context
+	 *            - the backtest
+	 * @param order
+	 *            - the filled order
+	 * @param price
+	 *            - the fill price, in cents
+	 */
+	void onFill(BacktestContext context, Order order, int price);
+}
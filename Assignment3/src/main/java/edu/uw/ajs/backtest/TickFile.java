@@ -0,0 +1,186 @@
+package main.java.edu.uw.ajs.backtest;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A read only, memory mapped file of the historical price ticks of one
+ * ticker. The file is a fixed size header followed by fixed size records, a
+ * time in milliseconds since the epoch and a price in cents, so the ticks are
+ * read straight from the page cache by index with no parsing or copying.
+ * Reads are thread safe, any number of backtests may run over the same file.
+ *
+ * A file is limited to a little under 2GB, about 178 million ticks.
+ *
+ * @author chq-alexs
+ */
+public final class TickFile {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(TickFile.class);
+
+	/** Identifies a tick file */
+	private static final int MAGIC = 0x5449434B;
+
+	/** Tick file format version */
+	private static final int VERSION = 1;
+
+	/** Size of the header */
+	private static final int HEADER_SIZE = 32;
+
+	/** Offset of the tick count in the header */
+	private static final int COUNT_OFFSET = 8;
+
+	/** Offset of the ticker length in the header */
+	private static final int TICKER_OFFSET = 16;
+
+	/** Longest ticker, in UTF-8 bytes */
+	private static final int MAX_TICKER_BYTES = HEADER_SIZE - TICKER_OFFSET - 2;
+
+	/** Size of a tick record */
+	private static final int RECORD_SIZE = 12;
+
+	/** The ticker */
+	private final String ticker;
+
+	/** Number of ticks */
+	private final int count;
+
+	/** The mapped file */
+	private final MappedByteBuffer ticks;
+
+	/**
+	 * Maps a tick file.
+	 *
+	 * @param file
+	 *            - the file
+	 *
+	 * @throws IOException
+	 *             if the file can't be mapped or isn't a tick file
+	 */
+	public TickFile(final File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			final long size = raf.length();
+			if (size < HEADER_SIZE) {
+				throw new IOException(String.format("Not a tick file, %s", file.getAbsolutePath()));
+			}
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(String.format("Tick file too large to map, %s", file.getAbsolutePath()));
+			}
+			ticks = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+
+		if (ticks.getInt(0) != MAGIC || ticks.getInt(4) != VERSION) {
+			throw new IOException(String.format("Not a tick file, %s", file.getAbsolutePath()));
+		}
+		final int tickerLength = ticks.getShort(TICKER_OFFSET);
+		if (tickerLength < 0 || tickerLength > MAX_TICKER_BYTES) {
+			throw new IOException(String.format("Malformed tick file header, %s", file.getAbsolutePath()));
+		}
+		final byte[] tickerBytes = new byte[tickerLength];
+		for (int i = 0; i < tickerLength; i++) {
+			tickerBytes[i] = ticks.get(TICKER_OFFSET + 2 + i);
+		}
+		ticker = new String(tickerBytes, StandardCharsets.UTF_8);
+
+		final long recorded = ticks.getLong(COUNT_OFFSET);
+		final long present = (ticks.capacity() - HEADER_SIZE) / RECORD_SIZE;
+		if (recorded != present) {
+			logger.warn(String.format("Tick file %s has %d of %d ticks", file.getAbsolutePath(), present,
+					recorded));
+		}
+		count = (int) Math.min(recorded, present);
+	}
+
+	/**
+	 * Gets the ticker.
+	 *
+	 * @return the ticker
+	 */
+	public String getTicker() {
+		return ticker;
+	}
+
+	/**
+	 * Gets the number of ticks.
+	 *
+	 * @return the number of ticks
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Gets the time of a tick.
+	 *
+	 * @param index
+	 *            - the tick index
+	 * @return the time, in milliseconds since the epoch
+	 */
+	public long timeMillis(final int index) {
+		return ticks.getLong(HEADER_SIZE + index * RECORD_SIZE);
+	}
+
+	/**
+	 * Gets the price of a tick.
+	 *
+	 * @param index
+	 *            - the tick index
+	 * @return the price, in cents
+	 */
+	public int price(final int index) {
+		return ticks.getInt(HEADER_SIZE + index * RECORD_SIZE + 8);
+	}
+
+	/**
+	 * Writes a tick file.
+	 *
+	 * @param file
+	 *            - the file to write
+	 * @param ticker
+	 *            - the ticker
+	 * @param timesMillis
+	 *            - the time of each tick, in milliseconds since the epoch
+	 * @param prices
+	 *            - the price of each tick, in cents
+	 *
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public static void write(final File file, final String ticker, final long[] timesMillis, final int[] prices)
+			throws IOException {
+		if (timesMillis.length != prices.length) {
+			throw new IllegalArgumentException("A time and a price are required for every tick.");
+		}
+		final byte[] tickerBytes = ticker.getBytes(StandardCharsets.UTF_8);
+		if (tickerBytes.length > MAX_TICKER_BYTES) {
+			throw new IllegalArgumentException(String.format("Ticker too long, %s", ticker));
+		}
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(prices.length);
+			out.writeShort(tickerBytes.length);
+			out.write(tickerBytes);
+			out.write(new byte[HEADER_SIZE - TICKER_OFFSET - 2 - tickerBytes.length]);
+			for (int i = 0; i < prices.length; i++) {
+				out.writeLong(timesMillis[i]);
+				out.writeInt(prices[i]);
+			}
+		}
+	}
+}
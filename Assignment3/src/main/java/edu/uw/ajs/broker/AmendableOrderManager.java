@@ -0,0 +1,42 @@
+package main.java.edu.uw.ajs.broker;
+
+import java.util.List;
+
+import edu.uw.ext.framework.broker.OrderManager;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * An OrderManager whose resting stop orders can be looked up and cancelled
+ * by order id, so their stop price can be amended by replacing them.
+ *
+ * @author chq-alexs
+ */
+public interface AmendableOrderManager extends OrderManager {
+
+	/**
+	 * Cancels a resting stop order.
+	 *
+	 * @param orderId
+	 *            - id of the order to cancel
+	 * @return true if the order was resting and has been cancelled, false if
+	 *         it isn't held by this order manager
+	 */
+	boolean cancel(int orderId);
+
+	/**
+	 * Gets a resting stop order.
+	 *
+	 * @param orderId
+	 *            - id of the order
+	 * @return the stop buy or stop sell order, null if it isn't held by this
+	 *         order manager
+	 */
+	Order getRestingOrder(int orderId);
+
+	/**
+	 * Cancels every resting stop order, none are dispatched.
+	 *
+	 * @return the cancelled orders
+	 */
+	List<Order> cancelAll();
+}
@@ -0,0 +1,36 @@
+package main.java.edu.uw.ajs.broker;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import edu.uw.ext.framework.broker.OrderManager;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * An OrderManager that can release the stop orders triggered by a price
+ * change as one batch. A batch processor, when set, is used in place of the
+ * corresponding order processor.
+ *
+ * @author chq-alexs
+ */
+public interface BatchOrderManager extends OrderManager {
+
+	/**
+	 * Sets the processor for batches of triggered stop buy orders, null to
+	 * revert to the buy order processor.
+	 *
+	 * @param processor
+	 *            - the batch processor
+	 */
+	void setBuyBatchProcessor(Consumer<List<StopBuyOrder>> processor);
+
+	/**
+	 * Sets the processor for batches of triggered stop sell orders, null to
+	 * revert to the sell order processor.
+	 *
+	 * @param processor
+	 *            - the batch processor
+	 */
+	void setSellBatchProcessor(Consumer<List<StopSellOrder>> processor);
+}
@@ -0,0 +1,45 @@
+package main.java.edu.uw.ajs.broker;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * An OrderQueue that can dispatch the orders released by a single threshold
+ * move, or a single enqueue, as one batch.
+ *
+ * When a batch processor is set it is used in place of the order processor:
+ * each dispatch passes every order it releases to the batch processor in one
+ * call, in dispatch order. The list is created for the call and belongs to
+ * the processor. Nothing is passed if no orders are released.
+ *
+ * @author chq-alexs
+ *
+ * @param <T>
+ *            T - the dispatch threshold type
+ *
+ * @param <E>
+ *            E - the type of order contained in the queue
+ */
+public interface BatchOrderQueue<T, E extends Order> extends OrderQueue<T, E> {
+
+	/**
+	 * Adds orders to the queue and dispatches once, rather than once per
+	 * order.
+	 *
+	 * @param orders
+	 *            - the orders to add
+	 */
+	void enqueueAll(Collection<? extends E> orders);
+
+	/**
+	 * Sets the batch processor, null to revert to the order processor.
+	 *
+	 * @param proc
+	 *            - the batch processor
+	 */
+	void setBatchProcessor(Consumer<List<E>> proc);
+}
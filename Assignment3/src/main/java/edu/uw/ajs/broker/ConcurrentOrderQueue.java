@@ -0,0 +1,369 @@
+package main.java.edu.uw.ajs.broker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * A thread safe OrderQueue implementation backed by a ConcurrentSkipListSet.
+ * Enqueue, dequeue and the threshold may be used from any number of threads
+ * without external synchronization.
+ *
+ * Each order is dispatched exactly once: an order is only handed out by the
+ * thread that succeeds in removing it from the set. Dispatching is serialized,
+ * the order processor is never invoked concurrently and orders are processed
+ * in queue order. When enqueue, setThreshold or dispatchOrders returns, every
+ * order that was eligible when it was called has been processed. The filter
+ * must be consistent with the queue ordering, if the first order isn't
+ * eligible for dispatch no order is.
+ *
+ * Orders passed to enqueueAll that are all eligible for dispatch are
+ * processed in the order given, after the orders already eligible, rather
+ * than in queue order, so a batch keeps the sequence its producer released
+ * it in. Otherwise they join the queue and are dispatched in queue order.
+ *
+ * While a backlog released by setThreshold(T, Consumer) is being processed,
+ * orders enqueued by other threads are set aside in a side queue without
+ * waiting for the backlog, and are processed after it in the order they were
+ * enqueued.
+ *
+ * @author chq-alexs
+ *
+ * @param <T>
+ *            T - the dispatch threshold type
+ *
+ * @param <E>
+ *            E - the type of order contained in the queue
+ */
+public final class ConcurrentOrderQueue<T, E extends Order> implements BatchOrderQueue<T, E> {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(ConcurrentOrderQueue.class);
+
+	/**
+	 * Queue
+	 */
+	private final ConcurrentSkipListSet<E> queue;
+
+	/**
+	 * Filter
+	 */
+	private final BiPredicate<T, E> filter;
+
+	/**
+	 * Serializes the processing of dispatched orders
+	 */
+	private final ReentrantLock dispatchLock = new ReentrantLock();
+
+	/**
+	 * Orders enqueued while a backlog is being processed, each list as it was
+	 * enqueued
+	 */
+	private final ConcurrentLinkedQueue<List<E>> deferred = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * True while a backlog is being processed
+	 */
+	private volatile boolean releasing;
+
+	/**
+	 * Order Processor
+	 */
+	private volatile Consumer<E> orderProcessor;
+
+	/**
+	 * Batch Processor
+	 */
+	private volatile Consumer<List<E>> batchProcessor;
+
+	/**
+	 * Threshold
+	 */
+	private volatile T threshold;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threshold
+	 *            - the initial threshold
+	 * @param filter
+	 *            - the dispatch filter used to control dispatching from this
+	 *            queue
+	 */
+	public ConcurrentOrderQueue(T threshold, BiPredicate<T, E> filter) {
+		queue = new ConcurrentSkipListSet<>();
+		this.threshold = threshold;
+		this.filter = filter;
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threshold
+	 *            - the initial threshold
+	 *
+	 * @param filter
+	 *            - the dispatch filter used to control dispatching from this
+	 *            queue
+	 *
+	 * @param cmp
+	 *            - Comparator to be used for ordering
+	 */
+	public ConcurrentOrderQueue(T threshold, BiPredicate<T, E> filter, Comparator<E> cmp) {
+		queue = new ConcurrentSkipListSet<>(cmp);
+		this.threshold = threshold;
+		this.filter = filter;
+	}
+
+	@Override
+	public void enqueue(E order) {
+		if (releasing) {
+			defer(Collections.singletonList(order));
+			return;
+		}
+		queue.add(order);
+		dispatchOrders();
+	}
+
+	@Override
+	public void enqueueAll(Collection<? extends E> orders) {
+		if (orders.isEmpty()) {
+			return;
+		}
+
+		if (releasing) {
+			defer(new ArrayList<>(orders));
+			return;
+		}
+
+		dispatchLock.lock();
+		try {
+			offer(orders);
+		} finally {
+			dispatchLock.unlock();
+		}
+	}
+
+	@Override
+	public E dequeue() {
+		while (true) {
+			final E order = first();
+			if (order == null || !filter.test(threshold, order)) {
+				return null;
+			}
+			// only the thread whose remove succeeds owns the order, the
+			// others retry with the new first order
+			if (queue.remove(order)) {
+				return order;
+			}
+		}
+	}
+
+	@Override
+	public void dispatchOrders() {
+		if (!isDispatchable() || (releasing && !dispatchLock.isHeldByCurrentThread())) {
+			// the releasing thread dispatches the queue after the backlog
+			return;
+		}
+
+		dispatchLock.lock();
+		try {
+			logger.debug("Dispatching orders");
+
+			E order;
+
+			final Consumer<List<E>> batchProc = batchProcessor;
+			if (batchProc != null) {
+				final List<E> batch = new ArrayList<>();
+				while ((order = dequeue()) != null) {
+					batch.add(order);
+				}
+				if (!batch.isEmpty()) {
+					batchProc.accept(batch);
+				}
+				return;
+			}
+
+			while ((order = dequeue()) != null) {
+				final Consumer<E> proc = orderProcessor;
+				if (proc != null) {
+					proc.accept(order);
+				}
+			}
+		} finally {
+			dispatchLock.unlock();
+		}
+	}
+
+	@Override
+	public void setOrderProcessor(Consumer<E> proc) {
+		this.orderProcessor = proc;
+	}
+
+	@Override
+	public void setBatchProcessor(Consumer<List<E>> proc) {
+		this.batchProcessor = proc;
+	}
+
+	@Override
+	public void setThreshold(T threshold) {
+		this.threshold = threshold;
+		dispatchOrders();
+	}
+
+	/**
+	 * Sets the threshold and hands every order it makes eligible for dispatch
+	 * to a backlog processor as one list, in queue order, instead of the
+	 * order or batch processor. Dispatching is held off until the backlog
+	 * processor returns: orders enqueued meanwhile are set aside without
+	 * waiting, and are processed after the backlog in the order they were
+	 * enqueued, before this method returns.
+	 *
+	 * @param threshold
+	 *            - the new threshold
+	 * @param backlogProcessor
+	 *            - processes the orders released by the threshold change
+	 */
+	public void setThreshold(T threshold, Consumer<List<E>> backlogProcessor) {
+		dispatchLock.lock();
+		try {
+			this.threshold = threshold;
+			final List<E> backlog = new ArrayList<>();
+			E order;
+			while ((order = dequeue()) != null) {
+				backlog.add(order);
+			}
+			if (!backlog.isEmpty()) {
+				releasing = true;
+				try {
+					backlogProcessor.accept(backlog);
+				} finally {
+					releasing = false;
+					processDeferred();
+					dispatchOrders();
+				}
+			}
+		} finally {
+			dispatchLock.unlock();
+		}
+	}
+
+	@Override
+	public T getThreshold() {
+		return this.threshold;
+	}
+
+	/**
+	 * Gets the number of orders in the queue. The count is a snapshot and
+	 * may be stale as soon as it is returned.
+	 *
+	 * @return the number of orders
+	 */
+	public int size() {
+		return queue.size();
+	}
+
+	/**
+	 * Processes orders passed to enqueueAll, or set aside while a backlog was
+	 * processed. Must be called holding the dispatch lock.
+	 *
+	 * @param orders
+	 *            - the orders, in the order they were enqueued
+	 */
+	private void offer(Collection<? extends E> orders) {
+		final T t = threshold;
+		for (E order : orders) {
+			if (!filter.test(t, order)) {
+				queue.addAll(orders);
+				dispatchOrders();
+				return;
+			}
+		}
+
+		// eligible as given, dispatch what is already eligible then the
+		// orders in their own sequence without passing through the queue
+		dispatchOrders();
+		final List<E> batch = new ArrayList<>(orders);
+		final Consumer<List<E>> batchProc = batchProcessor;
+		if (batchProc != null) {
+			batchProc.accept(batch);
+			return;
+		}
+		for (E order : batch) {
+			final Consumer<E> proc = orderProcessor;
+			if (proc != null) {
+				proc.accept(order);
+			}
+		}
+	}
+
+	/**
+	 * Sets orders aside while a backlog is being processed. If the backlog
+	 * has been processed meanwhile the orders are processed at once, as the
+	 * releasing thread may already have processed the side queue.
+	 *
+	 * @param orders
+	 *            - the orders, in the order they were enqueued
+	 */
+	private void defer(List<E> orders) {
+		deferred.add(orders);
+		if (!releasing) {
+			dispatchLock.lock();
+			try {
+				processDeferred();
+			} finally {
+				dispatchLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Processes the orders set aside while a backlog was processed. Must be
+	 * called holding the dispatch lock.
+	 */
+	private void processDeferred() {
+		List<E> orders;
+		while ((orders = deferred.poll()) != null) {
+			offer(orders);
+		}
+	}
+
+	/**
+	 * Determine if the first order in the queue is eligible for dispatch at
+	 * the current threshold.
+	 *
+	 * @return true if there is an order to dispatch
+	 */
+	private boolean isDispatchable() {
+		final E order = first();
+		return order != null && filter.test(threshold, order);
+	}
+
+	/**
+	 * Gets the first order in the queue.
+	 *
+	 * @return the first order, null if the queue is empty
+	 */
+	private E first() {
+		try {
+			return queue.first();
+		} catch (NoSuchElementException e) {
+			return null;
+		}
+	}
+}
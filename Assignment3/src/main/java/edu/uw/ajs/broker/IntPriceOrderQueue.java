@@ -0,0 +1,436 @@
+package main.java.edu.uw.ajs.broker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * An OrderQueue for stop orders specialized for int prices. Orders are kept
+ * in a binary heap keyed by the stop price held in an int array, ties are
+ * broken by the orders' natural ordering, giving the same dispatch order as a
+ * SimpleOrderQueue ordered by price then order.
+ *
+ * Resting orders are indexed by order id, so an order can be looked up or
+ * cancelled in O(log n) without searching the queue. Orders are immutable, so
+ * a stop price is amended by cancelling the order and enqueuing a replacement
+ * at the new price, which is ordered as a newly placed order.
+ *
+ * The threshold is held as an int and setThreshold(int) only compares it with
+ * the price at the head of the heap, so a price change that triggers nothing
+ * does not allocate. The Integer methods of OrderQueue are provided for
+ * compatibility and box as usual.
+ *
+ * With ascending prices an order is dispatched when its price is less than or
+ * equal to the threshold (stop buy), with descending prices an order is
+ * dispatched when its price is greater than or equal to the threshold (stop
+ * sell).
+ *
+ * @author chq-alexs
+ *
+ * @param <E>
+ *            E - the type of order contained in the queue
+ */
+public final class IntPriceOrderQueue<E extends Order> implements BatchOrderQueue<Integer, E> {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(IntPriceOrderQueue.class);
+
+	/**
+	 * Initial heap capacity
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * A resting order and its current position in the heap.
+	 */
+	private static final class Node {
+		/** The order */
+		private final Order order;
+
+		/** Position in the heap */
+		private int pos;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param order
+		 *            - the order
+		 */
+		private Node(final Order order) {
+			this.order = order;
+		}
+	}
+
+	/**
+	 * Function used to obtain the stop price of an order
+	 */
+	private final ToIntFunction<E> priceFunction;
+
+	/**
+	 * True if lower prices are dispatched first
+	 */
+	private final boolean ascending;
+
+	/**
+	 * Stop prices, heap ordered in step with nodes
+	 */
+	private int[] prices = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Resting orders, heap ordered
+	 */
+	private Node[] nodes = new Node[INITIAL_CAPACITY];
+
+	/**
+	 * Resting orders by order id
+	 */
+	private final Map<Integer, Node> index = new HashMap<>();
+
+	/**
+	 * Number of orders in the queue
+	 */
+	private int size;
+
+	/**
+	 * Order Processor
+	 */
+	private Consumer<E> orderProcessor;
+
+	/**
+	 * Batch Processor
+	 */
+	private Consumer<List<E>> batchProcessor;
+
+	/**
+	 * Threshold
+	 */
+	private int threshold;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threshold
+	 *            - the initial threshold
+	 *
+	 * @param priceFunction
+	 *            - function used to obtain the stop price of an order
+	 *
+	 * @param ascending
+	 *            - true if orders at or below the threshold are to be
+	 *            dispatched (lowest price first), false if orders at or above
+	 *            the threshold are to be dispatched (highest price first)
+	 */
+	public IntPriceOrderQueue(int threshold, ToIntFunction<E> priceFunction, boolean ascending) {
+		this.threshold = threshold;
+		this.priceFunction = priceFunction;
+		this.ascending = ascending;
+	}
+
+	@Override
+	public void enqueue(E order) {
+		add(order);
+
+		if (isTriggered(prices[0])) {
+			dispatchOrders();
+		}
+	}
+
+	@Override
+	public void enqueueAll(Collection<? extends E> orders) {
+		for (E order : orders) {
+			add(order);
+		}
+		dispatchOrders();
+	}
+
+	@Override
+	public E dequeue() {
+		if (size == 0 || !isTriggered(prices[0])) {
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		final E order = (E) nodes[0].order;
+
+		index.remove(order.getOrderId());
+		removeAt(0);
+
+		return order;
+	}
+
+	/**
+	 * Removes a resting order from the queue.
+	 *
+	 * @param orderId
+	 *            - id of the order to remove
+	 * @return true if the order was resting in the queue
+	 */
+	public boolean cancel(int orderId) {
+		final Node node = index.remove(orderId);
+		if (node == null) {
+			return false;
+		}
+
+		removeAt(node.pos);
+		return true;
+	}
+
+	/**
+	 * Removes every resting order from the queue.
+	 *
+	 * @return the removed orders, in no particular order
+	 */
+	public List<E> clear() {
+		final List<E> orders = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			@SuppressWarnings("unchecked")
+			final E order = (E) nodes[i].order;
+			orders.add(order);
+			nodes[i] = null;
+		}
+		index.clear();
+		size = 0;
+		return orders;
+	}
+
+	/**
+	 * Gets a resting order.
+	 *
+	 * @param orderId
+	 *            - id of the order
+	 * @return the order, null if it isn't resting in the queue
+	 */
+	public E get(int orderId) {
+		final Node node = index.get(orderId);
+		if (node == null) {
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		final E order = (E) node.order;
+		return order;
+	}
+
+	@Override
+	public void dispatchOrders() {
+		if (size == 0 || !isTriggered(prices[0])) {
+			return;
+		}
+
+		logger.debug("Dispatching orders");
+
+		E order;
+
+		if (batchProcessor != null) {
+			final List<E> batch = new ArrayList<>();
+			while ((order = dequeue()) != null) {
+				batch.add(order);
+			}
+			batchProcessor.accept(batch);
+			return;
+		}
+
+		while ((order = dequeue()) != null) {
+			if (orderProcessor != null) {
+				orderProcessor.accept(order);
+			}
+		}
+	}
+
+	@Override
+	public void setOrderProcessor(Consumer<E> proc) {
+		this.orderProcessor = proc;
+	}
+
+	@Override
+	public void setBatchProcessor(Consumer<List<E>> proc) {
+		this.batchProcessor = proc;
+	}
+
+	/**
+	 * Sets the threshold and dispatches any orders it triggers.
+	 *
+	 * @param threshold
+	 *            - the new threshold
+	 */
+	public void setThreshold(int threshold) {
+		this.threshold = threshold;
+		dispatchOrders();
+	}
+
+	@Override
+	public void setThreshold(Integer threshold) {
+		setThreshold(threshold.intValue());
+	}
+
+	/**
+	 * Gets the threshold without boxing.
+	 *
+	 * @return the threshold
+	 */
+	public int getIntThreshold() {
+		return threshold;
+	}
+
+	@Override
+	public Integer getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Gets the number of orders in the queue.
+	 *
+	 * @return the number of orders
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds an order to the heap, growing it if needed.
+	 *
+	 * @param order
+	 *            - the order to add
+	 */
+	private void add(E order) {
+		final int price = priceFunction.applyAsInt(order);
+
+		if (size == prices.length) {
+			prices = Arrays.copyOf(prices, size * 2);
+			nodes = Arrays.copyOf(nodes, size * 2);
+		}
+		final Node node = new Node(order);
+		index.put(order.getOrderId(), node);
+		siftUp(size++, price, node);
+	}
+
+	/**
+	 * Removes the order at a heap position, filling the gap with the last
+	 * order.
+	 *
+	 * @param pos
+	 *            - the position to remove
+	 */
+	private void removeAt(int pos) {
+		final int last = --size;
+		final int lastPrice = prices[last];
+		final Node lastNode = nodes[last];
+		nodes[last] = null;
+		if (pos != last) {
+			siftDown(pos, lastPrice, lastNode);
+			if (nodes[pos] == lastNode) {
+				siftUp(pos, lastPrice, lastNode);
+			}
+		}
+	}
+
+	/**
+	 * Determine if an order at the specified price would be dispatched at the
+	 * current threshold.
+	 *
+	 * @param price
+	 *            - the order price
+	 * @return true if the price has been crossed by the threshold
+	 */
+	private boolean isTriggered(int price) {
+		return ascending ? price <= threshold : price >= threshold;
+	}
+
+	/**
+	 * Determine if the first order is dispatched before the second.
+	 *
+	 * @param price1
+	 *            - price of the first order
+	 * @param order1
+	 *            - the first order
+	 * @param price2
+	 *            - price of the second order
+	 * @param order2
+	 *            - the second order
+	 * @return true if the first order has priority
+	 */
+	private boolean precedes(int price1, Order order1, int price2, Order order2) {
+		if (price1 != price2) {
+			return ascending ? price1 < price2 : price1 > price2;
+		}
+		return order1.compareTo(order2) < 0;
+	}
+
+	/**
+	 * Moves an order up from a heap position until its parent has priority.
+	 *
+	 * @param pos
+	 *            - the starting position
+	 * @param price
+	 *            - the order's price
+	 * @param node
+	 *            - the order's node
+	 */
+	private void siftUp(int pos, int price, Node node) {
+		while (pos > 0) {
+			final int parent = (pos - 1) >>> 1;
+			if (!precedes(price, node.order, prices[parent], nodes[parent].order)) {
+				break;
+			}
+			place(pos, prices[parent], nodes[parent]);
+			pos = parent;
+		}
+		place(pos, price, node);
+	}
+
+	/**
+	 * Moves an order down from a heap position until it has priority over its
+	 * children.
+	 *
+	 * @param pos
+	 *            - the starting position
+	 * @param price
+	 *            - the order's price
+	 * @param node
+	 *            - the order's node
+	 */
+	private void siftDown(int pos, int price, Node node) {
+		final int half = size >>> 1;
+		while (pos < half) {
+			int child = (pos << 1) + 1;
+			final int right = child + 1;
+			if (right < size && precedes(prices[right], nodes[right].order, prices[child], nodes[child].order)) {
+				child = right;
+			}
+			if (!precedes(prices[child], nodes[child].order, price, node.order)) {
+				break;
+			}
+			place(pos, prices[child], nodes[child]);
+			pos = child;
+		}
+		place(pos, price, node);
+	}
+
+	/**
+	 * Stores an order at a heap position.
+	 *
+	 * @param pos
+	 *            - the position
+	 * @param price
+	 *            - the order's price
+	 * @param node
+	 *            - the order's node
+	 */
+	private void place(int pos, int price, Node node) {
+		prices[pos] = price;
+		nodes[pos] = node;
+		node.pos = pos;
+	}
+}
@@ -0,0 +1,314 @@
+package main.java.edu.uw.ajs.broker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * Executes orders in the background on a pool of worker lanes. Each lane is a
+ * single thread with a queue, orders are assigned to a lane by account so the
+ * orders for any one account are executed one at a time and in the order they
+ * were submitted, while orders for different accounts proceed in parallel. A
+ * batch of orders is split by lane and each lane executes its part of the
+ * batch as a single task.
+ *
+ * Orders are submitted while the broker holds its ticker and dispatch locks,
+ * so submitting never waits for a lane. With BLOCK backpressure the capacity
+ * is enforced by {@link #awaitCapacity()}, called by the broker before it
+ * takes any lock, which waits while a lane has a full queue; the orders
+ * submitted by the call that follows are queued regardless, so a lane may hold
+ * more than its capacity by the orders one call triggers. With REJECT
+ * backpressure the lane queues are bounded and an order submitted to a full
+ * lane is rejected.
+ *
+ * @author chq-alexs
+ */
+public final class OrderExecutionStage implements AutoCloseable {
+
+	/**
+	 * The behavior when an order is submitted to a lane whose queue is full.
+	 */
+	public enum Backpressure {
+		/** Make callers wait in awaitCapacity until there is room in the queue */
+		BLOCK,
+
+		/** Reject the order, it is logged and not executed */
+		REJECT
+	}
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(OrderExecutionStage.class);
+
+	/**
+	 * Time to wait for queued orders to drain when the stage is closed
+	 */
+	private static final long SHUTDOWN_TIMEOUT_SECS = 30;
+
+	/**
+	 * The worker lanes
+	 */
+	private final ThreadPoolExecutor[] lanes;
+
+	/**
+	 * The number of tasks a lane may queue
+	 */
+	private final int capacity;
+
+	/**
+	 * The behavior when a lane's queue is full
+	 */
+	private final Backpressure backpressure;
+
+	/**
+	 * Monitor waited on for room in the lane queues
+	 */
+	private final Object capacityLock = new Object();
+
+	/**
+	 * Number of threads waiting for room in the lane queues
+	 */
+	private volatile int waiting;
+
+	/**
+	 * Executes a single order
+	 */
+	private final Consumer<Order> orderExecutor;
+
+	/**
+	 * Executes a batch of orders, null if batches are executed an order at a
+	 * time
+	 */
+	private final Consumer<List<Order>> batchExecutor;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param name
+	 *            - name used for the worker threads
+	 * @param workers
+	 *            - the number of worker lanes
+	 * @param capacity
+	 *            - the number of orders queued per lane before callers wait,
+	 *            or orders are rejected
+	 * @param backpressure
+	 *            - the behavior when a lane's queue is full
+	 * @param orderExecutor
+	 *            - executes a single order, invoked on a worker thread
+	 */
+	public OrderExecutionStage(String name, int workers, int capacity, Backpressure backpressure,
+			Consumer<Order> orderExecutor) {
+		this(name, workers, capacity, backpressure, orderExecutor, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param name
+	 *            - name used for the worker threads
+	 * @param workers
+	 *            - the number of worker lanes
+	 * @param capacity
+	 *            - the number of orders queued per lane before callers wait,
+	 *            or orders are rejected
+	 * @param backpressure
+	 *            - the behavior when a lane's queue is full
+	 * @param orderExecutor
+	 *            - executes a single order, invoked on a worker thread
+	 * @param batchExecutor
+	 *            - executes a lane's part of a batch, invoked on a worker
+	 *            thread, null to execute batches an order at a time
+	 */
+	public OrderExecutionStage(String name, int workers, int capacity, Backpressure backpressure,
+			Consumer<Order> orderExecutor, Consumer<List<Order>> batchExecutor) {
+		if (workers < 1 || capacity < 1) {
+			throw new IllegalArgumentException(
+					String.format("Invalid execution stage size, workers=%d, capacity=%d", workers, capacity));
+		}
+		this.capacity = capacity;
+		this.backpressure = backpressure;
+		this.orderExecutor = orderExecutor;
+		this.batchExecutor = batchExecutor;
+
+		lanes = new ThreadPoolExecutor[workers];
+		for (int i = 0; i < workers; i++) {
+			final String threadName = String.format("%s-exec-%d", name, i);
+			final BlockingQueue<Runnable> queue = backpressure == Backpressure.BLOCK
+					? new LinkedBlockingQueue<Runnable>() : new ArrayBlockingQueue<Runnable>(capacity);
+			lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, queue, (r) -> {
+				final Thread t = new Thread(r, threadName);
+				t.setDaemon(true);
+				return t;
+			}, new ThreadPoolExecutor.AbortPolicy()) {
+				@Override
+				protected void afterExecute(Runnable r, Throwable t) {
+					signalCapacity();
+				}
+
+				@Override
+				protected void terminated() {
+					signalCapacity();
+				}
+			};
+		}
+	}
+
+	/**
+	 * Waits while any lane's queue is full, with BLOCK backpressure. Returns
+	 * immediately with REJECT backpressure, or once the stage is closed. To be
+	 * called before taking locks, an interrupt ends the wait with the
+	 * interrupt status set.
+	 */
+	public void awaitCapacity() {
+		if (backpressure != Backpressure.BLOCK || !isFull()) {
+			return;
+		}
+		synchronized (capacityLock) {
+			waiting++;
+			try {
+				while (isFull() && !lanes[0].isShutdown()) {
+					capacityLock.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				waiting--;
+			}
+		}
+	}
+
+	/**
+	 * Determine if any lane's queue is full.
+	 *
+	 * @return true if a lane has capacity tasks queued
+	 */
+	private boolean isFull() {
+		for (ThreadPoolExecutor lane : lanes) {
+			if (lane.getQueue().size() >= capacity) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Wakes the threads waiting for room in the lane queues.
+	 */
+	private void signalCapacity() {
+		if (waiting > 0) {
+			synchronized (capacityLock) {
+				capacityLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Queues an order for execution.
+	 *
+	 * @param order
+	 *            - the order to execute
+	 *
+	 * @throws RejectedExecutionException
+	 *             if the stage has been closed, or with REJECT backpressure
+	 *             if the order's lane is full
+	 */
+	public void submit(Order order) {
+		final int lane = (order.getAccountId().hashCode() & Integer.MAX_VALUE) % lanes.length;
+		lanes[lane].execute(() -> {
+			try {
+				orderExecutor.accept(order);
+			} catch (RuntimeException e) {
+				logger.error(String.format("Execution failed for order %d", order.getOrderId()), e);
+			}
+		});
+	}
+
+	/**
+	 * Queues a batch of orders for execution, one task per lane. Each order is
+	 * executed on the same lane as if it had been submitted individually.
+	 *
+	 * @param orders
+	 *            - the orders to execute
+	 *
+	 * @throws RejectedExecutionException
+	 *             if the stage has been closed, or with REJECT backpressure
+	 *             if a lane is full; the parts for other lanes may have been
+	 *             queued
+	 */
+	public void submitAll(List<? extends Order> orders) {
+		@SuppressWarnings("unchecked")
+		final List<Order>[] parts = new List[lanes.length];
+		for (Order order : orders) {
+			final int lane = (order.getAccountId().hashCode() & Integer.MAX_VALUE) % lanes.length;
+			if (parts[lane] == null) {
+				parts[lane] = new ArrayList<>();
+			}
+			parts[lane].add(order);
+		}
+
+		for (int i = 0; i < lanes.length; i++) {
+			final List<Order> part = parts[i];
+			if (part == null) {
+				continue;
+			}
+			lanes[i].execute(() -> {
+				try {
+					if (batchExecutor != null) {
+						batchExecutor.accept(part);
+					} else {
+						part.forEach(orderExecutor);
+					}
+				} catch (RuntimeException e) {
+					logger.error(String.format("Execution failed for a batch of %d orders", part.size()), e);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Gets the number of orders and batches waiting to be executed.
+	 *
+	 * @return the number of queued orders
+	 */
+	public int pending() {
+		int pending = 0;
+		for (ThreadPoolExecutor lane : lanes) {
+			pending += lane.getQueue().size();
+		}
+		return pending;
+	}
+
+	/**
+	 * Stops accepting orders and waits for the queued orders to be executed.
+	 */
+	@Override
+	public void close() {
+		for (ThreadPoolExecutor lane : lanes) {
+			lane.shutdown();
+		}
+		try {
+			for (ThreadPoolExecutor lane : lanes) {
+				if (!lane.awaitTermination(SHUTDOWN_TIMEOUT_SECS, TimeUnit.SECONDS)) {
+					logger.warn(String.format("Execution stage closed with %d orders pending",
+							lane.getQueue().size()));
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn("Interrupted waiting for the execution stage to drain.", e);
+		}
+	}
+
+}
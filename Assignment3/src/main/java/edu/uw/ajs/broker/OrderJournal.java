@@ -0,0 +1,977 @@
+package main.java.edu.uw.ajs.broker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.ext.framework.broker.BrokerException;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.journal.SegmentedLog;
+
+/**
+ * A write-ahead log of the broker's orders, so a restarted broker can rebuild
+ * its resting stop orders, trailing stops and market order backlog. Every
+ * change is appended as a compact binary record: an order being placed, the
+ * expiry time of a good-till-date order being set, a stop order being
+ * replaced by an amended order, a resting order being triggered and moving
+ * to the market order queue, and an order leaving the broker by execution,
+ * cancellation or expiry.
+ *
+ * A resting stop order is journaled with its links: the one-cancels-other
+ * group it belongs to, the exit orders of the bracket it is the entry order
+ * of, and its expiry time. A trailing stop is journaled with its trail, but
+ * not with the best price seen, so a recovered trailing stop trails from the
+ * price at the restart.
+ *
+ * The journal is a SegmentedLog, compacted into snapshots like the
+ * JournalAccountDao journal, and each record is forced to disk, or with group
+ * commit forced together with the records of concurrent callers, before the
+ * call that made it returns. Framework orders are numbered as they are
+ * created, so the recovered orders have new ids; the recovered orders are
+ * mapped from their old ids, and a snapshot under the new ids is written
+ * before the broker starts using the journal.
+ *
+ * A record that can't be written is logged and the broker carries on, the
+ * order is then missing from the journal until the next snapshot.
+ *
+ * @author chq-alexs
+ */
+public final class OrderJournal implements AutoCloseable {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(OrderJournal.class);
+
+	/** Group id of an order that isn't in a one-cancels-other group */
+	public static final int NO_GROUP = -1;
+
+	/** Record type for a resting stop order or trailing stop */
+	private static final byte STOP_RECORD = 1;
+
+	/** Record type for an order in the market order queue */
+	private static final byte MARKET_RECORD = 2;
+
+	/** Record type for a stop order replaced by an amended order */
+	private static final byte REPLACE_RECORD = 3;
+
+	/** Record type for a resting order moving to the market order queue */
+	private static final byte TRIGGER_RECORD = 4;
+
+	/** Record type for an order leaving the broker */
+	private static final byte REMOVE_RECORD = 5;
+
+	/** Record type for the expiry time of a good-till-date order */
+	private static final byte EXPIRY_RECORD = 6;
+
+	/** Order kind of a market buy order */
+	private static final byte MARKET_BUY = 1;
+
+	/** Order kind of a market sell order */
+	private static final byte MARKET_SELL = 2;
+
+	/** Order kind of a stop buy order */
+	private static final byte STOP_BUY = 3;
+
+	/** Order kind of a stop sell order */
+	private static final byte STOP_SELL = 4;
+
+	/** Order kind of a trailing stop buy, a market buy order with a trail */
+	private static final byte TRAILING_BUY = 5;
+
+	/** Order kind of a trailing stop sell, a market sell order with a trail */
+	private static final byte TRAILING_SELL = 6;
+
+	/** Identifies a snapshot file */
+	private static final int SNAPSHOT_MAGIC = 0x4F534E50;
+
+	/**
+	 * The journaled state of an order. Instances are never modified, so the
+	 * order maps can be copied for a snapshot without further locking.
+	 */
+	private static final class Entry {
+		/** The order kind */
+		private final byte kind;
+
+		/** The account id */
+		private final String accountId;
+
+		/** The number of shares */
+		private final int shares;
+
+		/** The stock ticker */
+		private final String ticker;
+
+		/**
+		 * The stop price of a stop order, the trail of a trailing stop, 0 for
+		 * market orders
+		 */
+		private final int price;
+
+		/** True if the trail of a trailing stop is a percentage */
+		private final boolean percent;
+
+		/** Id of the order's one-cancels-other group, NO_GROUP if none */
+		private final int group;
+
+		/** Expiry time of a good-till-date order, 0 if none */
+		private final long expiryMillis;
+
+		/** Exit orders of the bracket this is the entry order of */
+		private final List<Entry> exits;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param kind
+		 *            - the order kind
+		 * @param accountId
+		 *            - the account id
+		 * @param shares
+		 *            - the number of shares
+		 * @param ticker
+		 *            - the stock ticker
+		 * @param price
+		 *            - the stop price or trail, 0 for market orders
+		 * @param percent
+		 *            - true if the trail is a percentage
+		 * @param group
+		 *            - id of the order's group, NO_GROUP if none
+		 * @param expiryMillis
+		 *            - the expiry time, 0 if none
+		 * @param exits
+		 *            - the bracket exit orders, empty if none
+		 */
+		private Entry(final byte kind, final String accountId, final int shares, final String ticker,
+				final int price, final boolean percent, final int group, final long expiryMillis,
+				final List<Entry> exits) {
+			this.kind = kind;
+			this.accountId = accountId;
+			this.shares = shares;
+			this.ticker = ticker;
+			this.price = price;
+			this.percent = percent;
+			this.group = group;
+			this.expiryMillis = expiryMillis;
+			this.exits = exits;
+		}
+
+		/**
+		 * Gets a copy of this entry with other links.
+		 *
+		 * @param newGroup
+		 *            - id of the order's group, NO_GROUP if none
+		 * @param newExpiryMillis
+		 *            - the expiry time, 0 if none
+		 * @param newExits
+		 *            - the bracket exit orders, empty if none
+		 * @return the entry
+		 */
+		private Entry withLinks(final int newGroup, final long newExpiryMillis, final List<Entry> newExits) {
+			return new Entry(kind, accountId, shares, ticker, price, percent, newGroup, newExpiryMillis, newExits);
+		}
+	}
+
+	/**
+	 * The orders rebuilt from the journal, with their links.
+	 */
+	public static final class Recovered {
+		/** The resting stop orders, in the order they were placed */
+		private final List<Order> resting = new ArrayList<>();
+
+		/** The trailing stops, in the order they were placed */
+		private final List<Order> trailingStops = new ArrayList<>();
+
+		/** The market order backlog, in the order it was queued */
+		private final List<Order> backlog = new ArrayList<>();
+
+		/** The one-cancels-other group of each grouped order, by order id */
+		private final Map<Integer, List<Order>> groups = new HashMap<>();
+
+		/** The bracket exit orders of each entry order, by order id */
+		private final Map<Integer, List<Order>> exits = new HashMap<>();
+
+		/** The journaled state of each recovered order, by order id */
+		private final Map<Integer, Entry> entries = new HashMap<>();
+
+		/** Ids of the recovered orders, by the id of the order they replace */
+		private final Map<Integer, Integer> recoveredIds = new HashMap<>();
+
+		/**
+		 * Constructor.
+		 */
+		private Recovered() {
+		}
+
+		/**
+		 * Gets the resting stop orders.
+		 *
+		 * @return the stop buy and stop sell orders, in the order they were
+		 *         placed
+		 */
+		public List<Order> getResting() {
+			return resting;
+		}
+
+		/**
+		 * Gets the trailing stops.
+		 *
+		 * @return the market buy and market sell orders held as trailing
+		 *         stops, in the order they were placed
+		 */
+		public List<Order> getTrailingStops() {
+			return trailingStops;
+		}
+
+		/**
+		 * Gets the market order backlog.
+		 *
+		 * @return the market orders and triggered stop orders, in the order
+		 *         they were queued
+		 */
+		public List<Order> getBacklog() {
+			return backlog;
+		}
+
+		/**
+		 * Gets the one-cancels-other group of a resting stop order.
+		 *
+		 * @param orderId
+		 *            - the order id
+		 * @return the orders in the group, in the order they were placed, null
+		 *         if the order isn't grouped
+		 */
+		public List<Order> getGroup(final int orderId) {
+			return groups.get(orderId);
+		}
+
+		/**
+		 * Gets the exit orders of a bracket's entry order.
+		 *
+		 * @param orderId
+		 *            - id of the entry order
+		 * @return the exit orders, null if the order isn't a bracket's entry
+		 *         order
+		 */
+		public List<Order> getExits(final int orderId) {
+			return exits.get(orderId);
+		}
+
+		/**
+		 * Gets the expiry time of a good-till-date stop order.
+		 *
+		 * @param orderId
+		 *            - the order id
+		 * @return the expiry time, in milliseconds since the epoch, 0 if the
+		 *         order doesn't expire
+		 */
+		public long getExpiryMillis(final int orderId) {
+			final Entry entry = entries.get(orderId);
+			return entry == null ? 0 : entry.expiryMillis;
+		}
+
+		/**
+		 * Gets the trail of a trailing stop.
+		 *
+		 * @param orderId
+		 *            - the order id
+		 * @return the trail, in cents, or if the trail is a percentage in
+		 *         hundredths of a percent
+		 */
+		public int getTrail(final int orderId) {
+			return entries.get(orderId).price;
+		}
+
+		/**
+		 * Gets whether the trail of a trailing stop is a percentage.
+		 *
+		 * @param orderId
+		 *            - the order id
+		 * @return true if the trail is a percentage
+		 */
+		public boolean isTrailPercent(final int orderId) {
+			return entries.get(orderId).percent;
+		}
+
+		/**
+		 * Gets the ids of the recovered orders.
+		 *
+		 * @return the recovered order ids, by the id of the journaled order
+		 *         they replace
+		 */
+		public Map<Integer, Integer> getRecoveredIds() {
+			return Collections.unmodifiableMap(recoveredIds);
+		}
+	}
+
+	/** The journal directory */
+	private final File journalDir;
+
+	/** The log holding the journal */
+	private final SegmentedLog log;
+
+	/** Resting stop orders and trailing stops, by order id */
+	private final Map<Integer, Entry> resting = new LinkedHashMap<>();
+
+	/** Orders in the market order queue, by order id */
+	private final Map<Integer, Entry> backlog = new LinkedHashMap<>();
+
+	/**
+	 * Creates an instance of this class, rebuilding the orders from the
+	 * journal and forcing each record to disk as it is appended. The
+	 * recovered orders are available from {@link #takeRecovered()}.
+	 *
+	 * @param journalDir
+	 *            - the directory holding the journal
+	 * @param compactThresholdBytes
+	 *            - active segment size that triggers compaction
+	 *
+	 * @throws BrokerException
+	 *             if the journal can't be read
+	 */
+	public OrderJournal(final File journalDir, final long compactThresholdBytes) throws BrokerException {
+		this(journalDir, compactThresholdBytes, false);
+	}
+
+	/**
+	 * Creates an instance of this class, rebuilding the orders from the
+	 * journal. The recovered orders are available from
+	 * {@link #takeRecovered()}.
+	 *
+	 * @param journalDir
+	 *            - the directory holding the journal
+	 * @param compactThresholdBytes
+	 *            - active segment size that triggers compaction
+	 * @param groupCommit
+	 *            - true to force the records of concurrent callers to disk
+	 *            together, false to force each record as it is appended
+	 *
+	 * @throws BrokerException
+	 *             if the journal can't be read
+	 */
+	public OrderJournal(final File journalDir, final long compactThresholdBytes, final boolean groupCommit)
+			throws BrokerException {
+		this.journalDir = journalDir;
+		this.log = new SegmentedLog(journalDir, "order journal", SNAPSHOT_MAGIC, compactThresholdBytes,
+				groupCommit);
+
+		try {
+			log.recover(new SegmentedLog.Replayer() {
+				@Override
+				public void readSnapshot(final DataInputStream in) throws IOException {
+					readOrders(in);
+				}
+
+				@Override
+				public void applyRecord(final byte[] payload) throws IOException {
+					OrderJournal.this.applyRecord(payload);
+				}
+			});
+		} catch (final IOException ex) {
+			throw new BrokerException("Unable to recover orders from the journal.", ex);
+		}
+	}
+
+	/**
+	 * Recreates the recovered orders with their links and writes a snapshot
+	 * keyed by their new order ids. Must be called once, before the journal
+	 * is otherwise used.
+	 *
+	 * @return the recovered orders
+	 * @throws BrokerException
+	 *             if the snapshot can't be written
+	 */
+	public synchronized Recovered takeRecovered() throws BrokerException {
+		final Map<Integer, Entry> oldResting = new LinkedHashMap<>(resting);
+		final Map<Integer, Entry> oldBacklog = new LinkedHashMap<>(backlog);
+		resting.clear();
+		backlog.clear();
+
+		final Recovered recovered = new Recovered();
+		final Map<Integer, List<Order>> groups = new HashMap<>();
+		for (Map.Entry<Integer, Entry> old : oldResting.entrySet()) {
+			Entry entry = old.getValue();
+			final Order order = toOrder(entry);
+			final int orderId = order.getOrderId();
+			recovered.recoveredIds.put(old.getKey(), orderId);
+
+			if (entry.kind == TRAILING_BUY || entry.kind == TRAILING_SELL) {
+				recovered.trailingStops.add(order);
+			} else {
+				recovered.resting.add(order);
+			}
+			if (entry.group != NO_GROUP) {
+				List<Order> group = groups.get(entry.group);
+				if (group == null) {
+					group = new ArrayList<>();
+					groups.put(entry.group, group);
+				}
+				group.add(order);
+				recovered.groups.put(orderId, group);
+				entry = entry.withLinks(group.get(0).getOrderId(), entry.expiryMillis, entry.exits);
+			}
+			if (!entry.exits.isEmpty()) {
+				final List<Order> exits = new ArrayList<>(entry.exits.size());
+				for (Entry exit : entry.exits) {
+					exits.add(toOrder(exit));
+				}
+				recovered.exits.put(orderId, exits);
+			}
+			resting.put(orderId, entry);
+			recovered.entries.put(orderId, entry);
+		}
+		for (Map.Entry<Integer, Entry> old : oldBacklog.entrySet()) {
+			final Order order = toOrder(old.getValue());
+			recovered.recoveredIds.put(old.getKey(), order.getOrderId());
+			backlog.put(order.getOrderId(), old.getValue());
+			recovered.backlog.add(order);
+		}
+
+		try {
+			final Map<Integer, Entry> restingState = new LinkedHashMap<>(resting);
+			final Map<Integer, Entry> backlogState = new LinkedHashMap<>(backlog);
+			log.snapshot((snap) -> writeOrders(snap, restingState, backlogState));
+		} catch (final IOException ex) {
+			throw new BrokerException("Unable to write the order journal snapshot.", ex);
+		}
+
+		logger.info(String.format("Recovered %d resting, %d trailing and %d backlog order(s) from journal %s",
+				recovered.resting.size(), recovered.trailingStops.size(), recovered.backlog.size(),
+				journalDir.getAbsolutePath()));
+		return recovered;
+	}
+
+	/**
+	 * Records a stop order being placed on its own. A recovered order is
+	 * already journaled and is not recorded again.
+	 *
+	 * @param order
+	 *            - the stop buy or stop sell order
+	 */
+	public void stopPlaced(final Order order) {
+		stopPlaced(order, NO_GROUP, null);
+	}
+
+	/**
+	 * Records a stop order being placed, with its group and bracket exit
+	 * orders. A recovered order is already journaled and is not recorded
+	 * again.
+	 *
+	 * @param order
+	 *            - the stop buy or stop sell order
+	 * @param groupId
+	 *            - id of the order's one-cancels-other group, the same for
+	 *            every order in the group, NO_GROUP if none
+	 * @param exits
+	 *            - the exit orders of the bracket the order is the entry
+	 *            order of, null if none
+	 */
+	public void stopPlaced(final Order order, final int groupId, final List<? extends Order> exits) {
+		final long position;
+		synchronized (this) {
+			if (resting.containsKey(order.getOrderId())) {
+				return;
+			}
+			final List<Entry> exitEntries = new ArrayList<>();
+			if (exits != null) {
+				for (Order exit : exits) {
+					exitEntries.add(toEntry(exit));
+				}
+			}
+			final Entry entry = toEntry(order).withLinks(groupId, 0, exitEntries);
+			resting.put(order.getOrderId(), entry);
+			position = append(STOP_RECORD, order.getOrderId(), entry);
+		}
+		sync(position);
+	}
+
+	/**
+	 * Records a trailing stop being placed.
+	 *
+	 * @param order
+	 *            - the market buy or market sell order held by the trailing
+	 *            stop
+	 * @param trail
+	 *            - the trail, in cents, or if percent is true in hundredths
+	 *            of a percent
+	 * @param percent
+	 *            - true if the trail is a percentage
+	 */
+	public void trailingStopPlaced(final Order order, final int trail, final boolean percent) {
+		final long position;
+		synchronized (this) {
+			final byte kind = order instanceof MarketBuyOrder ? TRAILING_BUY : TRAILING_SELL;
+			final Entry entry = new Entry(kind, order.getAccountId(), order.getNumberOfShares(),
+					order.getStockTicker(), trail, percent, NO_GROUP, 0, Collections.<Entry>emptyList());
+			resting.put(order.getOrderId(), entry);
+			position = append(STOP_RECORD, order.getOrderId(), entry);
+		}
+		sync(position);
+	}
+
+	/**
+	 * Records the expiry time of a resting good-till-date stop order. An
+	 * expiry time already journaled is not recorded again.
+	 *
+	 * @param orderId
+	 *            - the order id
+	 * @param expiryMillis
+	 *            - the expiry time, in milliseconds since the epoch
+	 */
+	public void expirySet(final int orderId, final long expiryMillis) {
+		final long position;
+		synchronized (this) {
+			final Entry entry = resting.get(orderId);
+			if (entry == null || entry.expiryMillis == expiryMillis) {
+				return;
+			}
+			resting.put(orderId, entry.withLinks(entry.group, expiryMillis, entry.exits));
+			position = appendExpiry(orderId, expiryMillis);
+		}
+		sync(position);
+	}
+
+	/**
+	 * Records a market order being queued. A recovered order is already
+	 * journaled and is not recorded again.
+	 *
+	 * @param order
+	 *            - the market buy or market sell order
+	 */
+	public void marketQueued(final Order order) {
+		final long position;
+		synchronized (this) {
+			if (backlog.containsKey(order.getOrderId())) {
+				return;
+			}
+			final Entry entry = toEntry(order);
+			backlog.put(order.getOrderId(), entry);
+			position = append(MARKET_RECORD, order.getOrderId(), entry);
+		}
+		sync(position);
+	}
+
+	/**
+	 * Records a resting stop order being replaced by an amended order, in one
+	 * record so a restarted broker has either the order or its replacement.
+	 * The replacement takes over the order's group, bracket exit orders and
+	 * expiry time.
+	 *
+	 * @param orderId
+	 *            - id of the replaced order
+	 * @param replacement
+	 *            - the replacement stop buy or stop sell order
+	 */
+	public void replaced(final int orderId, final Order replacement) {
+		final long position;
+		synchronized (this) {
+			final Entry replaced = resting.remove(orderId);
+			if (replaced == null) {
+				position = 0;
+			} else {
+				final Entry entry = toEntry(replacement).withLinks(replaced.group, replaced.expiryMillis,
+						replaced.exits);
+				resting.put(replacement.getOrderId(), entry);
+				position = appendReplace(orderId, replacement.getOrderId(), entry);
+			}
+		}
+		if (position == 0) {
+			stopPlaced(replacement);
+		} else {
+			sync(position);
+		}
+	}
+
+	/**
+	 * Records a stop order or trailing stop being triggered and moved to the
+	 * market order queue.
+	 *
+	 * @param orderId
+	 *            - the order id
+	 */
+	public void triggered(final int orderId) {
+		final long position;
+		synchronized (this) {
+			final Entry entry = resting.remove(orderId);
+			if (entry == null) {
+				return;
+			}
+			backlog.put(orderId, entry);
+			position = append(TRIGGER_RECORD, orderId, null);
+		}
+		sync(position);
+	}
+
+	/**
+	 * Records an order leaving the broker, having been executed, cancelled or
+	 * expired.
+	 *
+	 * @param orderId
+	 *            - the order id
+	 */
+	public void removed(final int orderId) {
+		final long position;
+		synchronized (this) {
+			if (resting.remove(orderId) == null && backlog.remove(orderId) == null) {
+				return;
+			}
+			position = append(REMOVE_RECORD, orderId, null);
+		}
+		sync(position);
+	}
+
+	/**
+	 * Gets the number of journaled orders.
+	 *
+	 * @return the number of resting, trailing and backlog orders
+	 */
+	public synchronized int size() {
+		return resting.size() + backlog.size();
+	}
+
+	/**
+	 * Close the journal, waiting for any compaction in progress.
+	 */
+	@Override
+	public synchronized void close() {
+		try {
+			log.close();
+		} catch (final IOException ex) {
+			logger.warn("Unable to close the order journal.", ex);
+		}
+	}
+
+	/**
+	 * Reads the orders from a snapshot into the order maps.
+	 *
+	 * @param in
+	 *            - the snapshot contents
+	 *
+	 * @throws IOException
+	 *             if the snapshot can't be read or is malformed
+	 */
+	private void readOrders(final DataInputStream in) throws IOException {
+		final int restingCount = in.readInt();
+		for (int i = 0; i < restingCount; i++) {
+			resting.put(in.readInt(), readEntry(in));
+		}
+		final int backlogCount = in.readInt();
+		for (int i = 0; i < backlogCount; i++) {
+			backlog.put(in.readInt(), readEntry(in));
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the orders.
+	 *
+	 * @param snap
+	 *            - the stream to write to
+	 * @param restingState
+	 *            - a copy of the resting orders
+	 * @param backlogState
+	 *            - a copy of the backlog orders
+	 *
+	 * @throws IOException
+	 *             if an error occurs writing to stream
+	 */
+	private static void writeOrders(final DataOutputStream snap, final Map<Integer, Entry> restingState,
+			final Map<Integer, Entry> backlogState) throws IOException {
+		snap.writeInt(restingState.size());
+		for (Map.Entry<Integer, Entry> order : restingState.entrySet()) {
+			snap.writeInt(order.getKey());
+			writeEntry(snap, order.getValue());
+		}
+		snap.writeInt(backlogState.size());
+		for (Map.Entry<Integer, Entry> order : backlogState.entrySet()) {
+			snap.writeInt(order.getKey());
+			writeEntry(snap, order.getValue());
+		}
+		logger.info(String.format("Writing order journal snapshot of %d order(s)",
+				restingState.size() + backlogState.size()));
+	}
+
+	/**
+	 * Applies a single journal record to the order maps.
+	 *
+	 * @param payload
+	 *            - the record payload
+	 *
+	 * @throws IOException
+	 *             if the record is malformed
+	 */
+	private void applyRecord(final byte[] payload) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		final byte type = in.readByte();
+		final int orderId = in.readInt();
+
+		switch (type) {
+		case STOP_RECORD:
+			resting.put(orderId, readEntry(in));
+			break;
+		case MARKET_RECORD:
+			backlog.put(orderId, readEntry(in));
+			break;
+		case REPLACE_RECORD:
+			final Entry replacement = readEntry(in);
+			resting.remove(in.readInt());
+			resting.put(orderId, replacement);
+			break;
+		case TRIGGER_RECORD:
+			final Entry triggered = resting.remove(orderId);
+			if (triggered != null) {
+				backlog.put(orderId, triggered);
+			}
+			break;
+		case REMOVE_RECORD:
+			if (resting.remove(orderId) == null) {
+				backlog.remove(orderId);
+			}
+			break;
+		case EXPIRY_RECORD:
+			final Entry expiring = resting.get(orderId);
+			final long expiryMillis = in.readLong();
+			if (expiring != null) {
+				resting.put(orderId, expiring.withLinks(expiring.group, expiryMillis, expiring.exits));
+			}
+			break;
+		default:
+			throw new IOException(String.format("Unknown order journal record type, %d", type));
+		}
+	}
+
+	/**
+	 * Appends a record for an order.
+	 *
+	 * @param type
+	 *            - the record type
+	 * @param orderId
+	 *            - the order id
+	 * @param entry
+	 *            - the order, null for a record referring to the order by id
+	 * @return the journal position to sync to, 0 if the record wasn't written
+	 */
+	private long append(final byte type, final int orderId, final Entry entry) {
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+			final DataOutputStream rec = new DataOutputStream(bytes);
+			rec.writeByte(type);
+			rec.writeInt(orderId);
+			if (entry != null) {
+				writeEntry(rec, entry);
+			}
+			return appendRecord(bytes.toByteArray());
+		} catch (final IOException ex) {
+			logger.error(String.format("Unable to journal order %d", orderId), ex);
+			return 0;
+		}
+	}
+
+	/**
+	 * Appends a record replacing an order.
+	 *
+	 * @param orderId
+	 *            - id of the replaced order
+	 * @param newId
+	 *            - id of the replacement
+	 * @param entry
+	 *            - the replacement
+	 * @return the journal position to sync to, 0 if the record wasn't written
+	 */
+	private long appendReplace(final int orderId, final int newId, final Entry entry) {
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+			final DataOutputStream rec = new DataOutputStream(bytes);
+			rec.writeByte(REPLACE_RECORD);
+			rec.writeInt(newId);
+			writeEntry(rec, entry);
+			rec.writeInt(orderId);
+			return appendRecord(bytes.toByteArray());
+		} catch (final IOException ex) {
+			logger.error(String.format("Unable to journal order %d", newId), ex);
+			return 0;
+		}
+	}
+
+	/**
+	 * Appends a record setting the expiry time of an order.
+	 *
+	 * @param orderId
+	 *            - the order id
+	 * @param expiryMillis
+	 *            - the expiry time
+	 * @return the journal position to sync to, 0 if the record wasn't written
+	 */
+	private long appendExpiry(final int orderId, final long expiryMillis) {
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+			final DataOutputStream rec = new DataOutputStream(bytes);
+			rec.writeByte(EXPIRY_RECORD);
+			rec.writeInt(orderId);
+			rec.writeLong(expiryMillis);
+			return appendRecord(bytes.toByteArray());
+		} catch (final IOException ex) {
+			logger.error(String.format("Unable to journal order %d", orderId), ex);
+			return 0;
+		}
+	}
+
+	/**
+	 * Appends a record to the log and compacts the log if the active segment
+	 * is full. Must be called holding the monitor.
+	 *
+	 * @param payload
+	 *            - the record payload
+	 * @return the journal position to sync to
+	 *
+	 * @throws IOException
+	 *             if the record can't be written
+	 */
+	private long appendRecord(final byte[] payload) throws IOException {
+		final long position = log.append(payload);
+		log.compactIfNeeded(() -> {
+			final Map<Integer, Entry> restingState = new LinkedHashMap<>(resting);
+			final Map<Integer, Entry> backlogState = new LinkedHashMap<>(backlog);
+			return (snap) -> writeOrders(snap, restingState, backlogState);
+		});
+		return position;
+	}
+
+	/**
+	 * Waits for the journal to be on disk up to a position, with group
+	 * commit. Must be called without holding the monitor.
+	 *
+	 * @param position
+	 *            - the journal position
+	 */
+	private void sync(final long position) {
+		try {
+			log.awaitSync(position);
+		} catch (final IOException ex) {
+			logger.error("Unable to force the order journal to disk.", ex);
+		}
+	}
+
+	/**
+	 * Captures the journaled state of an order, without links.
+	 *
+	 * @param order
+	 *            - the order
+	 * @return the entry
+	 */
+	private static Entry toEntry(final Order order) {
+		final byte kind;
+		int price = 0;
+		if (order instanceof StopBuyOrder) {
+			kind = STOP_BUY;
+			price = ((StopBuyOrder) order).getPrice();
+		} else if (order instanceof StopSellOrder) {
+			kind = STOP_SELL;
+			price = ((StopSellOrder) order).getPrice();
+		} else if (order instanceof MarketBuyOrder) {
+			kind = MARKET_BUY;
+		} else if (order instanceof MarketSellOrder) {
+			kind = MARKET_SELL;
+		} else {
+			throw new IllegalArgumentException(
+					String.format("Order %d of type %s can't be journaled", order.getOrderId(),
+							order.getClass().getName()));
+		}
+		return new Entry(kind, order.getAccountId(), order.getNumberOfShares(), order.getStockTicker(), price, false,
+				NO_GROUP, 0, Collections.<Entry>emptyList());
+	}
+
+	/**
+	 * Creates a new order from its journaled state. A trailing stop's order
+	 * is its market order.
+	 *
+	 * @param entry
+	 *            - the entry
+	 * @return the order
+	 */
+	private static Order toOrder(final Entry entry) {
+		switch (entry.kind) {
+		case STOP_BUY:
+			return new StopBuyOrder(entry.accountId, entry.shares, entry.ticker, entry.price);
+		case STOP_SELL:
+			return new StopSellOrder(entry.accountId, entry.shares, entry.ticker, entry.price);
+		case MARKET_BUY:
+		case TRAILING_BUY:
+			return new MarketBuyOrder(entry.accountId, entry.shares, entry.ticker);
+		default:
+			return new MarketSellOrder(entry.accountId, entry.shares, entry.ticker);
+		}
+	}
+
+	/**
+	 * Writes the journaled state of an order.
+	 *
+	 * @param out
+	 *            - the stream to write to
+	 * @param entry
+	 *            - the entry
+	 *
+	 * @throws IOException
+	 *             if an error occurs writing to stream
+	 */
+	private static void writeEntry(final DataOutputStream out, final Entry entry) throws IOException {
+		out.writeByte(entry.kind);
+		out.writeUTF(entry.accountId);
+		out.writeInt(entry.shares);
+		out.writeUTF(entry.ticker);
+		out.writeInt(entry.price);
+		out.writeBoolean(entry.percent);
+		out.writeInt(entry.group);
+		out.writeLong(entry.expiryMillis);
+		out.writeInt(entry.exits.size());
+		for (Entry exit : entry.exits) {
+			writeEntry(out, exit);
+		}
+	}
+
+	/**
+	 * Reads the journaled state of an order.
+	 *
+	 * @param in
+	 *            - the stream to read from
+	 * @return the entry
+	 *
+	 * @throws IOException
+	 *             if an error occurs reading from the stream or the entry is
+	 *             malformed
+	 */
+	private static Entry readEntry(final DataInputStream in) throws IOException {
+		final byte kind = in.readByte();
+		if (kind < MARKET_BUY || kind > TRAILING_SELL) {
+			throw new IOException(String.format("Unknown order kind, %d", kind));
+		}
+		final String accountId = in.readUTF();
+		final int shares = in.readInt();
+		final String ticker = in.readUTF();
+		final int price = in.readInt();
+		final boolean percent = in.readBoolean();
+		final int group = in.readInt();
+		final long expiryMillis = in.readLong();
+		final int exitCount = in.readInt();
+		final List<Entry> exits = exitCount == 0 ? Collections.<Entry>emptyList() : new ArrayList<>(exitCount);
+		for (int i = 0; i < exitCount; i++) {
+			exits.add(readEntry(in));
+		}
+		return new Entry(kind, accountId, shares, ticker, price, percent, group, expiryMillis, exits);
+	}
+}
@@ -0,0 +1,433 @@
+package main.java.edu.uw.ajs.broker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * An OrderQueue for stop orders that groups orders into price levels, keyed by
+ * the stop price in cents. Orders within a level are kept in arrival (FIFO)
+ * order. When the threshold moves, every level it crosses is detached from the
+ * book in a single operation and released as one batch, rather than removing
+ * the orders one at a time.
+ *
+ * The ordering of the levels determines which orders are triggered: with
+ * ascending levels an order is dispatched when its price is less than or equal
+ * to the threshold (stop buy), with descending levels an order is dispatched
+ * when its price is greater than or equal to the threshold (stop sell).
+ *
+ * Each level is a linked list of nodes and the nodes are indexed by order id,
+ * so an order can be looked up or cancelled in constant time. Orders are
+ * immutable, so a stop price is amended by cancelling the order and enqueuing
+ * a replacement at the new price, which joins the end of its price level as
+ * a newly placed order.
+ *
+ * @author chq-alexs
+ *
+ * @param <E>
+ *            E - the type of order contained in the book
+ */
+public final class PriceLevelOrderBook<E extends Order> implements BatchOrderQueue<Integer, E> {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(PriceLevelOrderBook.class);
+
+	/**
+	 * A resting order, linked into its price level.
+	 *
+	 * @param <E>
+	 *            E - the type of order
+	 */
+	private static final class Node<E> {
+		/** The order */
+		private final E order;
+
+		/** The order's stop price */
+		private final int price;
+
+		/** The price level holding the node */
+		private PriceLevel<E> level;
+
+		/** The previous node in the level */
+		private Node<E> prev;
+
+		/** The next node in the level */
+		private Node<E> next;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param order
+		 *            - the order
+		 * @param price
+		 *            - the order's stop price
+		 */
+		private Node(final E order, final int price) {
+			this.order = order;
+			this.price = price;
+		}
+	}
+
+	/**
+	 * The orders at one price, in arrival order.
+	 *
+	 * @param <E>
+	 *            E - the type of order
+	 */
+	private static final class PriceLevel<E> {
+		/** The first node */
+		private Node<E> head;
+
+		/** The last node */
+		private Node<E> tail;
+
+		/** Number of nodes in the level */
+		private int count;
+
+		/**
+		 * Adds a node to the end of the level.
+		 *
+		 * @param node
+		 *            - the node to add
+		 */
+		private void append(final Node<E> node) {
+			node.level = this;
+			node.prev = tail;
+			node.next = null;
+			if (tail == null) {
+				head = node;
+			} else {
+				tail.next = node;
+			}
+			tail = node;
+			count++;
+		}
+
+		/**
+		 * Removes a node from the level.
+		 *
+		 * @param node
+		 *            - the node to remove
+		 */
+		private void unlink(final Node<E> node) {
+			if (node.prev == null) {
+				head = node.next;
+			} else {
+				node.prev.next = node.next;
+			}
+			if (node.next == null) {
+				tail = node.prev;
+			} else {
+				node.next.prev = node.prev;
+			}
+			node.prev = null;
+			node.next = null;
+			node.level = null;
+			count--;
+		}
+	}
+
+	/**
+	 * Price levels, in dispatch priority order
+	 */
+	private final TreeMap<Integer, PriceLevel<E>> levels;
+
+	/**
+	 * Resting orders by order id
+	 */
+	private final Map<Integer, Node<E>> index = new HashMap<>();
+
+	/**
+	 * Function used to obtain the stop price of an order
+	 */
+	private final ToIntFunction<E> priceFunction;
+
+	/**
+	 * True if lower prices are dispatched first
+	 */
+	private final boolean ascending;
+
+	/**
+	 * Order Processor
+	 */
+	private Consumer<E> orderProcessor;
+
+	/**
+	 * Batch Processor
+	 */
+	private Consumer<List<E>> batchProcessor;
+
+	/**
+	 * Threshold
+	 */
+	private int threshold;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threshold
+	 *            - the initial threshold
+	 *
+	 * @param priceFunction
+	 *            - function used to obtain the stop price of an order
+	 *
+	 * @param ascending
+	 *            - true if orders at or below the threshold are to be
+	 *            dispatched (lowest price first), false if orders at or above
+	 *            the threshold are to be dispatched (highest price first)
+	 */
+	public PriceLevelOrderBook(int threshold, ToIntFunction<E> priceFunction, boolean ascending) {
+		final Comparator<Integer> cmp = ascending ? Comparator.naturalOrder() : Comparator.reverseOrder();
+		this.levels = new TreeMap<>(cmp);
+		this.threshold = threshold;
+		this.priceFunction = priceFunction;
+		this.ascending = ascending;
+	}
+
+	@Override
+	public void enqueue(E order) {
+		final Node<E> node = add(order);
+
+		if (isTriggered(node.price)) {
+			dispatchOrders();
+		}
+	}
+
+	@Override
+	public void enqueueAll(Collection<? extends E> orders) {
+		for (E order : orders) {
+			add(order);
+		}
+		dispatchOrders();
+	}
+
+	@Override
+	public E dequeue() {
+
+		E order = null;
+
+		if (!levels.isEmpty()) {
+			final Map.Entry<Integer, PriceLevel<E>> best = levels.firstEntry();
+
+			if (isTriggered(best.getKey())) {
+				final Node<E> node = best.getValue().head;
+				order = node.order;
+				index.remove(order.getOrderId());
+				unlink(node);
+			}
+		}
+
+		return order;
+	}
+
+	/**
+	 * Removes a resting order from the book.
+	 *
+	 * @param orderId
+	 *            - id of the order to remove
+	 * @return true if the order was resting in the book
+	 */
+	public boolean cancel(int orderId) {
+		final Node<E> node = index.remove(orderId);
+		if (node == null) {
+			return false;
+		}
+
+		unlink(node);
+		return true;
+	}
+
+	/**
+	 * Removes every resting order from the book.
+	 *
+	 * @return the removed orders, in dispatch priority order
+	 */
+	public List<E> clear() {
+		final List<E> orders = new ArrayList<>(index.size());
+		for (PriceLevel<E> level : levels.values()) {
+			for (Node<E> node = level.head; node != null; node = node.next) {
+				orders.add(node.order);
+			}
+		}
+		levels.clear();
+		index.clear();
+		return orders;
+	}
+
+	/**
+	 * Gets a resting order.
+	 *
+	 * @param orderId
+	 *            - id of the order
+	 * @return the order, null if it isn't resting in the book
+	 */
+	public E get(int orderId) {
+		final Node<E> node = index.get(orderId);
+		return node == null ? null : node.order;
+	}
+
+	/**
+	 * Detaches every price level crossed by the current threshold from the
+	 * book.
+	 *
+	 * @return the triggered orders in dispatch priority order, empty if no
+	 *         orders are triggered
+	 */
+	private List<E> releaseTriggered() {
+
+		if (levels.isEmpty() || !isTriggered(levels.firstKey())) {
+			return Collections.emptyList();
+		}
+
+		final NavigableMap<Integer, PriceLevel<E>> triggered = levels.headMap(threshold, true);
+
+		int count = 0;
+		for (PriceLevel<E> level : triggered.values()) {
+			count += level.count;
+		}
+
+		final List<E> batch = new ArrayList<>(count);
+		for (PriceLevel<E> level : triggered.values()) {
+			for (Node<E> node = level.head; node != null; node = node.next) {
+				batch.add(node.order);
+				index.remove(node.order.getOrderId());
+			}
+		}
+		logger.debug("Dispatching {} triggered price level(s)", triggered.size());
+		triggered.clear();
+
+		return batch;
+	}
+
+	@Override
+	public void dispatchOrders() {
+
+		final List<E> batch = releaseTriggered();
+
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		if (batchProcessor != null) {
+			batchProcessor.accept(batch);
+			return;
+		}
+
+		for (E order : batch) {
+			if (orderProcessor != null) {
+				orderProcessor.accept(order);
+			}
+		}
+	}
+
+	@Override
+	public void setOrderProcessor(Consumer<E> proc) {
+		this.orderProcessor = proc;
+	}
+
+	@Override
+	public void setBatchProcessor(Consumer<List<E>> proc) {
+		this.batchProcessor = proc;
+	}
+
+	@Override
+	public void setThreshold(Integer threshold) {
+		this.threshold = threshold;
+		dispatchOrders();
+	}
+
+	@Override
+	public Integer getThreshold() {
+		return this.threshold;
+	}
+
+	/**
+	 * Gets the number of orders resting in the book.
+	 *
+	 * @return the number of orders
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	/**
+	 * Gets the number of distinct price levels in the book.
+	 *
+	 * @return the number of price levels
+	 */
+	public int levelCount() {
+		return levels.size();
+	}
+
+	/**
+	 * Adds an order to the end of its price level and indexes it.
+	 *
+	 * @param order
+	 *            - the order to add
+	 * @return the order's node
+	 */
+	private Node<E> add(E order) {
+		final Node<E> node = new Node<>(order, priceFunction.applyAsInt(order));
+		index.put(order.getOrderId(), node);
+		link(node);
+		return node;
+	}
+
+	/**
+	 * Adds a node to the end of the level for its price, creating the level if
+	 * needed.
+	 *
+	 * @param node
+	 *            - the node to add
+	 */
+	private void link(Node<E> node) {
+		PriceLevel<E> level = levels.get(node.price);
+		if (level == null) {
+			level = new PriceLevel<>();
+			levels.put(node.price, level);
+		}
+		level.append(node);
+	}
+
+	/**
+	 * Removes a node from its level, removing the level if it is left empty.
+	 *
+	 * @param node
+	 *            - the node to remove
+	 */
+	private void unlink(Node<E> node) {
+		final PriceLevel<E> level = node.level;
+		level.unlink(node);
+		if (level.count == 0) {
+			levels.remove(node.price);
+		}
+	}
+
+	/**
+	 * Determine if an order at the specified price would be dispatched at the
+	 * current threshold.
+	 *
+	 * @param price
+	 *            - the order price
+	 * @return true if the price has been crossed by the threshold
+	 */
+	private boolean isTriggered(int price) {
+		return ascending ? price <= threshold : price >= threshold;
+	}
+
+}
@@ -0,0 +1,168 @@
+package main.java.edu.uw.ajs.broker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * An OrderManager that keeps stop orders in price-level order books. A price
+ * change releases all of the triggered price levels as a single batch instead
+ * of removing the triggered orders one at a time.
+ *
+ * @author chq-alexs
+ */
+public class PriceLevelOrderManager implements BatchOrderManager, AmendableOrderManager, TrailingStopOrderManager {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(PriceLevelOrderManager.class);
+
+	/**
+	 * Order book for stop buy orders
+	 */
+	protected PriceLevelOrderBook<StopBuyOrder> stopBuyOrderBook;
+
+	/**
+	 * Order book for stop sell orders
+	 */
+	protected PriceLevelOrderBook<StopSellOrder> stopSellOrderBook;
+
+	/**
+	 * Queue for trailing stop buy orders
+	 */
+	protected TrailingStopQueue<MarketBuyOrder> trailingBuyQueue;
+
+	/**
+	 * Queue for trailing stop sell orders
+	 */
+	protected TrailingStopQueue<MarketSellOrder> trailingSellQueue;
+
+	/**
+	 * Stock ticker symbol
+	 */
+	private String stockTickerSymbol;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param stockTickerSymbol
+	 *            - the ticker symbol of the stock this instance is manage
+	 *            orders for
+	 *
+	 * @param price
+	 *            - the current price of stock to be managed
+	 */
+	public PriceLevelOrderManager(String stockTickerSymbol, int price) {
+		this.stockTickerSymbol = stockTickerSymbol;
+
+		stopBuyOrderBook = new PriceLevelOrderBook<>(price, StopBuyOrder::getPrice, true);
+
+		stopSellOrderBook = new PriceLevelOrderBook<>(price, StopSellOrder::getPrice, false);
+
+		trailingBuyQueue = new TrailingStopQueue<>(price, false);
+
+		trailingSellQueue = new TrailingStopQueue<>(price, true);
+	}
+
+	@Override
+	public String getSymbol() {
+		return this.stockTickerSymbol;
+	}
+
+	@Override
+	public void adjustPrice(int price) {
+		stopBuyOrderBook.setThreshold(price);
+		stopSellOrderBook.setThreshold(price);
+		trailingBuyQueue.setThreshold(price);
+		trailingSellQueue.setThreshold(price);
+	}
+
+	@Override
+	public void queueOrder(StopBuyOrder order) {
+		stopBuyOrderBook.enqueue(order);
+	}
+
+	@Override
+	public void queueOrder(StopSellOrder order) {
+		stopSellOrderBook.enqueue(order);
+	}
+
+	@Override
+	public void setBuyOrderProcessor(Consumer<StopBuyOrder> processor) {
+
+		logger.info("Setting buy order processor as: " + processor.toString());
+
+		stopBuyOrderBook.setOrderProcessor(processor);
+	}
+
+	@Override
+	public void setSellOrderProcessor(Consumer<StopSellOrder> processor) {
+		stopSellOrderBook.setOrderProcessor(processor);
+	}
+
+	@Override
+	public void setBuyBatchProcessor(Consumer<List<StopBuyOrder>> processor) {
+		stopBuyOrderBook.setBatchProcessor(processor);
+	}
+
+	@Override
+	public void setSellBatchProcessor(Consumer<List<StopSellOrder>> processor) {
+		stopSellOrderBook.setBatchProcessor(processor);
+	}
+
+	@Override
+	public boolean cancel(int orderId) {
+		return stopBuyOrderBook.cancel(orderId) || stopSellOrderBook.cancel(orderId);
+	}
+
+	@Override
+	public Order getRestingOrder(int orderId) {
+		final StopBuyOrder order = stopBuyOrderBook.get(orderId);
+		return order != null ? order : stopSellOrderBook.get(orderId);
+	}
+
+	@Override
+	public List<Order> cancelAll() {
+		final List<Order> orders = new ArrayList<>(stopBuyOrderBook.clear());
+		orders.addAll(stopSellOrderBook.clear());
+		return orders;
+	}
+
+	@Override
+	public void queueTrailingStop(MarketBuyOrder order, int trail, boolean percent) {
+		trailingBuyQueue.enqueue(order, trail, percent);
+	}
+
+	@Override
+	public void queueTrailingStop(MarketSellOrder order, int trail, boolean percent) {
+		trailingSellQueue.enqueue(order, trail, percent);
+	}
+
+	@Override
+	public void setTrailingBuyProcessor(Consumer<MarketBuyOrder> processor) {
+		trailingBuyQueue.setOrderProcessor(processor);
+	}
+
+	@Override
+	public void setTrailingSellProcessor(Consumer<MarketSellOrder> processor) {
+		trailingSellQueue.setOrderProcessor(processor);
+	}
+
+	@Override
+	public List<Order> cancelTrailingStops() {
+		final List<Order> orders = new ArrayList<>(trailingBuyQueue.clear());
+		orders.addAll(trailingSellQueue.clear());
+		return orders;
+	}
+
+}
@@ -0,0 +1,158 @@
+package main.java.edu.uw.ajs.broker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
+
+/**
+ * The last quote for each ticker, kept from the exchange's price changes so
+ * quote requests are served without calling the exchange.
+ *
+ * Each ticker has a slot holding its latest quote and the time it was
+ * recorded. Reads are a map lookup and a volatile read, without locking or
+ * allocation. A price change replaces the slot's quote, price changes for a
+ * ticker are expected from one exchange thread at a time. A quote older than
+ * the staleness bound, or a ticker without a quote, is fetched from the
+ * exchange; the fetched quote is only kept if no price change has replaced
+ * the slot's quote meanwhile, so a fetch never overwrites a newer price.
+ *
+ * @author chq-alexs
+ */
+public final class QuoteCache {
+
+	/**
+	 * A quote and the time it was recorded.
+	 */
+	private static final class Entry {
+		/** The quote */
+		private final StockQuote quote;
+
+		/** Time the quote was recorded, from System.nanoTime */
+		private final long recordedNanos;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param quote
+		 *            - the quote
+		 * @param recordedNanos
+		 *            - time the quote was recorded, from System.nanoTime
+		 */
+		private Entry(final StockQuote quote, final long recordedNanos) {
+			this.quote = quote;
+			this.recordedNanos = recordedNanos;
+		}
+	}
+
+	/** The exchange quotes are fetched from on a miss */
+	private final StockExchange exchg;
+
+	/** Maximum age of a quote served from the cache, in nanoseconds */
+	private final long maxAgeNanos;
+
+	/** Latest quote of each ticker */
+	private final Map<String, AtomicReference<Entry>> slots = new ConcurrentHashMap<>();
+
+	/** Number of quotes served from the cache */
+	private final LongAdder hits = new LongAdder();
+
+	/** Number of quotes fetched from the exchange */
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param exchg
+	 *            - the exchange quotes are fetched from on a miss
+	 * @param maxAgeMillis
+	 *            - maximum age of a quote served from the cache, in
+	 *            milliseconds
+	 */
+	public QuoteCache(final StockExchange exchg, final long maxAgeMillis) {
+		if (maxAgeMillis <= 0) {
+			throw new IllegalArgumentException("Maximum quote age must be positive.");
+		}
+		this.exchg = exchg;
+		this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+	}
+
+	/**
+	 * Records a ticker's new price.
+	 *
+	 * @param ticker
+	 *            - the ticker
+	 * @param price
+	 *            - the new price
+	 */
+	public void priceChanged(final String ticker, final int price) {
+		final Entry entry = new Entry(new StockQuote(ticker, price), System.nanoTime());
+		AtomicReference<Entry> slot = slots.get(ticker);
+		if (slot == null) {
+			slot = slots.computeIfAbsent(ticker, (t) -> new AtomicReference<>());
+		}
+		slot.set(entry);
+	}
+
+	/**
+	 * Gets a ticker's quote, from the cache if it has a quote within the
+	 * staleness bound, otherwise from the exchange.
+	 *
+	 * @param ticker
+	 *            - the ticker
+	 * @return the quote, null if the exchange has no quote for the ticker
+	 */
+	public StockQuote getQuote(final String ticker) {
+		final AtomicReference<Entry> slot = slots.get(ticker);
+		final Entry cached = slot == null ? null : slot.get();
+		final long now = System.nanoTime();
+		if (cached != null && now - cached.recordedNanos <= maxAgeNanos) {
+			hits.increment();
+			return cached.quote;
+		}
+
+		misses.increment();
+		final StockQuote quote = exchg.getQuote(ticker);
+		if (quote != null) {
+			final Entry fetched = new Entry(quote, now);
+			if (slot == null) {
+				slots.putIfAbsent(ticker, new AtomicReference<>(fetched));
+			} else {
+				slot.compareAndSet(cached, fetched);
+			}
+		}
+		return quote;
+	}
+
+	/**
+	 * Discards a ticker's quote.
+	 *
+	 * @param ticker
+	 *            - the ticker
+	 */
+	public void remove(final String ticker) {
+		slots.remove(ticker);
+	}
+
+	/**
+	 * Gets the number of quotes served from the cache.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Gets the number of quotes fetched from the exchange.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+}
@@ -0,0 +1,24 @@
+package main.java.edu.uw.ajs.broker;
+
+import edu.uw.ext.framework.exchange.StockQuote;
+
+/**
+ * Receives the price updates of a ticker subscribed to with
+ * {@link SimpleBroker#subscribe(String, QuoteListener)}.
+ *
+ * @author chq-alexs
+ */
+@FunctionalInterface
+public interface QuoteListener {
+
+	/**
+	 * Invoked with a ticker's latest quote, on one of the broker's quote
+	 * dispatch threads. A listener is invoked by one thread at a time, and the
+	 * quotes it receives are in the order the prices changed, though prices
+	 * that changed again before the listener took them are skipped.
+	 *
+	 * @param quote
+	 *            - the latest quote
+	 */
+	void quoteChanged(StockQuote quote);
+}
@@ -0,0 +1,275 @@
+package main.java.edu.uw.ajs.broker;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.ext.framework.exchange.StockQuote;
+
+/**
+ * Pushes price updates to the listeners subscribed to each ticker.
+ *
+ * Each subscription buffers a single quote, its latest. Publishing a price
+ * replaces the buffered quote, a quote the listener hasn't taken yet is
+ * dropped, and schedules the subscription on the dispatch threads if it isn't
+ * already scheduled. Publishing never waits on a listener, so a slow listener
+ * only falls behind on its own quotes, it neither holds up the exchange's
+ * callback nor the other listeners, and the memory held for it is bounded to
+ * one quote however far behind it is. A scheduled subscription delivers one
+ * quote and reschedules itself if another has arrived, so the dispatch
+ * threads are shared fairly between busy subscriptions. Publishing and
+ * subscribing to a ticker are expected to be serialized by the caller, so a
+ * subscription's first quote is never older than one published to it.
+ *
+ * @author chq-alexs
+ */
+public final class QuoteSubscriptions implements AutoCloseable {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(QuoteSubscriptions.class);
+
+	/**
+	 * A listener's subscription to a ticker.
+	 */
+	private final class Subscription implements Runnable {
+		/** The listener */
+		private final QuoteListener listener;
+
+		/** The latest quote not yet delivered, null if none */
+		private final AtomicReference<StockQuote> pending = new AtomicReference<>();
+
+		/** Set while the subscription is queued or delivering */
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		/** Set once unsubscribed, no further quotes are delivered */
+		private volatile boolean cancelled;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param listener
+		 *            - the listener
+		 */
+		private Subscription(final QuoteListener listener) {
+			this.listener = listener;
+		}
+
+		/**
+		 * Buffers a quote, replacing any quote not yet delivered, and
+		 * schedules its delivery.
+		 *
+		 * @param quote
+		 *            - the quote
+		 */
+		private void offer(final StockQuote quote) {
+			if (pending.getAndSet(quote) != null) {
+				conflated.increment();
+			}
+			schedule();
+		}
+
+		/**
+		 * Queues the subscription on the dispatch threads unless it is already
+		 * queued or delivering.
+		 */
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				try {
+					dispatcher.execute(this);
+				} catch (RejectedExecutionException e) {
+					// closed, the quote is dropped
+				}
+			}
+		}
+
+		/**
+		 * Delivers the buffered quote.
+		 */
+		@Override
+		public void run() {
+			final StockQuote quote = pending.getAndSet(null);
+			if (quote != null && !cancelled) {
+				try {
+					listener.quoteChanged(quote);
+					delivered.increment();
+				} catch (RuntimeException e) {
+					logger.error(String.format("Quote listener failed on %s", quote.getTicker()), e);
+				}
+			}
+			scheduled.set(false);
+			if (pending.get() != null && !cancelled) {
+				schedule();
+			}
+		}
+	}
+
+	/** The subscriptions to each ticker */
+	private final Map<String, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+	/** The dispatch threads */
+	private final ExecutorService dispatcher;
+
+	/** Number of quotes delivered */
+	private final LongAdder delivered = new LongAdder();
+
+	/** Number of quotes replaced before they were delivered */
+	private final LongAdder conflated = new LongAdder();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param name
+	 *            - name used for the dispatch threads
+	 * @param threads
+	 *            - the number of dispatch threads
+	 */
+	public QuoteSubscriptions(final String name, final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException(
+					String.format("Invalid number of quote dispatch threads, %d", threads));
+		}
+		final AtomicInteger threadCount = new AtomicInteger();
+		dispatcher = Executors.newFixedThreadPool(threads, (r) -> {
+			final Thread t = new Thread(r, String.format("%s-quotes-%d", name, threadCount.getAndIncrement()));
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Subscribes a listener to a ticker's price updates. A listener already
+	 * subscribed to the ticker is left subscribed once.
+	 *
+	 * @param ticker
+	 *            - the ticker
+	 * @param listener
+	 *            - the listener
+	 * @param current
+	 *            - the ticker's current quote, delivered to the listener
+	 *            first, null if none
+	 * @return true if subscribed, false if the listener was already subscribed
+	 */
+	public boolean subscribe(final String ticker, final QuoteListener listener, final StockQuote current) {
+		final List<Subscription> subs = subscriptions.computeIfAbsent(ticker, (t) -> new CopyOnWriteArrayList<>());
+		final Subscription sub;
+		synchronized (subs) {
+			for (Subscription s : subs) {
+				if (s.listener == listener) {
+					return false;
+				}
+			}
+			sub = new Subscription(listener);
+			subs.add(sub);
+		}
+		if (current != null) {
+			sub.offer(current);
+		}
+		return true;
+	}
+
+	/**
+	 * Unsubscribes a listener from a ticker. Quotes buffered for the listener
+	 * are dropped, though a quote being delivered completes.
+	 *
+	 * @param ticker
+	 *            - the ticker
+	 * @param listener
+	 *            - the listener
+	 * @return true if unsubscribed, false if the listener wasn't subscribed
+	 */
+	public boolean unsubscribe(final String ticker, final QuoteListener listener) {
+		final List<Subscription> subs = subscriptions.get(ticker);
+		if (subs == null) {
+			return false;
+		}
+		synchronized (subs) {
+			for (Subscription s : subs) {
+				if (s.listener == listener) {
+					s.cancelled = true;
+					subs.remove(s);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Unsubscribes every listener from a ticker.
+	 *
+	 * @param ticker
+	 *            - the ticker
+	 */
+	public void removeTicker(final String ticker) {
+		final List<Subscription> subs = subscriptions.remove(ticker);
+		if (subs != null) {
+			synchronized (subs) {
+				for (Subscription s : subs) {
+					s.cancelled = true;
+				}
+				subs.clear();
+			}
+		}
+	}
+
+	/**
+	 * Publishes a ticker's new price to its subscribers, without waiting for
+	 * them.
+	 *
+	 * @param ticker
+	 *            - the ticker
+	 * @param price
+	 *            - the new price
+	 */
+	public void publish(final String ticker, final int price) {
+		final List<Subscription> subs = subscriptions.get(ticker);
+		if (subs == null || subs.isEmpty()) {
+			return;
+		}
+		final StockQuote quote = new StockQuote(ticker, price);
+		for (Subscription sub : subs) {
+			sub.offer(quote);
+		}
+	}
+
+	/**
+	 * Gets the number of quotes delivered to listeners.
+	 *
+	 * @return the number of quotes delivered
+	 */
+	public long getDelivered() {
+		return delivered.sum();
+	}
+
+	/**
+	 * Gets the number of quotes replaced by a newer quote before they were
+	 * delivered.
+	 *
+	 * @return the number of quotes conflated
+	 */
+	public long getConflated() {
+		return conflated.sum();
+	}
+
+	/**
+	 * Stops the dispatch threads, quotes not yet delivered are dropped.
+	 */
+	@Override
+	public void close() {
+		dispatcher.shutdownNow();
+		subscriptions.clear();
+	}
+}
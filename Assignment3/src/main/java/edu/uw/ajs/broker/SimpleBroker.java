@@ -1,7 +1,22 @@
 package main.java.edu.uw.ajs.broker;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
@@ -13,7 +28,6 @@ import edu.uw.ext.framework.account.AccountManager;
 import edu.uw.ext.framework.broker.Broker;
 import edu.uw.ext.framework.broker.BrokerException;
 import edu.uw.ext.framework.broker.OrderManager;
-import edu.uw.ext.framework.broker.OrderQueue;
 import edu.uw.ext.framework.exchange.ExchangeEvent;
 import edu.uw.ext.framework.exchange.ExchangeListener;
 import edu.uw.ext.framework.exchange.StockExchange;
@@ -27,6 +41,17 @@ import main.java.edu.uw.ajs.account.SimpleAccountManager;
 
 public class SimpleBroker implements Broker, ExchangeListener {
 
+	/**
+	 * Number of lock stripes used to serialize the processing for each ticker
+	 */
+	private static final int TICKER_LOCK_STRIPES = 64;
+
+	/**
+	 * Number of lock stripes used to serialize account updates while the
+	 * opening backlog is released
+	 */
+	private static final int ACCOUNT_LOCK_STRIPES = 64;
+
 	/**
 	 * The market order queue.
 	 */
@@ -56,7 +81,7 @@ public class SimpleBroker implements Broker, ExchangeListener {
 	 */
 	// private String name;
 
-	protected OrderQueue<Boolean, Order> marketOrders;
+	protected BatchOrderQueue<Boolean, Order> marketOrders;
 
 	/**
 	 * Initial account balance in cents
@@ -74,9 +99,156 @@ public class SimpleBroker implements Broker, ExchangeListener {
 	private String[] stockList;
 
 	/**
-	 * Order Manager Map
+	 * Order managers by ticker. Tickers are listed and delisted while orders
+	 * are being placed, under the ticker's lock.
+	 */
+	private Map<String, OrderManager> orderManagerMap = new ConcurrentHashMap<>();
+
+	/**
+	 * Tickers traded, whether or not their order manager has been created
+	 */
+	private final Set<String> tickers = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Latest price of each traded ticker whose order manager hasn't been
+	 * created yet, seen by priceChanged or quoted when the ticker was listed
+	 */
+	private final Map<String, Integer> lastPrices = new ConcurrentHashMap<>();
+
+	/**
+	 * Ticker of each resting stop order, by order id
+	 */
+	private final Map<Integer, String> stopOrderTickers = new ConcurrentHashMap<>();
+
+	/**
+	 * One-cancels-other group of each resting grouped stop order, by order id
+	 */
+	private final Map<Integer, OrderGroup> orderGroups = new ConcurrentHashMap<>();
+
+	/**
+	 * Exit orders to be placed as a group when a bracket's entry order is
+	 * triggered, by entry order id
+	 */
+	private final Map<Integer, List<Order>> bracketExits = new ConcurrentHashMap<>();
+
+	/**
+	 * Expiry time of each resting good-till-date stop order, in milliseconds
+	 * since the epoch, by order id
+	 */
+	private final Map<Integer, Long> expiryTimes = new ConcurrentHashMap<>();
+
+	/**
+	 * Exit orders of triggered brackets waiting to be placed, by ticker
+	 */
+	private final Map<String, List<List<Order>>> pendingExits = new ConcurrentHashMap<>();
+
+	/**
+	 * Broker configuration
+	 */
+	private SimpleBrokerConfig config = new SimpleBrokerConfig();
+
+	/**
+	 * Locks serializing the order processing for each ticker, a ticker always
+	 * uses the same lock
+	 */
+	private final Object[] tickerLocks = new Object[TICKER_LOCK_STRIPES];
+
+	/**
+	 * Locks serializing the updates to each account while the opening backlog
+	 * is released, an account always uses the same lock
+	 */
+	private final Object[] accountLocks = new Object[ACCOUNT_LOCK_STRIPES];
+
+	/**
+	 * Time from the last exchange open to the last backlog order being
+	 * executed, in nanoseconds
+	 */
+	private volatile long lastOpenReleaseNanos;
+
+	/**
+	 * Background order execution, null if orders are executed inline
+	 */
+	private OrderExecutionStage executionStage;
+
+	/**
+	 * Expiry schedule of the good-till-date stop orders, created with the
+	 * first such order
+	 */
+	private TimingWheel expiryWheel;
+
+	/**
+	 * Advances the expiry schedule, created with the first good-till-date
+	 * order
+	 */
+	private ScheduledExecutorService expiryTimer;
+
+	/**
+	 * Journal of the resting stop orders and the market order backlog, null
+	 * if orders are not journaled
+	 */
+	private OrderJournal orderJournal;
+
+	/**
+	 * Ids of the orders recovered from the order journal, by the id of the
+	 * order they replace
+	 */
+	private Map<Integer, Integer> recoveredIds = Collections.emptyMap();
+
+	/**
+	 * Last quote of each ticker from its price changes, null if quotes are
+	 * always requested from the exchange
+	 */
+	private QuoteCache quoteCache;
+
+	/**
+	 * The quote subscriptions, null until the first subscription
+	 */
+	private volatile QuoteSubscriptions quoteSubscriptions;
+
+	/**
+	 * A one-cancels-other group of stop orders for a single ticker. The group
+	 * is only accessed under the ticker's lock.
 	 */
-	private HashMap<String, OrderManager> orderManagerMap = new HashMap<String, OrderManager>();
+	private static final class OrderGroup {
+		/** Id of the group, the id of its first order when it was placed */
+		private final int id;
+
+		/** Ids of the orders in the group */
+		private final int[] orderIds;
+
+		/** True once an order in the group has been triggered */
+		private boolean triggered;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param orders
+		 *            - the orders in the group
+		 */
+		private OrderGroup(List<? extends Order> orders) {
+			orderIds = new int[orders.size()];
+			for (int i = 0; i < orderIds.length; i++) {
+				orderIds[i] = orders.get(i).getOrderId();
+			}
+			id = orderIds[0];
+		}
+
+		/**
+		 * Replaces an order in the group with its amended replacement.
+		 * 
+		 * @param orderId
+		 *            - id of the replaced order
+		 * @param newId
+		 *            - id of the replacement
+		 */
+		private void replace(int orderId, int newId) {
+			for (int i = 0; i < orderIds.length; i++) {
+				if (orderIds[i] == orderId) {
+					orderIds[i] = newId;
+				}
+			}
+		}
+	}
 
 	/**
 	 * Constructor.
@@ -90,27 +262,183 @@ public class SimpleBroker implements Broker, ExchangeListener {
 	 * 
 	 */
 	public SimpleBroker(String brokerName, AccountManager acctMgr, StockExchange exchg) {
+		this(brokerName, acctMgr, exchg, new SimpleBrokerConfig());
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param brokerName
+	 *            - name of the broker
+	 * @param acctMgr
+	 *            - the account manager to be used by the broker
+	 * @param exchg
+	 *            - the stock exchange to be used by the broker
+	 * @param config
+	 *            - the configuration options for the broker
+	 */
+	public SimpleBroker(String brokerName, AccountManager acctMgr, StockExchange exchg, SimpleBrokerConfig config) {
 		this(brokerName, exchg, acctMgr);
+		this.config = config;
+
+		marketOrders = new ConcurrentOrderQueue<>(exchg.isOpen(), (Boolean t, Order o) -> t);
+		Consumer<Order> stockTracker;
+		if (config.getExecutionThreads() > 0) {
+			executionStage = new OrderExecutionStage(brokerName, config.getExecutionThreads(),
+					config.getExecutionQueueCapacity(), config.getExecutionBackpressure(), this::executeOrder,
+					config.isBatchDispatch() ? this::executeOrders : null);
+			stockTracker = (order) -> {
+				try {
+					executionStage.submit(order);
+				} catch (RejectedExecutionException e) {
+					logger.error(String.format("Execution queue full, order %d for account %s not executed",
+							order.getOrderId(), order.getAccountId()), e);
+				}
+			};
+		} else {
+			stockTracker = this::executeOrder;
+		}
+		marketOrders.setOrderProcessor(stockTracker);
 
-		marketOrders = new SimpleOrderQueue<>(exchg.isOpen(), (Boolean t, Order o) -> t);
-		Consumer<Order> stockTracker = (order) -> {
-			logger.info(String.format("Executing - %s", order));
-			int sharePrice = exchg.executeTrade(order);
-			try {
-				Account account = acctMgr.getAccount(order.getAccountId());
-				account.reflectOrder(order, sharePrice);
-				logger.info(String.format("New balance - %d", account.getBalance()));
-			} catch (AccountException e) {
-				logger.error(String.format("Unable to update account %s", order.getAccountId()));
+		if (config.isBatchDispatch()) {
+			Consumer<List<Order>> batchTracker;
+			if (executionStage != null) {
+				batchTracker = (orders) -> {
+					try {
+						executionStage.submitAll(orders);
+					} catch (RejectedExecutionException e) {
+						logger.error(String.format("Execution queue full, orders from a batch of %d not executed",
+								orders.size()), e);
+					}
+				};
+			} else {
+				batchTracker = this::executeOrders;
 			}
-		};
-		marketOrders.setOrderProcessor(stockTracker);
+			marketOrders.setBatchProcessor(batchTracker);
+		}
+
+		if (config.getQuoteCacheMaxAgeMillis() > 0) {
+			quoteCache = new QuoteCache(exchg, config.getQuoteCacheMaxAgeMillis());
+		}
 
 		initializeOrderManagers();
 
+		if (config.getOrderJournalDir() != null) {
+			try {
+				recoverOrders(new OrderJournal(new File(config.getOrderJournalDir()),
+						config.getOrderJournalCompactBytes(), config.isOrderJournalGroupCommit()));
+			} catch (BrokerException e) {
+				logger.error("Unable to recover orders, orders will not be journaled.", e);
+			}
+		}
+
 		exchg.addExchangeListener(this);
 	}
 
+	/**
+	 * Re-queues the resting stop orders, with their groups, bracket exits and
+	 * expiry times, the trailing stops and the market order backlog recovered
+	 * from the order journal, and journals further orders. Only to be used
+	 * during construction.
+	 * 
+	 * @param journal
+	 *            - the order journal
+	 * @throws BrokerException
+	 *             if the journal can't be recovered
+	 */
+	private void recoverOrders(OrderJournal journal) throws BrokerException {
+		final OrderJournal.Recovered recovered = journal.takeRecovered();
+		orderJournal = journal;
+		recoveredIds = recovered.getRecoveredIds();
+
+		for (Order order : recovered.getResting()) {
+			final List<Order> group = recovered.getGroup(order.getOrderId());
+			if (group != null && group.get(0) != order) {
+				// queued with the first order of its group
+				continue;
+			}
+			final List<Order> orders = group == null ? Arrays.asList(order) : group;
+			final OrderManager orderMgr = recoveredOrderManager(orders);
+			if (orderMgr == null) {
+				continue;
+			}
+			synchronized (tickerLock(order.getStockTicker())) {
+				for (Order member : orders) {
+					final List<Order> exits = recovered.getExits(member.getOrderId());
+					if (exits != null) {
+						bracketExits.put(member.getOrderId(), exits);
+					}
+				}
+				if (group == null) {
+					queueStopOrder(orderMgr, order);
+				} else {
+					queueGroup(orderMgr, group);
+				}
+				queuePendingExits(order.getStockTicker(), orderMgr);
+			}
+			for (Order member : orders) {
+				final long expiryMillis = recovered.getExpiryMillis(member.getOrderId());
+				if (expiryMillis != 0 && stopOrderTickers.containsKey(member.getOrderId())) {
+					scheduleExpiry(member.getOrderId(), expiryMillis);
+				}
+			}
+		}
+		for (Order order : recovered.getTrailingStops()) {
+			final OrderManager orderMgr = recoveredOrderManager(Arrays.asList(order));
+			if (!(orderMgr instanceof TrailingStopOrderManager)) {
+				continue;
+			}
+			final int trail = recovered.getTrail(order.getOrderId());
+			final boolean percent = recovered.isTrailPercent(order.getOrderId());
+			synchronized (tickerLock(order.getStockTicker())) {
+				if (order instanceof MarketBuyOrder) {
+					((TrailingStopOrderManager) orderMgr).queueTrailingStop((MarketBuyOrder) order, trail, percent);
+				} else {
+					((TrailingStopOrderManager) orderMgr).queueTrailingStop((MarketSellOrder) order, trail, percent);
+				}
+			}
+		}
+		for (Order order : recovered.getBacklog()) {
+			marketOrders.enqueue(order);
+		}
+	}
+
+	/**
+	 * Gets the order manager for recovered orders, dropping them from the
+	 * order journal if their ticker is no longer traded.
+	 * 
+	 * @param orders
+	 *            - the recovered orders, all for one ticker
+	 * @return the order manager, null if the orders were dropped
+	 */
+	private OrderManager recoveredOrderManager(List<Order> orders) {
+		final String ticker = orders.get(0).getStockTicker();
+		try {
+			return orderManagerLookup(ticker);
+		} catch (BrokerException e) {
+			for (Order order : orders) {
+				logger.warn(String.format("Dropping recovered order %d, %s is not traded", order.getOrderId(), ticker));
+				orderJournal.removed(order.getOrderId());
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the id of an order recovered from the order journal when the
+	 * broker was created, in place of an order placed before the restart.
+	 * Orders are numbered as they are created, so a recovered order has a new
+	 * id.
+	 * 
+	 * @param orderId
+	 *            - id of the order placed before the restart
+	 * @return id of the recovered order, -1 if the order was not recovered
+	 */
+	public int getRecoveredOrderId(int orderId) {
+		final Integer recoveredId = recoveredIds.get(orderId);
+		return recoveredId == null ? -1 : recoveredId;
+	}
+
 	/**
 	 * Constructor. Constructor for sub classes
 	 * 
@@ -126,44 +454,267 @@ public class SimpleBroker implements Broker, ExchangeListener {
 		this.acctMgr = acctMgr;
 		this.exchg = exchg;
 
+		for (int i = 0; i < tickerLocks.length; i++) {
+			tickerLocks[i] = new Object();
+		}
+		for (int i = 0; i < accountLocks.length; i++) {
+			accountLocks[i] = new Object();
+		}
+
+	}
+
+	/**
+	 * Execute a market order on the exchange and reflect the result in the
+	 * owning account.
+	 * 
+	 * @param order
+	 *            - the order to execute
+	 */
+	private void executeOrder(Order order) {
+		logger.info(String.format("Executing - %s", order));
+		int sharePrice = exchg.executeTrade(order);
+		if (orderJournal != null) {
+			orderJournal.removed(order.getOrderId());
+		}
+		try {
+			Account account = acctMgr.getAccount(order.getAccountId());
+			account.reflectOrder(order, sharePrice);
+			logger.info(String.format("New balance - %d", account.getBalance()));
+		} catch (AccountException e) {
+			logger.error(String.format("Unable to update account %s", order.getAccountId()));
+		}
+	}
+
+	/**
+	 * Execute a batch of market orders on the exchange and reflect the results
+	 * in the owning accounts. Each account is looked up once for the batch and
+	 * every order is reflected through the account, so an account manager
+	 * that defers persistence writes each account once for the batch.
+	 * 
+	 * @param orders
+	 *            - the orders to execute
+	 */
+	private void executeOrders(List<Order> orders) {
+		logger.info(String.format("Executing batch of %d orders", orders.size()));
+		final Map<String, Account> accounts = new LinkedHashMap<>();
+		for (Order order : orders) {
+			int sharePrice = exchg.executeTrade(order);
+			if (orderJournal != null) {
+				orderJournal.removed(order.getOrderId());
+			}
+			try {
+				Account account = accounts.get(order.getAccountId());
+				if (account == null) {
+					account = acctMgr.getAccount(order.getAccountId());
+					if (account == null) {
+						logger.error(String.format("Unable to update account %s", order.getAccountId()));
+						continue;
+					}
+					accounts.put(order.getAccountId(), account);
+				}
+				account.reflectOrder(order, sharePrice);
+			} catch (AccountException e) {
+				logger.error(String.format("Unable to update account %s", order.getAccountId()));
+			}
+		}
+
+		for (Account account : accounts.values()) {
+			logger.info(String.format("New balance - %s %d", account.getName(), account.getBalance()));
+		}
 	}
 
 	/**
 	 * Fetch the stock list from the exchange and initialize an order manager
-	 * for each stock. Only to be used during construction.
+	 * for each stock. If configured with lazy order managers, only the stock
+	 * list is fetched and each order manager is created with the stock's
+	 * first stop order, see {@link #orderManagerLookup(String)}. Only to be
+	 * used during construction.
 	 */
 	protected final void initializeOrderManagers() {
 
 		logger.info("Generating order manager map");
 
-		orderManagerMap = new HashMap<>();
+		orderManagerMap = new ConcurrentHashMap<>();
 
-		final Consumer<StopBuyOrder> moveBuy2MarketProc = (StopBuyOrder order) -> marketOrders.enqueue(order);
+		final String[] listed = exchg.getTickers();
+		tickers.addAll(Arrays.asList(listed));
 
-		final Consumer<StopSellOrder> moveSell2MarketProc = (StopSellOrder order) -> marketOrders.enqueue(order);
+		if (config.isLazyOrderManagers()) {
+			logger.info(String.format("Deferring order managers for %d tickers", listed.length));
+			return;
+		}
 
-		for (String ticker : exchg.getTickers()) {
+		for (String ticker : listed) {
 
 			final int currPrice = exchg.getQuote(ticker).getPrice();
 
-			final OrderManager orderMgr = createOrderManager(ticker, currPrice);
+			orderManagerMap.put(ticker, newOrderManager(ticker, currPrice));
+
+		}
 
-			orderMgr.setBuyOrderProcessor(moveBuy2MarketProc);
+	}
 
-			logger.info("Setting buy order processor from list.");
+	/**
+	 * Create an order manager for a stock and connect its order processors to
+	 * the market order queue.
+	 * 
+	 * @param ticker
+	 *            - the ticker symbol of the stock
+	 * @param initialPrice
+	 *            - current price of the stock
+	 * @return the connected order manager
+	 */
+	private OrderManager newOrderManager(String ticker, int initialPrice) {
+
+		final OrderManager orderMgr = createOrderManager(ticker, initialPrice);
+
+		orderMgr.setBuyOrderProcessor((StopBuyOrder order) -> {
+			if (releaseStopOrder(order)) {
+				marketOrders.enqueue(order);
+			}
+		});
 
-			orderMgr.setSellOrderProcessor(moveSell2MarketProc);
+		logger.info("Setting buy order processor from list.");
 
-			logger.info("Setting sell order processor from list.");
-			orderManagerMap.put(ticker, orderMgr);
+		orderMgr.setSellOrderProcessor((StopSellOrder order) -> {
+			if (releaseStopOrder(order)) {
+				marketOrders.enqueue(order);
+			}
+		});
+
+		logger.info("Setting sell order processor from list.");
+
+		if (orderMgr instanceof TrailingStopOrderManager) {
+			((TrailingStopOrderManager) orderMgr).setTrailingBuyProcessor((MarketBuyOrder order) -> {
+				if (orderJournal != null) {
+					orderJournal.triggered(order.getOrderId());
+				}
+				marketOrders.enqueue(order);
+			});
+			((TrailingStopOrderManager) orderMgr).setTrailingSellProcessor((MarketSellOrder order) -> {
+				if (orderJournal != null) {
+					orderJournal.triggered(order.getOrderId());
+				}
+				marketOrders.enqueue(order);
+			});
+		}
 
+		if (config.isBatchDispatch() && orderMgr instanceof BatchOrderManager) {
+			((BatchOrderManager) orderMgr).setBuyBatchProcessor(
+					(List<StopBuyOrder> orders) -> marketOrders.enqueueAll(releaseStopOrders(orders)));
+			((BatchOrderManager) orderMgr).setSellBatchProcessor(
+					(List<StopSellOrder> orders) -> marketOrders.enqueueAll(releaseStopOrders(orders)));
 		}
 
+		return orderMgr;
 	}
 
 	/**
-	 * Create an appropriate order manager for this broker. Only to be used
-	 * during construction.
+	 * Starts trading a ticker listed by the exchange since the broker was
+	 * created. Orders for other tickers are processed while the ticker is
+	 * listed.
+	 * 
+	 * @param ticker
+	 *            - the ticker symbol
+	 * @return true if the ticker has been listed, false if it was already
+	 *         traded
+	 * @throws BrokerException
+	 *             if the exchange has no quote for the ticker
+	 */
+	public boolean listTicker(String ticker) throws BrokerException {
+		checkInvariants();
+		synchronized (tickerLock(ticker)) {
+			if (tickers.contains(ticker)) {
+				return false;
+			}
+			final StockQuote quote = exchg.getQuote(ticker);
+			if (quote == null) {
+				throw new BrokerException(String.format("Quote not available for '%s'.", ticker));
+			}
+			if (config.isLazyOrderManagers()) {
+				lastPrices.put(ticker, quote.getPrice());
+			} else {
+				orderManagerMap.put(ticker, newOrderManager(ticker, quote.getPrice()));
+			}
+			tickers.add(ticker);
+		}
+		logger.info(String.format("Listed %s", ticker));
+		return true;
+	}
+
+	/**
+	 * Stops trading a ticker. The ticker's order manager is retired and its
+	 * resting orders are drained: the stop orders, including grouped orders
+	 * and the exits of untriggered brackets, and the trailing stops are
+	 * cancelled and returned, none of them are executed. Orders already
+	 * triggered, and market orders already placed, remain queued and are
+	 * executed by the exchange. Once delisted further orders for the ticker
+	 * are rejected and its price changes ignored. Orders for other tickers
+	 * are processed while the ticker is delisted.
+	 * 
+	 * @param ticker
+	 *            - the ticker symbol
+	 * @return the cancelled resting orders
+	 * @throws BrokerException
+	 *             if the ticker isn't traded
+	 */
+	public List<Order> delistTicker(String ticker) throws BrokerException {
+		checkInvariants();
+		final List<Order> cancelled = new ArrayList<>();
+		synchronized (tickerLock(ticker)) {
+			if (!tickers.remove(ticker)) {
+				throw new BrokerException(String.format("Requested stock, %s does not exist", ticker));
+			}
+			lastPrices.remove(ticker);
+			if (quoteCache != null) {
+				quoteCache.remove(ticker);
+			}
+			if (quoteSubscriptions != null) {
+				quoteSubscriptions.removeTicker(ticker);
+			}
+			final OrderManager orderMgr = orderManagerMap.remove(ticker);
+			if (orderMgr instanceof AmendableOrderManager) {
+				cancelled.addAll(((AmendableOrderManager) orderMgr).cancelAll());
+			}
+			if (orderMgr instanceof TrailingStopOrderManager) {
+				cancelled.addAll(((TrailingStopOrderManager) orderMgr).cancelTrailingStops());
+			}
+			for (Order order : cancelled) {
+				discardStopOrder(order.getOrderId());
+			}
+			for (Map.Entry<Integer, String> resting : stopOrderTickers.entrySet()) {
+				if (ticker.equals(resting.getValue())) {
+					logger.warn(String.format("Order %d for %s can not be cancelled, dropping it", resting.getKey(),
+							ticker));
+					discardStopOrder(resting.getKey());
+				}
+			}
+			pendingExits.remove(ticker);
+		}
+		logger.info(String.format("Delisted %s, cancelled %d resting orders", ticker, cancelled.size()));
+		return cancelled;
+	}
+
+	/**
+	 * Checks that a ticker is still traded by the order manager looked up for
+	 * it. Must be called under the ticker's lock.
+	 * 
+	 * @param ticker
+	 *            - the ticker symbol
+	 * @param orderMgr
+	 *            - the order manager looked up for the ticker
+	 * @throws BrokerException
+	 *             if the ticker has been delisted since the lookup
+	 */
+	private void checkListed(String ticker, OrderManager orderMgr) throws BrokerException {
+		if (orderManagerMap.get(ticker) != orderMgr) {
+			throw new BrokerException(String.format("%s has been delisted", ticker));
+		}
+	}
+
+	/**
+	 * Create an appropriate order manager for this broker, when the broker is
+	 * constructed or a ticker is listed.
 	 * 
 	 * @param ticker
 	 *            - the ticker symbol of the stock
@@ -172,30 +723,213 @@ public class SimpleBroker implements Broker, ExchangeListener {
 	 * @return a new OrderManager for the specified stock
 	 * 
 	 */
-	protected SimpleOrderManager createOrderManager(String ticker, int initialPrice) {
+	protected OrderManager createOrderManager(String ticker, int initialPrice) {
+
+		if (config.isPriceLevelOrderBook()) {
+			return new PriceLevelOrderManager(ticker, initialPrice);
+		}
 
 		SimpleOrderManager simpleOrderManager = new SimpleOrderManager(ticker, initialPrice);
 		return simpleOrderManager;
 	}
 
+	/**
+	 * Gets the lock that serializes the order processing for a ticker.
+	 * 
+	 * @param ticker
+	 *            - the ticker symbol
+	 * @return the lock for the ticker
+	 */
+	private Object tickerLock(String ticker) {
+		return tickerLocks[(ticker.hashCode() & Integer.MAX_VALUE) % tickerLocks.length];
+	}
+
+	/**
+	 * Adjusts the price for the ticker's order manager. Price changes for the
+	 * same ticker are processed one at a time, price changes for tickers using
+	 * different locks are processed concurrently. If the ticker's order
+	 * manager hasn't been created yet the price is kept to seed it. Price
+	 * changes for tickers that aren't traded are ignored. The price is
+	 * recorded in the quote cache under the ticker's lock, once the ticker is
+	 * known to be traded, so a delisted ticker isn't cached again and the
+	 * cache sees a ticker's prices in the order they are processed. It is
+	 * recorded before any orders are triggered, so quotes are current when
+	 * they execute. With a full execution stage the price change waits for
+	 * room before taking any lock.
+	 * 
+	 * @param event
+	 *            - the price change event
+	 */
 	@Override
-	public synchronized final void priceChanged(ExchangeEvent event) {
+	public final void priceChanged(ExchangeEvent event) {
 		checkInvariants();
+		awaitExecutionCapacity();
 
-		OrderManager orderMgr;
-
-		orderMgr = orderManagerMap.get(event.getTicker());
-		if (orderMgr != null) {
-			orderMgr.adjustPrice(event.getPrice());
+		final String ticker = event.getTicker();
+		if (!tickers.contains(ticker)) {
+			return;
 		}
+		final QuoteSubscriptions subscriptions = quoteSubscriptions;
+		synchronized (tickerLock(ticker)) {
+			// recheck under the lock, the ticker may have been delisted
+			if (!tickers.contains(ticker)) {
+				return;
+			}
+			if (quoteCache != null) {
+				quoteCache.priceChanged(ticker, event.getPrice());
+			}
+			if (subscriptions != null) {
+				subscriptions.publish(ticker, event.getPrice());
+			}
+			final OrderManager orderMgr = orderManagerMap.get(ticker);
+			if (orderMgr == null) {
+				lastPrices.put(ticker, event.getPrice());
+			} else {
+				orderMgr.adjustPrice(event.getPrice());
+				queuePendingExits(ticker, orderMgr);
+			}
+		}
+	}
 
+	/**
+	 * Waits for room in the execution stage, if there is one, before the
+	 * caller takes any lock that orders are submitted under. Submitting to the
+	 * stage never blocks, so a full lane only holds up the threads about to
+	 * add to it rather than every thread waiting on the locks they hold.
+	 */
+	private void awaitExecutionCapacity() {
+		if (executionStage != null) {
+			executionStage.awaitCapacity();
+		}
 	}
 
+	/**
+	 * Opens the market order queue. If configured with open release threads
+	 * the backlog accumulated while the exchange was closed is released in
+	 * parallel by ticker, see {@link #releaseBacklog(List, long)}.
+	 * 
+	 * @param event
+	 *            - the exchange opened event
+	 */
 	@Override
 	public void exchangeOpened(ExchangeEvent event) {
 		checkInvariants();
 		logger.info("Checked Invariants");
-		marketOrders.setThreshold(Boolean.TRUE);
+		final long openedAt = System.nanoTime();
+		if (config.getOpenReleaseThreads() > 0 && marketOrders instanceof ConcurrentOrderQueue) {
+			((ConcurrentOrderQueue<Boolean, Order>) marketOrders).setThreshold(Boolean.TRUE,
+					(backlog) -> releaseBacklog(backlog, openedAt));
+		} else {
+			marketOrders.setThreshold(Boolean.TRUE);
+			lastOpenReleaseNanos = System.nanoTime() - openedAt;
+		}
+	}
+
+	/**
+	 * Gets the time taken to release the backlog at the last exchange open,
+	 * from the open event to the last backlog order being executed. If
+	 * orders are executed by the execution stage, the time to hand the
+	 * backlog to the stage.
+	 * 
+	 * @return the release time in nanoseconds
+	 */
+	public long getLastOpenReleaseNanos() {
+		return lastOpenReleaseNanos;
+	}
+
+	/**
+	 * Executes the market order backlog released at the open. The backlog is
+	 * partitioned by ticker and the tickers are executed in parallel, each
+	 * ticker's orders one at a time in queue order. Updates to an account are
+	 * serialized by the account's lock, as orders for different tickers may
+	 * be for the same account. Returns once every backlog order has been
+	 * executed. Market orders placed and stop orders triggered meanwhile are
+	 * set aside by the market order queue, without waiting for the release,
+	 * and are executed after the backlog.
+	 * 
+	 * @param backlog
+	 *            - the released orders, in queue order
+	 * @param openedAt
+	 *            - the time of the open event, from System.nanoTime
+	 */
+	private void releaseBacklog(List<Order> backlog, long openedAt) {
+		if (executionStage != null) {
+			try {
+				executionStage.submitAll(backlog);
+			} catch (RejectedExecutionException e) {
+				logger.error(String.format("Execution queue full, orders from a backlog of %d not executed",
+						backlog.size()), e);
+			}
+			lastOpenReleaseNanos = System.nanoTime() - openedAt;
+			return;
+		}
+
+		final Map<String, List<Order>> byTicker = new LinkedHashMap<>();
+		for (Order order : backlog) {
+			List<Order> orders = byTicker.get(order.getStockTicker());
+			if (orders == null) {
+				orders = new ArrayList<>();
+				byTicker.put(order.getStockTicker(), orders);
+			}
+			orders.add(order);
+		}
+
+		final List<Callable<Void>> tasks = new ArrayList<>(byTicker.size());
+		for (List<Order> orders : byTicker.values()) {
+			tasks.add(() -> {
+				for (Order order : orders) {
+					executeBacklogOrder(order);
+				}
+				return null;
+			});
+		}
+
+		final int threads = Math.min(config.getOpenReleaseThreads(), tasks.size());
+		final ExecutorService pool = Executors.newFixedThreadPool(threads, (r) -> {
+			final Thread t = new Thread(r, brokerName + "-open");
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			for (Future<Void> result : pool.invokeAll(tasks)) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn("Interrupted releasing the opening backlog.", e);
+		} catch (ExecutionException e) {
+			logger.error("Failed releasing the opening backlog.", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		lastOpenReleaseNanos = System.nanoTime() - openedAt;
+		logger.info(String.format("Released opening backlog of %d orders for %d tickers in %d ms", backlog.size(),
+				byTicker.size(), TimeUnit.NANOSECONDS.toMillis(lastOpenReleaseNanos)));
+	}
+
+	/**
+	 * Execute an order from the opening backlog, serializing the account
+	 * update with any other updates to the account.
+	 * 
+	 * @param order
+	 *            - the order to execute
+	 */
+	private void executeBacklogOrder(Order order) {
+		logger.info(String.format("Executing - %s", order));
+		int sharePrice = exchg.executeTrade(order);
+		if (orderJournal != null) {
+			orderJournal.removed(order.getOrderId());
+		}
+		synchronized (accountLocks[(order.getAccountId().hashCode() & Integer.MAX_VALUE) % accountLocks.length]) {
+			try {
+				Account account = acctMgr.getAccount(order.getAccountId());
+				account.reflectOrder(order, sharePrice);
+				logger.info(String.format("New balance - %d", account.getBalance()));
+			} catch (AccountException e) {
+				logger.error(String.format("Unable to update account %s", order.getAccountId()));
+			}
+		}
 	}
 
 	@Override
@@ -258,11 +992,22 @@ public class SimpleBroker implements Broker, ExchangeListener {
 		return account;
 	}
 
+	/**
+	 * Gets a ticker's quote. If configured with a quote cache the quote is
+	 * served from the prices received from the exchange, and only requested
+	 * from the exchange if the cached quote is missing or stale.
+	 * 
+	 * @param ticker
+	 *            - the ticker
+	 * @return the quote
+	 * @throws BrokerException
+	 *             if no quote is available for the ticker
+	 */
 	@Override
 	public StockQuote requestQuote(String ticker) throws BrokerException {
 
 		checkInvariants();
-		StockQuote quote = exchg.getQuote(ticker);
+		StockQuote quote = quoteCache != null ? quoteCache.getQuote(ticker) : exchg.getQuote(ticker);
 
 		logger.info("Request order: " + ticker);
 
@@ -276,33 +1021,630 @@ public class SimpleBroker implements Broker, ExchangeListener {
 	@Override
 	public void placeOrder(MarketBuyOrder order) throws BrokerException {
 		checkInvariants();
+		awaitExecutionCapacity();
 		logger.info("Place order market buy order: " + order.getAccountId());
+		if (orderJournal != null) {
+			orderJournal.marketQueued(order);
+		}
 		marketOrders.enqueue(order);
 	}
 
 	@Override
 	public void placeOrder(MarketSellOrder order) throws BrokerException {
 		checkInvariants();
+		awaitExecutionCapacity();
 		logger.info("Place order market sell order: " + order.getAccountId());
+		if (orderJournal != null) {
+			orderJournal.marketQueued(order);
+		}
 		marketOrders.enqueue(order);
 	}
 
 	@Override
 	public final void placeOrder(StopBuyOrder order) throws BrokerException {
 		checkInvariants();
+		awaitExecutionCapacity();
 		logger.info("Place order market buy order: " + order.getAccountId());
-		orderManagerLookup(order.getStockTicker()).queueOrder(order);
+		final OrderManager orderMgr = orderManagerLookup(order.getStockTicker());
+		synchronized (tickerLock(order.getStockTicker())) {
+			checkListed(order.getStockTicker(), orderMgr);
+			queueStopOrder(orderMgr, order);
+			queuePendingExits(order.getStockTicker(), orderMgr);
+		}
 	}
 
 	@Override
 	public final void placeOrder(StopSellOrder order) throws BrokerException {
 		checkInvariants();
+		awaitExecutionCapacity();
 		logger.info("Place order stop sell order: " + order.getAccountId());
-		orderManagerLookup(order.getStockTicker()).queueOrder(order);
+		final OrderManager orderMgr = orderManagerLookup(order.getStockTicker());
+		synchronized (tickerLock(order.getStockTicker())) {
+			checkListed(order.getStockTicker(), orderMgr);
+			queueStopOrder(orderMgr, order);
+			queuePendingExits(order.getStockTicker(), orderMgr);
+		}
+	}
+
+	/**
+	 * Place a one-cancels-other group of stop orders. When any order in the
+	 * group is triggered the others are cancelled.
+	 * 
+	 * @param orders
+	 *            - the stop buy and stop sell orders in the group, all for the
+	 *            same ticker
+	 * @throws BrokerException
+	 *             if the group can't be placed
+	 */
+	public void placeOcoGroup(List<? extends Order> orders) throws BrokerException {
+		checkInvariants();
+		final String ticker = groupTicker(orders, null);
+		logger.info(String.format("Place one-cancels-other group of %d orders for %s", orders.size(), ticker));
+		final AmendableOrderManager orderMgr = amendableOrderManagerLookup(ticker);
+		synchronized (tickerLock(ticker)) {
+			checkListed(ticker, orderMgr);
+			queueGroup(orderMgr, new ArrayList<>(orders));
+			queuePendingExits(ticker, orderMgr);
+		}
+	}
+
+	/**
+	 * Place a bracket order. The exit orders are placed as a one-cancels-other
+	 * group when the entry order is triggered.
+	 * 
+	 * @param entry
+	 *            - the entry stop buy or stop sell order
+	 * @param exits
+	 *            - the exit stop buy and stop sell orders, for the same ticker
+	 *            as the entry order
+	 * @throws BrokerException
+	 *             if the bracket can't be placed
+	 */
+	public void placeBracketOrder(Order entry, List<? extends Order> exits) throws BrokerException {
+		checkInvariants();
+		final String ticker = groupTicker(Arrays.asList(entry), null);
+		groupTicker(exits, ticker);
+		logger.info(String.format("Place bracket order %d with %d exits for %s", entry.getOrderId(), exits.size(),
+				ticker));
+		final AmendableOrderManager orderMgr = amendableOrderManagerLookup(ticker);
+		synchronized (tickerLock(ticker)) {
+			checkListed(ticker, orderMgr);
+			bracketExits.put(entry.getOrderId(), new ArrayList<>(exits));
+			queueStopOrder(orderMgr, entry);
+			queuePendingExits(ticker, orderMgr);
+		}
+	}
+
+	/**
+	 * Place a trailing stop buy. The market buy order is held until the price
+	 * rises by the trail above the lowest price seen since it was placed, and
+	 * is then queued for execution.
+	 * 
+	 * @param order
+	 *            - the order
+	 * @param trail
+	 *            - the trail, in cents, or if percent is true in hundredths
+	 *            of a percent
+	 * @param percent
+	 *            - true if the trail is a percentage
+	 * @throws BrokerException
+	 *             if the order can't be placed
+	 */
+	public final void placeTrailingStop(MarketBuyOrder order, int trail, boolean percent) throws BrokerException {
+		checkInvariants();
+		logger.info("Place trailing stop buy order: " + order.getAccountId());
+		final TrailingStopOrderManager orderMgr = trailingOrderManagerLookup(order.getStockTicker());
+		synchronized (tickerLock(order.getStockTicker())) {
+			checkListed(order.getStockTicker(), orderMgr);
+			if (orderJournal != null) {
+				orderJournal.trailingStopPlaced(order, trail, percent);
+			}
+			orderMgr.queueTrailingStop(order, trail, percent);
+		}
+	}
+
+	/**
+	 * Place a trailing stop sell. The market sell order is held until the
+	 * price falls by the trail below the highest price seen since it was
+	 * placed, and is then queued for execution.
+	 * 
+	 * @param order
+	 *            - the order
+	 * @param trail
+	 *            - the trail, in cents, or if percent is true in hundredths
+	 *            of a percent
+	 * @param percent
+	 *            - true if the trail is a percentage
+	 * @throws BrokerException
+	 *             if the order can't be placed
+	 */
+	public final void placeTrailingStop(MarketSellOrder order, int trail, boolean percent) throws BrokerException {
+		checkInvariants();
+		logger.info("Place trailing stop sell order: " + order.getAccountId());
+		final TrailingStopOrderManager orderMgr = trailingOrderManagerLookup(order.getStockTicker());
+		synchronized (tickerLock(order.getStockTicker())) {
+			checkListed(order.getStockTicker(), orderMgr);
+			if (orderJournal != null) {
+				orderJournal.trailingStopPlaced(order, trail, percent);
+			}
+			orderMgr.queueTrailingStop(order, trail, percent);
+		}
+	}
+
+	/**
+	 * Place a good-till-date stop buy order, which is cancelled if it has not
+	 * been triggered by its expiry time.
+	 * 
+	 * @param order
+	 *            - the order
+	 * @param expiryMillis
+	 *            - the expiry time, in milliseconds since the epoch
+	 * @throws BrokerException
+	 *             if the order can't be placed
+	 */
+	public final void placeOrder(StopBuyOrder order, long expiryMillis) throws BrokerException {
+		amendableOrderManagerLookup(order.getStockTicker());
+		placeOrder(order);
+		scheduleExpiry(order.getOrderId(), expiryMillis);
+	}
+
+	/**
+	 * Place a good-till-date stop sell order, which is cancelled if it has not
+	 * been triggered by its expiry time.
+	 * 
+	 * @param order
+	 *            - the order
+	 * @param expiryMillis
+	 *            - the expiry time, in milliseconds since the epoch
+	 * @throws BrokerException
+	 *             if the order can't be placed
+	 */
+	public final void placeOrder(StopSellOrder order, long expiryMillis) throws BrokerException {
+		amendableOrderManagerLookup(order.getStockTicker());
+		placeOrder(order);
+		scheduleExpiry(order.getOrderId(), expiryMillis);
+	}
+
+	/**
+	 * Cancel the good-till-date stop orders whose expiry time has been
+	 * reached. Called periodically by the broker's expiry timer.
+	 * 
+	 * @param nowMillis
+	 *            - the current time, in milliseconds since the epoch
+	 */
+	public void expireOrders(long nowMillis) {
+		final TimingWheel wheel;
+		synchronized (this) {
+			wheel = expiryWheel;
+		}
+		if (wheel != null) {
+			wheel.advance(nowMillis, this::expireOrder);
+		}
+	}
+
+	/**
+	 * Schedules the expiry of a good-till-date order, starting the expiry
+	 * timer with the first such order. An order whose expiry time has already
+	 * passed is expired immediately.
+	 * 
+	 * @param orderId
+	 *            - the order id
+	 * @param expiryMillis
+	 *            - the expiry time, in milliseconds since the epoch
+	 */
+	private void scheduleExpiry(int orderId, long expiryMillis) {
+		final TimingWheel wheel;
+		synchronized (this) {
+			if (expiryWheel == null) {
+				final long tick = config.getExpiryTickMillis();
+				expiryWheel = new TimingWheel(tick, System.currentTimeMillis());
+				expiryTimer = Executors.newSingleThreadScheduledExecutor((r) -> {
+					final Thread t = new Thread(r, brokerName + "-expiry");
+					t.setDaemon(true);
+					return t;
+				});
+				expiryTimer.scheduleAtFixedRate(() -> expireOrders(System.currentTimeMillis()), tick, tick,
+						TimeUnit.MILLISECONDS);
+			}
+			wheel = expiryWheel;
+		}
+		expiryTimes.put(orderId, expiryMillis);
+		if (orderJournal != null) {
+			orderJournal.expirySet(orderId, expiryMillis);
+		}
+		if (!wheel.schedule(orderId, expiryMillis)) {
+			expireOrder(orderId);
+		}
+	}
+
+	/**
+	 * Cancel an expired order, if it is still resting.
+	 * 
+	 * @param orderId
+	 *            - the order id
+	 */
+	private void expireOrder(int orderId) {
+		final String ticker = stopOrderTickers.get(orderId);
+		if (ticker == null) {
+			expiryTimes.remove(orderId);
+			return;
+		}
+		final Map<String, OrderManager> orderManagers = orderManagerMap;
+		final OrderManager orderMgr = orderManagers == null ? null : orderManagers.get(ticker);
+		if (!(orderMgr instanceof AmendableOrderManager)) {
+			return;
+		}
+		synchronized (tickerLock(ticker)) {
+			if (((AmendableOrderManager) orderMgr).cancel(orderId)) {
+				discardStopOrder(orderId);
+				logger.info("Expired order: " + orderId);
+			}
+		}
+	}
+
+	/**
+	 * Cancel a resting stop order.
+	 * 
+	 * @param orderId
+	 *            - id of the order to cancel
+	 * @throws BrokerException
+	 *             if the order isn't a resting stop order, it may already have
+	 *             been triggered
+	 */
+	public void cancelOrder(int orderId) throws BrokerException {
+		checkInvariants();
+		logger.info("Cancel order: " + orderId);
+		final String ticker = restingOrderTicker(orderId);
+		final AmendableOrderManager orderMgr = amendableOrderManagerLookup(ticker);
+		synchronized (tickerLock(ticker)) {
+			if (!orderMgr.cancel(orderId)) {
+				throw new BrokerException(String.format("Order %d is not a resting stop order", orderId));
+			}
+			discardStopOrder(orderId);
+		}
+	}
+
+	/**
+	 * Change the stop price of a resting stop order. Orders can't be changed,
+	 * so the order is cancelled and replaced by an order for the same account,
+	 * shares and ticker at the new stop price, which takes over the order's
+	 * group, bracket exits and expiry. The replacement is queued as a newly
+	 * placed order, behind the orders already resting at its price, and is
+	 * triggered immediately if the current price has crossed the new stop
+	 * price.
+	 * 
+	 * @param orderId
+	 *            - id of the order to amend
+	 * @param newPrice
+	 *            - the new stop price
+	 * @return the replacement order
+	 * @throws BrokerException
+	 *             if the order isn't a resting stop order, it may already have
+	 *             been triggered
+	 */
+	public Order amendOrder(int orderId, int newPrice) throws BrokerException {
+		checkInvariants();
+		logger.info(String.format("Amend order: %d to %d", orderId, newPrice));
+		final String ticker = restingOrderTicker(orderId);
+		final AmendableOrderManager orderMgr = amendableOrderManagerLookup(ticker);
+		synchronized (tickerLock(ticker)) {
+			final Order resting = orderMgr.getRestingOrder(orderId);
+			if (resting == null || !orderMgr.cancel(orderId)) {
+				throw new BrokerException(String.format("Order %d is not a resting stop order", orderId));
+			}
+			final Order replacement;
+			if (resting instanceof StopBuyOrder) {
+				replacement = new StopBuyOrder(resting.getAccountId(), resting.getNumberOfShares(), ticker,
+						newPrice);
+			} else {
+				replacement = new StopSellOrder(resting.getAccountId(), resting.getNumberOfShares(), ticker,
+						newPrice);
+			}
+			final int newId = replacement.getOrderId();
+
+			// hand the links over before queuing, the replacement may be
+			// triggered as soon as it is queued
+			stopOrderTickers.remove(orderId);
+			final OrderGroup group = orderGroups.remove(orderId);
+			if (group != null) {
+				group.replace(orderId, newId);
+				orderGroups.put(newId, group);
+			}
+			final List<Order> exits = bracketExits.remove(orderId);
+			if (exits != null) {
+				bracketExits.put(newId, exits);
+			}
+			final Long expiryMillis = expiryTimes.remove(orderId);
+			if (orderJournal != null) {
+				orderJournal.replaced(orderId, replacement);
+			}
+
+			queueStopOrder(orderMgr, replacement);
+			if (expiryMillis != null && stopOrderTickers.containsKey(newId)) {
+				scheduleExpiry(newId, expiryMillis);
+			}
+			queuePendingExits(ticker, orderMgr);
+			return replacement;
+		}
 	}
 
+	/**
+	 * Queues a resting stop order with its order manager. Must be called
+	 * under the ticker's lock.
+	 * 
+	 * @param orderMgr
+	 *            - the ticker's order manager
+	 * @param order
+	 *            - the stop buy or stop sell order
+	 */
+	private void queueStopOrder(OrderManager orderMgr, Order order) {
+		stopOrderTickers.put(order.getOrderId(), order.getStockTicker());
+		if (orderJournal != null) {
+			final OrderGroup group = orderGroups.get(order.getOrderId());
+			orderJournal.stopPlaced(order, group == null ? OrderJournal.NO_GROUP : group.id,
+					bracketExits.get(order.getOrderId()));
+		}
+		if (order instanceof StopBuyOrder) {
+			orderMgr.queueOrder((StopBuyOrder) order);
+		} else {
+			orderMgr.queueOrder((StopSellOrder) order);
+		}
+	}
+
+	/**
+	 * Queues a one-cancels-other group. Must be called under the ticker's
+	 * lock. If an order is triggered as soon as it is queued the rest of the
+	 * group is not queued.
+	 * 
+	 * @param orderMgr
+	 *            - the ticker's order manager
+	 * @param orders
+	 *            - the orders in the group
+	 */
+	private void queueGroup(OrderManager orderMgr, List<Order> orders) {
+		final OrderGroup group = new OrderGroup(orders);
+		for (Order order : orders) {
+			orderGroups.put(order.getOrderId(), group);
+		}
+		for (Order order : orders) {
+			if (group.triggered) {
+				orderGroups.remove(order.getOrderId());
+			} else {
+				queueStopOrder(orderMgr, order);
+			}
+		}
+	}
+
+	/**
+	 * Removes a triggered stop order from the resting order indexes, before
+	 * it is moved to the market order queue. Must be called under the
+	 * ticker's lock. If the order is in a one-cancels-other group the rest of
+	 * the group is cancelled, if it is a bracket's entry order the exit orders
+	 * are set aside to be placed once the order manager has finished
+	 * processing the price change, so they see the new price on both sides.
+	 * 
+	 * @param order
+	 *            - the triggered order
+	 * @return false if the order is not to be executed, because another order
+	 *         in its group was triggered first
+	 */
+	private boolean releaseStopOrder(Order order) {
+		final int orderId = order.getOrderId();
+		stopOrderTickers.remove(orderId);
+		expiryTimes.remove(orderId);
+
+		final OrderGroup group = orderGroups.remove(orderId);
+		if (group != null) {
+			if (group.triggered) {
+				logger.info(String.format("Order %d cancelled, its group has been triggered", orderId));
+				if (orderJournal != null) {
+					orderJournal.removed(orderId);
+				}
+				return false;
+			}
+			group.triggered = true;
+			final OrderManager orderMgr = orderManagerMap.get(order.getStockTicker());
+			for (int siblingId : group.orderIds) {
+				if (siblingId != orderId && ((AmendableOrderManager) orderMgr).cancel(siblingId)) {
+					stopOrderTickers.remove(siblingId);
+					orderGroups.remove(siblingId);
+					bracketExits.remove(siblingId);
+					expiryTimes.remove(siblingId);
+					if (orderJournal != null) {
+						orderJournal.removed(siblingId);
+					}
+				}
+			}
+		}
+
+		final List<Order> exits = bracketExits.remove(orderId);
+		if (exits != null) {
+			List<List<Order>> pending = pendingExits.get(order.getStockTicker());
+			if (pending == null) {
+				pending = new ArrayList<>();
+				pendingExits.put(order.getStockTicker(), pending);
+			}
+			pending.add(exits);
+		}
+
+		if (orderJournal != null) {
+			orderJournal.triggered(orderId);
+		}
+		return true;
+	}
+
+	/**
+	 * Places the exit orders of the ticker's triggered brackets. Must be
+	 * called under the ticker's lock.
+	 * 
+	 * @param ticker
+	 *            - the ticker
+	 * @param orderMgr
+	 *            - the ticker's order manager
+	 */
+	private void queuePendingExits(String ticker, OrderManager orderMgr) {
+		if (pendingExits.isEmpty()) {
+			return;
+		}
+		final List<List<Order>> pending = pendingExits.remove(ticker);
+		if (pending != null) {
+			for (List<Order> exits : pending) {
+				queueGroup(orderMgr, exits);
+			}
+		}
+	}
+
+	/**
+	 * Releases a batch of triggered stop orders.
+	 * 
+	 * @param orders
+	 *            - the triggered orders
+	 * @return the orders to be executed
+	 * @see #releaseStopOrder(Order)
+	 */
+	private List<Order> releaseStopOrders(List<? extends Order> orders) {
+		final List<Order> released = new ArrayList<>(orders.size());
+		for (Order order : orders) {
+			if (releaseStopOrder(order)) {
+				released.add(order);
+			}
+		}
+		return released;
+	}
+
+	/**
+	 * Removes a resting stop order which has been cancelled or has expired
+	 * from its group, and discards its bracket exit orders.
+	 * 
+	 * @param orderId
+	 *            - the order id
+	 */
+	private void discardStopOrder(int orderId) {
+		stopOrderTickers.remove(orderId);
+		orderGroups.remove(orderId);
+		bracketExits.remove(orderId);
+		expiryTimes.remove(orderId);
+		if (orderJournal != null) {
+			orderJournal.removed(orderId);
+		}
+	}
+
+	/**
+	 * Checks that orders to be grouped are stop orders for one ticker.
+	 * 
+	 * @param orders
+	 *            - the orders
+	 * @param ticker
+	 *            - the ticker the orders must be for, null for any one ticker
+	 * @return the orders' ticker
+	 * @throws BrokerException
+	 *             if the orders can't be grouped
+	 */
+	private String groupTicker(List<? extends Order> orders, String ticker) throws BrokerException {
+		if (orders.isEmpty()) {
+			throw new BrokerException("An order group must contain at least one order");
+		}
+		for (Order order : orders) {
+			if (!(order instanceof StopBuyOrder || order instanceof StopSellOrder)) {
+				throw new BrokerException(String.format("Order %d is not a stop order", order.getOrderId()));
+			}
+			if (ticker == null) {
+				ticker = order.getStockTicker();
+			} else if (!ticker.equals(order.getStockTicker())) {
+				throw new BrokerException(
+						String.format("Order %d is not for %s, grouped orders must be for one ticker",
+								order.getOrderId(), ticker));
+			}
+		}
+		return ticker;
+	}
+
+	/**
+	 * Gets the ticker of a resting stop order.
+	 * 
+	 * @param orderId
+	 *            - the order id
+	 * @return the ticker
+	 * @throws BrokerException
+	 *             if the order isn't a resting stop order
+	 */
+	private String restingOrderTicker(int orderId) throws BrokerException {
+		final String ticker = stopOrderTickers.get(orderId);
+		if (ticker == null) {
+			throw new BrokerException(String.format("Order %d is not a resting stop order", orderId));
+		}
+		return ticker;
+	}
+
+	/**
+	 * Gets the order manager for a ticker, which must support cancellation
+	 * and amendment.
+	 * 
+	 * @param stockTicker
+	 *            - the ticker
+	 * @return the order manager
+	 * @throws BrokerException
+	 *             if there is no such order manager
+	 */
+	private AmendableOrderManager amendableOrderManagerLookup(String stockTicker) throws BrokerException {
+		final OrderManager orderMgr = orderManagerLookup(stockTicker);
+		if (!(orderMgr instanceof AmendableOrderManager)) {
+			throw new BrokerException(
+					String.format("Orders for %s can not be cancelled or amended", stockTicker));
+		}
+		return (AmendableOrderManager) orderMgr;
+	}
+
+	/**
+	 * Gets the order manager for a ticker, which must support trailing stops.
+	 * 
+	 * @param stockTicker
+	 *            - the ticker
+	 * @return the order manager
+	 * @throws BrokerException
+	 *             if there is no such order manager
+	 */
+	private TrailingStopOrderManager trailingOrderManagerLookup(String stockTicker) throws BrokerException {
+		final OrderManager orderMgr = orderManagerLookup(stockTicker);
+		if (!(orderMgr instanceof TrailingStopOrderManager)) {
+			throw new BrokerException(String.format("Trailing stops are not supported for %s", stockTicker));
+		}
+		return (TrailingStopOrderManager) orderMgr;
+	}
+
+	/**
+	 * Gets the order manager for a ticker, creating it if the ticker is traded
+	 * but has no order manager yet. A created order manager starts at the
+	 * last price seen for the ticker, or if none has been seen at the price
+	 * quoted by the exchange.
+	 * 
+	 * @param stockTicker
+	 *            - the ticker
+	 * @return the order manager
+	 * @throws BrokerException
+	 *             if the ticker isn't traded, or has no order manager and no
+	 *             price
+	 */
 	private OrderManager orderManagerLookup(String stockTicker) throws BrokerException {
 		OrderManager orderMgr = orderManagerMap.get(stockTicker);
+		if (orderMgr == null && tickers.contains(stockTicker)) {
+			synchronized (tickerLock(stockTicker)) {
+				orderMgr = orderManagerMap.get(stockTicker);
+				if (orderMgr == null && tickers.contains(stockTicker)) {
+					Integer price = lastPrices.remove(stockTicker);
+					if (price == null) {
+						final StockQuote quote = exchg.getQuote(stockTicker);
+						if (quote == null) {
+							throw new BrokerException(
+									String.format("Quote not available for '%s'.", stockTicker));
+						}
+						price = quote.getPrice();
+					}
+					orderMgr = newOrderManager(stockTicker, price);
+					orderManagerMap.put(stockTicker, orderMgr);
+				}
+			}
+		}
 		if (orderMgr == null) {
 			throw new BrokerException(String.format("Requested stock, %s does not exist", stockTicker),
 					new AccountException());
@@ -310,10 +1652,109 @@ public class SimpleBroker implements Broker, ExchangeListener {
 		return orderMgr;
 	}
 
+	/**
+	 * Subscribes a listener to a ticker's price updates, in place of polling
+	 * {@link #requestQuote(String)}. The listener is sent the ticker's current
+	 * quote and then each price change, on the broker's quote dispatch
+	 * threads. Each subscription holds only the latest quote not yet taken by
+	 * its listener, a newer price replaces it, so a slow listener receives
+	 * fewer updates rather than delaying the exchange or other listeners.
+	 * Delisting the ticker unsubscribes its listeners.
+	 * 
+	 * @param ticker
+	 *            - the ticker
+	 * @param listener
+	 *            - the listener
+	 * @return true if subscribed, false if the listener was already subscribed
+	 *         to the ticker
+	 * @throws BrokerException
+	 *             if the ticker isn't traded
+	 */
+	public boolean subscribe(String ticker, QuoteListener listener) throws BrokerException {
+		checkInvariants();
+		QuoteSubscriptions subscriptions = quoteSubscriptions;
+		if (subscriptions == null) {
+			synchronized (this) {
+				subscriptions = quoteSubscriptions;
+				if (subscriptions == null) {
+					subscriptions = new QuoteSubscriptions(brokerName, config.getQuoteDispatchThreads());
+					quoteSubscriptions = subscriptions;
+				}
+			}
+		}
+		synchronized (tickerLock(ticker)) {
+			if (!tickers.contains(ticker)) {
+				throw new BrokerException(String.format("Requested stock, %s does not exist", ticker));
+			}
+			// under the ticker's lock so no price change is published between
+			// the current quote and the subscription
+			final StockQuote current = quoteCache != null ? quoteCache.getQuote(ticker) : exchg.getQuote(ticker);
+			return subscriptions.subscribe(ticker, listener, current);
+		}
+	}
+
+	/**
+	 * Unsubscribes a listener from a ticker's price updates. Updates not yet
+	 * taken by the listener are dropped.
+	 * 
+	 * @param ticker
+	 *            - the ticker
+	 * @param listener
+	 *            - the listener
+	 * @return true if unsubscribed, false if the listener wasn't subscribed
+	 */
+	public boolean unsubscribe(String ticker, QuoteListener listener) {
+		final QuoteSubscriptions subscriptions = quoteSubscriptions;
+		return subscriptions != null && subscriptions.unsubscribe(ticker, listener);
+	}
+
+	/**
+	 * Gets the quote subscriptions.
+	 * 
+	 * @return the quote subscriptions, null if nothing has been subscribed to
+	 */
+	public QuoteSubscriptions getQuoteSubscriptions() {
+		return quoteSubscriptions;
+	}
+
+	/**
+	 * Gets the quote cache.
+	 * 
+	 * @return the quote cache, null if quotes are always requested from the
+	 *         exchange
+	 */
+	public QuoteCache getQuoteCache() {
+		return quoteCache;
+	}
+
+	/**
+	 * Gets the number of order managers created, one for each ticker traded
+	 * unless order managers are created lazily.
+	 * 
+	 * @return the number of order managers
+	 */
+	public int getOrderManagerCount() {
+		return orderManagerMap.size();
+	}
+
 	@Override
 	public void close() throws BrokerException {
 
 		exchg.removeExchangeListener(this);
+		synchronized (this) {
+			if (expiryTimer != null) {
+				expiryTimer.shutdownNow();
+			}
+		}
+		if (executionStage != null) {
+			executionStage.close();
+		}
+		if (quoteSubscriptions != null) {
+			quoteSubscriptions.close();
+		}
+		if (orderJournal != null) {
+			orderJournal.close();
+		}
 		try {
 			acctMgr.close();
 		} catch (AccountException e) {
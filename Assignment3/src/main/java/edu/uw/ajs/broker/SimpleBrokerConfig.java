@@ -0,0 +1,395 @@
+package main.java.edu.uw.ajs.broker;
+
+/**
+ * Configuration options for SimpleBroker, as a JavaBean so it may be populated
+ * from the Spring context. The options are read when the broker is
+ * constructed, changing them afterwards has no effect on an existing broker.
+ *
+ * @author chq-alexs
+ */
+public class SimpleBrokerConfig {
+
+	/**
+	 * Use PriceLevelOrderManager rather than SimpleOrderManager
+	 */
+	private boolean priceLevelOrderBook;
+
+	/**
+	 * Create each order manager with its stock's first stop order rather than
+	 * when the broker is constructed
+	 */
+	private boolean lazyOrderManagers;
+
+	/**
+	 * Number of order execution worker lanes, 0 executes orders inline
+	 */
+	private int executionThreads;
+
+	/**
+	 * Number of orders, or batches, queued per execution worker lane before
+	 * callers wait or orders are rejected
+	 */
+	private int executionQueueCapacity = 1024;
+
+	/**
+	 * Behavior when an execution worker lane's queue is full
+	 */
+	private OrderExecutionStage.Backpressure executionBackpressure = OrderExecutionStage.Backpressure.BLOCK;
+
+	/**
+	 * Move and execute triggered orders as batches rather than one at a time
+	 */
+	private boolean batchDispatch;
+
+	/**
+	 * Length of a tick of the good-till-date expiry timing wheel, in
+	 * milliseconds
+	 */
+	private long expiryTickMillis = 1000;
+
+	/**
+	 * Number of threads releasing the market order backlog when the exchange
+	 * opens, 0 releases it serially
+	 */
+	private int openReleaseThreads;
+
+	/**
+	 * Directory of the order journal, null if orders are not journaled
+	 */
+	private String orderJournalDir;
+
+	/**
+	 * Size of the active order journal segment that triggers compaction, in
+	 * bytes
+	 */
+	private long orderJournalCompactBytes = 16L * 1024 * 1024;
+
+	/**
+	 * True to force the order journal records of concurrent callers to disk
+	 * together
+	 */
+	private boolean orderJournalGroupCommit;
+
+	/**
+	 * File the broker's calls are recorded to, null if not recorded
+	 */
+	private String traceFile;
+
+	/**
+	 * Maximum age of a quote served from the broker's quote cache, in
+	 * milliseconds, 0 requests every quote from the exchange
+	 */
+	private long quoteCacheMaxAgeMillis;
+
+	/**
+	 * Number of threads pushing price updates to quote subscribers
+	 */
+	private int quoteDispatchThreads = 1;
+
+	/**
+	 * No parameter constructor, required by JavaBeans.
+	 */
+	public SimpleBrokerConfig() {
+	}
+
+	/**
+	 * Determine if stop orders are to be kept in price-level order books.
+	 *
+	 * @return true if PriceLevelOrderManager is to be used
+	 */
+	public boolean isPriceLevelOrderBook() {
+		return priceLevelOrderBook;
+	}
+
+	/**
+	 * Sets whether stop orders are to be kept in price-level order books.
+	 *
+	 * @param priceLevelOrderBook
+	 *            - true to use PriceLevelOrderManager, false to use
+	 *            SimpleOrderManager
+	 */
+	public void setPriceLevelOrderBook(boolean priceLevelOrderBook) {
+		this.priceLevelOrderBook = priceLevelOrderBook;
+	}
+
+	/**
+	 * Determine if order managers are created with their stock's first stop
+	 * order.
+	 *
+	 * @return true if order managers are created lazily
+	 */
+	public boolean isLazyOrderManagers() {
+		return lazyOrderManagers;
+	}
+
+	/**
+	 * Sets whether order managers are created with their stock's first stop
+	 * order. Lazily the broker is constructed without quoting any stock, and
+	 * only the stocks that are given stop orders hold order queues. An order
+	 * manager is started at the last price the broker has seen for its stock,
+	 * or the exchange's quote if it hasn't seen one.
+	 *
+	 * @param lazyOrderManagers
+	 *            - true to create order managers lazily
+	 */
+	public void setLazyOrderManagers(boolean lazyOrderManagers) {
+		this.lazyOrderManagers = lazyOrderManagers;
+	}
+
+	/**
+	 * Gets the number of order execution worker lanes.
+	 *
+	 * @return the number of worker lanes, 0 if orders are executed inline
+	 */
+	public int getExecutionThreads() {
+		return executionThreads;
+	}
+
+	/**
+	 * Sets the number of order execution worker lanes. If 0 market orders are
+	 * executed on the thread that dispatches them.
+	 *
+	 * @param executionThreads
+	 *            - the number of worker lanes
+	 */
+	public void setExecutionThreads(int executionThreads) {
+		this.executionThreads = executionThreads;
+	}
+
+	/**
+	 * Gets the maximum number of orders queued per execution worker lane.
+	 *
+	 * @return the queue capacity
+	 */
+	public int getExecutionQueueCapacity() {
+		return executionQueueCapacity;
+	}
+
+	/**
+	 * Sets the maximum number of orders queued per execution worker lane.
+	 *
+	 * @param executionQueueCapacity
+	 *            - the queue capacity
+	 */
+	public void setExecutionQueueCapacity(int executionQueueCapacity) {
+		this.executionQueueCapacity = executionQueueCapacity;
+	}
+
+	/**
+	 * Gets the behavior when an execution worker lane's queue is full.
+	 *
+	 * @return the backpressure policy
+	 */
+	public OrderExecutionStage.Backpressure getExecutionBackpressure() {
+		return executionBackpressure;
+	}
+
+	/**
+	 * Sets the behavior when an execution worker lane's queue is full.
+	 *
+	 * @param executionBackpressure
+	 *            - the backpressure policy
+	 */
+	public void setExecutionBackpressure(OrderExecutionStage.Backpressure executionBackpressure) {
+		this.executionBackpressure = executionBackpressure;
+	}
+
+	/**
+	 * Determine if triggered orders are moved and executed as batches.
+	 *
+	 * @return true if orders are dispatched in batches
+	 */
+	public boolean isBatchDispatch() {
+		return batchDispatch;
+	}
+
+	/**
+	 * Sets whether triggered orders are moved and executed as batches. In
+	 * batch mode the stop orders released by a price change are moved to the
+	 * market queue together, in the order they were triggered, and the market
+	 * orders released together are executed together. Accounts are updated
+	 * through the account manager, which writes each account once per batch
+	 * if it defers persistence.
+	 *
+	 * @param batchDispatch
+	 *            - true to dispatch orders in batches
+	 */
+	public void setBatchDispatch(boolean batchDispatch) {
+		this.batchDispatch = batchDispatch;
+	}
+
+	/**
+	 * Gets the length of a tick of the good-till-date expiry timing wheel.
+	 *
+	 * @return the tick length in milliseconds
+	 */
+	public long getExpiryTickMillis() {
+		return expiryTickMillis;
+	}
+
+	/**
+	 * Sets the length of a tick of the good-till-date expiry timing wheel.
+	 * Expired orders are removed once per tick, so an order may rest for up
+	 * to a tick after its expiry time.
+	 *
+	 * @param expiryTickMillis
+	 *            - the tick length in milliseconds
+	 */
+	public void setExpiryTickMillis(long expiryTickMillis) {
+		this.expiryTickMillis = expiryTickMillis;
+	}
+
+	/**
+	 * Gets the number of threads releasing the market order backlog when the
+	 * exchange opens.
+	 *
+	 * @return the number of threads, 0 if the backlog is released serially
+	 */
+	public int getOpenReleaseThreads() {
+		return openReleaseThreads;
+	}
+
+	/**
+	 * Sets the number of threads releasing the market order backlog when the
+	 * exchange opens. The backlog is partitioned by ticker and the tickers
+	 * are executed in parallel, each in queue order. If 0 the backlog is
+	 * dispatched serially like any other market orders.
+	 *
+	 * @param openReleaseThreads
+	 *            - the number of threads
+	 */
+	public void setOpenReleaseThreads(int openReleaseThreads) {
+		this.openReleaseThreads = openReleaseThreads;
+	}
+
+	/**
+	 * Gets the directory of the order journal.
+	 *
+	 * @return the directory, null if orders are not journaled
+	 */
+	public String getOrderJournalDir() {
+		return orderJournalDir;
+	}
+
+	/**
+	 * Sets the directory of the order journal. If set the resting stop
+	 * orders and the market order backlog are journaled, and rebuilt from the
+	 * journal when the broker is created.
+	 *
+	 * @param orderJournalDir
+	 *            - the directory, null if orders are not to be journaled
+	 */
+	public void setOrderJournalDir(String orderJournalDir) {
+		this.orderJournalDir = orderJournalDir;
+	}
+
+	/**
+	 * Gets the size of the active order journal segment that triggers
+	 * compaction.
+	 *
+	 * @return the size in bytes
+	 */
+	public long getOrderJournalCompactBytes() {
+		return orderJournalCompactBytes;
+	}
+
+	/**
+	 * Sets the size of the active order journal segment that triggers
+	 * compaction into a snapshot.
+	 *
+	 * @param orderJournalCompactBytes
+	 *            - the size in bytes
+	 */
+	public void setOrderJournalCompactBytes(long orderJournalCompactBytes) {
+		this.orderJournalCompactBytes = orderJournalCompactBytes;
+	}
+
+	/**
+	 * Gets whether the order journal records of concurrent callers are forced
+	 * to disk together.
+	 *
+	 * @return true if group commit is used
+	 */
+	public boolean isOrderJournalGroupCommit() {
+		return orderJournalGroupCommit;
+	}
+
+	/**
+	 * Sets whether the order journal records of concurrent callers are forced
+	 * to disk together rather than one at a time. Either way an order is on
+	 * disk before the call that placed it returns.
+	 *
+	 * @param orderJournalGroupCommit
+	 *            - true to use group commit
+	 */
+	public void setOrderJournalGroupCommit(boolean orderJournalGroupCommit) {
+		this.orderJournalGroupCommit = orderJournalGroupCommit;
+	}
+
+	/**
+	 * Gets the file the broker's calls are recorded to.
+	 *
+	 * @return the trace file, null if calls are not recorded
+	 */
+	public String getTraceFile() {
+		return traceFile;
+	}
+
+	/**
+	 * Sets the file the broker's calls are recorded to. If set the broker
+	 * factory wraps each broker in a RecordingBroker, the trace can be
+	 * replayed with TraceReplayer.
+	 *
+	 * @param traceFile
+	 *            - the trace file, null if calls are not to be recorded
+	 */
+	public void setTraceFile(String traceFile) {
+		this.traceFile = traceFile;
+	}
+
+	/**
+	 * Gets the maximum age of a quote served from the quote cache.
+	 *
+	 * @return the maximum age in milliseconds, 0 if quotes aren't cached
+	 */
+	public long getQuoteCacheMaxAgeMillis() {
+		return quoteCacheMaxAgeMillis;
+	}
+
+	/**
+	 * Sets the maximum age of a quote served from the quote cache. If set the
+	 * broker keeps the last price of each ticker from the exchange's price
+	 * changes and serves quote requests from it, a ticker without a price
+	 * change within the maximum age is quoted by the exchange.
+	 *
+	 * @param quoteCacheMaxAgeMillis
+	 *            - the maximum age in milliseconds, 0 to request every quote
+	 *            from the exchange
+	 */
+	public void setQuoteCacheMaxAgeMillis(long quoteCacheMaxAgeMillis) {
+		this.quoteCacheMaxAgeMillis = quoteCacheMaxAgeMillis;
+	}
+
+	/**
+	 * Gets the number of threads pushing price updates to quote subscribers.
+	 *
+	 * @return the number of threads
+	 */
+	public int getQuoteDispatchThreads() {
+		return quoteDispatchThreads;
+	}
+
+	/**
+	 * Sets the number of threads pushing price updates to quote subscribers.
+	 * The threads are started with the broker's first subscription. A
+	 * listener holds a thread while it runs, so there should be more threads
+	 * than listeners expected to be slow at once.
+	 *
+	 * @param quoteDispatchThreads
+	 *            - the number of threads, at least 1
+	 */
+	public void setQuoteDispatchThreads(int quoteDispatchThreads) {
+		this.quoteDispatchThreads = quoteDispatchThreads;
+	}
+
+}
@@ -1,5 +1,8 @@
 package main.java.edu.uw.ajs.broker;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -8,18 +11,52 @@ import edu.uw.ext.framework.broker.Broker;
 import edu.uw.ext.framework.broker.BrokerFactory;
 import edu.uw.ext.framework.exchange.StockExchange;
 import main.java.edu.uw.ajs.account.SimpleAccount;
+import main.java.edu.uw.ajs.trace.RecordingBroker;
+import main.java.edu.uw.ajs.trace.TraceWriter;
 
 public class SimpleBrokerFactory implements BrokerFactory {
 
 	/** The logger to be used by this class */
 	private static final Logger logger = LoggerFactory.getLogger(SimpleAccount.class);
 
+	/** The configuration used for the brokers created by this factory */
+	private SimpleBrokerConfig config = new SimpleBrokerConfig();
+
+	/**
+	 * Gets the configuration used for the brokers created by this factory.
+	 * 
+	 * @return the broker configuration
+	 */
+	public SimpleBrokerConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * Sets the configuration used for the brokers created by this factory.
+	 * 
+	 * @param config
+	 *            - the broker configuration
+	 */
+	public void setConfig(SimpleBrokerConfig config) {
+		this.config = config;
+	}
+
 	@Override
 	public Broker newBroker(String name, AccountManager acctMngr, StockExchange exch) {
 
 		logger.info("Name: " + name + " Account Manager: " + " Stock Exchange: " + exch);
 
-		return new SimpleBroker(name, acctMngr, exch);
+		final SimpleBroker broker = new SimpleBroker(name, acctMngr, exch, config);
+
+		if (config.getTraceFile() != null) {
+			try {
+				return new RecordingBroker(broker, exch, new TraceWriter(new FileOutputStream(config.getTraceFile())));
+			} catch (IOException e) {
+				logger.error(String.format("Unable to create trace %s, calls will not be recorded",
+						config.getTraceFile()), e);
+			}
+		}
+		return broker;
 
 	}
 
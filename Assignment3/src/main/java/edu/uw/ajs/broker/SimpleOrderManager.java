@@ -1,17 +1,20 @@
 package main.java.edu.uw.ajs.broker;
 
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import edu.uw.ext.framework.broker.OrderManager;
 import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
 import edu.uw.ext.framework.order.StopBuyOrder;
 import edu.uw.ext.framework.order.StopSellOrder;
 
-public class SimpleOrderManager implements OrderManager {
+public class SimpleOrderManager implements BatchOrderManager, AmendableOrderManager, TrailingStopOrderManager {
 
 	/**
 	 * Logger
@@ -21,13 +24,23 @@ public class SimpleOrderManager implements OrderManager {
 	/**
 	 * Queue for stop buy orders
 	 */
-	protected SimpleOrderQueue<Integer, StopBuyOrder> stopBuyOrderQueue;
+	protected IntPriceOrderQueue<StopBuyOrder> stopBuyOrderQueue;
 
 	/**
 	 * Queue for stop sell orders
 	 * 
 	 */
-	protected SimpleOrderQueue<Integer, StopSellOrder> stopSellOrderQueue;
+	protected IntPriceOrderQueue<StopSellOrder> stopSellOrderQueue;
+
+	/**
+	 * Queue for trailing stop buy orders
+	 */
+	protected TrailingStopQueue<MarketBuyOrder> trailingBuyQueue;
+
+	/**
+	 * Queue for trailing stop sell orders
+	 */
+	protected TrailingStopQueue<MarketSellOrder> trailingSellQueue;
 
 	/**
 	 * Stock ticker symbol
@@ -62,11 +75,13 @@ public class SimpleOrderManager implements OrderManager {
 	public SimpleOrderManager(String stockTickerSymbol, int price) {
 		this.stockTickerSymbol = stockTickerSymbol;
 
-		stopBuyOrderQueue = new SimpleOrderQueue<Integer, StopBuyOrder>(price, (t, o) -> o.getPrice() <= t,
-				Comparator.comparing(StopBuyOrder::getPrice).thenComparing(StopBuyOrder::compareTo));
+		stopBuyOrderQueue = new IntPriceOrderQueue<StopBuyOrder>(price, StopBuyOrder::getPrice, true);
+
+		stopSellOrderQueue = new IntPriceOrderQueue<StopSellOrder>(price, StopSellOrder::getPrice, false);
+
+		trailingBuyQueue = new TrailingStopQueue<>(price, false);
 
-		stopSellOrderQueue = new SimpleOrderQueue<Integer, StopSellOrder>(price, (t, o) -> o.getPrice() >= t,
-				Comparator.comparing(StopSellOrder::getPrice).reversed().thenComparing(StopSellOrder::compareTo));
+		trailingSellQueue = new TrailingStopQueue<>(price, true);
 
 	}
 
@@ -79,6 +94,8 @@ public class SimpleOrderManager implements OrderManager {
 	public void adjustPrice(int price) {
 		stopBuyOrderQueue.setThreshold(price);
 		stopSellOrderQueue.setThreshold(price);
+		trailingBuyQueue.setThreshold(price);
+		trailingSellQueue.setThreshold(price);
 	}
 
 	@Override
@@ -106,4 +123,59 @@ public class SimpleOrderManager implements OrderManager {
 
 	}
 
+	@Override
+	public void setBuyBatchProcessor(Consumer<List<StopBuyOrder>> processor) {
+		stopBuyOrderQueue.setBatchProcessor(processor);
+	}
+
+	@Override
+	public void setSellBatchProcessor(Consumer<List<StopSellOrder>> processor) {
+		stopSellOrderQueue.setBatchProcessor(processor);
+	}
+
+	@Override
+	public boolean cancel(int orderId) {
+		return stopBuyOrderQueue.cancel(orderId) || stopSellOrderQueue.cancel(orderId);
+	}
+
+	@Override
+	public Order getRestingOrder(int orderId) {
+		final StopBuyOrder order = stopBuyOrderQueue.get(orderId);
+		return order != null ? order : stopSellOrderQueue.get(orderId);
+	}
+
+	@Override
+	public List<Order> cancelAll() {
+		final List<Order> orders = new ArrayList<>(stopBuyOrderQueue.clear());
+		orders.addAll(stopSellOrderQueue.clear());
+		return orders;
+	}
+
+	@Override
+	public void queueTrailingStop(MarketBuyOrder order, int trail, boolean percent) {
+		trailingBuyQueue.enqueue(order, trail, percent);
+	}
+
+	@Override
+	public void queueTrailingStop(MarketSellOrder order, int trail, boolean percent) {
+		trailingSellQueue.enqueue(order, trail, percent);
+	}
+
+	@Override
+	public void setTrailingBuyProcessor(Consumer<MarketBuyOrder> processor) {
+		trailingBuyQueue.setOrderProcessor(processor);
+	}
+
+	@Override
+	public void setTrailingSellProcessor(Consumer<MarketSellOrder> processor) {
+		trailingSellQueue.setOrderProcessor(processor);
+	}
+
+	@Override
+	public List<Order> cancelTrailingStops() {
+		final List<Order> orders = new ArrayList<>(trailingBuyQueue.clear());
+		orders.addAll(trailingSellQueue.clear());
+		return orders;
+	}
+
 }
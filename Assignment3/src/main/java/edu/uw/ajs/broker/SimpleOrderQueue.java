@@ -1,6 +1,9 @@
 package main.java.edu.uw.ajs.broker;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.List;
 import java.util.TreeSet;
 import java.util.function.BiPredicate;
 import java.util.function.Consumer;
@@ -8,7 +11,6 @@ import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import edu.uw.ext.framework.broker.OrderQueue;
 import edu.uw.ext.framework.order.Order;
 
 /**
@@ -22,7 +24,7 @@ import edu.uw.ext.framework.order.Order;
  * @param <E>
  *            E - the type of order contained in the queue
  */
-public final class SimpleOrderQueue<T, E extends Order> extends Object implements OrderQueue<T, E> {
+public final class SimpleOrderQueue<T, E extends Order> extends Object implements BatchOrderQueue<T, E> {
 
 	/**
 	 * Logger
@@ -44,6 +46,11 @@ public final class SimpleOrderQueue<T, E extends Order> extends Object implement
 	 */
 	private Consumer<E> orderProcessor;
 
+	/**
+	 * Batch Processor
+	 */
+	private Consumer<List<E>> batchProcessor;
+
 	/**
 	 * Threshold
 	 */
@@ -92,6 +99,14 @@ public final class SimpleOrderQueue<T, E extends Order> extends Object implement
 
 	}
 
+	@Override
+	public void enqueueAll(Collection<? extends E> orders) {
+
+		queue.addAll(orders);
+		dispatchOrders();
+
+	}
+
 	@Override
 	public E dequeue() {
 
@@ -119,6 +134,17 @@ public final class SimpleOrderQueue<T, E extends Order> extends Object implement
 
 		E order;
 
+		if (batchProcessor != null) {
+			final List<E> batch = new ArrayList<>();
+			while ((order = dequeue()) != null) {
+				batch.add(order);
+			}
+			if (!batch.isEmpty()) {
+				batchProcessor.accept(batch);
+			}
+			return;
+		}
+
 		while ((order = dequeue()) != null) {
 			if (orderProcessor != null) {
 				orderProcessor.accept(order);
@@ -134,6 +160,11 @@ public final class SimpleOrderQueue<T, E extends Order> extends Object implement
 
 	}
 
+	@Override
+	public void setBatchProcessor(Consumer<List<E>> proc) {
+		this.batchProcessor = proc;
+	}
+
 	@Override
 	public final void setThreshold(T threshold) {
 		this.threshold = threshold;
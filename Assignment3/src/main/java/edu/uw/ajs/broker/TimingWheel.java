@@ -0,0 +1,243 @@
+package main.java.edu.uw.ajs.broker;
+
+import java.util.function.IntConsumer;
+
+/**
+ * A hierarchical timing wheel used to expire good-till-date orders. Time is
+ * divided into ticks of a fixed length, the first wheel has a slot for each
+ * of the next 64 ticks, and each further wheel has slots 64 times as wide as
+ * the one below it. Scheduling an order is constant time, it is linked into
+ * the slot for its expiry time on the lowest wheel that reaches it. As time
+ * advances the slots of the higher wheels are cascaded down, and the orders
+ * in the current slot of the first wheel are expired.
+ *
+ * Expiry times beyond the range of the top wheel are held in its furthest
+ * slot and rescheduled each time that slot is cascaded.
+ *
+ * Orders are never expired before their expiry time, and are expired no later
+ * than the first advance at least one tick after it. Orders which are filled
+ * or cancelled are not removed from the wheel, the expiry callback is
+ * expected to ignore orders which are no longer resting.
+ *
+ * @author chq-alexs
+ */
+public final class TimingWheel {
+
+	/**
+	 * Number of bits of the tick count used to select a slot on each wheel
+	 */
+	private static final int WHEEL_BITS = 6;
+
+	/**
+	 * Number of slots on each wheel
+	 */
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+	/**
+	 * Mask selecting a slot
+	 */
+	private static final int SLOT_MASK = WHEEL_SIZE - 1;
+
+	/**
+	 * Number of wheels
+	 */
+	private static final int LEVELS = 4;
+
+	/**
+	 * A scheduled expiry, linked into its slot.
+	 */
+	private static final class Entry {
+		/** The order id */
+		private final int orderId;
+
+		/** The tick on which the order expires */
+		private final long deadlineTick;
+
+		/** The next entry in the slot */
+		private Entry next;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param orderId
+		 *            - the order id
+		 * @param deadlineTick
+		 *            - the tick on which the order expires
+		 */
+		private Entry(final int orderId, final long deadlineTick) {
+			this.orderId = orderId;
+			this.deadlineTick = deadlineTick;
+		}
+	}
+
+	/**
+	 * Length of a tick in milliseconds
+	 */
+	private final long tickMillis;
+
+	/**
+	 * The slots of each wheel
+	 */
+	private final Entry[][] slots = new Entry[LEVELS][WHEEL_SIZE];
+
+	/**
+	 * The current tick
+	 */
+	private long currentTick;
+
+	/**
+	 * Number of scheduled expiries
+	 */
+	private int count;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param tickMillis
+	 *            - length of a tick in milliseconds
+	 * @param startMillis
+	 *            - the current time in milliseconds
+	 */
+	public TimingWheel(long tickMillis, long startMillis) {
+		if (tickMillis <= 0) {
+			throw new IllegalArgumentException("Tick length must be positive.");
+		}
+		this.tickMillis = tickMillis;
+		this.currentTick = Math.floorDiv(startMillis, tickMillis);
+	}
+
+	/**
+	 * Schedules the expiry of an order.
+	 *
+	 * @param orderId
+	 *            - the order id
+	 * @param expiryMillis
+	 *            - the expiry time in milliseconds
+	 * @return false if the expiry time has already been reached, in which case
+	 *         nothing is scheduled
+	 */
+	public synchronized boolean schedule(int orderId, long expiryMillis) {
+		final long deadlineTick = Math.floorDiv(expiryMillis + tickMillis - 1, tickMillis);
+		if (deadlineTick <= currentTick) {
+			return false;
+		}
+
+		insert(new Entry(orderId, deadlineTick));
+		count++;
+		return true;
+	}
+
+	/**
+	 * Advances the wheel to the specified time, expiring the orders whose
+	 * expiry time has been reached. The expiry callback is invoked after the
+	 * wheel has been advanced, so it may schedule further expiries.
+	 *
+	 * @param nowMillis
+	 *            - the current time in milliseconds
+	 * @param expiryProcessor
+	 *            - receives the id of each expired order
+	 */
+	public void advance(long nowMillis, IntConsumer expiryProcessor) {
+		Entry expired = null;
+
+		synchronized (this) {
+			final long targetTick = Math.floorDiv(nowMillis, tickMillis);
+
+			while (currentTick < targetTick) {
+				if (count == 0) {
+					currentTick = targetTick;
+					break;
+				}
+				currentTick++;
+
+				for (int level = LEVELS - 1; level > 0; level--) {
+					if ((currentTick & ((1L << (level * WHEEL_BITS)) - 1)) == 0) {
+						expired = cascade(level, (int) ((currentTick >>> (level * WHEEL_BITS)) & SLOT_MASK),
+								expired);
+					}
+				}
+				expired = cascade(0, (int) (currentTick & SLOT_MASK), expired);
+			}
+		}
+
+		for (Entry entry = expired; entry != null; entry = entry.next) {
+			expiryProcessor.accept(entry.orderId);
+		}
+	}
+
+	/**
+	 * Gets the number of scheduled expiries, including those of orders which
+	 * are no longer resting.
+	 *
+	 * @return the number of scheduled expiries
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * Empties a slot, moving the entries which are due to the expired list and
+	 * rescheduling the rest on the lower wheels.
+	 *
+	 * @param level
+	 *            - the wheel
+	 * @param slot
+	 *            - the slot
+	 * @param expired
+	 *            - the expired list
+	 * @return the new head of the expired list
+	 */
+	private Entry cascade(int level, int slot, Entry expired) {
+		Entry entry = slots[level][slot];
+		slots[level][slot] = null;
+
+		while (entry != null) {
+			final Entry next = entry.next;
+			if (entry.deadlineTick <= currentTick) {
+				entry.next = expired;
+				expired = entry;
+				count--;
+			} else {
+				insert(entry);
+			}
+			entry = next;
+		}
+		return expired;
+	}
+
+	/**
+	 * Links an entry into the slot for its deadline on the lowest wheel that
+	 * reaches it.
+	 *
+	 * @param entry
+	 *            - the entry, due after the current tick
+	 */
+	private void insert(Entry entry) {
+		for (int level = 0; level < LEVELS; level++) {
+			final int shift = level * WHEEL_BITS;
+			final long slot = entry.deadlineTick >>> shift;
+			if (slot - (currentTick >>> shift) < WHEEL_SIZE) {
+				link(level, (int) (slot & SLOT_MASK), entry);
+				return;
+			}
+		}
+
+		final int shift = (LEVELS - 1) * WHEEL_BITS;
+		link(LEVELS - 1, (int) (((currentTick >>> shift) + SLOT_MASK) & SLOT_MASK), entry);
+	}
+
+	/**
+	 * Adds an entry to the front of a slot.
+	 *
+	 * @param level
+	 *            - the wheel
+	 * @param slot
+	 *            - the slot
+	 * @param entry
+	 *            - the entry
+	 */
+	private void link(int level, int slot, Entry entry) {
+		entry.next = slots[level][slot];
+		slots[level][slot] = entry;
+	}
+}
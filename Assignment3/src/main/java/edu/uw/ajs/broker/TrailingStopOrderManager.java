@@ -0,0 +1,71 @@
+package main.java.edu.uw.ajs.broker;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import edu.uw.ext.framework.broker.OrderManager;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * An OrderManager that also holds trailing stop orders. A trailing stop is a
+ * market order held until the price moves against it by its trail, measured
+ * from the best price seen since it was placed, and is then released to its
+ * processor like a triggered stop order.
+ *
+ * @author chq-alexs
+ */
+public interface TrailingStopOrderManager extends OrderManager {
+
+	/**
+	 * Queues a trailing stop buy, released when the price rises by the trail
+	 * above the lowest price seen since it was queued.
+	 *
+	 * @param order
+	 *            - the order to release
+	 * @param trail
+	 *            - the trail, in cents, or if percent is true in hundredths
+	 *            of a percent
+	 * @param percent
+	 *            - true if the trail is a percentage
+	 */
+	void queueTrailingStop(MarketBuyOrder order, int trail, boolean percent);
+
+	/**
+	 * Queues a trailing stop sell, released when the price falls by the trail
+	 * below the highest price seen since it was queued.
+	 *
+	 * @param order
+	 *            - the order to release
+	 * @param trail
+	 *            - the trail, in cents, or if percent is true in hundredths
+	 *            of a percent
+	 * @param percent
+	 *            - true if the trail is a percentage
+	 */
+	void queueTrailingStop(MarketSellOrder order, int trail, boolean percent);
+
+	/**
+	 * Sets the processor for triggered trailing stop buys.
+	 *
+	 * @param processor
+	 *            - the order processor
+	 */
+	void setTrailingBuyProcessor(Consumer<MarketBuyOrder> processor);
+
+	/**
+	 * Sets the processor for triggered trailing stop sells.
+	 *
+	 * @param processor
+	 *            - the order processor
+	 */
+	void setTrailingSellProcessor(Consumer<MarketSellOrder> processor);
+
+	/**
+	 * Cancels every trailing stop, none are released.
+	 *
+	 * @return the cancelled orders
+	 */
+	List<Order> cancelTrailingStops();
+}
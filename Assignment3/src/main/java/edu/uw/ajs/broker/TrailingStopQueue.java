@@ -0,0 +1,450 @@
+package main.java.edu.uw.ajs.broker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * A queue of trailing stop orders for one stock. A trailing sell is triggered
+ * when the price falls a fixed amount, or a percentage, below the highest
+ * price seen since it was placed, a trailing buy when the price rises the
+ * same way above the lowest price seen.
+ *
+ * Rather than re-keying every order on each price change, orders are stored
+ * by their trail relative to a water mark. Orders that share the same water
+ * mark form a cohort, ordered by trail, and the cohorts form a stack with the
+ * oldest (furthest) water mark at the bottom. A price move past the water
+ * marks at the top of the stack merges those cohorts into one at the new
+ * water mark, smaller into larger, so each order is moved a logarithmic
+ * number of times over its life. The cohorts are also indexed by their
+ * nearest stop price, so a price change that triggers nothing costs a single
+ * comparison and one that does only visits the triggered orders.
+ *
+ * Sell prices are held as is and buy prices negated, so both sides track a
+ * high water mark and trigger when the price falls to the stop.
+ *
+ * @author chq-alexs
+ *
+ * @param <E>
+ *            E - the type of order contained in the queue
+ */
+public final class TrailingStopQueue<E extends Order> {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(TrailingStopQueue.class);
+
+	/**
+	 * Basis points in one whole
+	 */
+	private static final long BASIS_POINTS = 10000L;
+
+	/**
+	 * Orders sharing a water mark, ordered by trail.
+	 *
+	 * @param <E>
+	 *            E - the type of order
+	 */
+	private static final class Cohort<E> {
+		/** Creation sequence, orders cohorts with the same stop price */
+		private final long seq;
+
+		/** The water mark */
+		private int mark;
+
+		/** The stop price nearest the water mark, while indexed */
+		private int stop;
+
+		/** Orders with a fixed trail, by trail */
+		private final TreeMap<Integer, ArrayDeque<E>> byAmount = new TreeMap<>();
+
+		/** Orders with a percentage trail, by trail in basis points */
+		private final TreeMap<Integer, ArrayDeque<E>> byBasisPoints = new TreeMap<>();
+
+		/** Number of orders in the cohort */
+		private int size;
+
+		/** The cohort below on the stack, with a further water mark */
+		private Cohort<E> below;
+
+		/** The cohort above on the stack, with a nearer water mark */
+		private Cohort<E> above;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param seq
+		 *            - creation sequence
+		 * @param mark
+		 *            - the water mark
+		 */
+		private Cohort(final long seq, final int mark) {
+			this.seq = seq;
+			this.mark = mark;
+		}
+	}
+
+	/**
+	 * Orders cohorts by stop price, nearest the current price first
+	 */
+	private static final Comparator<Cohort<?>> BY_STOP = Comparator.<Cohort<?>> comparingInt((c) -> -c.stop)
+			.thenComparingLong((c) -> c.seq);
+
+	/**
+	 * True if the queue holds trailing sells, false for trailing buys
+	 */
+	private final boolean sell;
+
+	/**
+	 * Cohorts holding orders, by stop price
+	 */
+	private final TreeSet<Cohort<E>> triggerIndex = new TreeSet<>(BY_STOP);
+
+	/**
+	 * The cohort with the nearest water mark
+	 */
+	private Cohort<E> top;
+
+	/**
+	 * Current price, negated for buys
+	 */
+	private int level;
+
+	/**
+	 * Number of cohorts created
+	 */
+	private long cohortSeq;
+
+	/**
+	 * Number of orders in the queue
+	 */
+	private int size;
+
+	/**
+	 * Order Processor
+	 */
+	private Consumer<E> orderProcessor;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param price
+	 *            - the current price
+	 * @param sell
+	 *            - true for trailing sells, which trail the high, false for
+	 *            trailing buys, which trail the low
+	 */
+	public TrailingStopQueue(int price, boolean sell) {
+		this.sell = sell;
+		this.level = sell ? price : -price;
+	}
+
+	/**
+	 * Adds an order trailing the current price. The order's water mark
+	 * starts at the current price.
+	 *
+	 * @param order
+	 *            - the order
+	 * @param trail
+	 *            - the trailing offset, in cents, or if percent is true in
+	 *            hundredths of a percent of the water mark
+	 * @param percent
+	 *            - true if the trail is a percentage
+	 */
+	public void enqueue(E order, int trail, boolean percent) {
+		if (trail < 0) {
+			throw new IllegalArgumentException("Trail must not be negative.");
+		}
+
+		Cohort<E> cohort = top;
+		if (cohort != null && cohort.mark == level) {
+			triggerIndex.remove(cohort);
+		} else {
+			cohort = new Cohort<>(cohortSeq++, level);
+			push(cohort);
+		}
+
+		add(cohort, percent ? cohort.byBasisPoints : cohort.byAmount, trail, order);
+		size++;
+		index(cohort);
+
+		dispatchOrders();
+	}
+
+	/**
+	 * Sets the current price, moving the water marks it passes and
+	 * dispatching any orders it triggers.
+	 *
+	 * @param price
+	 *            - the new price
+	 */
+	public void setThreshold(int price) {
+		level = sell ? price : -price;
+
+		Cohort<E> merged = null;
+		while (top != null && top.mark <= level) {
+			final Cohort<E> cohort = top;
+			pop();
+			triggerIndex.remove(cohort);
+			merged = merged == null ? cohort : merge(merged, cohort);
+		}
+		if (merged != null) {
+			merged.mark = level;
+			push(merged);
+			index(merged);
+		}
+
+		dispatchOrders();
+	}
+
+	/**
+	 * Gets the current price.
+	 *
+	 * @return the current price
+	 */
+	public int getThreshold() {
+		return sell ? level : -level;
+	}
+
+	/**
+	 * Dispatch the orders triggered at the current price.
+	 */
+	public void dispatchOrders() {
+		if (triggerIndex.isEmpty() || triggerIndex.first().stop < level) {
+			return;
+		}
+
+		final List<E> triggered = new ArrayList<>();
+		while (!triggerIndex.isEmpty() && triggerIndex.first().stop >= level) {
+			final Cohort<E> cohort = triggerIndex.pollFirst();
+			release(cohort, triggered);
+			if (cohort.size == 0) {
+				unlink(cohort);
+			} else {
+				index(cohort);
+			}
+		}
+		size -= triggered.size();
+		logger.debug("Dispatching {} trailing stop order(s)", triggered.size());
+
+		for (E order : triggered) {
+			if (orderProcessor != null) {
+				orderProcessor.accept(order);
+			}
+		}
+	}
+
+	/**
+	 * Sets the processor for triggered orders.
+	 *
+	 * @param proc
+	 *            - the order processor
+	 */
+	public void setOrderProcessor(Consumer<E> proc) {
+		this.orderProcessor = proc;
+	}
+
+	/**
+	 * Gets the number of orders in the queue.
+	 *
+	 * @return the number of orders
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes every order from the queue.
+	 *
+	 * @return the removed orders, in no particular order
+	 */
+	public List<E> clear() {
+		final List<E> orders = new ArrayList<>(size);
+		for (Cohort<E> cohort = top; cohort != null; cohort = cohort.below) {
+			for (ArrayDeque<E> trail : cohort.byAmount.values()) {
+				orders.addAll(trail);
+			}
+			for (ArrayDeque<E> trail : cohort.byBasisPoints.values()) {
+				orders.addAll(trail);
+			}
+		}
+		top = null;
+		triggerIndex.clear();
+		size = 0;
+		return orders;
+	}
+
+	/**
+	 * Moves the orders in a cohort triggered at the current price to a list.
+	 *
+	 * @param cohort
+	 *            - the cohort, not indexed
+	 * @param triggered
+	 *            - receives the triggered orders
+	 */
+	private void release(Cohort<E> cohort, List<E> triggered) {
+		final long drop = (long) cohort.mark - level;
+
+		Map.Entry<Integer, ArrayDeque<E>> entry;
+		while ((entry = cohort.byAmount.firstEntry()) != null && entry.getKey() <= drop) {
+			cohort.byAmount.pollFirstEntry();
+			triggered.addAll(entry.getValue());
+			cohort.size -= entry.getValue().size();
+		}
+		while ((entry = cohort.byBasisPoints.firstEntry()) != null
+				&& percentOffset(cohort.mark, entry.getKey()) <= drop) {
+			cohort.byBasisPoints.pollFirstEntry();
+			triggered.addAll(entry.getValue());
+			cohort.size -= entry.getValue().size();
+		}
+	}
+
+	/**
+	 * Merges two cohorts, moving the orders of the smaller into the larger.
+	 *
+	 * @param a
+	 *            - a cohort, not on the stack or indexed
+	 * @param b
+	 *            - another cohort, not on the stack or indexed
+	 * @return the merged cohort
+	 */
+	private Cohort<E> merge(Cohort<E> a, Cohort<E> b) {
+		final Cohort<E> into = a.size >= b.size ? a : b;
+		final Cohort<E> from = into == a ? b : a;
+
+		for (Map.Entry<Integer, ArrayDeque<E>> entry : from.byAmount.entrySet()) {
+			addAll(into, into.byAmount, entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<Integer, ArrayDeque<E>> entry : from.byBasisPoints.entrySet()) {
+			addAll(into, into.byBasisPoints, entry.getKey(), entry.getValue());
+		}
+		return into;
+	}
+
+	/**
+	 * Adds an order to a cohort.
+	 *
+	 * @param cohort
+	 *            - the cohort
+	 * @param trails
+	 *            - the cohort's orders of the order's trail type
+	 * @param trail
+	 *            - the order's trail
+	 * @param order
+	 *            - the order
+	 */
+	private void add(Cohort<E> cohort, TreeMap<Integer, ArrayDeque<E>> trails, int trail, E order) {
+		ArrayDeque<E> orders = trails.get(trail);
+		if (orders == null) {
+			orders = new ArrayDeque<>();
+			trails.put(trail, orders);
+		}
+		orders.add(order);
+		cohort.size++;
+	}
+
+	/**
+	 * Adds the orders with one trail to a cohort.
+	 *
+	 * @param cohort
+	 *            - the cohort
+	 * @param trails
+	 *            - the cohort's orders of the orders' trail type
+	 * @param trail
+	 *            - the orders' trail
+	 * @param orders
+	 *            - the orders
+	 */
+	private void addAll(Cohort<E> cohort, TreeMap<Integer, ArrayDeque<E>> trails, int trail, ArrayDeque<E> orders) {
+		final ArrayDeque<E> existing = trails.get(trail);
+		if (existing == null) {
+			trails.put(trail, orders);
+		} else {
+			existing.addAll(orders);
+		}
+		cohort.size += orders.size();
+	}
+
+	/**
+	 * Computes a cohort's nearest stop price and adds it to the trigger index.
+	 *
+	 * @param cohort
+	 *            - the cohort, not indexed
+	 */
+	private void index(Cohort<E> cohort) {
+		long offset = Long.MAX_VALUE;
+		if (!cohort.byAmount.isEmpty()) {
+			offset = cohort.byAmount.firstKey();
+		}
+		if (!cohort.byBasisPoints.isEmpty()) {
+			offset = Math.min(offset, percentOffset(cohort.mark, cohort.byBasisPoints.firstKey()));
+		}
+		cohort.stop = (int) Math.max(Integer.MIN_VALUE, cohort.mark - offset);
+		triggerIndex.add(cohort);
+	}
+
+	/**
+	 * Computes a percentage trail in cents.
+	 *
+	 * @param mark
+	 *            - the water mark
+	 * @param basisPoints
+	 *            - the trail in hundredths of a percent
+	 * @return the trail in cents
+	 */
+	private static long percentOffset(int mark, int basisPoints) {
+		return Math.abs((long) mark) * basisPoints / BASIS_POINTS;
+	}
+
+	/**
+	 * Pushes a cohort on the top of the stack.
+	 *
+	 * @param cohort
+	 *            - the cohort
+	 */
+	private void push(Cohort<E> cohort) {
+		cohort.below = top;
+		cohort.above = null;
+		if (top != null) {
+			top.above = cohort;
+		}
+		top = cohort;
+	}
+
+	/**
+	 * Removes the top cohort from the stack.
+	 */
+	private void pop() {
+		unlink(top);
+	}
+
+	/**
+	 * Removes a cohort from the stack.
+	 *
+	 * @param cohort
+	 *            - the cohort
+	 */
+	private void unlink(Cohort<E> cohort) {
+		if (cohort.above == null) {
+			top = cohort.below;
+		} else {
+			cohort.above.below = cohort.below;
+		}
+		if (cohort.below != null) {
+			cohort.below.above = cohort.above;
+		}
+		cohort.above = null;
+		cohort.below = null;
+	}
+}
@@ -7,10 +7,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.springframework.beans.BeansException;
-import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
+import main.java.edu.uw.ajs.account.BeanProvider;
 
 
 /**
@@ -134,9 +134,8 @@ public final class AccountSer {
      */
     public static Account read(final InputStream in) throws AccountException {
         final DataInputStream din = new DataInputStream(in);
-        try (ClassPathXmlApplicationContext appContext =
-            new ClassPathXmlApplicationContext("context.xml")) {
-            final Account acct = appContext.getBean(Account.class);
+        try {
+            final Account acct = BeanProvider.getBean(Account.class);
 
             acct.setName(din.readUTF());
             acct.setPasswordHash(readByteArray(din));
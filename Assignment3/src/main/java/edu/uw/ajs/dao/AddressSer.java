@@ -6,10 +6,10 @@ import java.io.OutputStream;
 import java.util.Properties;
 
 import org.springframework.beans.BeansException;
-import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.Address;
+import main.java.edu.uw.ajs.account.BeanProvider;
 
 
 /**
@@ -93,11 +93,10 @@ public final class AddressSer {
      */
     public static Address read(final InputStream in) throws AccountException {
         final Properties props = new Properties();
-        try (ClassPathXmlApplicationContext appContext =
-            new ClassPathXmlApplicationContext("context.xml")) {
+        try {
             props.load(in);
     
-            final Address addr = appContext.getBean(Address.class);
+            final Address addr = BeanProvider.getBean(Address.class);
             addr.setStreetAddress(props.getProperty(STREET_ADDRESS_PROP_NAME));
             addr.setCity(props.getProperty(STREET_CITY_PROP_NAME));
             addr.setState(props.getProperty(STREET_STATE_PROP_NAME));
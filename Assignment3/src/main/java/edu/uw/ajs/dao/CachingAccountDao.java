@@ -0,0 +1,471 @@
+package main.java.edu.uw.ajs.dao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * An AccountDao that keeps recently used accounts in memory in front of
+ * another AccountDao. The cache holds at most a fixed number of accounts,
+ * evicting the least recently used account when full.
+ *
+ * Updates are written back: setAccount marks the cached account dirty and
+ * dirty accounts are written to the underlying DAO when they are evicted, on
+ * each flush interval, on flush and on close. A flush interval of 0 or less
+ * writes each update through to the underlying DAO immediately.
+ *
+ * The cache is guarded by this object's monitor, which is never held while
+ * reading from or writing to the underlying DAO, so cache hits don't wait on
+ * I/O. The underlying DAO is accessed under a separate lock, one call at a
+ * time, so writes of an account reach it in the order they were made. An
+ * evicted dirty account is held until it has been written, and lookups are
+ * satisfied from it until then.
+ *
+ * Accounts are cached by reference, callers share the cached instance.
+ *
+ * @author chq-alexs
+ */
+public final class CachingAccountDao implements AccountDao {
+
+	/** The logger for this class */
+	private static final Logger logger = LoggerFactory.getLogger(CachingAccountDao.class);
+
+	/**
+	 * A cached account and its dirty state.
+	 */
+	private static final class CacheEntry {
+		/** The cached account */
+		private Account account;
+
+		/** True if the account has changes not yet written to the DAO */
+		private boolean dirty;
+
+		/** Incremented on each update, to detect updates made during a write */
+		private long version;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param account
+		 *            the cached account
+		 * @param dirty
+		 *            true if the account has unwritten changes
+		 */
+		private CacheEntry(final Account account, final boolean dirty) {
+			this.account = account;
+			this.dirty = dirty;
+		}
+	}
+
+	/** The DAO the accounts are read from and written to */
+	private final AccountDao delegate;
+
+	/** The maximum number of accounts to cache */
+	private final int maxAccounts;
+
+	/** The cached accounts, in least to most recently used order */
+	private final LinkedHashMap<String, CacheEntry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** Dirty accounts evicted from the cache and not yet written, by name */
+	private final Map<String, CacheEntry> evicted = new HashMap<>();
+
+	/** Serializes access to the underlying DAO, taken before the monitor */
+	private final Object ioLock = new Object();
+
+	/** Performs the periodic flush, null if writing through */
+	private final ScheduledExecutorService flusher;
+
+	/** Number of lookups satisfied from the cache */
+	private long hitCount;
+
+	/** Number of lookups requiring a read from the underlying DAO */
+	private long missCount;
+
+	/** Number of accounts evicted from the cache */
+	private long evictionCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param delegate
+	 *            the DAO the accounts are read from and written to
+	 * @param maxAccounts
+	 *            the maximum number of accounts to cache
+	 * @param flushIntervalMillis
+	 *            the interval between writes of dirty accounts, 0 or less to
+	 *            write each update immediately
+	 */
+	public CachingAccountDao(final AccountDao delegate, final int maxAccounts, final long flushIntervalMillis) {
+		if (maxAccounts < 1) {
+			throw new IllegalArgumentException(String.format("Invalid cache size, %d", maxAccounts));
+		}
+		this.delegate = delegate;
+		this.maxAccounts = maxAccounts;
+
+		if (flushIntervalMillis > 0) {
+			flusher = Executors.newSingleThreadScheduledExecutor((r) -> {
+				final Thread t = new Thread(r, "account-cache-flush");
+				t.setDaemon(true);
+				return t;
+			});
+			flusher.scheduleWithFixedDelay(() -> {
+				try {
+					flush();
+				} catch (final AccountException ex) {
+					logger.warn("Periodic flush of cached accounts failed.", ex);
+				}
+			}, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+		} else {
+			flusher = null;
+		}
+	}
+
+	/**
+	 * Lookup an account, reading it from the underlying DAO if it is not
+	 * cached.
+	 *
+	 * @param accountName
+	 *            the name of the desired account
+	 *
+	 * @return the account if located otherwise null
+	 */
+	public Account getAccount(final String accountName) {
+		Account account = lookup(accountName, false);
+		if (account != null) {
+			return account;
+		}
+
+		synchronized (ioLock) {
+			account = lookup(accountName, true);
+			if (account != null) {
+				return account;
+			}
+
+			account = delegate.getAccount(accountName);
+			if (account == null) {
+				return null;
+			}
+			synchronized (this) {
+				final CacheEntry entry = cache.get(accountName);
+				if (entry != null) {
+					return entry.account;
+				}
+				cache.put(accountName, new CacheEntry(account, false));
+				evict();
+			}
+			writeEvicted();
+		}
+		return account;
+	}
+
+	/**
+	 * Adds or updates an account. The account is written to the underlying
+	 * DAO on the next flush, or immediately if writing through.
+	 *
+	 * @param account
+	 *            the account to add/update
+	 *
+	 * @exception AccountException
+	 *                if operation fails
+	 */
+	public void setAccount(final Account account) throws AccountException {
+		if (flusher == null) {
+			synchronized (ioLock) {
+				delegate.setAccount(account);
+				synchronized (this) {
+					update(account, false);
+				}
+			}
+			return;
+		}
+
+		final boolean evictedDirty;
+		synchronized (this) {
+			evictedDirty = update(account, true);
+		}
+		if (evictedDirty) {
+			writeEvicted();
+		}
+	}
+
+	/**
+	 * Remove the account from the cache and the underlying DAO.
+	 *
+	 * @param accountName
+	 *            the name of the account to remove
+	 *
+	 * @exception AccountException
+	 *                if operation fails
+	 */
+	public void deleteAccount(final String accountName) throws AccountException {
+		synchronized (ioLock) {
+			synchronized (this) {
+				cache.remove(accountName);
+				evicted.remove(accountName);
+			}
+			delegate.deleteAccount(accountName);
+		}
+	}
+
+	/**
+	 * Remove all accounts, discarding any unwritten changes. This is primarily
+	 * available to facilitate testing.
+	 *
+	 * @exception AccountException
+	 *                if operation fails
+	 */
+	public void reset() throws AccountException {
+		synchronized (ioLock) {
+			synchronized (this) {
+				cache.clear();
+				evicted.clear();
+			}
+			delegate.reset();
+		}
+	}
+
+	/**
+	 * Writes all dirty accounts to the underlying DAO. The dirty accounts are
+	 * collected under the monitor and written outside it, an account updated
+	 * while it is being written stays dirty.
+	 *
+	 * @exception AccountException
+	 *                if any account can't be written, accounts that failed
+	 *                remain dirty
+	 */
+	public void flush() throws AccountException {
+		synchronized (ioLock) {
+			AccountException failure = writeEvicted();
+
+			final List<CacheEntry> dirty = new ArrayList<>();
+			final List<Account> accounts = new ArrayList<>();
+			final long[] versions;
+			synchronized (this) {
+				for (CacheEntry entry : cache.values()) {
+					if (entry.dirty) {
+						dirty.add(entry);
+						accounts.add(entry.account);
+					}
+				}
+				versions = new long[dirty.size()];
+				for (int i = 0; i < versions.length; i++) {
+					versions[i] = dirty.get(i).version;
+				}
+			}
+
+			for (int i = 0; i < versions.length; i++) {
+				final Account account = accounts.get(i);
+				try {
+					delegate.setAccount(account);
+				} catch (final AccountException ex) {
+					logger.warn(String.format("Unable to write cached account '%s'", account.getName()), ex);
+					failure = ex;
+					continue;
+				}
+				synchronized (this) {
+					final CacheEntry entry = dirty.get(i);
+					if (entry.version == versions[i]) {
+						entry.dirty = false;
+					}
+				}
+			}
+
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Flushes the dirty accounts and closes the underlying DAO.
+	 *
+	 * @exception AccountException
+	 *                if the accounts can't be written or the DAO can't be
+	 *                closed
+	 */
+	public void close() throws AccountException {
+		if (flusher != null) {
+			flusher.shutdown();
+		}
+		synchronized (ioLock) {
+			try {
+				flush();
+			} finally {
+				synchronized (this) {
+					cache.clear();
+					evicted.clear();
+				}
+				delegate.close();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of lookups satisfied from the cache.
+	 *
+	 * @return the hit count
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Gets the number of lookups requiring a read from the underlying DAO.
+	 *
+	 * @return the miss count
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Gets the number of accounts evicted from the cache.
+	 *
+	 * @return the eviction count
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Gets the number of accounts currently cached.
+	 *
+	 * @return the number of cached accounts
+	 */
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Looks up an account in the cache and the evicted accounts not yet
+	 * written, counting a hit if found.
+	 *
+	 * @param accountName
+	 *            the name of the account
+	 * @param countMiss
+	 *            true to count a miss if not found
+	 * @return the account, null if not cached
+	 */
+	private synchronized Account lookup(final String accountName, final boolean countMiss) {
+		CacheEntry entry = cache.get(accountName);
+		if (entry == null) {
+			entry = evicted.get(accountName);
+		}
+		if (entry != null) {
+			hitCount++;
+			return entry.account;
+		}
+		if (countMiss) {
+			missCount++;
+		}
+		return null;
+	}
+
+	/**
+	 * Caches an updated account, replacing any evicted version not yet
+	 * written, and evicts to keep the cache within its size limit. Must be
+	 * called holding the monitor.
+	 *
+	 * @param account
+	 *            the updated account
+	 * @param dirty
+	 *            true if the update hasn't been written to the DAO
+	 * @return true if a dirty account was evicted and needs writing
+	 */
+	private boolean update(final Account account, final boolean dirty) {
+		evicted.remove(account.getName());
+		CacheEntry entry = cache.get(account.getName());
+		if (entry != null) {
+			entry.account = account;
+			entry.dirty = dirty;
+			entry.version++;
+			return false;
+		}
+		cache.put(account.getName(), new CacheEntry(account, dirty));
+		return evict();
+	}
+
+	/**
+	 * Evicts the least recently used accounts until the cache is within its
+	 * size limit. Dirty accounts are moved to the evicted accounts, to be
+	 * written by {@link #writeEvicted()} once the monitor is released. Must be
+	 * called holding the monitor.
+	 *
+	 * @return true if a dirty account was evicted
+	 */
+	private boolean evict() {
+		boolean evictedDirty = false;
+		final Iterator<Map.Entry<String, CacheEntry>> it = cache.entrySet().iterator();
+		while (cache.size() > maxAccounts && it.hasNext()) {
+			final Map.Entry<String, CacheEntry> eldest = it.next();
+			if (eldest.getValue().dirty) {
+				evicted.put(eldest.getKey(), eldest.getValue());
+				evictedDirty = true;
+			}
+			it.remove();
+			evictionCount++;
+		}
+		return evictedDirty;
+	}
+
+	/**
+	 * Writes the evicted dirty accounts to the underlying DAO. An account that
+	 * can't be written is returned to the cache, leaving the cache over its
+	 * limit until the next eviction, and an account replaced or deleted in the
+	 * meantime is skipped.
+	 *
+	 * @return the last failure, null if every account was written
+	 */
+	private AccountException writeEvicted() {
+		synchronized (ioLock) {
+			final List<CacheEntry> pending;
+			synchronized (this) {
+				if (evicted.isEmpty()) {
+					return null;
+				}
+				pending = new ArrayList<>(evicted.values());
+			}
+
+			AccountException failure = null;
+			for (CacheEntry entry : pending) {
+				final String name;
+				final Account account;
+				synchronized (this) {
+					name = entry.account.getName();
+					if (evicted.get(name) != entry) {
+						continue;
+					}
+					account = entry.account;
+				}
+				try {
+					delegate.setAccount(account);
+					synchronized (this) {
+						evicted.remove(name, entry);
+					}
+				} catch (final AccountException ex) {
+					logger.warn(String.format("Unable to write evicted account '%s'", name), ex);
+					failure = ex;
+					synchronized (this) {
+						if (evicted.remove(name, entry) && !cache.containsKey(name)) {
+							cache.put(name, entry);
+						}
+					}
+				}
+			}
+			return failure;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package main.java.edu.uw.ajs.dao;
+
+import edu.uw.ext.framework.dao.AccountDao;
+import edu.uw.ext.framework.dao.DaoFactory;
+import edu.uw.ext.framework.dao.DaoFactoryException;
+
+/**
+ * Implementation of DaoFactory that creates a CachingAccountDao in front of
+ * the AccountDao created by another DaoFactory.
+ *
+ * @author chq-alexs
+ */
+public final class CachingDaoFactory implements DaoFactory {
+	/** The factory for the DAO being cached */
+	private DaoFactory delegate;
+
+	/** The maximum number of accounts to cache */
+	private int maxAccounts = 1000;
+
+	/** The interval between writes of dirty accounts, in milliseconds */
+	private long flushIntervalMillis = 1000;
+
+	/**
+	 * Sets the factory used to create the DAO being cached.
+	 *
+	 * @param delegate
+	 *            the factory for the DAO being cached
+	 */
+	public void setDelegate(final DaoFactory delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Sets the maximum number of accounts to cache.
+	 *
+	 * @param maxAccounts
+	 *            the maximum number of accounts
+	 */
+	public void setMaxAccounts(final int maxAccounts) {
+		this.maxAccounts = maxAccounts;
+	}
+
+	/**
+	 * Sets the interval between writes of dirty accounts, 0 or less writes
+	 * each update immediately.
+	 *
+	 * @param flushIntervalMillis
+	 *            the flush interval in milliseconds
+	 */
+	public void setFlushIntervalMillis(final long flushIntervalMillis) {
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	/**
+	 * Instantiates an instance of CachingAccountDao.
+	 *
+	 * @return a new instance of CachingAccountDao
+	 *
+	 * @throws DaoFactoryException
+	 *             if the delegate factory is not set or fails
+	 */
+	public AccountDao getAccountDao() throws DaoFactoryException {
+		if (delegate == null) {
+			throw new DaoFactoryException("No delegate DaoFactory configured for CachingDaoFactory.");
+		}
+		try {
+			return new CachingAccountDao(delegate.getAccountDao(), maxAccounts, flushIntervalMillis);
+		} catch (final IllegalArgumentException ex) {
+			throw new DaoFactoryException("Instantiation of CachingAccountDao failed.", ex);
+		}
+	}
+}
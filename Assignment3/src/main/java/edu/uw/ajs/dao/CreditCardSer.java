@@ -8,10 +8,10 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 
 import org.springframework.beans.BeansException;
-import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.CreditCard;
+import main.java.edu.uw.ajs.account.BeanProvider;
 
 
 /**
@@ -67,9 +67,8 @@ public final class CreditCardSer {
      */
     public static CreditCard read(final InputStream in) throws AccountException {
         final BufferedReader rdr = new BufferedReader(new InputStreamReader(in));
-        try (ClassPathXmlApplicationContext appContext =
-            new ClassPathXmlApplicationContext("context.xml")) {
-            final CreditCard cc = appContext.getBean(CreditCard.class);
+        try {
+            final CreditCard cc = BeanProvider.getBean(CreditCard.class);
             String tmp = null;
 
             tmp = rdr.readLine();
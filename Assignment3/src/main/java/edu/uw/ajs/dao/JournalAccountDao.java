@@ -0,0 +1,563 @@
+package main.java.edu.uw.ajs.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+import edu.uw.ext.framework.dao.AccountDao;
+import main.java.edu.uw.ajs.account.BeanProvider;
+import main.java.edu.uw.ajs.journal.SegmentedLog;
+
+/**
+ * An AccountDao that records every change as a compact binary record appended
+ * to a journal, rather than rewriting the account's files. A balance change is
+ * recorded as a delta, a change to any other account data records the whole
+ * account, and deletions are recorded by name.
+ *
+ * The journal is a SegmentedLog: it is divided into numbered segments,
+ * compacted in the background into snapshots of all accounts, and on startup
+ * the accounts are rebuilt from the latest snapshot and the segments that
+ * follow it, truncating a record left incomplete by a crash.
+ *
+ * A change is forced to disk before the call that made it returns. By default
+ * each record is forced as it is appended, with group commit the records of
+ * concurrent callers are appended without waiting and then forced together,
+ * so each caller still returns only once its own change is durable.
+ *
+ * @author chq-alexs
+ */
+public final class JournalAccountDao implements AccountDao {
+
+	/** The logger for this class */
+	private static final Logger logger = LoggerFactory.getLogger(JournalAccountDao.class);
+
+	/** Record type for a complete account */
+	private static final byte PUT_RECORD = 1;
+
+	/** Record type for a balance change */
+	private static final byte BALANCE_RECORD = 2;
+
+	/** Record type for an account deletion */
+	private static final byte DELETE_RECORD = 3;
+
+	/** Identifies a snapshot file */
+	private static final int SNAPSHOT_MAGIC = 0x4A534E50;
+
+	/**
+	 * The persisted state of an account. Instances are never modified, so
+	 * the account map can be copied for a snapshot without further locking.
+	 */
+	private static final class Entry {
+		/** Encoded account data, excluding the balance */
+		private final byte[] profile;
+
+		/** The account balance */
+		private final int balance;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param profile
+		 *            encoded account data, excluding the balance
+		 * @param balance
+		 *            the account balance
+		 */
+		private Entry(final byte[] profile, final int balance) {
+			this.profile = profile;
+			this.balance = balance;
+		}
+	}
+
+	/** The journal directory */
+	private final File journalDir;
+
+	/** Current state of all accounts, by account name */
+	private final Map<String, Entry> accounts = new HashMap<>();
+
+	/** The journal */
+	private final SegmentedLog log;
+
+	/**
+	 * Creates an instance of this class and rebuilds the accounts from the
+	 * journal, forcing each record to disk as it is appended.
+	 *
+	 * @param journalDir
+	 *            the directory holding the journal
+	 * @param compactThresholdBytes
+	 *            active segment size that triggers compaction
+	 *
+	 * @throws AccountException
+	 *             if the journal can't be read
+	 */
+	public JournalAccountDao(final File journalDir, final long compactThresholdBytes) throws AccountException {
+		this(journalDir, compactThresholdBytes, false);
+	}
+
+	/**
+	 * Creates an instance of this class and rebuilds the accounts from the
+	 * journal.
+	 *
+	 * @param journalDir
+	 *            the directory holding the journal
+	 * @param compactThresholdBytes
+	 *            active segment size that triggers compaction
+	 * @param groupCommit
+	 *            true to force the records of concurrent callers to disk
+	 *            together, false to force each record as it is appended
+	 *
+	 * @throws AccountException
+	 *             if the journal can't be read
+	 */
+	public JournalAccountDao(final File journalDir, final long compactThresholdBytes, final boolean groupCommit)
+			throws AccountException {
+		this.journalDir = journalDir;
+		this.log = new SegmentedLog(journalDir, "journal", SNAPSHOT_MAGIC, compactThresholdBytes, groupCommit);
+
+		recover();
+	}
+
+	/**
+	 * Lookup an account based on username.
+	 *
+	 * @param accountName
+	 *            the name of the desired account
+	 *
+	 * @return the account if located otherwise null
+	 */
+	public synchronized Account getAccount(final String accountName) {
+		final Entry entry = accounts.get(accountName);
+		Account account = null;
+
+		if (entry != null) {
+			try {
+				account = decodeAccount(accountName, entry);
+			} catch (final IOException | BeansException ex) {
+				logger.warn(String.format("Unable to decode account data, '%s'", accountName), ex);
+			} catch (final AccountException ex) {
+				logger.warn(String.format("Unable to process account data for account, '%s'", accountName), ex);
+			}
+		}
+
+		return account;
+	}
+
+	/**
+	 * Adds or updates an account. Only the balance delta is recorded if
+	 * nothing else about the account changed.
+	 *
+	 * @param account
+	 *            the account to add/update
+	 *
+	 * @exception AccountException
+	 *                if operation fails
+	 */
+	public void setAccount(final Account account) throws AccountException {
+		try {
+			final long position;
+			synchronized (this) {
+				final String name = account.getName();
+				final Entry current = accounts.get(name);
+				final byte[] profile = encodeProfile(account);
+				final int balance = account.getBalance();
+
+				if (current != null && Arrays.equals(current.profile, profile)) {
+					if (current.balance != balance) {
+						appendBalance(name, balance - current.balance);
+						accounts.put(name, new Entry(current.profile, balance));
+					}
+				} else {
+					appendPut(name, profile, balance);
+					accounts.put(name, new Entry(profile, balance));
+				}
+				compactIfNeeded();
+				position = log.position();
+			}
+			log.awaitSync(position);
+		} catch (final IOException ex) {
+			throw new AccountException("Unable to store account(s).", ex);
+		}
+	}
+
+	/**
+	 * Remove the account.
+	 *
+	 * @param accountName
+	 *            the name of the account to remove
+	 *
+	 * @exception AccountException
+	 *                if operation fails
+	 */
+	public void deleteAccount(final String accountName) throws AccountException {
+		try {
+			final long position;
+			synchronized (this) {
+				if (accounts.remove(accountName) == null) {
+					return;
+				}
+				appendDelete(accountName);
+				compactIfNeeded();
+				position = log.position();
+			}
+			log.awaitSync(position);
+		} catch (final IOException ex) {
+			throw new AccountException(String.format("Unable to delete account, '%s'", accountName), ex);
+		}
+	}
+
+	/**
+	 * Remove all accounts. This is primarily available to facilitate testing.
+	 *
+	 * @exception AccountException
+	 *                if operation fails
+	 */
+	public synchronized void reset() throws AccountException {
+		try {
+			log.reset();
+			accounts.clear();
+		} catch (final IOException ex) {
+			throw new AccountException("Unable to reset the journal.", ex);
+		}
+	}
+
+	/**
+	 * Close the DAO, waiting for any compaction in progress.
+	 *
+	 * @exception AccountException
+	 *                if the journal can't be closed
+	 */
+	public synchronized void close() throws AccountException {
+		try {
+			log.close();
+		} catch (final IOException ex) {
+			throw new AccountException("Unable to close the journal.", ex);
+		}
+	}
+
+	/**
+	 * Rebuilds the accounts from the latest snapshot and the segments that
+	 * follow it, and opens the last segment for appending.
+	 *
+	 * @throws AccountException
+	 *             if the journal can't be read
+	 */
+	private void recover() throws AccountException {
+		try {
+			log.recover(new SegmentedLog.Replayer() {
+				@Override
+				public void readSnapshot(final DataInputStream in) throws IOException {
+					readAccounts(in);
+				}
+
+				@Override
+				public void applyRecord(final byte[] payload) throws IOException {
+					JournalAccountDao.this.applyRecord(payload);
+				}
+			});
+			logger.info(String.format("Recovered %d account(s) from journal %s", accounts.size(),
+					journalDir.getAbsolutePath()));
+		} catch (final IOException ex) {
+			throw new AccountException("Unable to recover accounts from the journal.", ex);
+		}
+	}
+
+	/**
+	 * Reads the accounts from a snapshot into the account map.
+	 *
+	 * @param in
+	 *            the snapshot contents
+	 *
+	 * @throws IOException
+	 *             if the snapshot can't be read
+	 */
+	private void readAccounts(final DataInputStream in) throws IOException {
+		final int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			final String name = in.readUTF();
+			final byte[] profile = new byte[in.readInt()];
+			in.readFully(profile);
+			accounts.put(name, new Entry(profile, in.readInt()));
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the accounts.
+	 *
+	 * @param snap
+	 *            the stream to write to
+	 * @param state
+	 *            a copy of the accounts
+	 *
+	 * @throws IOException
+	 *             if an error occurs writing to stream
+	 */
+	private static void writeAccounts(final DataOutputStream snap, final Map<String, Entry> state)
+			throws IOException {
+		snap.writeInt(state.size());
+		for (Map.Entry<String, Entry> account : state.entrySet()) {
+			snap.writeUTF(account.getKey());
+			snap.writeInt(account.getValue().profile.length);
+			snap.write(account.getValue().profile);
+			snap.writeInt(account.getValue().balance);
+		}
+		logger.info(String.format("Writing journal snapshot of %d account(s)", state.size()));
+	}
+
+	/**
+	 * Applies a single journal record to the account map.
+	 *
+	 * @param payload
+	 *            the record payload
+	 *
+	 * @throws IOException
+	 *             if the record is malformed
+	 */
+	private void applyRecord(final byte[] payload) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		final byte type = in.readByte();
+		final String name = in.readUTF();
+
+		switch (type) {
+		case PUT_RECORD:
+			final byte[] profile = new byte[in.readInt()];
+			in.readFully(profile);
+			accounts.put(name, new Entry(profile, in.readInt()));
+			break;
+		case BALANCE_RECORD:
+			final Entry current = accounts.get(name);
+			final int delta = in.readInt();
+			if (current != null) {
+				accounts.put(name, new Entry(current.profile, current.balance + delta));
+			} else {
+				logger.warn(String.format("Balance record for unknown account, '%s'", name));
+			}
+			break;
+		case DELETE_RECORD:
+			accounts.remove(name);
+			break;
+		default:
+			throw new IOException(String.format("Unknown journal record type, %d", type));
+		}
+	}
+
+	/**
+	 * Appends a complete account record.
+	 *
+	 * @param name
+	 *            the account name
+	 * @param profile
+	 *            the encoded account data, excluding the balance
+	 * @param balance
+	 *            the account balance
+	 *
+	 * @throws IOException
+	 *             if the record can't be written
+	 */
+	private void appendPut(final String name, final byte[] profile, final int balance) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(profile.length + 32);
+		final DataOutputStream rec = new DataOutputStream(bytes);
+		rec.writeByte(PUT_RECORD);
+		rec.writeUTF(name);
+		rec.writeInt(profile.length);
+		rec.write(profile);
+		rec.writeInt(balance);
+		log.append(bytes.toByteArray());
+	}
+
+	/**
+	 * Appends a balance change record.
+	 *
+	 * @param name
+	 *            the account name
+	 * @param delta
+	 *            the change in the balance
+	 *
+	 * @throws IOException
+	 *             if the record can't be written
+	 */
+	private void appendBalance(final String name, final int delta) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+		final DataOutputStream rec = new DataOutputStream(bytes);
+		rec.writeByte(BALANCE_RECORD);
+		rec.writeUTF(name);
+		rec.writeInt(delta);
+		log.append(bytes.toByteArray());
+	}
+
+	/**
+	 * Appends an account deletion record.
+	 *
+	 * @param name
+	 *            the account name
+	 *
+	 * @throws IOException
+	 *             if the record can't be written
+	 */
+	private void appendDelete(final String name) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+		final DataOutputStream rec = new DataOutputStream(bytes);
+		rec.writeByte(DELETE_RECORD);
+		rec.writeUTF(name);
+		log.append(bytes.toByteArray());
+	}
+
+	/**
+	 * Starts a new segment and a background snapshot of the accounts if the
+	 * active segment has reached the compaction threshold.
+	 *
+	 * @throws IOException
+	 *             if the new segment can't be opened
+	 */
+	private void compactIfNeeded() throws IOException {
+		log.compactIfNeeded(() -> {
+			final Map<String, Entry> state = new HashMap<>(accounts);
+			return (snap) -> writeAccounts(snap, state);
+		});
+	}
+
+	/**
+	 * Encodes all of the account data except the balance.
+	 *
+	 * @param account
+	 *            the account to encode
+	 *
+	 * @return the encoded account data
+	 *
+	 * @throws IOException
+	 *             if the account can't be encoded
+	 */
+	private static byte[] encodeProfile(final Account account) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		final DataOutputStream enc = new DataOutputStream(bytes);
+
+		final byte[] hash = account.getPasswordHash();
+		enc.writeInt(hash == null ? -1 : hash.length);
+		if (hash != null) {
+			enc.write(hash);
+		}
+		writeString(enc, account.getFullName());
+		writeString(enc, account.getPhone());
+		writeString(enc, account.getEmail());
+
+		final Address addr = account.getAddress();
+		enc.writeBoolean(addr != null);
+		if (addr != null) {
+			writeString(enc, addr.getStreetAddress());
+			writeString(enc, addr.getCity());
+			writeString(enc, addr.getState());
+			writeString(enc, addr.getZipCode());
+		}
+
+		final CreditCard card = account.getCreditCard();
+		enc.writeBoolean(card != null);
+		if (card != null) {
+			writeString(enc, card.getIssuer());
+			writeString(enc, card.getType());
+			writeString(enc, card.getHolder());
+			writeString(enc, card.getAccountNumber());
+			writeString(enc, card.getExpirationDate());
+		}
+
+		enc.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decodes an account entry into a new account instance.
+	 *
+	 * @param name
+	 *            the account name
+	 * @param entry
+	 *            the account entry
+	 *
+	 * @return the account
+	 *
+	 * @throws IOException
+	 *             if the entry is malformed
+	 * @throws AccountException
+	 *             if the account data is rejected
+	 */
+	private static Account decodeAccount(final String name, final Entry entry) throws IOException, AccountException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry.profile));
+		final Account account = BeanProvider.getBean(Account.class);
+
+		account.setName(name);
+		final int hashLen = in.readInt();
+		if (hashLen >= 0) {
+			final byte[] hash = new byte[hashLen];
+			in.readFully(hash);
+			account.setPasswordHash(hash);
+		}
+		account.setBalance(entry.balance);
+		account.setFullName(readString(in));
+		account.setPhone(readString(in));
+		account.setEmail(readString(in));
+
+		if (in.readBoolean()) {
+			final Address addr = BeanProvider.getBean(Address.class);
+			addr.setStreetAddress(readString(in));
+			addr.setCity(readString(in));
+			addr.setState(readString(in));
+			addr.setZipCode(readString(in));
+			account.setAddress(addr);
+		}
+
+		if (in.readBoolean()) {
+			final CreditCard card = BeanProvider.getBean(CreditCard.class);
+			card.setIssuer(readString(in));
+			card.setType(readString(in));
+			card.setHolder(readString(in));
+			card.setAccountNumber(readString(in));
+			card.setExpirationDate(readString(in));
+			account.setCreditCard(card);
+		}
+
+		return account;
+	}
+
+	/**
+	 * Writes a nullable string.
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @param s
+	 *            the string to write, may be null
+	 *
+	 * @throws IOException
+	 *             if an error occurs writing to stream
+	 */
+	private static void writeString(final DataOutputStream out, final String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) {
+			out.writeUTF(s);
+		}
+	}
+
+	/**
+	 * Reads a nullable string.
+	 *
+	 * @param in
+	 *            the stream to read from
+	 *
+	 * @return the string, may be null
+	 *
+	 * @throws IOException
+	 *             if an error occurs reading from stream
+	 */
+	private static String readString(final DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
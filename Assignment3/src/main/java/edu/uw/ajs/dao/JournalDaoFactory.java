@@ -0,0 +1,71 @@
+package main.java.edu.uw.ajs.dao;
+
+import java.io.File;
+
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+import edu.uw.ext.framework.dao.DaoFactory;
+import edu.uw.ext.framework.dao.DaoFactoryException;
+
+/**
+ * Implementation of DaoFactory that creates a JournalAccountDao instance.
+ *
+ * @author chq-alexs
+ */
+public final class JournalDaoFactory implements DaoFactory {
+	/** The journal directory */
+	private String directory = "target/journal";
+
+	/** Active segment size that triggers compaction */
+	private long compactThresholdBytes = 4L * 1024 * 1024;
+
+	/** Force the records of concurrent callers to disk together */
+	private boolean groupCommit;
+
+	/**
+	 * Sets the directory holding the journal.
+	 *
+	 * @param directory
+	 *            the journal directory
+	 */
+	public void setDirectory(final String directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Sets the journal segment size that triggers compaction.
+	 *
+	 * @param compactThresholdBytes
+	 *            the segment size in bytes
+	 */
+	public void setCompactThresholdBytes(final long compactThresholdBytes) {
+		this.compactThresholdBytes = compactThresholdBytes;
+	}
+
+	/**
+	 * Sets whether the records of concurrent callers are forced to disk
+	 * together rather than one at a time.
+	 *
+	 * @param groupCommit
+	 *            true to use group commit
+	 */
+	public void setGroupCommit(final boolean groupCommit) {
+		this.groupCommit = groupCommit;
+	}
+
+	/**
+	 * Instantiates an instance of JournalAccountDao.
+	 *
+	 * @return a new instance of JournalAccountDao
+	 *
+	 * @throws DaoFactoryException
+	 *             if instantiation fails
+	 */
+	public AccountDao getAccountDao() throws DaoFactoryException {
+		try {
+			return new JournalAccountDao(new File(directory), compactThresholdBytes, groupCommit);
+		} catch (final AccountException ex) {
+			throw new DaoFactoryException("Instantiation of JournalAccountDao failed.", ex);
+		}
+	}
+}
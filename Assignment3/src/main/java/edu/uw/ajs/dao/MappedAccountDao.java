@@ -0,0 +1,889 @@
+package main.java.edu.uw.ajs.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+import edu.uw.ext.framework.dao.AccountDao;
+import main.java.edu.uw.ajs.account.BeanProvider;
+
+/**
+ * An AccountDao that stores each account in a fixed-width slot of a memory
+ * mapped file. Strings too long to fit in their slot field are stored in a
+ * separate overflow file. An in-memory index maps account names to slots, so
+ * a lookup is a hash lookup and a balance update that changes nothing else is
+ * a single in-place int write, with no file opened or closed per call.
+ *
+ * Each slot carries a checksum covering everything except the balance, which
+ * is an aligned int written atomically. Any other change is written to a
+ * shadow slot: the new slot is written in full with a higher generation and
+ * forced to disk, then the old slot is released with a single byte write. A
+ * write torn by a crash leaves either a new slot that fails its checksum, and
+ * the old slot is kept, or both slots intact, and the higher generation is
+ * kept. On startup every slot is checked and slots with a bad checksum,
+ * overflow references past the end of the overflow file or a superseded
+ * generation are logged and released.
+ *
+ * The overflow space of a released slot is reused for later overflow strings,
+ * and free space at the end of the overflow file is truncated. On startup the
+ * free space is rebuilt from the overflow strings of the slots kept.
+ *
+ * @author chq-alexs
+ */
+public final class MappedAccountDao implements AccountDao {
+
+	/** The logger for this class */
+	private static final Logger logger = LoggerFactory.getLogger(MappedAccountDao.class);
+
+	/** Name of the slot file */
+	private static final String SLOT_FILENAME = "accounts.slots";
+
+	/** Name of the overflow file */
+	private static final String OVERFLOW_FILENAME = "accounts.overflow";
+
+	/** Identifies a slot file */
+	private static final int MAGIC = 0x4A534C54;
+
+	/** Slot file format version */
+	private static final int VERSION = 1;
+
+	/** Size of the slot file header */
+	private static final int HEADER_SIZE = 64;
+
+	/** Header offset of the slot count */
+	private static final int HDR_SLOT_COUNT = 12;
+
+	/** Header offset of the clean shutdown flag */
+	private static final int HDR_CLEAN = 16;
+
+	/** Size of a slot */
+	private static final int SLOT_SIZE = 256;
+
+	/** Slot offset of the slot state */
+	private static final int SLOT_STATE = 0;
+
+	/** Slot offset of the address/credit card present flags */
+	private static final int SLOT_FLAGS = 1;
+
+	/** Slot offset of the password hash length */
+	private static final int SLOT_HASH_LEN = 2;
+
+	/** Slot offset of the checksum */
+	private static final int SLOT_CRC = 4;
+
+	/** Slot offset of the balance */
+	private static final int SLOT_BALANCE = 8;
+
+	/** Slot offset of the password hash */
+	private static final int SLOT_HASH = 12;
+
+	/** Maximum password hash length */
+	private static final int MAX_HASH_LEN = 20;
+
+	/** Slot offset of the first string field */
+	private static final int SLOT_STRINGS = 32;
+
+	/** Size of a string field */
+	private static final int STRING_FIELD_SIZE = 16;
+
+	/** Longest string stored in the slot */
+	private static final int MAX_INLINE = STRING_FIELD_SIZE - 2;
+
+	/** String field tag for a null string */
+	private static final short NULL_TAG = -1;
+
+	/** String field tag for a string stored in the overflow file */
+	private static final short OVERFLOW_TAG = -2;
+
+	/** Slot state of an unused slot */
+	private static final byte FREE = 0;
+
+	/** Slot state of a slot holding an account */
+	private static final byte USED = 1;
+
+	/** Flag indicating the account has an address */
+	private static final byte HAS_ADDRESS = 1;
+
+	/** Flag indicating the account has a credit card */
+	private static final byte HAS_CARD = 2;
+
+	/** Number of string fields per slot */
+	private static final int STRING_COUNT = 13;
+
+	/** Slot offset of the generation, following the string fields */
+	private static final int SLOT_GEN = SLOT_STRINGS + STRING_COUNT * STRING_FIELD_SIZE;
+
+	/** The slot file */
+	private final RandomAccessFile slotFile;
+
+	/** The overflow file */
+	private final FileChannel overflow;
+
+	/** The account index, account name to slot number */
+	private final Map<String, Integer> index = new HashMap<>();
+
+	/** Unused slots */
+	private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+
+	/** The mapped slot file */
+	private MappedByteBuffer slots;
+
+	/** Number of slots in the slot file */
+	private int slotCount;
+
+	/** Highest generation written to a slot */
+	private long generation;
+
+	/** Free space in the overflow file, position to length */
+	private final TreeMap<Long, Integer> overflowFree = new TreeMap<>();
+
+	/** True if a slot has been released since the slots were last forced */
+	private boolean releasePending;
+
+	/**
+	 * Creates an instance of this class, opening or creating the store and
+	 * building the account index.
+	 *
+	 * @param storeDir
+	 *            the directory holding the store
+	 * @param initialSlots
+	 *            the number of slots to allocate for a new store
+	 *
+	 * @throws AccountException
+	 *             if the store can't be opened
+	 */
+	public MappedAccountDao(final File storeDir, final int initialSlots) throws AccountException {
+		if (!storeDir.exists() && !storeDir.mkdirs()) {
+			throw new AccountException(
+					String.format("Unable to create account store directory, %s", storeDir.getAbsolutePath()));
+		}
+
+		try {
+			final File file = new File(storeDir, SLOT_FILENAME);
+			final boolean created = !file.exists() || file.length() == 0;
+			if (!created && file.length() < HEADER_SIZE) {
+				throw new AccountException(String.format("Account store header truncated, %d bytes, %s",
+						file.length(), file.getAbsolutePath()));
+			}
+			slotFile = new RandomAccessFile(file, "rw");
+			overflow = new RandomAccessFile(new File(storeDir, OVERFLOW_FILENAME), "rw").getChannel();
+
+			if (created) {
+				slotCount = Math.max(1, initialSlots);
+				map();
+				slots.putInt(0, MAGIC);
+				slots.putInt(4, VERSION);
+				slots.putInt(8, SLOT_SIZE);
+				slots.putInt(HDR_SLOT_COUNT, slotCount);
+			} else {
+				slotFile.seek(0);
+				if (slotFile.readInt() != MAGIC || slotFile.readInt() != VERSION || slotFile.readInt() != SLOT_SIZE) {
+					throw new AccountException(
+							String.format("Not a compatible account store, %s", file.getAbsolutePath()));
+				}
+				slotCount = slotFile.readInt();
+				final long available = (file.length() - HEADER_SIZE) / SLOT_SIZE;
+				if (slotCount <= 0 || slotCount > available) {
+					logger.warn(String.format("Account store slot count %d inconsistent with file size, using %d",
+							slotCount, available));
+					slotCount = (int) Math.max(1, available);
+				}
+				map();
+				if (slots.get(HDR_CLEAN) == 0) {
+					logger.warn("Account store was not closed cleanly, checking all slots.");
+				}
+			}
+
+			buildIndex();
+			slots.put(HDR_CLEAN, (byte) 0);
+			slots.force();
+		} catch (final IOException ex) {
+			throw new AccountException("Unable to open account store.", ex);
+		}
+	}
+
+	/**
+	 * Lookup an account based on username.
+	 *
+	 * @param accountName
+	 *            the name of the desired account
+	 *
+	 * @return the account if located otherwise null
+	 */
+	public synchronized Account getAccount(final String accountName) {
+		final Integer slot = index.get(accountName);
+		Account account = null;
+
+		if (slot != null) {
+			try {
+				account = readAccount(slotOffset(slot));
+			} catch (final IOException | BeansException ex) {
+				logger.warn(String.format("Unable to access or read account data, '%s'", accountName), ex);
+			} catch (final AccountException ex) {
+				logger.warn(String.format("Unable to process account data for account, '%s'", accountName), ex);
+			}
+		}
+
+		return account;
+	}
+
+	/**
+	 * Adds or updates an account. If only the balance has changed the balance
+	 * is updated in place, otherwise the account is written to a new slot
+	 * before its old slot is released.
+	 *
+	 * @param account
+	 *            the account to add/update
+	 *
+	 * @exception AccountException
+	 *                if operation fails
+	 */
+	public synchronized void setAccount(final Account account) throws AccountException {
+		final byte[] hash = account.getPasswordHash();
+		if (hash != null && hash.length > MAX_HASH_LEN) {
+			throw new AccountException(String.format("Password hash too long for account store, %d", hash.length));
+		}
+
+		try {
+			final String[] strings = accountStrings(account);
+			final byte flags = (byte) ((account.getAddress() != null ? HAS_ADDRESS : 0)
+					| (account.getCreditCard() != null ? HAS_CARD : 0));
+			final Integer existing = index.get(account.getName());
+
+			if (existing != null && sameProfile(slotOffset(existing), flags, hash, strings)) {
+				slots.putInt(slotOffset(existing) + SLOT_BALANCE, account.getBalance());
+				return;
+			}
+
+			final int slot = allocateSlot();
+			try {
+				writeSlot(slotOffset(slot), flags, hash, account.getBalance(), strings);
+			} catch (final IOException ex) {
+				freeSlots.addFirst(slot);
+				throw ex;
+			}
+			if (existing != null) {
+				slots.force();
+				releasePending = false;
+				releaseSlot(existing);
+			}
+			index.put(account.getName(), slot);
+		} catch (final IOException ex) {
+			throw new AccountException("Unable to store account(s).", ex);
+		}
+	}
+
+	/**
+	 * Remove the account.
+	 *
+	 * @param accountName
+	 *            the name of the account to remove
+	 *
+	 * @exception AccountException
+	 *                if operation fails
+	 */
+	public synchronized void deleteAccount(final String accountName) throws AccountException {
+		final Integer slot = index.remove(accountName);
+		if (slot != null) {
+			try {
+				releaseSlot(slot);
+			} catch (final IOException ex) {
+				throw new AccountException(String.format("Unable to delete account, '%s'", accountName), ex);
+			}
+		}
+	}
+
+	/**
+	 * Remove all accounts. This is primarily available to facilitate testing.
+	 *
+	 * @exception AccountException
+	 *                if operation fails
+	 */
+	public synchronized void reset() throws AccountException {
+		index.clear();
+		freeSlots.clear();
+		for (int i = 0; i < slotCount; i++) {
+			slots.put(slotOffset(i) + SLOT_STATE, FREE);
+			freeSlots.addLast(i);
+		}
+		overflowFree.clear();
+		try {
+			overflow.truncate(0);
+		} catch (final IOException ex) {
+			throw new AccountException("Unable to reset account store.", ex);
+		}
+	}
+
+	/**
+	 * Close the DAO, flushing the store to disk.
+	 *
+	 * @exception AccountException
+	 *                if the store can't be closed
+	 */
+	public synchronized void close() throws AccountException {
+		try {
+			overflow.force(true);
+			slots.force();
+			slots.put(HDR_CLEAN, (byte) 1);
+			slots.force();
+			overflow.close();
+			slotFile.close();
+		} catch (final IOException ex) {
+			throw new AccountException("Unable to close account store.", ex);
+		}
+	}
+
+	/**
+	 * Maps the slot file, sized for the current slot count.
+	 *
+	 * @throws IOException
+	 *             if the file can't be mapped
+	 */
+	private void map() throws IOException {
+		final long size = HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+		if (slotFile.length() < size) {
+			slotFile.setLength(size);
+		}
+		slots = slotFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	/**
+	 * Checks every slot and builds the account index, the free slot list and
+	 * the overflow free space. Of two slots holding the same account, left by
+	 * a crash during a shadow write, the higher generation is kept.
+	 *
+	 * @throws IOException
+	 *             if the overflow file can't be read
+	 */
+	private void buildIndex() throws IOException {
+		final long overflowSize = overflow.size();
+		final List<Integer> released = new ArrayList<>();
+
+		for (int i = 0; i < slotCount; i++) {
+			final int offset = slotOffset(i);
+			final byte state = slots.get(offset + SLOT_STATE);
+			if (state == FREE) {
+				freeSlots.addLast(i);
+				continue;
+			}
+
+			String name = null;
+			if (state == USED && slots.getInt(offset + SLOT_CRC) == checksum(offset)
+					&& refsValid(offset, overflowSize)) {
+				name = readString(offset, 0);
+			}
+
+			if (name == null) {
+				logger.warn(String.format("Releasing inconsistent account store slot %d", i));
+				released.add(i);
+				continue;
+			}
+
+			generation = Math.max(generation, slots.getLong(offset + SLOT_GEN));
+			final Integer other = index.get(name);
+			if (other == null) {
+				index.put(name, i);
+			} else if (slots.getLong(slotOffset(other) + SLOT_GEN) < slots.getLong(offset + SLOT_GEN)) {
+				logger.warn(String.format("Releasing superseded slot %d of account '%s'", other, name));
+				released.add(other);
+				index.put(name, i);
+			} else {
+				logger.warn(String.format("Releasing superseded slot %d of account '%s'", i, name));
+				released.add(i);
+			}
+		}
+
+		for (int slot : released) {
+			slots.put(slotOffset(slot) + SLOT_STATE, FREE);
+			freeSlots.addLast(slot);
+		}
+		if (!released.isEmpty()) {
+			slots.force();
+		}
+
+		final TreeMap<Long, Integer> used = new TreeMap<>();
+		for (int slot : index.values()) {
+			for (long[] ref : overflowRefs(slotOffset(slot))) {
+				used.put(ref[0], (int) ref[1]);
+			}
+		}
+		long end = 0;
+		for (Map.Entry<Long, Integer> ref : used.entrySet()) {
+			if (ref.getKey() > end) {
+				overflowFree.put(end, (int) (ref.getKey() - end));
+			}
+			end = Math.max(end, ref.getKey() + ref.getValue());
+		}
+		if (end < overflowSize) {
+			overflow.truncate(end);
+		}
+
+		logger.info(String.format("Indexed %d account(s), %d free slot(s), %d free overflow extent(s)",
+				index.size(), freeSlots.size(), overflowFree.size()));
+	}
+
+	/**
+	 * Gets a free slot, growing the slot file if none are available.
+	 *
+	 * @return the slot number
+	 *
+	 * @throws IOException
+	 *             if the slot file can't be grown
+	 */
+	private int allocateSlot() throws IOException {
+		if (freeSlots.isEmpty()) {
+			final int oldCount = slotCount;
+			slotCount = oldCount * 2;
+			map();
+			slots.putInt(HDR_SLOT_COUNT, slotCount);
+			for (int i = oldCount; i < slotCount; i++) {
+				freeSlots.addLast(i);
+			}
+		}
+		return freeSlots.removeFirst();
+	}
+
+	/**
+	 * Releases a slot, writing its state, and frees its overflow space.
+	 *
+	 * @param slot
+	 *            the slot number
+	 *
+	 * @throws IOException
+	 *             if the overflow file can't be truncated
+	 */
+	private void releaseSlot(final int slot) throws IOException {
+		final int offset = slotOffset(slot);
+		final List<long[]> refs = overflowRefs(offset);
+		slots.put(offset + SLOT_STATE, FREE);
+		freeSlots.addFirst(slot);
+		releasePending = true;
+		for (long[] ref : refs) {
+			freeOverflow(ref[0], (int) ref[1]);
+		}
+	}
+
+	/**
+	 * Gets the overflow strings referenced by a slot.
+	 *
+	 * @param offset
+	 *            the slot offset
+	 *
+	 * @return the position and length of each overflow string
+	 */
+	private List<long[]> overflowRefs(final int offset) {
+		final List<long[]> refs = new ArrayList<>();
+		for (int i = 0; i < STRING_COUNT; i++) {
+			final int pos = offset + SLOT_STRINGS + i * STRING_FIELD_SIZE;
+			if (slots.getShort(pos) == OVERFLOW_TAG && slots.getInt(pos + 2) > 0) {
+				refs.add(new long[] { slots.getLong(pos + 6), slots.getInt(pos + 2) });
+			}
+		}
+		return refs;
+	}
+
+	/**
+	 * Allocates overflow space, reusing the first free extent large enough or
+	 * extending the file. Before free space is reused the released slots are
+	 * forced to disk, so a crash can't leave a released slot that still
+	 * appears in use referring to overwritten strings.
+	 *
+	 * @param len
+	 *            the number of bytes needed
+	 *
+	 * @return the position of the space
+	 *
+	 * @throws IOException
+	 *             if the overflow file size can't be read
+	 */
+	private long allocateOverflow(final int len) throws IOException {
+		for (Map.Entry<Long, Integer> extent : overflowFree.entrySet()) {
+			if (extent.getValue() >= len) {
+				if (releasePending) {
+					slots.force();
+					releasePending = false;
+				}
+				final long position = extent.getKey();
+				overflowFree.remove(position);
+				if (extent.getValue() > len) {
+					overflowFree.put(position + len, extent.getValue() - len);
+					trimOverflow();
+				}
+				return position;
+			}
+		}
+		return overflow.size();
+	}
+
+	/**
+	 * Returns overflow space to the free extents, merging it with adjacent
+	 * free extents and truncating the file if it ends in free space.
+	 *
+	 * @param position
+	 *            the position of the space
+	 * @param len
+	 *            the number of bytes
+	 *
+	 * @throws IOException
+	 *             if the overflow file can't be truncated
+	 */
+	private void freeOverflow(final long position, final int len) throws IOException {
+		long start = position;
+		long end = position + len;
+		final Map.Entry<Long, Integer> before = overflowFree.floorEntry(start);
+		if (before != null && before.getKey() + before.getValue() == start) {
+			start = before.getKey();
+			overflowFree.remove(start);
+		}
+		final Integer after = overflowFree.remove(end);
+		if (after != null) {
+			end += after;
+		}
+		overflowFree.put(start, (int) (end - start));
+		trimOverflow();
+	}
+
+	/**
+	 * Truncates the overflow file if it ends in free space.
+	 *
+	 * @throws IOException
+	 *             if the overflow file can't be truncated
+	 */
+	private void trimOverflow() throws IOException {
+		final Map.Entry<Long, Integer> last = overflowFree.lastEntry();
+		if (last != null && last.getKey() + last.getValue() >= overflow.size()) {
+			overflowFree.remove(last.getKey());
+			overflow.truncate(last.getKey());
+		}
+	}
+
+	/**
+	 * Writes a complete slot, with the next generation. The slot must not be
+	 * in use, an overflow string that can't be written frees the overflow
+	 * space allocated for the slot and leaves the slot unchanged.
+	 *
+	 * @param offset
+	 *            the slot offset
+	 * @param flags
+	 *            the address/credit card present flags
+	 * @param hash
+	 *            the password hash
+	 * @param balance
+	 *            the balance
+	 * @param strings
+	 *            the account strings
+	 *
+	 * @throws IOException
+	 *             if an overflow string can't be written
+	 */
+	private void writeSlot(final int offset, final byte flags, final byte[] hash, final int balance,
+			final String[] strings) throws IOException {
+		final ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+		slot.put(SLOT_STATE, USED);
+		slot.put(SLOT_FLAGS, flags);
+		slot.put(SLOT_HASH_LEN, (byte) (hash == null ? -1 : hash.length));
+		slot.putInt(SLOT_BALANCE, balance);
+		slot.putLong(SLOT_GEN, generation + 1);
+		if (hash != null) {
+			slot.position(SLOT_HASH);
+			slot.put(hash);
+		}
+
+		final List<long[]> written = new ArrayList<>();
+		try {
+			for (int i = 0; i < STRING_COUNT; i++) {
+				final int field = SLOT_STRINGS + i * STRING_FIELD_SIZE;
+				final String s = strings[i];
+				if (s == null) {
+					slot.putShort(field, NULL_TAG);
+					continue;
+				}
+
+				final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+				if (bytes.length <= MAX_INLINE) {
+					slot.putShort(field, (short) bytes.length);
+					slot.position(field + 2);
+					slot.put(bytes);
+				} else {
+					final long position = allocateOverflow(bytes.length);
+					written.add(new long[] { position, bytes.length });
+					final ByteBuffer buf = ByteBuffer.wrap(bytes);
+					while (buf.hasRemaining()) {
+						overflow.write(buf, position + buf.position());
+					}
+					slot.putShort(field, OVERFLOW_TAG);
+					slot.putInt(field + 2, bytes.length);
+					slot.putLong(field + 6, position);
+				}
+			}
+			if (!written.isEmpty()) {
+				overflow.force(false);
+			}
+		} catch (final IOException ex) {
+			for (long[] ref : written) {
+				freeOverflow(ref[0], (int) ref[1]);
+			}
+			throw ex;
+		}
+
+		generation++;
+		slot.clear();
+		slots.position(offset);
+		slots.put(slot);
+		slots.putInt(offset + SLOT_CRC, checksum(offset));
+	}
+
+	/**
+	 * Reads the account held in a slot.
+	 *
+	 * @param offset
+	 *            the slot offset
+	 *
+	 * @return a new account instance
+	 *
+	 * @throws IOException
+	 *             if an overflow string can't be read
+	 * @throws AccountException
+	 *             if the account data is rejected
+	 */
+	private Account readAccount(final int offset) throws IOException, AccountException {
+		final Account account = BeanProvider.getBean(Account.class);
+		account.setName(readString(offset, 0));
+		account.setPasswordHash(readHash(offset));
+		account.setBalance(slots.getInt(offset + SLOT_BALANCE));
+		account.setFullName(readString(offset, 1));
+		account.setPhone(readString(offset, 2));
+		account.setEmail(readString(offset, 3));
+
+		final byte flags = slots.get(offset + SLOT_FLAGS);
+		if ((flags & HAS_ADDRESS) != 0) {
+			final Address addr = BeanProvider.getBean(Address.class);
+			addr.setStreetAddress(readString(offset, 4));
+			addr.setCity(readString(offset, 5));
+			addr.setState(readString(offset, 6));
+			addr.setZipCode(readString(offset, 7));
+			account.setAddress(addr);
+		}
+		if ((flags & HAS_CARD) != 0) {
+			final CreditCard card = BeanProvider.getBean(CreditCard.class);
+			card.setIssuer(readString(offset, 8));
+			card.setType(readString(offset, 9));
+			card.setHolder(readString(offset, 10));
+			card.setAccountNumber(readString(offset, 11));
+			card.setExpirationDate(readString(offset, 12));
+			account.setCreditCard(card);
+		}
+
+		return account;
+	}
+
+	/**
+	 * Determine if a slot already holds the specified account data, ignoring
+	 * the balance.
+	 *
+	 * @param offset
+	 *            the slot offset
+	 * @param flags
+	 *            the address/credit card present flags
+	 * @param hash
+	 *            the password hash
+	 * @param strings
+	 *            the account strings
+	 *
+	 * @return true if only the balance may differ
+	 *
+	 * @throws IOException
+	 *             if an overflow string can't be read
+	 */
+	private boolean sameProfile(final int offset, final byte flags, final byte[] hash, final String[] strings)
+			throws IOException {
+		if (slots.get(offset + SLOT_FLAGS) != flags || !Arrays.equals(readHash(offset), hash)) {
+			return false;
+		}
+		for (int i = 1; i < STRING_COUNT; i++) {
+			if (!Objects.equals(readString(offset, i), strings[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the password hash from a slot.
+	 *
+	 * @param offset
+	 *            the slot offset
+	 *
+	 * @return the password hash, may be null
+	 */
+	private byte[] readHash(final int offset) {
+		final int len = slots.get(offset + SLOT_HASH_LEN);
+		if (len < 0) {
+			return null;
+		}
+		final byte[] hash = new byte[len];
+		for (int i = 0; i < len; i++) {
+			hash[i] = slots.get(offset + SLOT_HASH + i);
+		}
+		return hash;
+	}
+
+	/**
+	 * Reads a string field from a slot.
+	 *
+	 * @param offset
+	 *            the slot offset
+	 * @param field
+	 *            the field number
+	 *
+	 * @return the string, may be null
+	 *
+	 * @throws IOException
+	 *             if an overflow string can't be read
+	 */
+	private String readString(final int offset, final int field) throws IOException {
+		final int pos = offset + SLOT_STRINGS + field * STRING_FIELD_SIZE;
+		final short tag = slots.getShort(pos);
+
+		if (tag == NULL_TAG) {
+			return null;
+		}
+
+		final byte[] bytes;
+		if (tag == OVERFLOW_TAG) {
+			bytes = new byte[slots.getInt(pos + 2)];
+			final ByteBuffer buf = ByteBuffer.wrap(bytes);
+			long position = slots.getLong(pos + 6);
+			while (buf.hasRemaining()) {
+				final int n = overflow.read(buf, position);
+				if (n < 0) {
+					throw new IOException("Unexpected end of account store overflow file.");
+				}
+				position += n;
+			}
+		} else {
+			bytes = new byte[tag];
+			for (int i = 0; i < tag; i++) {
+				bytes[i] = slots.get(pos + 2 + i);
+			}
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Determine if a slot's hash length and string fields are well formed
+	 * and its overflow references lie within the overflow file.
+	 *
+	 * @param offset
+	 *            the slot offset
+	 * @param overflowSize
+	 *            the size of the overflow file
+	 *
+	 * @return true if the references are valid
+	 */
+	private boolean refsValid(final int offset, final long overflowSize) {
+		if (slots.get(offset + SLOT_HASH_LEN) > MAX_HASH_LEN) {
+			return false;
+		}
+		for (int i = 0; i < STRING_COUNT; i++) {
+			final int pos = offset + SLOT_STRINGS + i * STRING_FIELD_SIZE;
+			final short tag = slots.getShort(pos);
+			if (tag == OVERFLOW_TAG) {
+				final int len = slots.getInt(pos + 2);
+				final long position = slots.getLong(pos + 6);
+				if (len < 0 || position < 0 || position + len > overflowSize) {
+					return false;
+				}
+			} else if (tag != NULL_TAG && (tag < 0 || tag > MAX_INLINE)) {
+				return false;
+			}
+		}
+		return slots.getShort(offset + SLOT_STRINGS) != NULL_TAG;
+	}
+
+	/**
+	 * Computes the checksum of a slot, covering everything except the
+	 * checksum and balance.
+	 *
+	 * @param offset
+	 *            the slot offset
+	 *
+	 * @return the checksum
+	 */
+	private int checksum(final int offset) {
+		final CRC32 crc = new CRC32();
+		final ByteBuffer view = slots.duplicate();
+		view.limit(offset + SLOT_CRC).position(offset);
+		crc.update(view);
+		view.limit(offset + SLOT_SIZE).position(offset + SLOT_HASH);
+		crc.update(view);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Gets the file offset of a slot.
+	 *
+	 * @param slot
+	 *            the slot number
+	 *
+	 * @return the slot offset
+	 */
+	private static int slotOffset(final int slot) {
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	/**
+	 * Gets the strings of an account in slot field order.
+	 *
+	 * @param account
+	 *            the account
+	 *
+	 * @return the account strings
+	 */
+	private static String[] accountStrings(final Account account) {
+		final String[] strings = new String[STRING_COUNT];
+		strings[0] = account.getName();
+		strings[1] = account.getFullName();
+		strings[2] = account.getPhone();
+		strings[3] = account.getEmail();
+
+		final Address addr = account.getAddress();
+		if (addr != null) {
+			strings[4] = addr.getStreetAddress();
+			strings[5] = addr.getCity();
+			strings[6] = addr.getState();
+			strings[7] = addr.getZipCode();
+		}
+
+		final CreditCard card = account.getCreditCard();
+		if (card != null) {
+			strings[8] = card.getIssuer();
+			strings[9] = card.getType();
+			strings[10] = card.getHolder();
+			strings[11] = card.getAccountNumber();
+			strings[12] = card.getExpirationDate();
+		}
+		return strings;
+	}
+}
@@ -0,0 +1,57 @@
+package main.java.edu.uw.ajs.dao;
+
+import java.io.File;
+
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+import edu.uw.ext.framework.dao.DaoFactory;
+import edu.uw.ext.framework.dao.DaoFactoryException;
+
+/**
+ * Implementation of DaoFactory that creates a MappedAccountDao instance.
+ *
+ * @author chq-alexs
+ */
+public final class MappedDaoFactory implements DaoFactory {
+	/** The account store directory */
+	private String directory = "target/accountstore";
+
+	/** Number of slots allocated for a new store */
+	private int initialSlots = 1024;
+
+	/**
+	 * Sets the directory holding the account store.
+	 *
+	 * @param directory
+	 *            the account store directory
+	 */
+	public void setDirectory(final String directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Sets the number of slots allocated when a new store is created.
+	 *
+	 * @param initialSlots
+	 *            the initial number of slots
+	 */
+	public void setInitialSlots(final int initialSlots) {
+		this.initialSlots = initialSlots;
+	}
+
+	/**
+	 * Instantiates an instance of MappedAccountDao.
+	 *
+	 * @return a new instance of MappedAccountDao
+	 *
+	 * @throws DaoFactoryException
+	 *             if instantiation fails
+	 */
+	public AccountDao getAccountDao() throws DaoFactoryException {
+		try {
+			return new MappedAccountDao(new File(directory), initialSlots);
+		} catch (final AccountException ex) {
+			throw new DaoFactoryException("Instantiation of MappedAccountDao failed.", ex);
+		}
+	}
+}
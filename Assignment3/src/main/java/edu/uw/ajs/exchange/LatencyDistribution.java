@@ -0,0 +1,84 @@
+package main.java.edu.uw.ajs.exchange;
+
+import java.util.Random;
+
+/**
+ * The distribution of a SimulatedStockExchange's trade execution latency.
+ *
+ * @author chq-alexs
+ */
+public interface LatencyDistribution {
+
+	/**
+	 * Samples a latency.
+	 *
+	 * @param random
+	 *            - the executing thread's random number source
+	 * @return the latency, in nanoseconds
+	 */
+	long sampleNanos(Random random);
+
+	/**
+	 * Trades execute without delay.
+	 *
+	 * @return the distribution
+	 */
+	static LatencyDistribution none() {
+		return (random) -> 0L;
+	}
+
+	/**
+	 * Every trade takes the same time.
+	 *
+	 * @param nanos
+	 *            - the latency, in nanoseconds
+	 * @return the distribution
+	 */
+	static LatencyDistribution fixed(final long nanos) {
+		return (random) -> nanos;
+	}
+
+	/**
+	 * Latencies are uniformly distributed over a range.
+	 *
+	 * @param minNanos
+	 *            - the shortest latency, in nanoseconds
+	 * @param maxNanos
+	 *            - the longest latency, in nanoseconds
+	 * @return the distribution
+	 */
+	static LatencyDistribution uniform(final long minNanos, final long maxNanos) {
+		if (maxNanos < minNanos) {
+			throw new IllegalArgumentException("Maximum latency is less than the minimum.");
+		}
+		final double range = maxNanos - minNanos;
+		return (random) -> minNanos + (long) (random.nextDouble() * range);
+	}
+
+	/**
+	 * Latencies are exponentially distributed, as the waits between
+	 * independent arrivals.
+	 *
+	 * @param meanNanos
+	 *            - the mean latency, in nanoseconds
+	 * @return the distribution
+	 */
+	static LatencyDistribution exponential(final long meanNanos) {
+		return (random) -> (long) (-Math.log(1.0 - random.nextDouble()) * meanNanos);
+	}
+
+	/**
+	 * Latencies are log-normally distributed, a long tail above the median as
+	 * typically measured for network round trips.
+	 *
+	 * @param medianNanos
+	 *            - the median latency, in nanoseconds
+	 * @param sigma
+	 *            - the standard deviation of the latency's logarithm, larger
+	 *            values give a longer tail
+	 * @return the distribution
+	 */
+	static LatencyDistribution logNormal(final long medianNanos, final double sigma) {
+		return (random) -> (long) (medianNanos * Math.exp(sigma * random.nextGaussian()));
+	}
+}
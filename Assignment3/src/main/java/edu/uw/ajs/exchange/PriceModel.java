@@ -0,0 +1,26 @@
+package main.java.edu.uw.ajs.exchange;
+
+import java.util.Random;
+
+/**
+ * Generates the price ticks of a SimulatedStockExchange. A ticker's ticks are
+ * always generated by the same thread, so a model may keep per ticker state
+ * without synchronization.
+ *
+ * @author chq-alexs
+ */
+public interface PriceModel {
+
+	/**
+	 * Generates the next price of a ticker.
+	 *
+	 * @param ticker
+	 *            - the ticker's index in the exchange's ticker list
+	 * @param price
+	 *            - the ticker's current price, in cents
+	 * @param random
+	 *            - the generating thread's random number source
+	 * @return the next price, in cents
+	 */
+	int nextPrice(int ticker, int price, Random random);
+}
@@ -0,0 +1,34 @@
+package main.java.edu.uw.ajs.exchange;
+
+import java.util.Random;
+
+/**
+ * A PriceModel moving each price a uniformly distributed number of cents up
+ * or down on every tick, never below one cent.
+ *
+ * @author chq-alexs
+ */
+public final class RandomWalkPriceModel implements PriceModel {
+
+	/** Largest move of a single tick, in cents */
+	private final int maxStep;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxStep
+	 *            - largest move of a single tick, in cents
+	 */
+	public RandomWalkPriceModel(final int maxStep) {
+		if (maxStep < 1) {
+			throw new IllegalArgumentException("Step must be at least one cent.");
+		}
+		this.maxStep = maxStep;
+	}
+
+	@Override
+	public int nextPrice(final int ticker, final int price, final Random random) {
+		final int step = random.nextInt(2 * maxStep + 1) - maxStep;
+		return Math.max(1, price + step);
+	}
+}
@@ -0,0 +1,50 @@
+package main.java.edu.uw.ajs.exchange;
+
+import java.util.Random;
+
+/**
+ * A PriceModel replaying recorded prices. Each ticker has its own series,
+ * which is replayed from the start again once it is exhausted. The ticker's
+ * current price is ignored.
+ *
+ * @author chq-alexs
+ */
+public final class ReplayPriceModel implements PriceModel {
+
+	/** The price series of each ticker, in cents */
+	private final int[][] series;
+
+	/** Position of each ticker in its series */
+	private final int[] positions;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param series
+	 *            - the price series of each ticker, in cents, indexed as the
+	 *            exchange's ticker list
+	 */
+	public ReplayPriceModel(final int[][] series) {
+		if (series.length == 0) {
+			throw new IllegalArgumentException("At least one price series is required.");
+		}
+		for (int[] prices : series) {
+			if (prices.length == 0) {
+				throw new IllegalArgumentException("Price series must not be empty.");
+			}
+		}
+		this.series = series.clone();
+		this.positions = new int[series.length];
+	}
+
+	@Override
+	public int nextPrice(final int ticker, final int price, final Random random) {
+		if (ticker >= series.length) {
+			throw new IllegalArgumentException(String.format("No price series for ticker %d", ticker));
+		}
+		final int[] prices = series[ticker];
+		final int pos = positions[ticker];
+		positions[ticker] = pos + 1 == prices.length ? 0 : pos + 1;
+		return prices[pos];
+	}
+}
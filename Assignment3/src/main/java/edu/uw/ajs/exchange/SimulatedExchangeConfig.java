@@ -0,0 +1,266 @@
+package main.java.edu.uw.ajs.exchange;
+
+/**
+ * Configuration options for SimulatedStockExchange.
+ *
+ * @author chq-alexs
+ */
+public class SimulatedExchangeConfig {
+
+	/**
+	 * The tickers traded, null to generate tickerCount tickers
+	 */
+	private String[] tickers;
+
+	/**
+	 * Number of tickers generated if no tickers are set
+	 */
+	private int tickerCount = 10;
+
+	/**
+	 * Opening price of every ticker, in cents
+	 */
+	private int openingPrice = 10000;
+
+	/**
+	 * Generates the price ticks
+	 */
+	private PriceModel priceModel = new RandomWalkPriceModel(5);
+
+	/**
+	 * Distribution of the trade execution latency
+	 */
+	private LatencyDistribution executionLatency = LatencyDistribution.none();
+
+	/**
+	 * Number of threads publishing ticks
+	 */
+	private int tickThreads = 1;
+
+	/**
+	 * Total tick rate across all tickers, 0 publishes as fast as possible
+	 */
+	private long ticksPerSecond;
+
+	/**
+	 * Time the exchange stays open in each session, 0 if it stays open
+	 */
+	private long openMillis;
+
+	/**
+	 * Time the exchange stays closed between sessions
+	 */
+	private long closedMillis;
+
+	/**
+	 * Seed of the tick generation
+	 */
+	private long seed = 42;
+
+	/**
+	 * No parameter constructor, required by JavaBeans.
+	 */
+	public SimulatedExchangeConfig() {
+	}
+
+	/**
+	 * Gets the tickers traded.
+	 *
+	 * @return the tickers, null if tickerCount tickers are generated
+	 */
+	public String[] getTickers() {
+		return tickers == null ? null : tickers.clone();
+	}
+
+	/**
+	 * Sets the tickers traded.
+	 *
+	 * @param tickers
+	 *            - the tickers, null to generate tickerCount tickers
+	 */
+	public void setTickers(String[] tickers) {
+		this.tickers = tickers == null ? null : tickers.clone();
+	}
+
+	/**
+	 * Gets the number of tickers generated if no tickers are set.
+	 *
+	 * @return the number of tickers
+	 */
+	public int getTickerCount() {
+		return tickerCount;
+	}
+
+	/**
+	 * Sets the number of tickers generated if no tickers are set, named T0,
+	 * T1, ...
+	 *
+	 * @param tickerCount
+	 *            - the number of tickers
+	 */
+	public void setTickerCount(int tickerCount) {
+		this.tickerCount = tickerCount;
+	}
+
+	/**
+	 * Gets the opening price of every ticker.
+	 *
+	 * @return the price in cents
+	 */
+	public int getOpeningPrice() {
+		return openingPrice;
+	}
+
+	/**
+	 * Sets the opening price of every ticker.
+	 *
+	 * @param openingPrice
+	 *            - the price in cents
+	 */
+	public void setOpeningPrice(int openingPrice) {
+		this.openingPrice = openingPrice;
+	}
+
+	/**
+	 * Gets the model generating the price ticks.
+	 *
+	 * @return the price model
+	 */
+	public PriceModel getPriceModel() {
+		return priceModel;
+	}
+
+	/**
+	 * Sets the model generating the price ticks, a random walk or replayed
+	 * prices.
+	 *
+	 * @param priceModel
+	 *            - the price model
+	 */
+	public void setPriceModel(PriceModel priceModel) {
+		this.priceModel = priceModel;
+	}
+
+	/**
+	 * Gets the distribution of the trade execution latency.
+	 *
+	 * @return the latency distribution
+	 */
+	public LatencyDistribution getExecutionLatency() {
+		return executionLatency;
+	}
+
+	/**
+	 * Sets the distribution of the trade execution latency. The thread
+	 * executing a trade is held for a latency sampled from the distribution.
+	 *
+	 * @param executionLatency
+	 *            - the latency distribution
+	 */
+	public void setExecutionLatency(LatencyDistribution executionLatency) {
+		this.executionLatency = executionLatency;
+	}
+
+	/**
+	 * Gets the number of threads publishing ticks.
+	 *
+	 * @return the number of threads
+	 */
+	public int getTickThreads() {
+		return tickThreads;
+	}
+
+	/**
+	 * Sets the number of threads publishing ticks. The tickers are divided
+	 * between the threads, each ticker's ticks are published by one thread
+	 * in order.
+	 *
+	 * @param tickThreads
+	 *            - the number of threads
+	 */
+	public void setTickThreads(int tickThreads) {
+		this.tickThreads = tickThreads;
+	}
+
+	/**
+	 * Gets the total tick rate.
+	 *
+	 * @return ticks per second across all tickers, 0 if ticks are published
+	 *         as fast as possible
+	 */
+	public long getTicksPerSecond() {
+		return ticksPerSecond;
+	}
+
+	/**
+	 * Sets the total tick rate, divided evenly between the tick threads.
+	 *
+	 * @param ticksPerSecond
+	 *            - ticks per second across all tickers, 0 to publish ticks
+	 *            as fast as possible
+	 */
+	public void setTicksPerSecond(long ticksPerSecond) {
+		this.ticksPerSecond = ticksPerSecond;
+	}
+
+	/**
+	 * Gets the time the exchange stays open in each session.
+	 *
+	 * @return the time in milliseconds, 0 if the exchange stays open
+	 */
+	public long getOpenMillis() {
+		return openMillis;
+	}
+
+	/**
+	 * Sets the time the exchange stays open in each session. If set, once
+	 * started the exchange alternates between open sessions and closed
+	 * periods, firing the open and close events.
+	 *
+	 * @param openMillis
+	 *            - the time in milliseconds, 0 to stay open
+	 */
+	public void setOpenMillis(long openMillis) {
+		this.openMillis = openMillis;
+	}
+
+	/**
+	 * Gets the time the exchange stays closed between sessions.
+	 *
+	 * @return the time in milliseconds
+	 */
+	public long getClosedMillis() {
+		return closedMillis;
+	}
+
+	/**
+	 * Sets the time the exchange stays closed between sessions.
+	 *
+	 * @param closedMillis
+	 *            - the time in milliseconds
+	 */
+	public void setClosedMillis(long closedMillis) {
+		this.closedMillis = closedMillis;
+	}
+
+	/**
+	 * Gets the seed of the tick generation.
+	 *
+	 * @return the seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Sets the seed of the tick generation. Ticks published from a single
+	 * thread are reproducible for a given seed.
+	 *
+	 * @param seed
+	 *            - the seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+}
@@ -0,0 +1,491 @@
+package main.java.edu.uw.ajs.exchange;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import edu.uw.ext.framework.exchange.ExchangeListener;
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * An in process StockExchange simulator for load and latency testing. It
+ * generates price ticks from a PriceModel and delivers them to its listeners,
+ * opens and closes on a session schedule, and holds the thread executing a
+ * trade for a latency sampled from a LatencyDistribution. A broker created by
+ * SimpleBrokerFactory with the simulator as its exchange is driven through
+ * its ExchangeListener callbacks exactly as by a real exchange.
+ *
+ * Ticks are published either synchronously by the caller, see
+ * {@link #publishTicks(long)}, or once started by a pool of tick threads.
+ * The tickers are divided between the tick threads so each ticker's ticks are
+ * published in order by one thread, as fast as possible or paced to the
+ * configured rate. Ticks are only published while the exchange is open.
+ *
+ * Trades execute at the ticker's current price, whether or not the exchange
+ * is open.
+ *
+ * @author chq-alexs
+ */
+public final class SimulatedStockExchange implements StockExchange, AutoCloseable {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(SimulatedStockExchange.class);
+
+	/**
+	 * Waits shorter than this are spun rather than parked, in nanoseconds
+	 */
+	private static final long SPIN_NANOS = 50000L;
+
+	/**
+	 * Ticks published between checks of an unpaced tick thread's state
+	 */
+	private static final int TICK_BATCH = 64;
+
+	/**
+	 * Time a tick thread waits between checks while the exchange is closed,
+	 * in nanoseconds
+	 */
+	private static final long CLOSED_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * Time to wait for the tick threads to stop, in milliseconds
+	 */
+	private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+	/**
+	 * The tickers traded
+	 */
+	private final String[] tickers;
+
+	/**
+	 * Index of each ticker in the tickers and prices
+	 */
+	private final Map<String, Integer> tickerIndex = new HashMap<>();
+
+	/**
+	 * The current price of each ticker
+	 */
+	private final AtomicIntegerArray prices;
+
+	/**
+	 * Generates the price ticks
+	 */
+	private final PriceModel priceModel;
+
+	/**
+	 * Distribution of the trade execution latency
+	 */
+	private final LatencyDistribution executionLatency;
+
+	/**
+	 * The exchange configuration
+	 */
+	private final SimulatedExchangeConfig config;
+
+	/**
+	 * Random number source of the synchronously published ticks
+	 */
+	private final Random random;
+
+	/**
+	 * Number of ticks published
+	 */
+	private final LongAdder tickCount = new LongAdder();
+
+	/**
+	 * Number of trades executed
+	 */
+	private final LongAdder tradeCount = new LongAdder();
+
+	/**
+	 * The listeners, replaced as a whole when a listener is added or removed
+	 */
+	private volatile ExchangeListener[] listeners = new ExchangeListener[0];
+
+	/**
+	 * True while the exchange is open
+	 */
+	private volatile boolean open = true;
+
+	/**
+	 * True while the tick threads are to keep publishing
+	 */
+	private volatile boolean running;
+
+	/**
+	 * Next ticker of the synchronously published ticks
+	 */
+	private int nextTicker;
+
+	/**
+	 * The tick threads, null if not started
+	 */
+	private Thread[] tickThreads;
+
+	/**
+	 * Opens and closes the exchange on the session schedule, null if not
+	 * started or the exchange stays open
+	 */
+	private ScheduledExecutorService sessionTimer;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param config
+	 *            - the exchange configuration
+	 */
+	public SimulatedStockExchange(final SimulatedExchangeConfig config) {
+		this.config = config;
+		String[] configured = config.getTickers();
+		if (configured == null) {
+			configured = new String[config.getTickerCount()];
+			for (int i = 0; i < configured.length; i++) {
+				configured[i] = "T" + i;
+			}
+		}
+		if (configured.length == 0) {
+			throw new IllegalArgumentException("At least one ticker is required.");
+		}
+		tickers = configured;
+		prices = new AtomicIntegerArray(tickers.length);
+		for (int i = 0; i < tickers.length; i++) {
+			tickerIndex.put(tickers[i], i);
+			prices.set(i, config.getOpeningPrice());
+		}
+		priceModel = config.getPriceModel();
+		executionLatency = config.getExecutionLatency();
+		random = new Random(config.getSeed());
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public String[] getTickers() {
+		return tickers.clone();
+	}
+
+	@Override
+	public StockQuote getQuote(final String ticker) {
+		final Integer index = tickerIndex.get(ticker);
+		return index == null ? null : new StockQuote(ticker, prices.get(index));
+	}
+
+	@Override
+	public synchronized void addExchangeListener(final ExchangeListener l) {
+		final ExchangeListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+		updated[listeners.length] = l;
+		listeners = updated;
+	}
+
+	@Override
+	public synchronized void removeExchangeListener(final ExchangeListener l) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] == l) {
+				final ExchangeListener[] updated = new ExchangeListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, updated, 0, i);
+				System.arraycopy(listeners, i + 1, updated, i, updated.length - i);
+				listeners = updated;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Executes a trade at the ticker's current price, after the sampled
+	 * execution latency.
+	 *
+	 * @param order
+	 *            - the order to execute
+	 * @return the price the trade executed at, 0 if the ticker isn't traded
+	 */
+	@Override
+	public int executeTrade(final Order order) {
+		final Integer index = tickerIndex.get(order.getStockTicker());
+		if (index == null) {
+			logger.warn(String.format("Order %d for %s not executed, ticker not traded", order.getOrderId(),
+					order.getStockTicker()));
+			return 0;
+		}
+		final long latency = executionLatency.sampleNanos(ThreadLocalRandom.current());
+		if (latency > 0) {
+			awaitNanoTime(System.nanoTime() + latency);
+		}
+		tradeCount.increment();
+		return prices.get(index);
+	}
+
+	/**
+	 * Sets the current price of a ticker, without publishing a tick.
+	 *
+	 * @param ticker
+	 *            - the ticker
+	 * @param price
+	 *            - the new price, in cents
+	 */
+	public void setPrice(final String ticker, final int price) {
+		final Integer index = tickerIndex.get(ticker);
+		if (index == null) {
+			throw new IllegalArgumentException(String.format("Ticker %s not traded", ticker));
+		}
+		prices.set(index, price);
+	}
+
+	/**
+	 * Opens the exchange, firing the opened event if it was closed.
+	 */
+	public void openMarket() {
+		synchronized (this) {
+			if (open) {
+				return;
+			}
+			open = true;
+		}
+		logger.info("Exchange opened");
+		final ExchangeEvent event = ExchangeEvent.newOpenedEvent(this);
+		for (ExchangeListener l : listeners) {
+			l.exchangeOpened(event);
+		}
+	}
+
+	/**
+	 * Closes the exchange, firing the closed event if it was open.
+	 */
+	public void closeMarket() {
+		synchronized (this) {
+			if (!open) {
+				return;
+			}
+			open = false;
+		}
+		logger.info("Exchange closed");
+		final ExchangeEvent event = ExchangeEvent.newClosedEvent(this);
+		for (ExchangeListener l : listeners) {
+			l.exchangeClosed(event);
+		}
+	}
+
+	/**
+	 * Publishes ticks from the calling thread, one ticker after another. Not
+	 * to be used while the tick threads are running. Ticks are published
+	 * whether or not the exchange is open.
+	 *
+	 * @param count
+	 *            - the number of ticks to publish
+	 */
+	public void publishTicks(final long count) {
+		for (long i = 0; i < count; i++) {
+			tick(nextTicker, random);
+			if (++nextTicker == tickers.length) {
+				nextTicker = 0;
+			}
+		}
+		tickCount.add(count);
+	}
+
+	/**
+	 * Starts the tick threads, and the session schedule if configured.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+
+		final int threads = Math.max(1, Math.min(config.getTickThreads(), tickers.length));
+		final long intervalNanos = config.getTicksPerSecond() > 0
+				? Math.max(1L, TimeUnit.SECONDS.toNanos(1) * threads / config.getTicksPerSecond()) : 0L;
+		tickThreads = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int[] owned = new int[(tickers.length - t + threads - 1) / threads];
+			for (int i = 0; i < owned.length; i++) {
+				owned[i] = t + i * threads;
+			}
+			final Random threadRandom = new Random(config.getSeed() + t + 1);
+			tickThreads[t] = new Thread(() -> runTicks(owned, threadRandom, intervalNanos), "exchange-ticks-" + t);
+			tickThreads[t].setDaemon(true);
+			tickThreads[t].start();
+		}
+
+		if (config.getOpenMillis() > 0) {
+			sessionTimer = Executors.newSingleThreadScheduledExecutor((r) -> {
+				final Thread t = new Thread(r, "exchange-session");
+				t.setDaemon(true);
+				return t;
+			});
+			scheduleSession(open);
+		}
+		logger.info(String.format("Started %d tick thread(s) for %d tickers", threads, tickers.length));
+	}
+
+	/**
+	 * Stops the tick threads and the session schedule, waiting for the tick
+	 * threads to finish.
+	 */
+	public void stop() {
+		final Thread[] threads;
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			running = false;
+			threads = tickThreads;
+			tickThreads = null;
+			if (sessionTimer != null) {
+				sessionTimer.shutdownNow();
+				sessionTimer = null;
+			}
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join(STOP_TIMEOUT_MILLIS);
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stops the tick threads.
+	 */
+	@Override
+	public void close() {
+		stop();
+	}
+
+	/**
+	 * Gets the number of ticks published.
+	 *
+	 * @return the number of ticks
+	 */
+	public long getTickCount() {
+		return tickCount.sum();
+	}
+
+	/**
+	 * Gets the number of trades executed.
+	 *
+	 * @return the number of trades
+	 */
+	public long getTradeCount() {
+		return tradeCount.sum();
+	}
+
+	/**
+	 * Publishes the ticks of a set of tickers until stopped.
+	 *
+	 * @param owned
+	 *            - indexes of the tickers published by this thread
+	 * @param threadRandom
+	 *            - the thread's random number source
+	 * @param intervalNanos
+	 *            - time between this thread's ticks, 0 to publish as fast as
+	 *            possible
+	 */
+	private void runTicks(final int[] owned, final Random threadRandom, final long intervalNanos) {
+		final int batch = intervalNanos > 0 ? 1 : TICK_BATCH;
+		int cursor = 0;
+		long next = System.nanoTime();
+		while (running) {
+			if (!open) {
+				LockSupport.parkNanos(CLOSED_POLL_NANOS);
+				next = System.nanoTime();
+				continue;
+			}
+			for (int i = 0; i < batch; i++) {
+				tick(owned[cursor], threadRandom);
+				if (++cursor == owned.length) {
+					cursor = 0;
+				}
+			}
+			tickCount.add(batch);
+			if (intervalNanos > 0) {
+				next += intervalNanos;
+				awaitNanoTime(next);
+			}
+		}
+	}
+
+	/**
+	 * Publishes a tick for a ticker.
+	 *
+	 * @param ticker
+	 *            - the ticker's index
+	 * @param tickRandom
+	 *            - the publishing thread's random number source
+	 */
+	private void tick(final int ticker, final Random tickRandom) {
+		final int price = priceModel.nextPrice(ticker, prices.get(ticker), tickRandom);
+		prices.set(ticker, price);
+		final ExchangeEvent event = ExchangeEvent.newPriceChangedEvent(this, tickers[ticker], price);
+		for (ExchangeListener l : listeners) {
+			try {
+				l.priceChanged(event);
+			} catch (final RuntimeException ex) {
+				logger.error(String.format("Listener failed processing tick for %s", tickers[ticker]), ex);
+			}
+		}
+	}
+
+	/**
+	 * Schedules the next change of the session, closing an open exchange at
+	 * the end of the session or opening a closed one after the closed period.
+	 *
+	 * @param wasOpen
+	 *            - true if the exchange is open
+	 */
+	private void scheduleSession(final boolean wasOpen) {
+		final long delay = wasOpen ? config.getOpenMillis() : config.getClosedMillis();
+		final ScheduledExecutorService timer = sessionTimer;
+		if (timer == null) {
+			return;
+		}
+		timer.schedule(() -> {
+			if (wasOpen) {
+				closeMarket();
+			} else {
+				openMarket();
+			}
+			synchronized (this) {
+				if (running) {
+					scheduleSession(!wasOpen);
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Waits until System.nanoTime reaches a deadline, spinning for short
+	 * waits so the latency isn't rounded up to the scheduler's resolution.
+	 *
+	 * @param deadline
+	 *            - the deadline, from System.nanoTime
+	 */
+	private static void awaitNanoTime(final long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > 0) {
+			if (remaining > SPIN_NANOS) {
+				LockSupport.parkNanos(remaining - SPIN_NANOS);
+			}
+		}
+	}
+}
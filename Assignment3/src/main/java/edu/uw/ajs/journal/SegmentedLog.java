@@ -0,0 +1,662 @@
+package main.java.edu.uw.ajs.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only log of opaque records, kept in a directory as numbered
+ * segments and compacted into snapshots. The log knows nothing of what the
+ * records mean; its owner applies them to its own state during recovery and
+ * supplies the snapshots of that state.
+ *
+ * Each record is framed by its length and a checksum. When the active
+ * segment grows past the compaction threshold a new segment is started and
+ * a snapshot, as of the start of the new segment, is written in the
+ * background; the segments and snapshots it supersedes are then deleted.
+ * Files in the directory whose names aren't well formed are left alone. On
+ * recovery the latest snapshot is read and the segments that follow it are
+ * replayed. A record that is incomplete or fails its checksum, as left by a
+ * crash during a write, ends the replay of its segment and is truncated.
+ *
+ * A record is forced to disk before its caller carries on. By default each
+ * record is forced as it is appended, with group commit the records of
+ * concurrent callers are appended without waiting and then forced together,
+ * by whichever caller gets to the disk first, see {@link #awaitSync(long)}.
+ *
+ * @author chq-alexs
+ */
+public final class SegmentedLog {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(SegmentedLog.class);
+
+	/** Largest record accepted during replay */
+	private static final int MAX_RECORD_SIZE = 1 << 20;
+
+	/** Journal segment file name prefix */
+	private static final String SEGMENT_PREFIX = "segment-";
+
+	/** Journal segment file name suffix */
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	/** Snapshot file name prefix */
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+	/** Snapshot file name suffix */
+	private static final String SNAPSHOT_SUFFIX = ".dat";
+
+	/** Suffix of a snapshot that is still being written */
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * Rebuilds the owner's state from the log during recovery.
+	 */
+	public interface Replayer {
+		/**
+		 * Reads the owner's state from a snapshot.
+		 *
+		 * @param in
+		 *            - the snapshot contents, as written by a SnapshotWriter
+		 *
+		 * @throws IOException
+		 *             if the snapshot can't be read or is malformed
+		 */
+		void readSnapshot(DataInputStream in) throws IOException;
+
+		/**
+		 * Applies a record to the owner's state.
+		 *
+		 * @param payload
+		 *            - the record payload
+		 *
+		 * @throws IOException
+		 *             if the record is malformed
+		 */
+		void applyRecord(byte[] payload) throws IOException;
+	}
+
+	/**
+	 * Writes the contents of a snapshot, from a copy of the owner's state
+	 * taken when the snapshot's segment was started.
+	 */
+	@FunctionalInterface
+	public interface SnapshotWriter {
+		/**
+		 * Writes the snapshot contents.
+		 *
+		 * @param out
+		 *            - the stream to write to
+		 *
+		 * @throws IOException
+		 *             if an error occurs writing to stream
+		 */
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	/** The log directory */
+	private final File dir;
+
+	/** Name of the log, used in messages */
+	private final String name;
+
+	/** Identifies a snapshot file of this log */
+	private final int snapshotMagic;
+
+	/** Active segment size that triggers compaction */
+	private final long compactThresholdBytes;
+
+	/** True to force the records of concurrent callers together */
+	private final boolean groupCommit;
+
+	/** Writes snapshots in the background */
+	private final ExecutorService compactor;
+
+	/** The in-progress compaction, if any */
+	private Future<?> compaction;
+
+	/** Number of the active segment */
+	private long activeSegment;
+
+	/** Number of bytes in the active segment */
+	private long activeSize;
+
+	/** Output to the active segment */
+	private DataOutputStream out;
+
+	/** The active segment file, forced to disk after appending */
+	private FileOutputStream segmentOut;
+
+	/** Number of bytes appended to the log since it was opened */
+	private long appended;
+
+	/** Guards the group commit state, taken after the monitor if both */
+	private final Object syncLock = new Object();
+
+	/** Number of bytes appended known to be on disk */
+	private long synced;
+
+	/** True while a caller is forcing the active segment for a group */
+	private boolean syncing;
+
+	/**
+	 * Creates an instance of this class. The log must be recovered before it
+	 * is appended to.
+	 *
+	 * @param dir
+	 *            - the directory holding the log, created if need be
+	 * @param name
+	 *            - name of the log, used in messages and for the compaction
+	 *            thread
+	 * @param snapshotMagic
+	 *            - identifies a snapshot file of this log
+	 * @param compactThresholdBytes
+	 *            - active segment size that triggers compaction
+	 * @param groupCommit
+	 *            - true to force the records of concurrent callers to disk
+	 *            together, false to force each record as it is appended
+	 */
+	public SegmentedLog(final File dir, final String name, final int snapshotMagic, final long compactThresholdBytes,
+			final boolean groupCommit) {
+		this.dir = dir;
+		this.name = name;
+		this.snapshotMagic = snapshotMagic;
+		this.compactThresholdBytes = compactThresholdBytes;
+		this.groupCommit = groupCommit;
+
+		compactor = Executors.newSingleThreadExecutor((r) -> {
+			final Thread t = new Thread(r, name.replace(' ', '-') + "-compactor");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Rebuilds the owner's state from the latest snapshot and the segments
+	 * that follow it, deletes the files they supersede and opens the last
+	 * segment for appending.
+	 *
+	 * @param replayer
+	 *            - applies the snapshot and records to the owner's state
+	 *
+	 * @throws IOException
+	 *             if the directory can't be created, or the log can't be read
+	 */
+	public synchronized void recover(final Replayer replayer) throws IOException {
+		if (!dir.exists() && !dir.mkdirs()) {
+			throw new IOException(String.format("Unable to create %s directory, %s", name, dir.getAbsolutePath()));
+		}
+
+		final TreeMap<Long, File> snapshots = new TreeMap<>();
+		final TreeMap<Long, File> segments = new TreeMap<>();
+
+		for (File file : listLogFiles()) {
+			final String fileName = file.getName();
+			if (fileName.endsWith(TEMP_SUFFIX)) {
+				deleteQuietly(file);
+			} else if (fileName.startsWith(SNAPSHOT_PREFIX)
+					&& fileNumber(fileName, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) >= 0) {
+				snapshots.put(fileNumber(fileName, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX), file);
+			} else if (fileName.startsWith(SEGMENT_PREFIX)
+					&& fileNumber(fileName, SEGMENT_PREFIX, SEGMENT_SUFFIX) >= 0) {
+				segments.put(fileNumber(fileName, SEGMENT_PREFIX, SEGMENT_SUFFIX), file);
+			}
+		}
+
+		long first = 0;
+		if (!snapshots.isEmpty()) {
+			first = snapshots.lastKey();
+			readSnapshot(snapshots.lastEntry().getValue(), replayer);
+			for (File old : snapshots.headMap(first).values()) {
+				deleteQuietly(old);
+			}
+			for (File old : segments.headMap(first).values()) {
+				deleteQuietly(old);
+			}
+		}
+
+		activeSegment = first;
+		for (Map.Entry<Long, File> segment : segments.tailMap(first).entrySet()) {
+			replaySegment(segment.getValue(), replayer);
+			activeSegment = segment.getKey();
+		}
+
+		openSegment(activeSegment);
+	}
+
+	/**
+	 * Appends a record to the active segment, framed by its length and
+	 * checksum. Without group commit the record is forced to disk before
+	 * returning, with group commit the caller must then call
+	 * {@link #awaitSync(long)}.
+	 *
+	 * @param payload
+	 *            - the record payload
+	 *
+	 * @return the number of bytes appended to the log since it was opened,
+	 *         including this record
+	 *
+	 * @throws IOException
+	 *             if the record can't be written
+	 */
+	public synchronized long append(final byte[] payload) throws IOException {
+		final CRC32 crc = new CRC32();
+		crc.update(payload);
+		out.writeInt(payload.length);
+		out.write(payload);
+		out.writeLong(crc.getValue());
+		out.flush();
+		activeSize += Integer.BYTES + payload.length + Long.BYTES;
+		appended += Integer.BYTES + payload.length + Long.BYTES;
+		if (!groupCommit) {
+			segmentOut.getChannel().force(false);
+		}
+		return appended;
+	}
+
+	/**
+	 * Gets the number of bytes appended to the log since it was opened.
+	 *
+	 * @return the number of bytes
+	 */
+	public synchronized long position() {
+		return appended;
+	}
+
+	/**
+	 * Waits until the log is on disk up to a position, with group commit. If
+	 * no other caller is forcing the active segment this caller does, for
+	 * everything appended so far, otherwise it waits for that caller and
+	 * checks again. Should be called without holding the owner's lock, so
+	 * other callers can append meanwhile. Returns immediately without group
+	 * commit.
+	 *
+	 * @param position
+	 *            - the number of bytes appended that must be on disk
+	 *
+	 * @throws IOException
+	 *             if the segment can't be forced to disk
+	 */
+	public void awaitSync(final long position) throws IOException {
+		if (!groupCommit) {
+			return;
+		}
+		synchronized (syncLock) {
+			while (synced < position && syncing) {
+				try {
+					syncLock.wait();
+				} catch (final InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException(
+							String.format("Interrupted waiting for the %s to be forced to disk.", name));
+				}
+			}
+			if (synced >= position) {
+				return;
+			}
+			syncing = true;
+		}
+
+		long target = 0;
+		try {
+			final FileOutputStream segment;
+			synchronized (this) {
+				target = appended;
+				segment = segmentOut;
+			}
+			try {
+				segment.getChannel().force(false);
+			} catch (final ClosedChannelException ex) {
+				// the segment was forced to disk when it was closed
+			}
+		} catch (final IOException ex) {
+			target = 0;
+			throw ex;
+		} finally {
+			synchronized (syncLock) {
+				synced = Math.max(synced, target);
+				syncing = false;
+				syncLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Starts a new segment and a background snapshot if the active segment
+	 * has reached the compaction threshold and no compaction is in progress.
+	 * The snapshot is taken from the state supplied, which is only asked for
+	 * if a compaction is started and must be a copy the owner won't change.
+	 *
+	 * @param state
+	 *            - supplies the writer of the owner's current state
+	 *
+	 * @throws IOException
+	 *             if the new segment can't be opened
+	 */
+	public synchronized void compactIfNeeded(final Supplier<SnapshotWriter> state) throws IOException {
+		if (activeSize < compactThresholdBytes || (compaction != null && !compaction.isDone())) {
+			return;
+		}
+
+		closeSegment();
+		final long snapshotSegment = activeSegment + 1;
+		openSegment(snapshotSegment);
+		final SnapshotWriter writer = state.get();
+
+		compaction = compactor.submit(() -> {
+			try {
+				writeSnapshot(writer, snapshotSegment);
+			} catch (final IOException ex) {
+				logger.warn(String.format("Compaction of the %s failed.", name), ex);
+			}
+		});
+	}
+
+	/**
+	 * Starts a new segment and writes a snapshot as of its start, waiting for
+	 * the snapshot to be written.
+	 *
+	 * @param writer
+	 *            - writes the owner's current state
+	 *
+	 * @throws IOException
+	 *             if the new segment can't be opened or the snapshot can't be
+	 *             written
+	 */
+	public synchronized void snapshot(final SnapshotWriter writer) throws IOException {
+		awaitCompaction();
+		closeSegment();
+		final long snapshotSegment = activeSegment + 1;
+		openSegment(snapshotSegment);
+		writeSnapshot(writer, snapshotSegment);
+	}
+
+	/**
+	 * Deletes the log, leaving an empty active segment.
+	 *
+	 * @throws IOException
+	 *             if the new segment can't be opened
+	 */
+	public synchronized void reset() throws IOException {
+		awaitCompaction();
+		closeSegment();
+		for (File file : listLogFiles()) {
+			deleteQuietly(file);
+		}
+		openSegment(0);
+	}
+
+	/**
+	 * Closes the log, waiting for any compaction in progress.
+	 *
+	 * @throws IOException
+	 *             if the active segment can't be forced to disk or closed
+	 */
+	public synchronized void close() throws IOException {
+		awaitCompaction();
+		compactor.shutdown();
+		closeSegment();
+	}
+
+	/**
+	 * Reads a snapshot, checking its header and checksum.
+	 *
+	 * @param file
+	 *            - the snapshot file
+	 * @param replayer
+	 *            - reads the owner's state from the snapshot
+	 *
+	 * @throws IOException
+	 *             if the snapshot can't be read or is corrupt
+	 */
+	private void readSnapshot(final File file, final Replayer replayer) throws IOException {
+		final CRC32 crc = new CRC32();
+		try (DataInputStream in = new DataInputStream(
+				new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), crc))) {
+			if (in.readInt() != snapshotMagic) {
+				throw new IOException(String.format("Not a %s snapshot file, %s", name, file.getAbsolutePath()));
+			}
+			in.readLong();
+			replayer.readSnapshot(in);
+			final long expected = crc.getValue();
+			if (in.readLong() != expected) {
+				throw new IOException(String.format("Snapshot checksum mismatch, %s", file.getAbsolutePath()));
+			}
+		}
+	}
+
+	/**
+	 * Applies the records in a segment, truncating the segment at the first
+	 * incomplete or corrupt record.
+	 *
+	 * @param file
+	 *            - the segment file
+	 * @param replayer
+	 *            - applies the records to the owner's state
+	 *
+	 * @throws IOException
+	 *             if the segment can't be read
+	 */
+	private void replaySegment(final File file, final Replayer replayer) throws IOException {
+		long valid = 0;
+		boolean corrupt = false;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			while (true) {
+				final int len;
+				try {
+					len = in.readInt();
+				} catch (final EOFException ex) {
+					break;
+				}
+				if (len <= 0 || len > MAX_RECORD_SIZE) {
+					corrupt = true;
+					break;
+				}
+				final byte[] payload = new byte[len];
+				try {
+					in.readFully(payload);
+					final CRC32 crc = new CRC32();
+					crc.update(payload);
+					if (in.readLong() != crc.getValue()) {
+						corrupt = true;
+						break;
+					}
+				} catch (final EOFException ex) {
+					corrupt = true;
+					break;
+				}
+				replayer.applyRecord(payload);
+				valid += Integer.BYTES + len + Long.BYTES;
+			}
+		}
+
+		if (corrupt) {
+			logger.warn(String.format("Truncating %s segment %s at offset %d", name, file.getAbsolutePath(), valid));
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(valid);
+			}
+		}
+	}
+
+	/**
+	 * Forces the active segment to disk and closes it. Must be called holding
+	 * the monitor.
+	 *
+	 * @throws IOException
+	 *             if the segment can't be forced to disk or closed
+	 */
+	private void closeSegment() throws IOException {
+		out.flush();
+		segmentOut.getChannel().force(false);
+		out.close();
+		synchronized (syncLock) {
+			synced = Math.max(synced, appended);
+			syncLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Writes a snapshot as of the start of a segment, then deletes the
+	 * snapshots and segments it supersedes.
+	 *
+	 * @param writer
+	 *            - writes the owner's state
+	 * @param segment
+	 *            - the number of the first segment not included in the snapshot
+	 *
+	 * @throws IOException
+	 *             if the snapshot can't be written
+	 */
+	private void writeSnapshot(final SnapshotWriter writer, final long segment) throws IOException {
+		final File snapshot = new File(dir, fileName(SNAPSHOT_PREFIX, segment, SNAPSHOT_SUFFIX));
+		final File temp = new File(dir, snapshot.getName() + TEMP_SUFFIX);
+
+		final CRC32 crc = new CRC32();
+		try (FileOutputStream fos = new FileOutputStream(temp)) {
+			final DataOutputStream snap = new DataOutputStream(
+					new CheckedOutputStream(new BufferedOutputStream(fos), crc));
+			snap.writeInt(snapshotMagic);
+			snap.writeLong(segment);
+			writer.write(snap);
+			snap.flush();
+			snap.writeLong(crc.getValue());
+			snap.flush();
+			fos.getFD().sync();
+		}
+		Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+		for (File file : listLogFiles()) {
+			final String fileName = file.getName();
+			final long number = fileName.startsWith(SNAPSHOT_PREFIX)
+					? fileNumber(fileName, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)
+					: fileNumber(fileName, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+			if (number >= 0 && number < segment) {
+				deleteQuietly(file);
+			}
+		}
+		logger.info(String.format("Wrote %s snapshot at segment %d", name, segment));
+	}
+
+	/**
+	 * Waits for any compaction in progress to complete.
+	 */
+	private void awaitCompaction() {
+		if (compaction != null) {
+			try {
+				compaction.get();
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} catch (final ExecutionException ex) {
+				logger.warn(String.format("Compaction of the %s failed.", name), ex);
+			}
+			compaction = null;
+		}
+	}
+
+	/**
+	 * Opens a segment for appending, making it the active segment.
+	 *
+	 * @param segment
+	 *            - the segment number
+	 *
+	 * @throws IOException
+	 *             if the segment can't be opened
+	 */
+	private void openSegment(final long segment) throws IOException {
+		final File file = new File(dir, fileName(SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+		activeSegment = segment;
+		activeSize = file.length();
+		segmentOut = new FileOutputStream(file, true);
+		out = new DataOutputStream(new BufferedOutputStream(segmentOut));
+	}
+
+	/**
+	 * Lists the segment and snapshot files in the log directory.
+	 *
+	 * @return the log files
+	 */
+	private File[] listLogFiles() {
+		final File[] files = dir.listFiles((d, fileName) -> fileName.startsWith(SEGMENT_PREFIX)
+				|| fileName.startsWith(SNAPSHOT_PREFIX));
+		return files == null ? new File[0] : files;
+	}
+
+	/**
+	 * Builds a segment or snapshot file name.
+	 *
+	 * @param prefix
+	 *            - the file name prefix
+	 * @param number
+	 *            - the segment number
+	 * @param suffix
+	 *            - the file name suffix
+	 *
+	 * @return the file name
+	 */
+	private static String fileName(final String prefix, final long number, final String suffix) {
+		return String.format("%s%019d%s", prefix, number, suffix);
+	}
+
+	/**
+	 * Extracts the segment number from a segment or snapshot file name.
+	 *
+	 * @param fileName
+	 *            - the file name
+	 * @param prefix
+	 *            - the file name prefix
+	 * @param suffix
+	 *            - the file name suffix
+	 *
+	 * @return the segment number, -1 if the name is not well formed, such
+	 *         files are left alone
+	 */
+	private static long fileNumber(final String fileName, final String prefix, final String suffix) {
+		if (!fileName.startsWith(prefix) || !fileName.endsWith(suffix)) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(fileName.substring(prefix.length(), fileName.length() - suffix.length()));
+		} catch (final NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Deletes a file, logging a failure.
+	 *
+	 * @param file
+	 *            - the file to delete
+	 */
+	private static void deleteQuietly(final File file) {
+		if (!file.delete()) {
+			logger.warn(String.format("File deletion failed, %s", file.getAbsolutePath()));
+		}
+	}
+}
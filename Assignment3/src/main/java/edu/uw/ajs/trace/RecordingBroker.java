@@ -0,0 +1,343 @@
+package main.java.edu.uw.ajs.trace;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.broker.Broker;
+import edu.uw.ext.framework.broker.BrokerException;
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import edu.uw.ext.framework.exchange.ExchangeListener;
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+
+/**
+ * A Broker that records every call made to a SimpleBroker, and every event
+ * the exchange delivers to it, to a trace before passing it on. The wrapped
+ * broker's exchange listener registration is replaced by this broker's, so
+ * the exchange events pass through the recorder. Passwords are not recorded.
+ *
+ * Besides the Broker calls, the SimpleBroker order calls are recorded:
+ * cancelling and amending orders, one-cancels-other groups, bracket orders,
+ * trailing stops and good-till-date orders. Orders are recorded with their
+ * ids so a replay can tell which order a later cancel or amend refers to. An
+ * amend is recorded once it returns, with the replacement's id. Calls made
+ * through {@link #getBroker()} are not recorded.
+ *
+ * @author chq-alexs
+ */
+public final class RecordingBroker implements Broker, ExchangeListener {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(RecordingBroker.class);
+
+	/** The wrapped broker */
+	private final SimpleBroker broker;
+
+	/** The exchange */
+	private final StockExchange exchg;
+
+	/** The trace */
+	private final TraceWriter trace;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param broker
+	 *            - the broker to record, registered as a listener of the
+	 *            exchange
+	 * @param exchg
+	 *            - the broker's exchange
+	 * @param trace
+	 *            - the trace to record to, closed with this broker
+	 */
+	public RecordingBroker(final SimpleBroker broker, final StockExchange exchg, final TraceWriter trace) {
+		this.broker = broker;
+		this.exchg = exchg;
+		this.trace = trace;
+		exchg.removeExchangeListener(broker);
+		exchg.addExchangeListener(this);
+	}
+
+	@Override
+	public void priceChanged(final ExchangeEvent event) {
+		trace.record(TraceEvent.Type.PRICE_CHANGED, null, event.getTicker(), 0, event.getPrice());
+		broker.priceChanged(event);
+	}
+
+	@Override
+	public void exchangeOpened(final ExchangeEvent event) {
+		trace.record(TraceEvent.Type.EXCHANGE_OPENED, null, null, 0, 0);
+		broker.exchangeOpened(event);
+	}
+
+	@Override
+	public void exchangeClosed(final ExchangeEvent event) {
+		trace.record(TraceEvent.Type.EXCHANGE_CLOSED, null, null, 0, 0);
+		broker.exchangeClosed(event);
+	}
+
+	@Override
+	public String getName() {
+		return broker.getName();
+	}
+
+	/**
+	 * Gets the wrapped broker, for the calls that aren't recorded.
+	 *
+	 * @return the wrapped broker
+	 */
+	public SimpleBroker getBroker() {
+		return broker;
+	}
+
+	@Override
+	public Account createAccount(final String username, final String password, final int balance)
+			throws BrokerException {
+		trace.record(TraceEvent.Type.CREATE_ACCOUNT, username, null, 0, balance);
+		return broker.createAccount(username, password, balance);
+	}
+
+	@Override
+	public void deleteAccount(final String username) throws BrokerException {
+		trace.record(TraceEvent.Type.DELETE_ACCOUNT, username, null, 0, 0);
+		broker.deleteAccount(username);
+	}
+
+	@Override
+	public Account getAccount(final String username, final String password) throws BrokerException {
+		trace.record(TraceEvent.Type.GET_ACCOUNT, username, null, 0, 0);
+		return broker.getAccount(username, password);
+	}
+
+	@Override
+	public StockQuote requestQuote(final String ticker) throws BrokerException {
+		trace.record(TraceEvent.Type.REQUEST_QUOTE, null, ticker, 0, 0);
+		return broker.requestQuote(ticker);
+	}
+
+	@Override
+	public void placeOrder(final MarketBuyOrder order) throws BrokerException {
+		trace.record(TraceEvent.Type.MARKET_BUY, order.getAccountId(), order.getStockTicker(),
+				order.getNumberOfShares(), 0);
+		broker.placeOrder(order);
+	}
+
+	@Override
+	public void placeOrder(final MarketSellOrder order) throws BrokerException {
+		trace.record(TraceEvent.Type.MARKET_SELL, order.getAccountId(), order.getStockTicker(),
+				order.getNumberOfShares(), 0);
+		broker.placeOrder(order);
+	}
+
+	@Override
+	public void placeOrder(final StopBuyOrder order) throws BrokerException {
+		recordOrder(order);
+		broker.placeOrder(order);
+	}
+
+	@Override
+	public void placeOrder(final StopSellOrder order) throws BrokerException {
+		recordOrder(order);
+		broker.placeOrder(order);
+	}
+
+	/**
+	 * Records and places a good-till-date stop buy order.
+	 *
+	 * @param order
+	 *            - the order
+	 * @param expiryMillis
+	 *            - the expiry time, in milliseconds since the epoch
+	 * @throws BrokerException
+	 *             if the order can't be placed
+	 */
+	public void placeOrder(final StopBuyOrder order, final long expiryMillis) throws BrokerException {
+		trace.record(TraceEvent.Type.STOP_BUY_GTD, order.getAccountId(), order.getStockTicker(),
+				order.getNumberOfShares(), order.getPrice(), order.getOrderId(), 0,
+				expiryMillis - System.currentTimeMillis());
+		broker.placeOrder(order, expiryMillis);
+	}
+
+	/**
+	 * Records and places a good-till-date stop sell order.
+	 *
+	 * @param order
+	 *            - the order
+	 * @param expiryMillis
+	 *            - the expiry time, in milliseconds since the epoch
+	 * @throws BrokerException
+	 *             if the order can't be placed
+	 */
+	public void placeOrder(final StopSellOrder order, final long expiryMillis) throws BrokerException {
+		trace.record(TraceEvent.Type.STOP_SELL_GTD, order.getAccountId(), order.getStockTicker(),
+				order.getNumberOfShares(), order.getPrice(), order.getOrderId(), 0,
+				expiryMillis - System.currentTimeMillis());
+		broker.placeOrder(order, expiryMillis);
+	}
+
+	/**
+	 * Records and places a one-cancels-other group of stop orders.
+	 *
+	 * @param orders
+	 *            - the orders in the group
+	 * @throws BrokerException
+	 *             if the group can't be placed
+	 */
+	public void placeOcoGroup(final List<? extends Order> orders) throws BrokerException {
+		synchronized (trace) {
+			trace.record(TraceEvent.Type.OCO_GROUP, null, null, orders.size(), 0);
+			for (final Order order : orders) {
+				recordOrder(order);
+			}
+		}
+		broker.placeOcoGroup(orders);
+	}
+
+	/**
+	 * Records and places a bracket order.
+	 *
+	 * @param entry
+	 *            - the entry stop order
+	 * @param exits
+	 *            - the exit stop orders
+	 * @throws BrokerException
+	 *             if the bracket can't be placed
+	 */
+	public void placeBracketOrder(final Order entry, final List<? extends Order> exits) throws BrokerException {
+		synchronized (trace) {
+			trace.record(TraceEvent.Type.BRACKET_ORDER, null, null, exits.size(), 0);
+			recordOrder(entry);
+			for (final Order exit : exits) {
+				recordOrder(exit);
+			}
+		}
+		broker.placeBracketOrder(entry, exits);
+	}
+
+	/**
+	 * Records and places a trailing stop buy.
+	 *
+	 * @param order
+	 *            - the order
+	 * @param trail
+	 *            - the trail, in cents, or if percent is true in hundredths
+	 *            of a percent
+	 * @param percent
+	 *            - true if the trail is a percentage
+	 * @throws BrokerException
+	 *             if the order can't be placed
+	 */
+	public void placeTrailingStop(final MarketBuyOrder order, final int trail, final boolean percent)
+			throws BrokerException {
+		trace.record(percent ? TraceEvent.Type.TRAILING_BUY_PERCENT : TraceEvent.Type.TRAILING_BUY,
+				order.getAccountId(), order.getStockTicker(), order.getNumberOfShares(), trail);
+		broker.placeTrailingStop(order, trail, percent);
+	}
+
+	/**
+	 * Records and places a trailing stop sell.
+	 *
+	 * @param order
+	 *            - the order
+	 * @param trail
+	 *            - the trail, in cents, or if percent is true in hundredths
+	 *            of a percent
+	 * @param percent
+	 *            - true if the trail is a percentage
+	 * @throws BrokerException
+	 *             if the order can't be placed
+	 */
+	public void placeTrailingStop(final MarketSellOrder order, final int trail, final boolean percent)
+			throws BrokerException {
+		trace.record(percent ? TraceEvent.Type.TRAILING_SELL_PERCENT : TraceEvent.Type.TRAILING_SELL,
+				order.getAccountId(), order.getStockTicker(), order.getNumberOfShares(), trail);
+		broker.placeTrailingStop(order, trail, percent);
+	}
+
+	/**
+	 * Records and cancels a resting stop order.
+	 *
+	 * @param orderId
+	 *            - id of the order to cancel
+	 * @throws BrokerException
+	 *             if the order isn't a resting stop order
+	 */
+	public void cancelOrder(final int orderId) throws BrokerException {
+		trace.record(TraceEvent.Type.CANCEL_ORDER, null, null, 0, 0, orderId, 0, 0);
+		broker.cancelOrder(orderId);
+	}
+
+	/**
+	 * Amends a resting stop order and records the call, with the
+	 * replacement's id, once it returns.
+	 *
+	 * @param orderId
+	 *            - id of the order to amend
+	 * @param newPrice
+	 *            - the new stop price
+	 * @return the replacement order
+	 * @throws BrokerException
+	 *             if the order isn't a resting stop order
+	 */
+	public Order amendOrder(final int orderId, final int newPrice) throws BrokerException {
+		Order replacement = null;
+		try {
+			replacement = broker.amendOrder(orderId, newPrice);
+			return replacement;
+		} finally {
+			trace.record(TraceEvent.Type.AMEND_ORDER, null, null, 0, newPrice,
+					replacement == null ? -1 : replacement.getOrderId(), orderId, 0);
+		}
+	}
+
+	/**
+	 * Records an order placed on its own or as part of a group.
+	 *
+	 * @param order
+	 *            - the order
+	 */
+	private void recordOrder(final Order order) {
+		if (order instanceof StopBuyOrder) {
+			trace.record(TraceEvent.Type.STOP_BUY, order.getAccountId(), order.getStockTicker(),
+					order.getNumberOfShares(), ((StopBuyOrder) order).getPrice(), order.getOrderId(), 0, 0);
+		} else if (order instanceof StopSellOrder) {
+			trace.record(TraceEvent.Type.STOP_SELL, order.getAccountId(), order.getStockTicker(),
+					order.getNumberOfShares(), ((StopSellOrder) order).getPrice(), order.getOrderId(), 0, 0);
+		} else if (order instanceof MarketBuyOrder) {
+			trace.record(TraceEvent.Type.MARKET_BUY, order.getAccountId(), order.getStockTicker(),
+					order.getNumberOfShares(), 0);
+		} else {
+			trace.record(TraceEvent.Type.MARKET_SELL, order.getAccountId(), order.getStockTicker(),
+					order.getNumberOfShares(), 0);
+		}
+	}
+
+	/**
+	 * Stops recording, closes the trace and the wrapped broker.
+	 *
+	 * @throws BrokerException
+	 *             if the wrapped broker can't be closed
+	 */
+	@Override
+	public void close() throws BrokerException {
+		exchg.removeExchangeListener(this);
+		try {
+			trace.close();
+		} catch (final IOException ex) {
+			logger.error("Unable to close the trace.", ex);
+		}
+		broker.close();
+	}
+}
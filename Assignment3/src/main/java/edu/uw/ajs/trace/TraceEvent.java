@@ -0,0 +1,346 @@
+package main.java.edu.uw.ajs.trace;
+
+/**
+ * A call to a broker recorded in a trace: a broker method or an exchange
+ * event delivered to the broker.
+ *
+ * @author chq-alexs
+ */
+public final class TraceEvent {
+
+	/**
+	 * The kind of call recorded, with its code in the trace.
+	 */
+	public enum Type {
+		/** ExchangeListener.priceChanged, ticker and price */
+		PRICE_CHANGED(1, Type.TICKER | Type.PRICE),
+
+		/** ExchangeListener.exchangeOpened */
+		EXCHANGE_OPENED(2, 0),
+
+		/** ExchangeListener.exchangeClosed */
+		EXCHANGE_CLOSED(3, 0),
+
+		/** Broker.placeOrder for a market buy, account, shares and ticker */
+		MARKET_BUY(4, Type.ACCOUNT | Type.SHARES | Type.TICKER),
+
+		/** Broker.placeOrder for a market sell, account, shares and ticker */
+		MARKET_SELL(5, Type.ACCOUNT | Type.SHARES | Type.TICKER),
+
+		/**
+		 * Broker.placeOrder for a stop buy, account, shares, ticker, price and
+		 * order id
+		 */
+		STOP_BUY(6, Type.ACCOUNT | Type.SHARES | Type.TICKER | Type.PRICE | Type.ORDER),
+
+		/**
+		 * Broker.placeOrder for a stop sell, account, shares, ticker, price and
+		 * order id
+		 */
+		STOP_SELL(7, Type.ACCOUNT | Type.SHARES | Type.TICKER | Type.PRICE | Type.ORDER),
+
+		/** Broker.createAccount, account and balance (as the price) */
+		CREATE_ACCOUNT(8, Type.ACCOUNT | Type.PRICE),
+
+		/** Broker.deleteAccount, account */
+		DELETE_ACCOUNT(9, Type.ACCOUNT),
+
+		/** Broker.getAccount, account */
+		GET_ACCOUNT(10, Type.ACCOUNT),
+
+		/** Broker.requestQuote, ticker */
+		REQUEST_QUOTE(11, Type.TICKER),
+
+		/** SimpleBroker.cancelOrder, order id */
+		CANCEL_ORDER(12, Type.ORDER),
+
+		/**
+		 * SimpleBroker.amendOrder, the replacement's order id, -1 if the call
+		 * failed, the amended order's id as the reference and the new price
+		 */
+		AMEND_ORDER(13, Type.ORDER | Type.REF | Type.PRICE),
+
+		/**
+		 * SimpleBroker.placeOcoGroup, the number of orders (as the shares),
+		 * followed by a record for each order
+		 */
+		OCO_GROUP(14, Type.SHARES),
+
+		/**
+		 * SimpleBroker.placeBracketOrder, the number of exit orders (as the
+		 * shares), followed by a record for the entry order then each exit
+		 * order
+		 */
+		BRACKET_ORDER(15, Type.SHARES),
+
+		/**
+		 * SimpleBroker.placeOrder for a good-till-date stop buy, account,
+		 * shares, ticker, price, order id and expiry
+		 */
+		STOP_BUY_GTD(16, Type.ACCOUNT | Type.SHARES | Type.TICKER | Type.PRICE | Type.ORDER | Type.EXPIRY),
+
+		/**
+		 * SimpleBroker.placeOrder for a good-till-date stop sell, account,
+		 * shares, ticker, price, order id and expiry
+		 */
+		STOP_SELL_GTD(17, Type.ACCOUNT | Type.SHARES | Type.TICKER | Type.PRICE | Type.ORDER | Type.EXPIRY),
+
+		/**
+		 * SimpleBroker.placeTrailingStop for a buy, account, shares, ticker and
+		 * trail in cents (as the price)
+		 */
+		TRAILING_BUY(18, Type.ACCOUNT | Type.SHARES | Type.TICKER | Type.PRICE),
+
+		/**
+		 * SimpleBroker.placeTrailingStop for a sell, account, shares, ticker
+		 * and trail in cents (as the price)
+		 */
+		TRAILING_SELL(19, Type.ACCOUNT | Type.SHARES | Type.TICKER | Type.PRICE),
+
+		/**
+		 * SimpleBroker.placeTrailingStop for a buy, account, shares, ticker and
+		 * trail in hundredths of a percent (as the price)
+		 */
+		TRAILING_BUY_PERCENT(20, Type.ACCOUNT | Type.SHARES | Type.TICKER | Type.PRICE),
+
+		/**
+		 * SimpleBroker.placeTrailingStop for a sell, account, shares, ticker
+		 * and trail in hundredths of a percent (as the price)
+		 */
+		TRAILING_SELL_PERCENT(21, Type.ACCOUNT | Type.SHARES | Type.TICKER | Type.PRICE);
+
+		/** The call has an account */
+		static final int ACCOUNT = 1;
+
+		/** The call has a ticker */
+		static final int TICKER = 2;
+
+		/** The call has a number of shares */
+		static final int SHARES = 4;
+
+		/** The call has a price or balance */
+		static final int PRICE = 8;
+
+		/** The call has an order id */
+		static final int ORDER = 16;
+
+		/** The call has the id of another order it refers to */
+		static final int REF = 32;
+
+		/** The call has an expiry time */
+		static final int EXPIRY = 64;
+
+		/** All types, by code */
+		private static final Type[] BY_CODE = new Type[22];
+
+		static {
+			for (Type type : values()) {
+				BY_CODE[type.code] = type;
+			}
+		}
+
+		/** The code identifying the type in the trace */
+		private final byte code;
+
+		/** The fields of the call recorded in the trace */
+		private final int fields;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param code
+		 *            - the code identifying the type in the trace
+		 * @param fields
+		 *            - the fields of the call recorded in the trace
+		 */
+		Type(final int code, final int fields) {
+			this.code = (byte) code;
+			this.fields = fields;
+		}
+
+		/**
+		 * Determine if the call has a field.
+		 *
+		 * @param field
+		 *            - the field, ACCOUNT, TICKER, SHARES, PRICE, ORDER, REF or
+		 *            EXPIRY
+		 * @return true if the field is recorded in the trace
+		 */
+		boolean has(final int field) {
+			return (fields & field) != 0;
+		}
+
+		/**
+		 * Gets the code identifying the type in the trace.
+		 *
+		 * @return the code
+		 */
+		byte code() {
+			return code;
+		}
+
+		/**
+		 * Gets the type identified by a code.
+		 *
+		 * @param code
+		 *            - the code
+		 * @return the type, null if the code is unknown
+		 */
+		static Type fromCode(final int code) {
+			return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+		}
+	}
+
+	/** The kind of call */
+	private final Type type;
+
+	/** Time of the call, in nanoseconds since the start of the trace */
+	private final long timeNanos;
+
+	/** The account, null if the call has no account */
+	private final String account;
+
+	/** The ticker, null if the call has no ticker */
+	private final String ticker;
+
+	/** The number of shares, 0 if the call has no shares */
+	private final int shares;
+
+	/** The price or balance, 0 if the call has neither */
+	private final int price;
+
+	/** The order id, 0 if the call has no order id */
+	private final int orderId;
+
+	/** Id of the order referred to, 0 if the call refers to no order */
+	private final int refId;
+
+	/** Milliseconds from the call to the expiry time, 0 if none */
+	private final long expiryMillis;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param type
+	 *            - the kind of call
+	 * @param timeNanos
+	 *            - time of the call, in nanoseconds since the start of the
+	 *            trace
+	 * @param account
+	 *            - the account, null if the call has no account
+	 * @param ticker
+	 *            - the ticker, null if the call has no ticker
+	 * @param shares
+	 *            - the number of shares, 0 if the call has no shares
+	 * @param price
+	 *            - the price or balance, 0 if the call has neither
+	 * @param orderId
+	 *            - the order id, 0 if the call has no order id
+	 * @param refId
+	 *            - id of the order referred to, 0 if the call refers to no
+	 *            order
+	 * @param expiryMillis
+	 *            - milliseconds from the call to the expiry time, 0 if the
+	 *            call has no expiry time
+	 */
+	public TraceEvent(final Type type, final long timeNanos, final String account, final String ticker,
+			final int shares, final int price, final int orderId, final int refId, final long expiryMillis) {
+		this.type = type;
+		this.timeNanos = timeNanos;
+		this.account = account;
+		this.ticker = ticker;
+		this.shares = shares;
+		this.price = price;
+		this.orderId = orderId;
+		this.refId = refId;
+		this.expiryMillis = expiryMillis;
+	}
+
+	/**
+	 * Gets the kind of call.
+	 *
+	 * @return the type
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the time of the call.
+	 *
+	 * @return the time, in nanoseconds since the start of the trace
+	 */
+	public long getTimeNanos() {
+		return timeNanos;
+	}
+
+	/**
+	 * Gets the account.
+	 *
+	 * @return the account, null if the call has no account
+	 */
+	public String getAccount() {
+		return account;
+	}
+
+	/**
+	 * Gets the ticker.
+	 *
+	 * @return the ticker, null if the call has no ticker
+	 */
+	public String getTicker() {
+		return ticker;
+	}
+
+	/**
+	 * Gets the number of shares.
+	 *
+	 * @return the number of shares, 0 if the call has no shares
+	 */
+	public int getShares() {
+		return shares;
+	}
+
+	/**
+	 * Gets the price, or the opening balance of a created account.
+	 *
+	 * @return the price or balance, 0 if the call has neither
+	 */
+	public int getPrice() {
+		return price;
+	}
+
+	/**
+	 * Gets the order id, as it was when recorded.
+	 *
+	 * @return the order id, 0 if the call has no order id
+	 */
+	public int getOrderId() {
+		return orderId;
+	}
+
+	/**
+	 * Gets the id of the order the call refers to, as it was when recorded.
+	 *
+	 * @return the order id, 0 if the call refers to no order
+	 */
+	public int getRefId() {
+		return refId;
+	}
+
+	/**
+	 * Gets the expiry time of a good-till-date order.
+	 *
+	 * @return milliseconds from the call to the expiry time, 0 if the call
+	 *         has no expiry time
+	 */
+	public long getExpiryMillis() {
+		return expiryMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s@%d[%s %s %d %d #%d ref %d exp %d]", type, timeNanos, account, ticker, shares, price,
+				orderId, refId, expiryMillis);
+	}
+}
@@ -0,0 +1,165 @@
+package main.java.edu.uw.ajs.trace;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a trace written by TraceWriter. A record cut short at the end of the
+ * trace, as left by a broker that wasn't closed, ends the trace.
+ *
+ * @author chq-alexs
+ */
+public final class TraceReader implements AutoCloseable {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(TraceReader.class);
+
+	/** The trace input */
+	private final DataInputStream in;
+
+	/** The string table */
+	private final List<String> strings = new ArrayList<>();
+
+	/** Time of the previous record, since the start of the trace */
+	private long timeNanos;
+
+	/**
+	 * Constructor, reads the trace header.
+	 *
+	 * @param is
+	 *            - the stream to read the trace from, closed with the reader
+	 *
+	 * @throws IOException
+	 *             if the stream isn't a trace this reader can read
+	 */
+	public TraceReader(final InputStream is) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(is, 1 << 16));
+		if (in.readInt() != TraceWriter.MAGIC) {
+			throw new IOException("Not a broker trace.");
+		}
+		final int version = in.readInt();
+		if (version != TraceWriter.VERSION) {
+			throw new IOException(String.format("Unsupported trace version, %d", version));
+		}
+	}
+
+	/**
+	 * Reads the next call.
+	 *
+	 * @return the call, null at the end of the trace
+	 *
+	 * @throws IOException
+	 *             if the trace can't be read or is malformed
+	 */
+	public TraceEvent next() throws IOException {
+		try {
+			while (true) {
+				final int code = in.read();
+				if (code < 0) {
+					return null;
+				}
+				if (code == TraceWriter.DEFINE_STRING) {
+					strings.add(in.readUTF());
+					continue;
+				}
+
+				final TraceEvent.Type type = TraceEvent.Type.fromCode(code);
+				if (type == null) {
+					throw new IOException(String.format("Unknown trace record type, %d", code));
+				}
+				timeNanos += readVarLong();
+				final String account = type.has(TraceEvent.Type.ACCOUNT) ? string(readVarLong()) : null;
+				final int shares = type.has(TraceEvent.Type.SHARES) ? unzigzag(readVarLong()) : 0;
+				final String ticker = type.has(TraceEvent.Type.TICKER) ? string(readVarLong()) : null;
+				final int price = type.has(TraceEvent.Type.PRICE) ? unzigzag(readVarLong()) : 0;
+				final int orderId = type.has(TraceEvent.Type.ORDER) ? unzigzag(readVarLong()) : 0;
+				final int refId = type.has(TraceEvent.Type.REF) ? unzigzag(readVarLong()) : 0;
+				final long expiryMillis = type.has(TraceEvent.Type.EXPIRY) ? unzigzagLong(readVarLong()) : 0;
+				return new TraceEvent(type, timeNanos, account, ticker, shares, price, orderId, refId, expiryMillis);
+			}
+		} catch (final EOFException ex) {
+			logger.warn("Trace ends with an incomplete record.");
+			return null;
+		}
+	}
+
+	/**
+	 * Closes the stream.
+	 *
+	 * @throws IOException
+	 *             if the stream can't be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Gets a string from the string table.
+	 *
+	 * @param index
+	 *            - the index
+	 * @return the string
+	 *
+	 * @throws IOException
+	 *             if the string hasn't been defined
+	 */
+	private String string(final long index) throws IOException {
+		if (index >= strings.size()) {
+			throw new IOException(String.format("Undefined trace string, %d", index));
+		}
+		return strings.get((int) index);
+	}
+
+	/**
+	 * Reads an unsigned number written by TraceWriter.writeVarLong.
+	 *
+	 * @return the number
+	 *
+	 * @throws IOException
+	 *             if the number can't be read or is too long
+	 */
+	private long readVarLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed trace number.");
+	}
+
+	/**
+	 * Reverses the zigzag encoding of a signed number.
+	 *
+	 * @param value
+	 *            - the zigzag encoding
+	 * @return the number
+	 */
+	private static int unzigzag(final long value) {
+		return (int) ((value >>> 1) ^ -(value & 1));
+	}
+
+	/**
+	 * Reverses the zigzag encoding of a signed long number.
+	 *
+	 * @param value
+	 *            - the zigzag encoding
+	 * @return the number
+	 */
+	private static long unzigzagLong(final long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,377 @@
+package main.java.edu.uw.ajs.trace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.uw.ext.framework.broker.BrokerException;
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+import main.java.edu.uw.ajs.exchange.SimulatedStockExchange;
+
+/**
+ * Drives a broker from a recorded trace, either at the recorded pace or as
+ * fast as possible, timing each call. The broker is expected to be freshly
+ * created on a SimulatedStockExchange trading the trace's tickers, which the
+ * replayer keeps at the traced prices and opens and closes as traced.
+ *
+ * Passwords are not recorded, accounts are created and fetched with
+ * {@link #REPLAY_PASSWORD}. Orders placed during the replay get new ids, a
+ * recorded cancel or amend is replayed against the order placed in place of
+ * the one it refers to. A call that fails is counted as an error and the
+ * replay carries on.
+ *
+ * @author chq-alexs
+ */
+public final class TraceReplayer {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(TraceReplayer.class);
+
+	/** Password of the accounts created and fetched during a replay */
+	public static final String REPLAY_PASSWORD = "replay-password";
+
+	/** Waits shorter than this are spun rather than parked, in nanoseconds */
+	private static final long SPIN_NANOS = 50000L;
+
+	/**
+	 * The results of a replay.
+	 */
+	public static final class Report {
+		/** Number of calls replayed */
+		private final int calls;
+
+		/** Number of calls that failed */
+		private final int errors;
+
+		/** Duration of the replay, in nanoseconds */
+		private final long elapsedNanos;
+
+		/** Latency of each call, sorted, in nanoseconds */
+		private final long[] latencies;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param errors
+		 *            - number of calls that failed
+		 * @param elapsedNanos
+		 *            - duration of the replay, in nanoseconds
+		 * @param latencies
+		 *            - latency of each call, sorted, in nanoseconds
+		 */
+		private Report(final int errors, final long elapsedNanos, final long[] latencies) {
+			this.calls = latencies.length;
+			this.errors = errors;
+			this.elapsedNanos = elapsedNanos;
+			this.latencies = latencies;
+		}
+
+		/**
+		 * Gets the number of calls replayed.
+		 *
+		 * @return the number of calls
+		 */
+		public int getCalls() {
+			return calls;
+		}
+
+		/**
+		 * Gets the number of calls that failed.
+		 *
+		 * @return the number of failed calls
+		 */
+		public int getErrors() {
+			return errors;
+		}
+
+		/**
+		 * Gets the duration of the replay.
+		 *
+		 * @return the duration, in nanoseconds
+		 */
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/**
+		 * Gets the replay throughput.
+		 *
+		 * @return calls per second
+		 */
+		public double getThroughput() {
+			return elapsedNanos == 0 ? 0.0 : calls * 1e9 / elapsedNanos;
+		}
+
+		/**
+		 * Gets a latency percentile, the nearest rank.
+		 *
+		 * @param percentile
+		 *            - the percentile, 0 to 100
+		 * @return the latency, in nanoseconds, 0 if no calls were replayed
+		 */
+		public long getLatencyNanos(final double percentile) {
+			if (latencies.length == 0) {
+				return 0L;
+			}
+			final int rank = (int) Math.ceil(percentile / 100.0 * latencies.length);
+			return latencies[Math.min(latencies.length - 1, Math.max(0, rank - 1))];
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"%d calls (%d errors) in %d ms, %.0f calls/s, latency us p50 %.1f p90 %.1f p99 %.1f p99.9 %.1f max %.1f",
+					calls, errors, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getThroughput(),
+					getLatencyNanos(50) / 1e3, getLatencyNanos(90) / 1e3, getLatencyNanos(99) / 1e3,
+					getLatencyNanos(99.9) / 1e3, getLatencyNanos(100) / 1e3);
+		}
+	}
+
+	/** The broker driven */
+	private final SimpleBroker broker;
+
+	/** The broker's exchange */
+	private final SimulatedStockExchange exchange;
+
+	/** Ids of the orders placed during the replay, by recorded order id */
+	private final Map<Integer, Integer> orderIds = new HashMap<>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param broker
+	 *            - the broker to drive, listening to the exchange
+	 * @param exchange
+	 *            - the broker's exchange
+	 */
+	public TraceReplayer(final SimpleBroker broker, final SimulatedStockExchange exchange) {
+		this.broker = broker;
+		this.exchange = exchange;
+	}
+
+	/**
+	 * Replays a trace.
+	 *
+	 * @param reader
+	 *            - the trace
+	 * @param realTime
+	 *            - true to replay each call at its recorded time from the
+	 *            start of the replay, false to replay as fast as possible
+	 * @return the replay results
+	 *
+	 * @throws IOException
+	 *             if the trace can't be read
+	 */
+	public Report replay(final TraceReader reader, final boolean realTime) throws IOException {
+		long[] latencies = new long[1024];
+		int calls = 0;
+		int errors = 0;
+
+		final long start = System.nanoTime();
+		TraceEvent event;
+		while ((event = reader.next()) != null) {
+			if (realTime) {
+				awaitNanoTime(start + event.getTimeNanos());
+			}
+			final long callStart = System.nanoTime();
+			try {
+				replayCall(event, reader);
+			} catch (final BrokerException | RuntimeException ex) {
+				errors++;
+				logger.debug(String.format("Replayed call failed, %s", event), ex);
+			}
+			if (calls == latencies.length) {
+				latencies = Arrays.copyOf(latencies, calls * 2);
+			}
+			latencies[calls++] = System.nanoTime() - callStart;
+		}
+		final long elapsed = System.nanoTime() - start;
+
+		final long[] sorted = Arrays.copyOf(latencies, calls);
+		Arrays.sort(sorted);
+		final Report report = new Report(errors, elapsed, sorted);
+		logger.info(String.format("Replayed %s", report));
+		return report;
+	}
+
+	/**
+	 * Makes a recorded call.
+	 *
+	 * @param event
+	 *            - the call
+	 * @param reader
+	 *            - the trace, for the orders recorded after a group call
+	 *
+	 * @throws BrokerException
+	 *             if the broker fails the call
+	 * @throws IOException
+	 *             if the trace can't be read
+	 */
+	private void replayCall(final TraceEvent event, final TraceReader reader) throws BrokerException, IOException {
+		switch (event.getType()) {
+		case PRICE_CHANGED:
+			exchange.setPrice(event.getTicker(), event.getPrice());
+			broker.priceChanged(ExchangeEvent.newPriceChangedEvent(exchange, event.getTicker(), event.getPrice()));
+			break;
+		case EXCHANGE_OPENED:
+			exchange.openMarket();
+			break;
+		case EXCHANGE_CLOSED:
+			exchange.closeMarket();
+			break;
+		case MARKET_BUY:
+			broker.placeOrder(new MarketBuyOrder(event.getAccount(), event.getShares(), event.getTicker()));
+			break;
+		case MARKET_SELL:
+			broker.placeOrder(new MarketSellOrder(event.getAccount(), event.getShares(), event.getTicker()));
+			break;
+		case STOP_BUY:
+			broker.placeOrder((StopBuyOrder) newOrder(event));
+			break;
+		case STOP_SELL:
+			broker.placeOrder((StopSellOrder) newOrder(event));
+			break;
+		case STOP_BUY_GTD:
+			broker.placeOrder((StopBuyOrder) newOrder(event), System.currentTimeMillis() + event.getExpiryMillis());
+			break;
+		case STOP_SELL_GTD:
+			broker.placeOrder((StopSellOrder) newOrder(event), System.currentTimeMillis() + event.getExpiryMillis());
+			break;
+		case OCO_GROUP:
+			broker.placeOcoGroup(readOrders(reader, event.getShares()));
+			break;
+		case BRACKET_ORDER:
+			final Order entry = readOrders(reader, 1).get(0);
+			broker.placeBracketOrder(entry, readOrders(reader, event.getShares()));
+			break;
+		case TRAILING_BUY:
+		case TRAILING_BUY_PERCENT:
+			broker.placeTrailingStop(new MarketBuyOrder(event.getAccount(), event.getShares(), event.getTicker()),
+					event.getPrice(), event.getType() == TraceEvent.Type.TRAILING_BUY_PERCENT);
+			break;
+		case TRAILING_SELL:
+		case TRAILING_SELL_PERCENT:
+			broker.placeTrailingStop(new MarketSellOrder(event.getAccount(), event.getShares(), event.getTicker()),
+					event.getPrice(), event.getType() == TraceEvent.Type.TRAILING_SELL_PERCENT);
+			break;
+		case CANCEL_ORDER:
+			broker.cancelOrder(replayedOrderId(event.getOrderId()));
+			break;
+		case AMEND_ORDER:
+			final Order replacement = broker.amendOrder(replayedOrderId(event.getRefId()), event.getPrice());
+			orderIds.put(event.getOrderId(), replacement.getOrderId());
+			break;
+		case CREATE_ACCOUNT:
+			broker.createAccount(event.getAccount(), REPLAY_PASSWORD, event.getPrice());
+			break;
+		case DELETE_ACCOUNT:
+			broker.deleteAccount(event.getAccount());
+			break;
+		case GET_ACCOUNT:
+			broker.getAccount(event.getAccount(), REPLAY_PASSWORD);
+			break;
+		default:
+			broker.requestQuote(event.getTicker());
+			break;
+		}
+	}
+
+	/**
+	 * Reads the orders recorded after a group call.
+	 *
+	 * @param reader
+	 *            - the trace
+	 * @param count
+	 *            - the number of orders
+	 * @return the orders, placed in place of the recorded ones
+	 *
+	 * @throws IOException
+	 *             if the trace can't be read or ends within the group
+	 */
+	private List<Order> readOrders(final TraceReader reader, final int count) throws IOException {
+		final List<Order> orders = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			final TraceEvent event = reader.next();
+			if (event == null) {
+				throw new IOException("Trace ends within a group of orders");
+			}
+			orders.add(newOrder(event));
+		}
+		return orders;
+	}
+
+	/**
+	 * Creates the order to place in place of a recorded one.
+	 *
+	 * @param event
+	 *            - the recorded order
+	 * @return the order
+	 *
+	 * @throws IOException
+	 *             if the event isn't an order
+	 */
+	private Order newOrder(final TraceEvent event) throws IOException {
+		final Order order;
+		switch (event.getType()) {
+		case STOP_BUY:
+		case STOP_BUY_GTD:
+			order = new StopBuyOrder(event.getAccount(), event.getShares(), event.getTicker(), event.getPrice());
+			break;
+		case STOP_SELL:
+		case STOP_SELL_GTD:
+			order = new StopSellOrder(event.getAccount(), event.getShares(), event.getTicker(), event.getPrice());
+			break;
+		case MARKET_BUY:
+			return new MarketBuyOrder(event.getAccount(), event.getShares(), event.getTicker());
+		case MARKET_SELL:
+			return new MarketSellOrder(event.getAccount(), event.getShares(), event.getTicker());
+		default:
+			throw new IOException(String.format("Expected an order, found %s", event));
+		}
+		orderIds.put(event.getOrderId(), order.getOrderId());
+		return order;
+	}
+
+	/**
+	 * Gets the id of the order placed in place of a recorded order.
+	 *
+	 * @param recordedId
+	 *            - the recorded order id
+	 * @return the order id, -1 if no order was placed in its place
+	 */
+	private int replayedOrderId(final int recordedId) {
+		final Integer orderId = orderIds.get(recordedId);
+		return orderId == null ? -1 : orderId;
+	}
+
+	/**
+	 * Waits until System.nanoTime reaches a deadline.
+	 *
+	 * @param deadline
+	 *            - the deadline, from System.nanoTime
+	 */
+	private static void awaitNanoTime(final long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > 0) {
+			if (remaining > SPIN_NANOS) {
+				LockSupport.parkNanos(remaining - SPIN_NANOS);
+			}
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package main.java.edu.uw.ajs.trace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a compact binary trace of the calls made to a broker.
+ *
+ * The trace starts with a magic number and format version. Each record is a
+ * type code, the time since the previous record as a variable length
+ * integer, then the fields of the call in the order account, shares, ticker,
+ * price, order id, referred order id, expiry. Numbers are written as zigzag variable length integers, so a price
+ * tick is typically 5 to 8 bytes. Account names and tickers are written as
+ * indexes into a string table built as the trace is written: the first use
+ * of a string is preceded by a record defining it.
+ *
+ * Calls may be recorded from any thread, records are written in the order
+ * the calls are recorded. A call recorded as several records, such as a
+ * group of orders, is kept together by recording them while holding the
+ * writer's lock. A write failure is logged and the rest of the
+ * trace is dropped rather than failing the broker.
+ *
+ * @author chq-alexs
+ */
+public final class TraceWriter implements AutoCloseable {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger logger = LoggerFactory.getLogger(TraceWriter.class);
+
+	/** Identifies a trace */
+	static final int MAGIC = 0x42545243;
+
+	/** The trace format version */
+	static final int VERSION = 2;
+
+	/** Record code defining the next string table entry */
+	static final byte DEFINE_STRING = 0;
+
+	/** The trace output */
+	private final DataOutputStream out;
+
+	/** String table indexes, by string */
+	private final Map<String, Integer> strings = new HashMap<>();
+
+	/** Time of the start of the trace, from System.nanoTime */
+	private final long startNanos;
+
+	/** Time of the previous record, from System.nanoTime */
+	private long lastNanos;
+
+	/** Number of calls recorded */
+	private long count;
+
+	/** True once a write has failed */
+	private boolean failed;
+
+	/**
+	 * Constructor, writes the trace header.
+	 *
+	 * @param os
+	 *            - the stream to write the trace to, closed with the writer
+	 *
+	 * @throws IOException
+	 *             if the header can't be written
+	 */
+	public TraceWriter(final OutputStream os) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		startNanos = System.nanoTime();
+		lastNanos = startNanos;
+	}
+
+	/**
+	 * Records a call. Fields the type of call doesn't have are ignored.
+	 *
+	 * @param type
+	 *            - the kind of call
+	 * @param account
+	 *            - the account
+	 * @param ticker
+	 *            - the ticker
+	 * @param shares
+	 *            - the number of shares
+	 * @param price
+	 *            - the price or balance
+	 */
+	public void record(final TraceEvent.Type type, final String account, final String ticker, final int shares,
+			final int price) {
+		record(type, account, ticker, shares, price, 0, 0, 0);
+	}
+
+	/**
+	 * Records a call that refers to orders. Fields the type of call doesn't
+	 * have are ignored.
+	 *
+	 * @param type
+	 *            - the kind of call
+	 * @param account
+	 *            - the account
+	 * @param ticker
+	 *            - the ticker
+	 * @param shares
+	 *            - the number of shares
+	 * @param price
+	 *            - the price or balance
+	 * @param orderId
+	 *            - the order id
+	 * @param refId
+	 *            - id of the order referred to
+	 * @param expiryMillis
+	 *            - milliseconds from the call to the expiry time
+	 */
+	public synchronized void record(final TraceEvent.Type type, final String account, final String ticker,
+			final int shares, final int price, final int orderId, final int refId, final long expiryMillis) {
+		if (failed) {
+			return;
+		}
+		try {
+			final int accountIndex = type.has(TraceEvent.Type.ACCOUNT) ? stringIndex(account) : 0;
+			final int tickerIndex = type.has(TraceEvent.Type.TICKER) ? stringIndex(ticker) : 0;
+
+			final long now = System.nanoTime();
+			out.writeByte(type.code());
+			writeVarLong(out, Math.max(0L, now - lastNanos));
+			lastNanos = now;
+			if (type.has(TraceEvent.Type.ACCOUNT)) {
+				writeVarLong(out, accountIndex);
+			}
+			if (type.has(TraceEvent.Type.SHARES)) {
+				writeVarLong(out, zigzag(shares));
+			}
+			if (type.has(TraceEvent.Type.TICKER)) {
+				writeVarLong(out, tickerIndex);
+			}
+			if (type.has(TraceEvent.Type.PRICE)) {
+				writeVarLong(out, zigzag(price));
+			}
+			if (type.has(TraceEvent.Type.ORDER)) {
+				writeVarLong(out, zigzag(orderId));
+			}
+			if (type.has(TraceEvent.Type.REF)) {
+				writeVarLong(out, zigzag(refId));
+			}
+			if (type.has(TraceEvent.Type.EXPIRY)) {
+				writeVarLong(out, zigzag(expiryMillis));
+			}
+			count++;
+		} catch (final IOException ex) {
+			failed = true;
+			logger.error(String.format("Unable to write trace, recording stopped after %d calls", count), ex);
+		}
+	}
+
+	/**
+	 * Gets the number of calls recorded.
+	 *
+	 * @return the number of calls
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Flushes the trace and closes the stream.
+	 *
+	 * @throws IOException
+	 *             if the trace can't be flushed
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		out.close();
+		logger.info(String.format("Recorded %d calls in %d ms", count, (lastNanos - startNanos) / 1000000L));
+	}
+
+	/**
+	 * Gets the string table index of a string, defining it if it is new.
+	 *
+	 * @param value
+	 *            - the string
+	 * @return the index
+	 *
+	 * @throws IOException
+	 *             if the definition can't be written
+	 */
+	private int stringIndex(final String value) throws IOException {
+		final String key = value == null ? "" : value;
+		Integer index = strings.get(key);
+		if (index == null) {
+			index = strings.size();
+			strings.put(key, index);
+			out.writeByte(DEFINE_STRING);
+			out.writeUTF(key);
+		}
+		return index;
+	}
+
+	/**
+	 * Maps a signed number to an unsigned one, small magnitudes to small
+	 * values.
+	 *
+	 * @param value
+	 *            - the number
+	 * @return the zigzag encoding
+	 */
+	private static long zigzag(final int value) {
+		return ((long) value << 1) ^ (value >> 31);
+	}
+
+	/**
+	 * Maps a signed long number to an unsigned one, small magnitudes to small
+	 * values.
+	 *
+	 * @param value
+	 *            - the number
+	 * @return the zigzag encoding
+	 */
+	private static long zigzag(final long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Writes an unsigned number seven bits at a time, least significant
+	 * first, the high bit of each byte set if more follow.
+	 *
+	 * @param out
+	 *            - the stream to write to
+	 * @param value
+	 *            - the number, not negative
+	 *
+	 * @throws IOException
+	 *             if an error occurs writing to stream
+	 */
+	static void writeVarLong(final DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+}
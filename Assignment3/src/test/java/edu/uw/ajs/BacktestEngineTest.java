@@ -0,0 +1,192 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.backtest.BacktestContext;
+import main.java.edu.uw.ajs.backtest.BacktestEngine;
+import main.java.edu.uw.ajs.backtest.BacktestResult;
+import main.java.edu.uw.ajs.backtest.BacktestStrategy;
+import main.java.edu.uw.ajs.backtest.TickFile;
+
+/**
+ * Tests the backtest engine against tick files written to a temporary
+ * directory.
+ *
+ * @author chq-alexs
+ */
+public class BacktestEngineTest {
+
+	/** The account the strategies' orders are placed for */
+	private static final String ACCOUNT = "backtest";
+
+	/** The tick file directory */
+	private File tickDir;
+
+	/**
+	 * A breakout strategy: buys on a stop at a fixed distance above the
+	 * opening price, then sells on a stop at a fixed distance below the fill
+	 * and buys again on the original breakout.
+	 */
+	private static final class Breakout implements BacktestStrategy {
+
+		/** Distance of the entry above the opening price, in cents */
+		private final int entry;
+
+		/** Distance of the exit below the entry fill, in cents */
+		private final int exit;
+
+		/** The entry price */
+		private int entryPrice;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param entry
+		 *            - distance of the entry above the opening price
+		 * @param exit
+		 *            - distance of the exit below the entry fill
+		 */
+		Breakout(final int entry, final int exit) {
+			this.entry = entry;
+			this.exit = exit;
+		}
+
+		@Override
+		public void start(final BacktestContext context) {
+			entryPrice = context.getPrice() + entry;
+			context.placeOrder(new StopBuyOrder(ACCOUNT, 10, context.getTicker(), entryPrice));
+		}
+
+		@Override
+		public void onFill(final BacktestContext context, final Order order, final int price) {
+			if (order instanceof StopBuyOrder) {
+				context.placeOrder(new StopSellOrder(ACCOUNT, 10, context.getTicker(), price - exit));
+			} else {
+				context.placeOrder(new StopBuyOrder(ACCOUNT, 10, context.getTicker(), entryPrice));
+			}
+		}
+	}
+
+	/**
+	 * Creates the tick file directory.
+	 *
+	 * @throws Exception
+	 *             if the directory can't be created
+	 */
+	@Before
+	public void setUp() throws Exception {
+		tickDir = Files.createTempDirectory("ticks").toFile();
+	}
+
+	/**
+	 * Deletes the tick file directory.
+	 */
+	@After
+	public void tearDown() {
+		final File[] files = tickDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		tickDir.delete();
+	}
+
+	/**
+	 * Ticks are read back as written.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testTickFileRoundTrip() throws Exception {
+		final File file = new File(tickDir, "AAAA.ticks");
+		TickFile.write(file, "AAAA", new long[] { 1000L, 2000L, 3000L }, new int[] { 100, 105, 110 });
+
+		final TickFile ticks = new TickFile(file);
+		assertEquals("AAAA", ticks.getTicker());
+		assertEquals(3, ticks.size());
+		assertEquals(2000L, ticks.timeMillis(1));
+		assertEquals(110, ticks.price(2));
+	}
+
+	/**
+	 * Orders are triggered as by the broker and filled at the triggering
+	 * tick's price.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testStopsFillAtTriggeringTick() throws Exception {
+		final File file = new File(tickDir, "AAAA.ticks");
+		TickFile.write(file, "AAAA", new long[] { 1L, 2L, 3L, 4L, 5L }, new int[] { 100, 105, 110, 95, 90 });
+
+		final List<BacktestResult> results = new BacktestEngine(1).run(Arrays.asList(file),
+				Arrays.asList(() -> new Breakout(5, 10)), 0L);
+		assertEquals(1, results.size());
+		final BacktestResult result = results.get(0);
+		assertEquals(5, result.getTicks());
+		assertEquals(2, result.getLedger().getFills());
+		assertEquals(-10 * 105 + 10 * 95, result.getLedger().getCash());
+		assertEquals(0, result.getLedger().getPosition());
+		assertEquals(10 * 105 + 10 * 95, result.getLedger().getTurnover());
+	}
+
+	/**
+	 * Running the backtests in parallel gives the same results, in the same
+	 * order, as running them one at a time.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testParallelMatchesSerial() throws Exception {
+		final Random random = new Random(42);
+		final List<File> files = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final long[] times = new long[10000];
+			final int[] prices = new int[times.length];
+			int price = 10000;
+			for (int i = 0; i < times.length; i++) {
+				price = Math.max(1, price + random.nextInt(21) - 10);
+				times[i] = i;
+				prices[i] = price;
+			}
+			final File file = new File(tickDir, "T" + t + ".ticks");
+			TickFile.write(file, "T" + t, times, prices);
+			files.add(file);
+		}
+		final List<Supplier<BacktestStrategy>> strategies = new ArrayList<>();
+		for (int entry = 10; entry <= 50; entry += 20) {
+			for (int exit = 10; exit <= 50; exit += 20) {
+				final int entryDistance = entry;
+				final int exitDistance = exit;
+				strategies.add(() -> new Breakout(entryDistance, exitDistance));
+			}
+		}
+
+		final List<BacktestResult> serial = new BacktestEngine(1).run(files, strategies, 1000000L);
+		final List<BacktestResult> parallel = new BacktestEngine(4).run(files, strategies, 1000000L);
+		assertEquals(files.size() * strategies.size(), serial.size());
+		assertEquals(serial.size(), parallel.size());
+		for (int i = 0; i < serial.size(); i++) {
+			assertEquals(serial.get(i).toString(), parallel.get(i).toString());
+		}
+	}
+}
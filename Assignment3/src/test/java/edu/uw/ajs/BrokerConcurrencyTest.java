@@ -0,0 +1,314 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+import main.java.edu.uw.ajs.broker.SimpleBrokerConfig;
+
+/**
+ * Stress test for concurrent price change processing in SimpleBroker. Rising
+ * price ticks are replayed for several tickers from multiple threads at once,
+ * each ticker receiving ticks from more than one thread, and the fills
+ * recorded by the exchange are checked: every stop order fills exactly once
+ * and the fills for each ticker occur in ascending stop price order. Prices
+ * that rise and fall are also replayed, one thread per ticker, for stop buys
+ * and sells from accounts shared by the tickers, and the fills for each
+ * ticker are checked against a replay of the same ticks one ticker at a time.
+ *
+ * @author chq-alexs
+ */
+public class BrokerConcurrencyTest {
+
+	/** Tickers traded */
+	private static final String[] TICKERS = { "AAAA", "BBBB", "CCCC", "DDDD", "EEEE", "FFFF", "GGGG", "HHHH" };
+
+	/** Opening price of every ticker */
+	private static final int OPEN_PRICE = 100;
+
+	/** Number of stop orders per ticker, one per price above the opening price */
+	private static final int ORDERS_PER_TICKER = 200;
+
+	/** Opening balance of every account */
+	private static final int INITIAL_BALANCE = 1000000;
+
+	/** Number of threads replaying ticks for each ticker */
+	private static final int THREADS_PER_TICKER = 3;
+
+	/** Number of times the test is repeated */
+	private static final int ROUNDS = 5;
+
+	/** Accounts placing the orders of every ticker in the random walk test */
+	private static final String[] WALK_ACCOUNTS = { "acctPPPP", "acctQQQQ", "acctRRRR" };
+
+	/** Number of stop buy and of stop sell orders per ticker in the random walk test */
+	private static final int WALK_ORDERS = 40;
+
+	/** Number of price changes per ticker in the random walk test */
+	private static final int WALK_TICKS = 400;
+
+	/**
+	 * Replays ticks with orders executed on the price change thread.
+	 *
+	 * @throws Exception
+	 *             if the replay fails
+	 */
+	@Test
+	public void testInlineExecution() throws Exception {
+		for (int i = 0; i < ROUNDS; i++) {
+			replayTicks(new SimpleBrokerConfig());
+		}
+	}
+
+	/**
+	 * Replays ticks with orders executed by the background execution stage.
+	 *
+	 * @throws Exception
+	 *             if the replay fails
+	 */
+	@Test
+	public void testStagedExecution() throws Exception {
+		final SimpleBrokerConfig config = new SimpleBrokerConfig();
+		config.setExecutionThreads(4);
+		for (int i = 0; i < ROUNDS; i++) {
+			replayTicks(config);
+		}
+	}
+
+	/**
+	 * Replays ticks with triggered orders moved and executed in batches,
+	 * inline and by the execution stage. Orders released together are
+	 * executed in the order they were triggered.
+	 *
+	 * @throws Exception
+	 *             if the replay fails
+	 */
+	@Test
+	public void testBatchDispatch() throws Exception {
+		final SimpleBrokerConfig config = new SimpleBrokerConfig();
+		config.setBatchDispatch(true);
+		for (int i = 0; i < ROUNDS; i++) {
+			replayTicks(config);
+		}
+		config.setExecutionThreads(4);
+		for (int i = 0; i < ROUNDS; i++) {
+			replayTicks(config);
+		}
+	}
+
+	/**
+	 * Replays rising and falling prices for every ticker at once, each ticker
+	 * on its own thread, so the triggering and execution of different tickers
+	 * interleave. The fills for each ticker must be those of a replay that
+	 * processes one ticker at a time, in the same order. With the execution
+	 * stage, which executes each account's orders in order but different
+	 * accounts' orders in parallel, the order is checked for each account.
+	 *
+	 * @throws Exception
+	 *             if the replay fails
+	 */
+	@Test
+	public void testCrossTickerFillOrder() throws Exception {
+		final SimpleBrokerConfig priceLevel = new SimpleBrokerConfig();
+		priceLevel.setPriceLevelOrderBook(true);
+		final SimpleBrokerConfig staged = new SimpleBrokerConfig();
+		staged.setExecutionThreads(4);
+		final SimpleBrokerConfig batched = new SimpleBrokerConfig();
+		batched.setBatchDispatch(true);
+		for (SimpleBrokerConfig config : Arrays.asList(new SimpleBrokerConfig(), priceLevel, staged, batched)) {
+			final boolean inline = config.getExecutionThreads() == 0;
+			final Map<String, List<String>> expected = replayWalk(config, false);
+			for (int i = 0; i < ROUNDS; i++) {
+				final Map<String, List<String>> actual = replayWalk(config, true);
+				if (inline) {
+					assertEquals(expected, actual);
+				} else {
+					assertEquals(byAccount(expected), byAccount(actual));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Places stop buy and stop sell orders for every ticker and replays a
+	 * random walk of prices for each ticker.
+	 *
+	 * @param config
+	 *            - the broker configuration
+	 * @param concurrent
+	 *            - true to replay the tickers at once, one thread per ticker,
+	 *            false to replay one ticker after another
+	 * @return the fills of each ticker, in order, identified by account and
+	 *         number of shares
+	 * @throws Exception
+	 *             if the replay fails
+	 */
+	private Map<String, List<String>> replayWalk(final SimpleBrokerConfig config, final boolean concurrent)
+			throws Exception {
+		final InMemoryAccountManager acctMgr = new InMemoryAccountManager();
+		for (String acctName : WALK_ACCOUNTS) {
+			acctMgr.createAccount(acctName, "password", INITIAL_BALANCE);
+		}
+		final BrokerFixture fixture = new BrokerFixture(TICKERS, acctMgr, config);
+		final Random rnd = new Random(7);
+
+		try {
+			for (String ticker : TICKERS) {
+				for (int i = 0; i < WALK_ORDERS; i++) {
+					final String acctName = WALK_ACCOUNTS[rnd.nextInt(WALK_ACCOUNTS.length)];
+					fixture.getBroker().placeOrder(
+							new StopBuyOrder(acctName, 2 * i + 1, ticker, OPEN_PRICE + 1 + rnd.nextInt(40)));
+					fixture.getBroker().placeOrder(
+							new StopSellOrder(acctName, 2 * i + 2, ticker, OPEN_PRICE - 1 - rnd.nextInt(40)));
+				}
+			}
+
+			final ExecutorService threads = Executors.newFixedThreadPool(concurrent ? TICKERS.length : 1);
+			final CountDownLatch start = new CountDownLatch(1);
+			final List<Future<?>> results = new ArrayList<>();
+			for (String ticker : TICKERS) {
+				results.add(threads.submit(() -> {
+					start.await();
+					final Random walk = new Random(ticker.hashCode());
+					int price = OPEN_PRICE;
+					for (int i = 0; i < WALK_TICKS; i++) {
+						price = Math.max(OPEN_PRICE - 45, Math.min(OPEN_PRICE + 45, price + walk.nextInt(11) - 5));
+						fixture.tick(ticker, price);
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> result : results) {
+				result.get(30, TimeUnit.SECONDS);
+			}
+			threads.shutdown();
+		} finally {
+			fixture.close();
+		}
+
+		final Map<String, List<String>> fills = new TreeMap<>();
+		for (String ticker : TICKERS) {
+			final List<String> keys = new ArrayList<>();
+			for (Order order : fixture.getFills(ticker)) {
+				keys.add(order.getAccountId() + "/" + order.getNumberOfShares());
+			}
+			fills.put(ticker, keys);
+		}
+		return fills;
+	}
+
+	/**
+	 * Splits the fills of each ticker by account.
+	 *
+	 * @param fills
+	 *            - the fills of each ticker, identified by account and number
+	 *            of shares
+	 * @return the fills of each ticker and account, in order
+	 */
+	private static Map<String, List<String>> byAccount(final Map<String, List<String>> fills) {
+		final Map<String, List<String>> split = new TreeMap<>();
+		for (Map.Entry<String, List<String>> ticker : fills.entrySet()) {
+			for (String fill : ticker.getValue()) {
+				final String acctName = fill.substring(0, fill.indexOf('/'));
+				split.computeIfAbsent(ticker.getKey() + "/" + acctName, (k) -> new ArrayList<>()).add(fill);
+			}
+		}
+		return split;
+	}
+
+	/**
+	 * Places the stop buy orders, replays the ticks and verifies the fills.
+	 *
+	 * @param config
+	 *            - the broker configuration
+	 * @throws Exception
+	 *             if the replay fails
+	 */
+	private void replayTicks(final SimpleBrokerConfig config) throws Exception {
+		final RecordingExchange exchange = new RecordingExchange(TICKERS, OPEN_PRICE);
+		final InMemoryAccountManager acctMgr = new InMemoryAccountManager();
+		final SimpleBroker broker = new SimpleBroker("stress", acctMgr, exchange, config);
+		final Random rnd = new Random(42);
+
+		try {
+			for (String ticker : TICKERS) {
+				final String acctName = "acct" + ticker;
+				acctMgr.createAccount(acctName, "password", INITIAL_BALANCE);
+
+				final List<Integer> prices = new ArrayList<>();
+				for (int p = OPEN_PRICE + 1; p <= OPEN_PRICE + ORDERS_PER_TICKER; p++) {
+					prices.add(p);
+				}
+				Collections.shuffle(prices, rnd);
+				for (int price : prices) {
+					broker.placeOrder(new StopBuyOrder(acctName, 10, ticker, price));
+				}
+			}
+
+			final ExecutorService threads = Executors.newFixedThreadPool(TICKERS.length * THREADS_PER_TICKER);
+			final CountDownLatch start = new CountDownLatch(1);
+			final List<Future<?>> results = new ArrayList<>();
+			for (String ticker : TICKERS) {
+				for (int t = 0; t < THREADS_PER_TICKER; t++) {
+					final int offset = t;
+					results.add(threads.submit(() -> {
+						start.await();
+						for (int p = OPEN_PRICE + 1 + offset; p <= OPEN_PRICE + ORDERS_PER_TICKER; p += THREADS_PER_TICKER) {
+							broker.priceChanged(ExchangeEvent.newPriceChangedEvent(exchange, ticker, p));
+						}
+						broker.priceChanged(
+								ExchangeEvent.newPriceChangedEvent(exchange, ticker, OPEN_PRICE + ORDERS_PER_TICKER));
+						return null;
+					}));
+				}
+			}
+			start.countDown();
+			for (Future<?> result : results) {
+				result.get(30, TimeUnit.SECONDS);
+			}
+			threads.shutdown();
+		} finally {
+			broker.close();
+		}
+
+		for (String ticker : TICKERS) {
+			final List<Order> fills = exchange.getFills(ticker);
+			assertEquals("Fills for " + ticker, ORDERS_PER_TICKER, fills.size());
+			int lastPrice = OPEN_PRICE;
+			final Set<Integer> filled = new HashSet<>();
+			for (Order order : fills) {
+				final int price = ((StopBuyOrder) order).getPrice();
+				assertTrue(String.format("%s filled %d twice", ticker, price), filled.add(price));
+				assertTrue(String.format("%s filled %d after %d", ticker, price, lastPrice), price > lastPrice);
+				lastPrice = price;
+			}
+		}
+		final int tradedValue = 10 * ORDERS_PER_TICKER * (2 * OPEN_PRICE + ORDERS_PER_TICKER + 1) / 2;
+		for (String ticker : TICKERS) {
+			final int balance = acctMgr.getAccount("acct" + ticker).getBalance();
+			assertEquals("Balance change for " + ticker, tradedValue, Math.abs(balance - INITIAL_BALANCE));
+		}
+	}
+}
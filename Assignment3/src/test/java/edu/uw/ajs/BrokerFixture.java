@@ -0,0 +1,145 @@
+package test.java.edu.uw.ajs;
+
+import java.util.List;
+
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.broker.BrokerException;
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import edu.uw.ext.framework.order.Order;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+import main.java.edu.uw.ajs.broker.SimpleBrokerConfig;
+
+/**
+ * A SimpleBroker trading on a RecordingExchange, with an in-memory account
+ * manager holding a funded account, for the broker tests. Price changes are
+ * delivered to the broker directly with {@link #tick(String, int)}.
+ *
+ * @author chq-alexs
+ */
+final class BrokerFixture implements AutoCloseable {
+
+	/** Tickers traded */
+	static final String[] TICKERS = { "AAAA", "BBBB" };
+
+	/** Opening price of every ticker */
+	static final int OPEN_PRICE = 100;
+
+	/** The funded account */
+	static final String ACCOUNT = "acctAAAA";
+
+	/** Opening balance of the funded account */
+	static final int INITIAL_BALANCE = 1000000;
+
+	/** The exchange */
+	private final RecordingExchange exchange;
+
+	/** The account manager */
+	private final InMemoryAccountManager acctMgr;
+
+	/** The broker under test */
+	private final SimpleBroker broker;
+
+	/**
+	 * Creates a broker trading {@link #TICKERS}, with a new account manager.
+	 *
+	 * @param config
+	 *            - the broker configuration
+	 * @throws AccountException
+	 *             if the account can't be created
+	 */
+	BrokerFixture(final SimpleBrokerConfig config) throws AccountException {
+		this(TICKERS, newAccountManager(), config);
+	}
+
+	/**
+	 * Creates a broker.
+	 *
+	 * @param tickers
+	 *            - the tickers traded
+	 * @param acctMgr
+	 *            - the account manager, may be shared with an earlier broker
+	 * @param config
+	 *            - the broker configuration
+	 */
+	BrokerFixture(final String[] tickers, final InMemoryAccountManager acctMgr, final SimpleBrokerConfig config) {
+		this.exchange = new RecordingExchange(tickers, OPEN_PRICE);
+		this.acctMgr = acctMgr;
+		this.broker = new SimpleBroker("test", acctMgr, exchange, config);
+	}
+
+	/**
+	 * Creates an account manager holding the funded account.
+	 *
+	 * @return the account manager
+	 * @throws AccountException
+	 *             if the account can't be created
+	 */
+	static InMemoryAccountManager newAccountManager() throws AccountException {
+		final InMemoryAccountManager acctMgr = new InMemoryAccountManager();
+		acctMgr.createAccount(ACCOUNT, "password", INITIAL_BALANCE);
+		return acctMgr;
+	}
+
+	/**
+	 * Gets the exchange.
+	 *
+	 * @return the exchange
+	 */
+	RecordingExchange getExchange() {
+		return exchange;
+	}
+
+	/**
+	 * Gets the account manager.
+	 *
+	 * @return the account manager
+	 */
+	InMemoryAccountManager getAccountManager() {
+		return acctMgr;
+	}
+
+	/**
+	 * Gets the broker.
+	 *
+	 * @return the broker
+	 */
+	SimpleBroker getBroker() {
+		return broker;
+	}
+
+	/**
+	 * Changes the price of a ticker on the exchange and delivers the price
+	 * change to the broker.
+	 *
+	 * @param ticker
+	 *            - the ticker
+	 * @param price
+	 *            - the new price
+	 */
+	void tick(final String ticker, final int price) {
+		exchange.setPrice(ticker, price);
+		broker.priceChanged(ExchangeEvent.newPriceChangedEvent(exchange, ticker, price));
+	}
+
+	/**
+	 * Gets the fills for a ticker.
+	 *
+	 * @param ticker
+	 *            - the ticker
+	 * @return the fills, in execution order
+	 */
+	List<Order> getFills(final String ticker) {
+		return exchange.getFills(ticker);
+	}
+
+	/**
+	 * Closes the broker.
+	 *
+	 * @throws BrokerException
+	 *             if the broker can't be closed
+	 */
+	@Override
+	public void close() throws BrokerException {
+		broker.close();
+	}
+}
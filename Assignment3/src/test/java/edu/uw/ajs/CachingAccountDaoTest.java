@@ -0,0 +1,209 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import main.java.edu.uw.ajs.account.SimpleAccount;
+import main.java.edu.uw.ajs.dao.CachingAccountDao;
+
+/**
+ * Tests CachingAccountDao: LRU eviction with write-back of dirty accounts, the
+ * hit, miss and eviction counters, and that cache hits don't wait on the
+ * underlying DAO.
+ *
+ * @author chq-alexs
+ */
+public class CachingAccountDaoTest {
+
+	/** Flush interval long enough that the timer never fires in a test */
+	private static final long NO_TIMER = TimeUnit.HOURS.toMillis(1);
+
+	/** The underlying DAO */
+	private RecordingAccountDao delegate;
+
+	/** Runs the test threads */
+	private ExecutorService threads;
+
+	/**
+	 * Creates the underlying DAO and the test threads.
+	 */
+	@Before
+	public void setUp() {
+		delegate = new RecordingAccountDao();
+		threads = Executors.newCachedThreadPool();
+	}
+
+	/**
+	 * Releases the underlying DAO and stops the test threads.
+	 */
+	@After
+	public void tearDown() {
+		delegate.release();
+		threads.shutdownNow();
+	}
+
+	/**
+	 * Dirty accounts are written only when evicted, least recently used first,
+	 * and the rest on flush.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testEvictionWritesBackDirty() throws Exception {
+		final CachingAccountDao dao = new CachingAccountDao(delegate, 2, NO_TIMER);
+		dao.setAccount(account("acctAAAA", 100000));
+		dao.setAccount(account("acctBBBB", 100000));
+		assertEquals(Collections.emptyList(), delegate.takeWrites());
+
+		dao.getAccount("acctAAAA");
+		dao.setAccount(account("acctCCCC", 100000));
+		assertEquals(Arrays.asList("acctBBBB"), delegate.takeWrites());
+		assertEquals(2, dao.size());
+		assertEquals(1, dao.getEvictionCount());
+
+		assertEquals("acctBBBB", dao.getAccount("acctBBBB").getName());
+		assertEquals(1, delegate.getReads());
+		assertEquals(Arrays.asList("acctAAAA"), delegate.takeWrites());
+
+		dao.flush();
+		assertEquals(Arrays.asList("acctCCCC"), delegate.takeWrites());
+		dao.flush();
+		assertEquals(Collections.emptyList(), delegate.takeWrites());
+
+		dao.close();
+		assertTrue(delegate.isClosed());
+	}
+
+	/**
+	 * Hits, misses and evictions are counted, a clean account is evicted
+	 * without a write and a missing account isn't cached.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCounters() throws Exception {
+		delegate.put(account("acctAAAA", 100000));
+		delegate.put(account("acctBBBB", 100000));
+		delegate.put(account("acctCCCC", 100000));
+		final CachingAccountDao dao = new CachingAccountDao(delegate, 2, NO_TIMER);
+
+		final Account a = dao.getAccount("acctAAAA");
+		assertSame(a, dao.getAccount("acctAAAA"));
+		dao.getAccount("acctBBBB");
+		dao.getAccount("acctCCCC");
+		assertNull(dao.getAccount("acctNone"));
+		assertEquals(1, dao.getHitCount());
+		assertEquals(4, dao.getMissCount());
+		assertEquals(1, dao.getEvictionCount());
+		assertEquals(2, dao.size());
+
+		dao.getAccount("acctAAAA");
+		assertEquals(5, dao.getMissCount());
+		assertEquals(2, dao.getEvictionCount());
+		assertEquals(Collections.emptyList(), delegate.takeWrites());
+		dao.close();
+	}
+
+	/**
+	 * An evicted account that can't be written is kept dirty, and written by
+	 * a later flush.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testFailedWriteBackKept() throws Exception {
+		final CachingAccountDao dao = new CachingAccountDao(delegate, 1, NO_TIMER);
+		dao.setAccount(account("acctAAAA", 100000));
+		delegate.setFailing(true);
+		dao.setAccount(account("acctBBBB", 100000));
+		assertEquals(2, dao.size());
+		try {
+			dao.flush();
+			fail("Flush succeeded with failing writes");
+		} catch (AccountException e) {
+			// expected
+		}
+
+		delegate.setFailing(false);
+		dao.flush();
+		assertEquals(new HashSet<>(Arrays.asList("acctAAAA", "acctBBBB")), new HashSet<>(delegate.takeWrites()));
+		dao.close();
+	}
+
+	/**
+	 * Cache hits and updates don't wait for a miss or a flush in progress on
+	 * the underlying DAO, and an account updated while it is being flushed
+	 * stays dirty.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testHitsDontWaitOnIo() throws Exception {
+		delegate.put(account("acctSlow", 100000));
+		final CachingAccountDao dao = new CachingAccountDao(delegate, 10, NO_TIMER);
+		final Account cached = account("acctHits", 100000);
+		dao.setAccount(cached);
+
+		final CountDownLatch reading = delegate.hold();
+		Future<?> io = threads.submit(() -> dao.getAccount("acctSlow"));
+		assertTrue(reading.await(5, TimeUnit.SECONDS));
+		assertSame(cached, threads.submit(() -> dao.getAccount("acctHits")).get(5, TimeUnit.SECONDS));
+		delegate.release();
+		io.get(5, TimeUnit.SECONDS);
+
+		final CountDownLatch flushing = delegate.hold();
+		io = threads.submit(() -> {
+			dao.flush();
+			return null;
+		});
+		assertTrue(flushing.await(5, TimeUnit.SECONDS));
+		threads.submit(() -> {
+			cached.setBalance(200000);
+			dao.setAccount(cached);
+			return dao.getAccount("acctHits");
+		}).get(5, TimeUnit.SECONDS);
+		delegate.release();
+		io.get(5, TimeUnit.SECONDS);
+
+		dao.flush();
+		assertEquals(Arrays.asList("acctHits", "acctHits"), delegate.takeWrites());
+		dao.close();
+	}
+
+	/**
+	 * Creates an account.
+	 *
+	 * @param name
+	 *            - the account name
+	 * @param balance
+	 *            - the balance
+	 * @return the account
+	 * @throws AccountException
+	 *             if the account can't be created
+	 */
+	private static Account account(final String name, final int balance) throws AccountException {
+		return new SimpleAccount(name, "password".getBytes(), balance);
+	}
+}
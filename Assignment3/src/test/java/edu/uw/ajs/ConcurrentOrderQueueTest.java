@@ -0,0 +1,389 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import main.java.edu.uw.ajs.broker.ConcurrentOrderQueue;
+
+/**
+ * Heavily threaded tests for ConcurrentOrderQueue. Threads enqueue orders,
+ * move the threshold, dispatch and dequeue all at once, and the test checks
+ * that every order is handed out exactly once and that the order processor
+ * is never invoked concurrently. The sequence orders passed to enqueueAll are
+ * dispatched in, and the batches passed to a batch processor, are checked on
+ * a single thread, as are orders enqueued while a backlog is processed.
+ *
+ * @author chq-alexs
+ */
+public class ConcurrentOrderQueueTest {
+
+	/** Number of threads enqueuing orders */
+	private static final int PRODUCERS = 8;
+
+	/** Number of threads moving the threshold, dispatching and dequeuing */
+	private static final int DISPATCHERS = 8;
+
+	/** Number of orders enqueued by each producer */
+	private static final int ORDERS_PER_PRODUCER = 5000;
+
+	/** Number of times each test is repeated */
+	private static final int ROUNDS = 5;
+
+	/** Runs the test threads */
+	private ExecutorService threads;
+
+	/** Number of times each order has been handed out, by order id */
+	private Map<Integer, AtomicInteger> deliveries;
+
+	/** Number of threads currently in the order processor */
+	private AtomicInteger inProcessor;
+
+	/** Largest number of threads seen in the order processor at once */
+	private AtomicInteger maxInProcessor;
+
+	/**
+	 * Creates the test threads and counters.
+	 */
+	@Before
+	public void setUp() {
+		threads = Executors.newFixedThreadPool(PRODUCERS + DISPATCHERS);
+		deliveries = new ConcurrentHashMap<>();
+		inProcessor = new AtomicInteger();
+		maxInProcessor = new AtomicInteger();
+	}
+
+	/**
+	 * Stops the test threads.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the threads
+	 */
+	@After
+	public void tearDown() throws InterruptedException {
+		threads.shutdownNow();
+		threads.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Market style queue, the threshold opens and closes the queue while
+	 * orders are enqueued.
+	 *
+	 * @throws Exception
+	 *             if a test thread fails
+	 */
+	@Test
+	public void testOpenCloseRace() throws Exception {
+		for (int round = 0; round < ROUNDS; round++) {
+			deliveries.clear();
+			final ConcurrentOrderQueue<Boolean, Order> queue = new ConcurrentOrderQueue<>(Boolean.FALSE,
+					(Boolean t, Order o) -> t);
+
+			race(queue, (p, i) -> new MarketBuyOrder("account" + p, 10, "TICK"),
+					() -> queue.setThreshold(ThreadLocalRandom.current().nextBoolean()));
+
+			queue.setThreshold(Boolean.TRUE);
+			verify(queue, PRODUCERS * ORDERS_PER_PRODUCER);
+		}
+	}
+
+	/**
+	 * Stop buy style queue, the threshold is a price moving up and down while
+	 * orders at random prices are enqueued.
+	 *
+	 * @throws Exception
+	 *             if a test thread fails
+	 */
+	@Test
+	public void testPriceThresholdRace() throws Exception {
+		final Comparator<StopBuyOrder> ascending = Comparator.comparing(StopBuyOrder::getPrice);
+		for (int round = 0; round < ROUNDS; round++) {
+			deliveries.clear();
+			final ConcurrentOrderQueue<Integer, StopBuyOrder> queue = new ConcurrentOrderQueue<>(0,
+					(Integer t, StopBuyOrder o) -> o.getPrice() <= t, ascending.thenComparing(Order::getOrderId));
+
+			race(queue,
+					(p, i) -> new StopBuyOrder("account" + p, 10, "TICK", ThreadLocalRandom.current().nextInt(1, 1000)),
+					() -> queue.setThreshold(ThreadLocalRandom.current().nextInt(0, 1000)));
+
+			queue.setThreshold(Integer.MAX_VALUE);
+			verify(queue, PRODUCERS * ORDERS_PER_PRODUCER);
+		}
+	}
+
+	/**
+	 * Orders passed to enqueueAll while the queue is open are processed in the
+	 * order given, orders passed while it is closed are released in queue
+	 * order.
+	 */
+	@Test
+	public void testEnqueueAllKeepsSequence() {
+		final ConcurrentOrderQueue<Boolean, Order> queue = new ConcurrentOrderQueue<>(Boolean.TRUE,
+				(Boolean t, Order o) -> t);
+		final List<Order> fills = new ArrayList<>();
+		queue.setOrderProcessor(fills::add);
+		final Order a = new MarketBuyOrder("account", 10, "TICK");
+		final Order b = new MarketBuyOrder("account", 10, "TICK");
+		final Order c = new MarketBuyOrder("account", 10, "TICK");
+
+		queue.enqueueAll(Arrays.asList(c, a, b));
+		assertIds(fills, c, a, b);
+		assertEquals(0, queue.size());
+
+		fills.clear();
+		queue.setThreshold(Boolean.FALSE);
+		final Order d = new MarketBuyOrder("account", 10, "TICK");
+		final Order e = new MarketBuyOrder("account", 10, "TICK");
+		final Order f = new MarketBuyOrder("account", 10, "TICK");
+		queue.enqueue(e);
+		queue.enqueueAll(Arrays.asList(f, d));
+		queue.enqueueAll(Collections.<Order> emptyList());
+		assertEquals(0, fills.size());
+		assertEquals(3, queue.size());
+
+		queue.setThreshold(Boolean.TRUE);
+		assertIds(fills, d, e, f);
+	}
+
+	/**
+	 * With a batch processor the orders released by a threshold change are
+	 * processed as one batch in queue order, and each enqueue or enqueueAll
+	 * on an open queue as a batch of its own in the order given.
+	 */
+	@Test
+	public void testBatchProcessor() {
+		final ConcurrentOrderQueue<Boolean, Order> queue = new ConcurrentOrderQueue<>(Boolean.FALSE,
+				(Boolean t, Order o) -> t);
+		final List<Order> fills = new ArrayList<>();
+		final List<List<Order>> batches = new ArrayList<>();
+		queue.setOrderProcessor(fills::add);
+		queue.setBatchProcessor(batches::add);
+		final Order a = new MarketBuyOrder("account", 10, "TICK");
+		final Order b = new MarketBuyOrder("account", 10, "TICK");
+		final Order c = new MarketBuyOrder("account", 10, "TICK");
+		queue.enqueue(a);
+		queue.enqueueAll(Arrays.asList(c, b));
+		assertEquals(0, batches.size());
+
+		queue.setThreshold(Boolean.TRUE);
+		assertEquals(1, batches.size());
+		assertIds(batches.get(0), a, b, c);
+
+		final Order d = new MarketBuyOrder("account", 10, "TICK");
+		final Order e = new MarketBuyOrder("account", 10, "TICK");
+		final Order f = new MarketBuyOrder("account", 10, "TICK");
+		queue.enqueueAll(Arrays.asList(e, d));
+		queue.enqueue(f);
+		queue.enqueueAll(Collections.<Order> emptyList());
+		queue.dispatchOrders();
+		assertEquals(3, batches.size());
+		assertIds(batches.get(1), e, d);
+		assertIds(batches.get(2), f);
+		assertEquals(0, fills.size());
+		assertEquals(0, queue.size());
+	}
+
+	/**
+	 * Orders enqueued while a backlog is being processed don't wait for it,
+	 * and are processed after the backlog in the order they were enqueued.
+	 *
+	 * @throws Exception
+	 *             if a test thread fails
+	 */
+	@Test
+	public void testEnqueueDuringBacklog() throws Exception {
+		final ConcurrentOrderQueue<Boolean, Order> queue = new ConcurrentOrderQueue<>(Boolean.FALSE,
+				(Boolean t, Order o) -> t);
+		final List<Order> fills = new ArrayList<>();
+		queue.setOrderProcessor(fills::add);
+		final Order a = new MarketBuyOrder("account", 10, "TICK");
+		final Order b = new MarketBuyOrder("account", 10, "TICK");
+		queue.enqueue(b);
+		queue.enqueue(a);
+
+		final CountDownLatch arrived = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Future<?> opening = threads.submit(() -> {
+			queue.setThreshold(Boolean.TRUE, (backlog) -> {
+				arrived.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				fills.addAll(backlog);
+			});
+			return null;
+		});
+		assertTrue(arrived.await(10, TimeUnit.SECONDS));
+
+		final Order c = new MarketBuyOrder("account", 10, "TICK");
+		final Order d = new MarketBuyOrder("account", 10, "TICK");
+		final Order e = new MarketBuyOrder("account", 10, "TICK");
+		threads.submit(() -> {
+			queue.enqueue(c);
+			queue.enqueueAll(Arrays.asList(e, d));
+			queue.dispatchOrders();
+			return null;
+		}).get(10, TimeUnit.SECONDS);
+		assertEquals(0, fills.size());
+
+		release.countDown();
+		opening.get(10, TimeUnit.SECONDS);
+		assertIds(fills, a, b, c, e, d);
+		assertEquals(0, queue.size());
+	}
+
+	/**
+	 * Creates orders for the producers.
+	 *
+	 * @param <E>
+	 *            - the type of order
+	 */
+	private interface OrderSource<E extends Order> {
+		/**
+		 * Creates an order.
+		 *
+		 * @param producer
+		 *            - the producer number
+		 * @param index
+		 *            - the order number within the producer
+		 * @return the order
+		 */
+		E create(int producer, int index);
+	}
+
+	/**
+	 * Runs the producers and dispatchers against a queue until every producer
+	 * has enqueued all of its orders. Dispatchers alternate between moving the
+	 * threshold, calling dispatchOrders and dequeuing orders themselves.
+	 *
+	 * @param <E>
+	 *            - the type of order
+	 * @param queue
+	 *            - the queue under test
+	 * @param source
+	 *            - creates the orders
+	 * @param moveThreshold
+	 *            - moves the threshold to a random value
+	 * @throws Exception
+	 *             if a test thread fails
+	 */
+	private <E extends Order> void race(final ConcurrentOrderQueue<?, E> queue, final OrderSource<E> source,
+			final Runnable moveThreshold) throws Exception {
+		queue.setOrderProcessor((E order) -> {
+			final int inside = inProcessor.incrementAndGet();
+			maxInProcessor.accumulateAndGet(inside, Math::max);
+			deliver(order);
+			inProcessor.decrementAndGet();
+		});
+
+		final CyclicBarrier start = new CyclicBarrier(PRODUCERS + DISPATCHERS);
+		final AtomicInteger producing = new AtomicInteger(PRODUCERS);
+		final List<Future<?>> results = new ArrayList<>();
+
+		for (int p = 0; p < PRODUCERS; p++) {
+			final int producer = p;
+			results.add(threads.submit(() -> {
+				start.await();
+				for (int i = 0; i < ORDERS_PER_PRODUCER; i++) {
+					queue.enqueue(source.create(producer, i));
+				}
+				producing.decrementAndGet();
+				return null;
+			}));
+		}
+		for (int d = 0; d < DISPATCHERS; d++) {
+			results.add(threads.submit(() -> {
+				start.await();
+				while (producing.get() > 0) {
+					switch (ThreadLocalRandom.current().nextInt(3)) {
+					case 0:
+						moveThreshold.run();
+						break;
+					case 1:
+						queue.dispatchOrders();
+						break;
+					default:
+						final E order = queue.dequeue();
+						if (order != null) {
+							deliver(order);
+						}
+					}
+				}
+				return null;
+			}));
+		}
+
+		for (Future<?> result : results) {
+			result.get(60, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Records that an order has been handed out.
+	 *
+	 * @param order
+	 *            - the order
+	 */
+	private void deliver(final Order order) {
+		deliveries.computeIfAbsent(order.getOrderId(), (id) -> new AtomicInteger()).incrementAndGet();
+	}
+
+	/**
+	 * Checks the orders processed.
+	 *
+	 * @param actual
+	 *            - the orders processed, in order
+	 * @param expected
+	 *            - the orders expected, in order
+	 */
+	private static void assertIds(final List<Order> actual, final Order... expected) {
+		assertEquals(expected.length, actual.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i].getOrderId(), actual.get(i).getOrderId());
+		}
+	}
+
+	/**
+	 * Verifies the queue has been drained and every order was handed out
+	 * exactly once.
+	 *
+	 * @param queue
+	 *            - the queue under test
+	 * @param expected
+	 *            - the number of orders enqueued
+	 */
+	private void verify(final ConcurrentOrderQueue<?, ?> queue, final int expected) {
+		assertEquals(0, queue.size());
+		assertNull(queue.dequeue());
+		assertEquals(expected, deliveries.size());
+		for (Map.Entry<Integer, AtomicInteger> entry : deliveries.entrySet()) {
+			assertEquals("Deliveries of order " + entry.getKey(), 1, entry.getValue().get());
+		}
+		assertTrue("Order processor invoked concurrently", maxInProcessor.get() <= 1);
+	}
+}
@@ -0,0 +1,52 @@
+package test.java.edu.uw.ajs;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.AccountManager;
+import main.java.edu.uw.ajs.account.SimpleAccount;
+
+/**
+ * An account manager keeping the accounts in memory, for the broker tests.
+ *
+ * @author chq-alexs
+ */
+final class InMemoryAccountManager implements AccountManager {
+
+	/** The accounts */
+	private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+	@Override
+	public void persist(final Account account) {
+	}
+
+	@Override
+	public Account getAccount(final String accountName) {
+		return accounts.get(accountName);
+	}
+
+	@Override
+	public void deleteAccount(final String accountName) {
+		accounts.remove(accountName);
+	}
+
+	@Override
+	public Account createAccount(final String accountName, final String password, final int balance)
+			throws AccountException {
+		final Account account = new SimpleAccount(accountName, password.getBytes(), balance);
+		account.registerAccountManager(this);
+		accounts.put(accountName, account);
+		return account;
+	}
+
+	@Override
+	public boolean validateLogin(final String accountName, final String password) {
+		return accounts.containsKey(accountName);
+	}
+
+	@Override
+	public void close() {
+	}
+}
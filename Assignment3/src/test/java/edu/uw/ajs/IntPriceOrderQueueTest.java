@@ -0,0 +1,181 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.uw.ext.framework.order.StopBuyOrder;
+import main.java.edu.uw.ajs.broker.IntPriceOrderQueue;
+import main.java.edu.uw.ajs.broker.SimpleOrderQueue;
+
+/**
+ * Checks the int price heap against a SimpleOrderQueue ordered by price then
+ * order, for random sequences of orders placed, cancelled and triggered. The
+ * prices are drawn from a narrow range so many orders tie on price, and
+ * enough orders rest at once to grow the heap well past its initial capacity.
+ * Cancelled orders are removed from the middle of the heap, the reference
+ * queue can't cancel so it still dispatches them and they are left out of its
+ * fills.
+ *
+ * @author chq-alexs
+ */
+public class IntPriceOrderQueueTest {
+
+	/** Threshold the queues start at */
+	private static final int OPEN_PRICE = 100;
+
+	/** Number of operations in each random sequence */
+	private static final int OPERATIONS = 5000;
+
+	/** Number of orders expected to rest at once at some point of a sequence */
+	private static final int PEAK_SIZE = 64;
+
+	/**
+	 * Stop buys are dispatched as by the reference queue, lowest price first.
+	 */
+	@Test
+	public void testAscending() {
+		for (long seed = 1; seed <= 5; seed++) {
+			checkEquivalent(seed, true, false);
+		}
+	}
+
+	/**
+	 * Stop sells are dispatched as by the reference queue, highest price
+	 * first.
+	 */
+	@Test
+	public void testDescending() {
+		for (long seed = 1; seed <= 5; seed++) {
+			checkEquivalent(seed, false, false);
+		}
+	}
+
+	/**
+	 * Batches are released as by the reference queue, with the same orders in
+	 * each batch.
+	 */
+	@Test
+	public void testBatches() {
+		for (long seed = 1; seed <= 5; seed++) {
+			checkEquivalent(seed, true, true);
+			checkEquivalent(seed, false, true);
+		}
+	}
+
+	/**
+	 * Applies a random sequence of operations to the heap and the reference
+	 * queue and compares their dispatches after each operation.
+	 *
+	 * @param seed
+	 *            - seed of the random sequence
+	 * @param ascending
+	 *            - true to dispatch at or below the threshold, false at or
+	 *            above
+	 * @param batch
+	 *            - true to release triggered orders as batches
+	 */
+	private void checkEquivalent(final long seed, final boolean ascending, final boolean batch) {
+		final IntPriceOrderQueue<StopBuyOrder> heap = new IntPriceOrderQueue<>(OPEN_PRICE, StopBuyOrder::getPrice,
+				ascending);
+		final Comparator<StopBuyOrder> byPrice = Comparator.comparingInt(StopBuyOrder::getPrice);
+		final SimpleOrderQueue<Integer, StopBuyOrder> reference = new SimpleOrderQueue<>(OPEN_PRICE,
+				(t, o) -> ascending ? o.getPrice() <= t : o.getPrice() >= t,
+				(ascending ? byPrice : byPrice.reversed()).thenComparing(Comparator.naturalOrder()));
+
+		final Set<Integer> cancelled = new HashSet<>();
+		final List<List<Integer>> heapFills = new ArrayList<>();
+		final List<List<Integer>> referenceFills = new ArrayList<>();
+		if (batch) {
+			heap.setBatchProcessor((orders) -> heapFills.add(ids(orders, cancelled)));
+			reference.setBatchProcessor((orders) -> {
+				final List<Integer> ids = ids(orders, cancelled);
+				if (!ids.isEmpty()) {
+					referenceFills.add(ids);
+				}
+			});
+		} else {
+			heap.setOrderProcessor((order) -> heapFills.add(Collections.singletonList(order.getOrderId())));
+			reference.setOrderProcessor((order) -> {
+				if (!cancelled.contains(order.getOrderId())) {
+					referenceFills.add(Collections.singletonList(order.getOrderId()));
+				}
+			});
+		}
+
+		final Random rnd = new Random(seed);
+		final List<Integer> resting = new ArrayList<>();
+		final int sign = ascending ? 1 : -1;
+		int threshold = OPEN_PRICE;
+		int peak = 0;
+		for (int i = 0; i < OPERATIONS; i++) {
+			final int op = rnd.nextInt(100);
+			if (op < 55) {
+				final List<StopBuyOrder> orders = new ArrayList<>();
+				final int count = op < 45 ? 1 : 1 + rnd.nextInt(8);
+				for (int j = 0; j < count; j++) {
+					orders.add(new StopBuyOrder("acct", 10, "AAAA", threshold + sign * (rnd.nextInt(12) - 1)));
+				}
+				for (StopBuyOrder order : orders) {
+					resting.add(order.getOrderId());
+				}
+				if (count == 1) {
+					heap.enqueue(orders.get(0));
+					reference.enqueue(orders.get(0));
+				} else {
+					heap.enqueueAll(orders);
+					reference.enqueueAll(orders);
+				}
+			} else if (op < 70) {
+				if (!resting.isEmpty()) {
+					final Integer orderId = resting.get(rnd.nextInt(resting.size()));
+					assertTrue(heap.cancel(orderId));
+					cancelled.add(orderId);
+					resting.remove(orderId);
+				}
+			} else {
+				threshold += sign * (rnd.nextInt(9) - 4);
+				heap.setThreshold(threshold);
+				reference.setThreshold(threshold);
+			}
+
+			for (List<Integer> fill : heapFills) {
+				resting.removeAll(fill);
+			}
+			assertEquals(String.format("seed %d, operation %d", seed, i), referenceFills, heapFills);
+			assertEquals(resting.size(), heap.size());
+			peak = Math.max(peak, heap.size());
+			heapFills.clear();
+			referenceFills.clear();
+		}
+		assertTrue(String.format("Peak size %d", peak), peak >= PEAK_SIZE);
+	}
+
+	/**
+	 * Gets the ids of orders that weren't cancelled.
+	 *
+	 * @param orders
+	 *            - the orders
+	 * @param cancelled
+	 *            - ids of the cancelled orders
+	 * @return the ids of the orders not cancelled, in order
+	 */
+	private static List<Integer> ids(final List<StopBuyOrder> orders, final Set<Integer> cancelled) {
+		final List<Integer> ids = new ArrayList<>();
+		for (StopBuyOrder order : orders) {
+			if (!cancelled.contains(order.getOrderId())) {
+				ids.add(order.getOrderId());
+			}
+		}
+		return ids;
+	}
+}
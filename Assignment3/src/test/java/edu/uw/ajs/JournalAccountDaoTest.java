@@ -0,0 +1,236 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import main.java.edu.uw.ajs.account.SimpleAccount;
+import main.java.edu.uw.ajs.dao.JournalAccountDao;
+
+/**
+ * Tests JournalAccountDao: rebuilding the accounts by replaying the journal,
+ * truncating a torn record at the end of a segment, compaction into
+ * snapshots, and group commit.
+ *
+ * @author chq-alexs
+ */
+public class JournalAccountDaoTest {
+
+	/** Compaction threshold large enough that no test compacts by accident */
+	private static final long NO_COMPACTION = 1L << 30;
+
+	/** The journal directory */
+	private File journalDir;
+
+	/**
+	 * Creates the journal directory.
+	 *
+	 * @throws Exception
+	 *             if the directory can't be created
+	 */
+	@Before
+	public void setUp() throws Exception {
+		journalDir = Files.createTempDirectory("accounts").toFile();
+	}
+
+	/**
+	 * Deletes the journal directory.
+	 */
+	@After
+	public void tearDown() {
+		final File[] files = journalDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		journalDir.delete();
+	}
+
+	/**
+	 * Accounts, balance changes, profile changes and deletions are rebuilt on
+	 * reopening.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testReplay() throws Exception {
+		JournalAccountDao dao = new JournalAccountDao(journalDir, NO_COMPACTION);
+		final Account kept = account("acctKEEP", 100000);
+		dao.setAccount(kept);
+		dao.setAccount(account("acctGONE", 100000));
+		kept.setBalance(150000);
+		dao.setAccount(kept);
+		kept.setFullName("Kept Account");
+		kept.setBalance(175000);
+		dao.setAccount(kept);
+		dao.deleteAccount("acctGONE");
+		dao.close();
+
+		dao = new JournalAccountDao(journalDir, NO_COMPACTION);
+		final Account replayed = dao.getAccount("acctKEEP");
+		assertEquals(175000, replayed.getBalance());
+		assertEquals("Kept Account", replayed.getFullName());
+		assertNull(dao.getAccount("acctGONE"));
+		dao.close();
+	}
+
+	/**
+	 * A record torn by a crash during a write is truncated on reopening, the
+	 * records before it are kept and the segment can be appended to again.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testTornTailTruncated() throws Exception {
+		JournalAccountDao dao = new JournalAccountDao(journalDir, NO_COMPACTION);
+		final Account account = account("acctTORN", 100000);
+		dao.setAccount(account);
+		account.setBalance(120000);
+		dao.setAccount(account);
+		dao.close();
+
+		final File segment = files("segment-").get(0);
+		final long valid = segment.length();
+		try (FileOutputStream out = new FileOutputStream(segment, true)) {
+			out.write(new byte[] { 0, 0, 0, 40, 2, 0, 8, 'a', 'c' });
+		}
+
+		dao = new JournalAccountDao(journalDir, NO_COMPACTION);
+		assertEquals(valid, segment.length());
+		assertEquals(120000, dao.getAccount("acctTORN").getBalance());
+		account.setBalance(130000);
+		dao.setAccount(account);
+		dao.close();
+
+		dao = new JournalAccountDao(journalDir, NO_COMPACTION);
+		assertEquals(130000, dao.getAccount("acctTORN").getBalance());
+		dao.close();
+	}
+
+	/**
+	 * Passing the threshold writes a snapshot and deletes the segments it
+	 * supersedes, files in the directory that aren't well formed journal
+	 * files are left alone, and the accounts are rebuilt from the snapshot.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCompaction() throws Exception {
+		final File stray = new File(journalDir, "segment-backup.log");
+		assertTrue(stray.createNewFile());
+
+		JournalAccountDao dao = new JournalAccountDao(journalDir, 256);
+		final List<Account> accounts = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			accounts.add(account(String.format("acct%04d", i), 100000));
+		}
+		for (int round = 1; round <= 20; round++) {
+			for (Account account : accounts) {
+				account.setBalance(100000 + round);
+				dao.setAccount(account);
+			}
+		}
+		dao.close();
+
+		assertTrue(stray.exists());
+		assertEquals(1, files("snapshot-").size());
+		assertTrue(files("segment-").size() <= 3);
+
+		dao = new JournalAccountDao(journalDir, 256);
+		for (Account account : accounts) {
+			assertEquals(100020, dao.getAccount(account.getName()).getBalance());
+		}
+		dao.close();
+	}
+
+	/**
+	 * With group commit every change made by concurrent callers is on disk
+	 * once their calls return.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testGroupCommit() throws Exception {
+		final JournalAccountDao dao = new JournalAccountDao(journalDir, 4096, true);
+		final ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<?>> writers = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				final Account account = account(String.format("acctGRP%d", t), 100000);
+				writers.add(threads.submit(() -> {
+					for (int i = 1; i <= 100; i++) {
+						account.setBalance(100000 + i);
+						dao.setAccount(account);
+					}
+					return null;
+				}));
+			}
+			for (Future<?> writer : writers) {
+				writer.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			threads.shutdownNow();
+			dao.close();
+		}
+
+		final JournalAccountDao reopened = new JournalAccountDao(journalDir, 4096, true);
+		for (int t = 0; t < 4; t++) {
+			assertEquals(100100, reopened.getAccount(String.format("acctGRP%d", t)).getBalance());
+		}
+		reopened.close();
+	}
+
+	/**
+	 * Lists the journal files with a prefix, excluding malformed names.
+	 *
+	 * @param prefix
+	 *            - the file name prefix
+	 * @return the files, in name order
+	 */
+	private List<File> files(final String prefix) {
+		final List<File> files = new ArrayList<>();
+		for (File file : journalDir.listFiles()) {
+			if (file.getName().startsWith(prefix) && file.getName().matches(".*-\\d+\\.\\w+")) {
+				files.add(file);
+			}
+		}
+		files.sort(null);
+		return files;
+	}
+
+	/**
+	 * Creates an account.
+	 *
+	 * @param name
+	 *            - the account name
+	 * @param balance
+	 *            - the balance
+	 * @return the account
+	 * @throws AccountException
+	 *             if the account can't be created
+	 */
+	private static Account account(final String name, final int balance) throws AccountException {
+		return new SimpleAccount(name, "password".getBytes(), balance);
+	}
+}
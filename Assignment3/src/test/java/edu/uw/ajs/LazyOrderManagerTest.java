@@ -0,0 +1,74 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static test.java.edu.uw.ajs.BrokerFixture.ACCOUNT;
+
+import org.junit.Test;
+
+import edu.uw.ext.framework.broker.BrokerException;
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+import main.java.edu.uw.ajs.broker.SimpleBrokerConfig;
+
+/**
+ * Tests creating SimpleBroker's order managers with each stock's first stop
+ * order.
+ *
+ * @author chq-alexs
+ */
+public class LazyOrderManagerTest {
+
+	/** Number of tickers traded */
+	private static final int TICKER_COUNT = 1000;
+
+	/**
+	 * Only the stocks given stop orders have order managers, started at the
+	 * last price seen by the broker or else at the exchange's quote.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCreatedWithFirstStopOrder() throws Exception {
+		final String[] tickers = new String[TICKER_COUNT];
+		for (int i = 0; i < tickers.length; i++) {
+			tickers[i] = "T" + i;
+		}
+		final SimpleBrokerConfig config = new SimpleBrokerConfig();
+		config.setLazyOrderManagers(true);
+		try (BrokerFixture fixture = new BrokerFixture(tickers, BrokerFixture.newAccountManager(), config)) {
+			final SimpleBroker broker = fixture.getBroker();
+			final RecordingExchange exchange = fixture.getExchange();
+			assertEquals(0, broker.getOrderManagerCount());
+
+			// seeded from the price change, not the stale quote
+			broker.priceChanged(ExchangeEvent.newPriceChangedEvent(exchange, "T1", 110));
+			broker.placeOrder(new StopBuyOrder(ACCOUNT, 10, "T1", 105));
+			assertEquals(1, exchange.getFills("T1").size());
+			assertEquals(1, broker.getOrderManagerCount());
+
+			// seeded from the quote
+			exchange.setPrice("T2", 90);
+			broker.placeOrder(new StopSellOrder(ACCOUNT, 10, "T2", 95));
+			assertEquals(1, exchange.getFills("T2").size());
+			assertEquals(2, broker.getOrderManagerCount());
+
+			// later price changes reach the created order manager
+			broker.placeOrder(new StopBuyOrder(ACCOUNT, 10, "T1", 120));
+			broker.priceChanged(ExchangeEvent.newPriceChangedEvent(exchange, "T1", 120));
+			assertEquals(2, exchange.getFills("T1").size());
+			assertEquals(2, broker.getOrderManagerCount());
+
+			try {
+				broker.placeOrder(new StopBuyOrder(ACCOUNT, 10, "NONE", 105));
+				fail("Untraded ticker given an order manager");
+			} catch (BrokerException e) {
+				// expected
+			}
+			assertEquals(2, broker.getOrderManagerCount());
+		}
+	}
+}
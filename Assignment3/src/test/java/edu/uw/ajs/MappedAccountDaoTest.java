@@ -0,0 +1,231 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import main.java.edu.uw.ajs.account.SimpleAccount;
+import main.java.edu.uw.ajs.account.SimpleAddress;
+import main.java.edu.uw.ajs.dao.MappedAccountDao;
+
+/**
+ * Tests MappedAccountDao: reopening the store, recovery from a shadow slot
+ * write interrupted by a crash, reuse of overflow space and rejection of a
+ * truncated store.
+ *
+ * @author chq-alexs
+ */
+public class MappedAccountDaoTest {
+
+	/** Size of the slot file header */
+	private static final int HEADER_SIZE = 64;
+
+	/** Size of a slot */
+	private static final int SLOT_SIZE = 256;
+
+	/** Slot offset of the string fields */
+	private static final int SLOT_STRINGS = 32;
+
+	/** Number of slots in a new store */
+	private static final int SLOTS = 8;
+
+	/** The store directory */
+	private File storeDir;
+
+	/**
+	 * Creates the store directory.
+	 *
+	 * @throws Exception
+	 *             if the directory can't be created
+	 */
+	@Before
+	public void setUp() throws Exception {
+		storeDir = Files.createTempDirectory("accountstore").toFile();
+	}
+
+	/**
+	 * Deletes the store directory.
+	 */
+	@After
+	public void tearDown() {
+		final File[] files = storeDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		storeDir.delete();
+	}
+
+	/**
+	 * Accounts with inline and overflow strings, in-place balance updates and
+	 * deletions survive reopening the store.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testReopenRoundTrip() throws Exception {
+		MappedAccountDao dao = new MappedAccountDao(storeDir, SLOTS);
+		final Account account = account("acctTRIP", "A Name Too Long For Its Field");
+		final SimpleAddress addr = new SimpleAddress();
+		addr.setStreetAddress("1234 Some Quite Long Street Name");
+		addr.setCity("Seattle");
+		addr.setState("WA");
+		addr.setZipCode("98101");
+		account.setAddress(addr);
+		account.setEmail("short@x.org");
+		dao.setAccount(account);
+		account.setBalance(250000);
+		dao.setAccount(account);
+		dao.setAccount(account("acctGONE", "Gone"));
+		dao.deleteAccount("acctGONE");
+		dao.close();
+
+		dao = new MappedAccountDao(storeDir, SLOTS);
+		final Account read = dao.getAccount("acctTRIP");
+		assertEquals(250000, read.getBalance());
+		assertEquals("A Name Too Long For Its Field", read.getFullName());
+		assertEquals("short@x.org", read.getEmail());
+		assertEquals("1234 Some Quite Long Street Name", read.getAddress().getStreetAddress());
+		assertEquals("98101", read.getAddress().getZipCode());
+		assertNull(read.getCreditCard());
+		assertNull(dao.getAccount("acctGONE"));
+		dao.close();
+	}
+
+	/**
+	 * A crash after the shadow slot is written but before the old slot is
+	 * released keeps the new slot, and a crash that tears the shadow slot
+	 * keeps the old one.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testTornShadowWrite() throws Exception {
+		MappedAccountDao dao = new MappedAccountDao(storeDir, SLOTS);
+		final Account account = account("acctTORN", "Original Full Name");
+		dao.setAccount(account);
+		account.setFullName("Updated Full Name");
+		dao.setAccount(account);
+		dao.close();
+
+		final File slotFile = new File(storeDir, "accounts.slots");
+		try (RandomAccessFile raf = new RandomAccessFile(slotFile, "rw")) {
+			raf.seek(slotOffset(0));
+			raf.write(1);
+		}
+		dao = new MappedAccountDao(storeDir, SLOTS);
+		assertEquals("Updated Full Name", dao.getAccount("acctTORN").getFullName());
+		dao.close();
+
+		try (RandomAccessFile raf = new RandomAccessFile(slotFile, "rw")) {
+			raf.seek(slotOffset(0));
+			raf.write(1);
+			raf.seek(slotOffset(1) + SLOT_STRINGS + 2);
+			raf.write('X');
+		}
+		dao = new MappedAccountDao(storeDir, SLOTS);
+		assertEquals("Original Full Name", dao.getAccount("acctTORN").getFullName());
+		account.setBalance(300000);
+		dao.setAccount(account);
+		dao.close();
+
+		dao = new MappedAccountDao(storeDir, SLOTS);
+		assertEquals(300000, dao.getAccount("acctTORN").getBalance());
+		dao.close();
+	}
+
+	/**
+	 * Overflow space released by profile updates and deletions is reused, and
+	 * rebuilt on reopening, so the overflow file doesn't grow with updates.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testOverflowReclaimed() throws Exception {
+		final File overflow = new File(storeDir, "accounts.overflow");
+		MappedAccountDao dao = new MappedAccountDao(storeDir, SLOTS);
+		final Account first = account("acctFRST", "First Account Holder");
+		dao.setAccount(first);
+		dao.setAccount(account("acctSCND", "Second Account Holder"));
+		dao.setAccount(account("acctLAST", "Final Account Holder"));
+		final long size = overflow.length();
+
+		for (int i = 0; i < 50; i++) {
+			first.setFullName(String.format("First Account Holder %02d", i % 10));
+			dao.setAccount(first);
+		}
+		assertTrue(overflow.length() < 2 * size);
+
+		dao.deleteAccount("acctSCND");
+		final long withGap = overflow.length();
+		dao.close();
+
+		dao = new MappedAccountDao(storeDir, SLOTS);
+		assertEquals(withGap, overflow.length());
+		dao.setAccount(account("acctTHRD", "Third Account Holder!"));
+		assertEquals(withGap, overflow.length());
+		dao.deleteAccount("acctFRST");
+		dao.deleteAccount("acctTHRD");
+		dao.deleteAccount("acctLAST");
+		assertEquals(0, overflow.length());
+		dao.close();
+	}
+
+	/**
+	 * A slot file too short to hold its header is rejected rather than
+	 * reinitialized.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test(expected = AccountException.class)
+	public void testShortHeaderRejected() throws Exception {
+		try (RandomAccessFile raf = new RandomAccessFile(new File(storeDir, "accounts.slots"), "rw")) {
+			raf.writeInt(0x4A534C54);
+			raf.writeInt(1);
+		}
+		new MappedAccountDao(storeDir, SLOTS);
+	}
+
+	/**
+	 * Gets the file offset of a slot.
+	 *
+	 * @param slot
+	 *            - the slot number
+	 * @return the slot offset
+	 */
+	private static long slotOffset(final int slot) {
+		return HEADER_SIZE + (long) slot * SLOT_SIZE;
+	}
+
+	/**
+	 * Creates an account.
+	 *
+	 * @param name
+	 *            - the account name
+	 * @param fullName
+	 *            - the account holder's name
+	 * @return the account
+	 * @throws AccountException
+	 *             if the account can't be created
+	 */
+	private static Account account(final String name, final String fullName) throws AccountException {
+		final Account account = new SimpleAccount(name, "password".getBytes(), 100000);
+		account.setFullName(fullName);
+		return account;
+	}
+}
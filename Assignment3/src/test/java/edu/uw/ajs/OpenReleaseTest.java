@@ -0,0 +1,130 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+import main.java.edu.uw.ajs.broker.SimpleBrokerConfig;
+
+/**
+ * Tests the release of the market order backlog when the exchange opens.
+ * Market orders for several tickers, from accounts trading every ticker, are
+ * placed while the exchange is closed, and after the open every order must
+ * have been executed once, each ticker's orders in queue order, with every
+ * account reflecting all of its orders.
+ *
+ * @author chq-alexs
+ */
+public class OpenReleaseTest {
+
+	/** Tickers traded */
+	private static final String[] TICKERS = { "AAAA", "BBBB", "CCCC", "DDDD", "EEEE", "FFFF", "GGGG", "HHHH" };
+
+	/** Accounts placing orders, each for every ticker */
+	private static final String[] ACCOUNTS = { "account1", "account2", "account3" };
+
+	/** Price of every ticker */
+	private static final int PRICE = 100;
+
+	/** Number of backlog orders */
+	private static final int ORDERS = 5000;
+
+	/** Opening balance of every account */
+	private static final int INITIAL_BALANCE = 1000000;
+
+	/**
+	 * Releases the backlog in parallel.
+	 *
+	 * @throws Exception
+	 *             if the release fails
+	 */
+	@Test
+	public void testParallelRelease() throws Exception {
+		final SimpleBrokerConfig config = new SimpleBrokerConfig();
+		config.setOpenReleaseThreads(4);
+		for (int i = 0; i < 5; i++) {
+			releaseBacklog(config);
+		}
+	}
+
+	/**
+	 * Releases the backlog serially.
+	 *
+	 * @throws Exception
+	 *             if the release fails
+	 */
+	@Test
+	public void testSerialRelease() throws Exception {
+		releaseBacklog(new SimpleBrokerConfig());
+	}
+
+	/**
+	 * Places the backlog with the exchange closed, opens it and verifies the
+	 * fills.
+	 *
+	 * @param config
+	 *            - the broker configuration
+	 * @throws Exception
+	 *             if the release fails
+	 */
+	private void releaseBacklog(final SimpleBrokerConfig config) throws Exception {
+		final RecordingExchange exchange = new RecordingExchange(TICKERS, PRICE);
+		final InMemoryAccountManager acctMgr = new InMemoryAccountManager();
+		for (String account : ACCOUNTS) {
+			acctMgr.createAccount(account, "password", INITIAL_BALANCE);
+		}
+		final SimpleBroker broker = new SimpleBroker("open", acctMgr, exchange, config);
+		final Random rnd = new Random(42);
+		final List<Order> placed = new ArrayList<>();
+		final int[] shares = new int[ACCOUNTS.length];
+
+		try {
+			broker.exchangeClosed(ExchangeEvent.newClosedEvent(exchange));
+			for (int i = 0; i < ORDERS; i++) {
+				final int account = rnd.nextInt(ACCOUNTS.length);
+				final MarketSellOrder order = new MarketSellOrder(ACCOUNTS[account], 1 + rnd.nextInt(50),
+						TICKERS[rnd.nextInt(TICKERS.length)]);
+				shares[account] += order.getNumberOfShares();
+				placed.add(order);
+				broker.placeOrder(order);
+			}
+			for (String ticker : TICKERS) {
+				assertTrue("Executed while closed", exchange.getFills(ticker).isEmpty());
+			}
+
+			broker.exchangeOpened(ExchangeEvent.newOpenedEvent(exchange));
+		} finally {
+			broker.close();
+		}
+
+		Collections.sort(placed);
+		for (String ticker : TICKERS) {
+			final List<Integer> expected = new ArrayList<>();
+			for (Order order : placed) {
+				if (order.getStockTicker().equals(ticker)) {
+					expected.add(order.getOrderId());
+				}
+			}
+			final List<Integer> filled = new ArrayList<>();
+			for (Order order : exchange.getFills(ticker)) {
+				filled.add(order.getOrderId());
+			}
+			assertEquals("Fills for " + ticker, expected, filled);
+		}
+		for (int i = 0; i < ACCOUNTS.length; i++) {
+			final int balance = acctMgr.getAccount(ACCOUNTS[i]).getBalance();
+			assertEquals("Balance change for " + ACCOUNTS[i], shares[i] * PRICE,
+					Math.abs(balance - INITIAL_BALANCE));
+		}
+	}
+}
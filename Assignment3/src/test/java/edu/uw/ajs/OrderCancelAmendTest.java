@@ -0,0 +1,464 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static test.java.edu.uw.ajs.BrokerFixture.ACCOUNT;
+import static test.java.edu.uw.ajs.BrokerFixture.OPEN_PRICE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.uw.ext.framework.broker.BrokerException;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.broker.BatchOrderQueue;
+import main.java.edu.uw.ajs.broker.IntPriceOrderQueue;
+import main.java.edu.uw.ajs.broker.PriceLevelOrderBook;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+import main.java.edu.uw.ajs.broker.SimpleBrokerConfig;
+
+/**
+ * Tests cancelling and looking up resting stop buy orders by order id, for
+ * both the int price heap and the price level order book, and cancelling and
+ * amending resting stop orders through SimpleBroker, with each order manager
+ * and with and without batch dispatch, including cancels and amendments
+ * racing the price change that triggers the order.
+ *
+ * @author chq-alexs
+ */
+public class OrderCancelAmendTest {
+
+	/** Number of times each race is run */
+	private static final int RACES = 200;
+
+	/**
+	 * Cancelled orders are never dispatched and can't be cancelled twice.
+	 */
+	@Test
+	public void testCancel() {
+		final IntPriceOrderQueue<StopBuyOrder> heap = new IntPriceOrderQueue<>(OPEN_PRICE, StopBuyOrder::getPrice,
+				true);
+		checkCancel(heap, heap::cancel);
+
+		final PriceLevelOrderBook<StopBuyOrder> book = new PriceLevelOrderBook<>(OPEN_PRICE, StopBuyOrder::getPrice,
+				true);
+		checkCancel(book, book::cancel);
+	}
+
+	/**
+	 * Resting orders can be looked up until they are cancelled or dispatched.
+	 */
+	@Test
+	public void testGet() {
+		final IntPriceOrderQueue<StopBuyOrder> heap = new IntPriceOrderQueue<>(OPEN_PRICE, StopBuyOrder::getPrice,
+				true);
+		checkGet(heap, heap::get, heap::cancel);
+
+		final PriceLevelOrderBook<StopBuyOrder> book = new PriceLevelOrderBook<>(OPEN_PRICE, StopBuyOrder::getPrice,
+				true);
+		checkGet(book, book::get, book::cancel);
+	}
+
+	/**
+	 * A cancelled order is never executed, and neither a cancelled nor an
+	 * executed order can be cancelled.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCancelOrder() throws Exception {
+		for (SimpleBrokerConfig config : configs()) {
+			try (BrokerFixture fixture = new BrokerFixture(config)) {
+				final SimpleBroker broker = fixture.getBroker();
+				final StopBuyOrder cancelled = new StopBuyOrder(ACCOUNT, 10, "AAAA", 105);
+				final StopBuyOrder executed = new StopBuyOrder(ACCOUNT, 10, "AAAA", 106);
+				broker.placeOrder(cancelled);
+				broker.placeOrder(executed);
+
+				broker.cancelOrder(cancelled.getOrderId());
+				fixture.tick("AAAA", 110);
+				assertFills(fixture, executed);
+				assertNotResting(broker, cancelled);
+				assertNotResting(broker, executed);
+			}
+		}
+	}
+
+	/**
+	 * An amended order is replaced by an order at the new price, which is the
+	 * order executed and reports the new price. The replaced order can no
+	 * longer be cancelled.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testAmendOrder() throws Exception {
+		for (SimpleBrokerConfig config : configs()) {
+			try (BrokerFixture fixture = new BrokerFixture(config)) {
+				final SimpleBroker broker = fixture.getBroker();
+				final StopSellOrder order = new StopSellOrder(ACCOUNT, 10, "AAAA", 90);
+				broker.placeOrder(order);
+
+				final Order replacement = broker.amendOrder(order.getOrderId(), 95);
+				assertNotEquals(order.getOrderId(), replacement.getOrderId());
+				assertEquals(95, ((StopSellOrder) replacement).getPrice());
+				assertEquals(ACCOUNT, replacement.getAccountId());
+				assertEquals(10, replacement.getNumberOfShares());
+				assertNotResting(broker, order);
+
+				fixture.tick("AAAA", 96);
+				assertFills(fixture);
+				fixture.tick("AAAA", 95);
+				assertFills(fixture, replacement);
+				assertEquals(95, ((StopSellOrder) fixture.getFills("AAAA").get(0)).getPrice());
+			}
+		}
+	}
+
+	/**
+	 * An amended order is executed after the orders already resting at its
+	 * new price, by both order managers, as it would be if newly placed.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testAmendJoinsEndOfLevel() throws Exception {
+		for (SimpleBrokerConfig config : configs()) {
+			try (BrokerFixture fixture = new BrokerFixture(config)) {
+				final SimpleBroker broker = fixture.getBroker();
+				final StopBuyOrder moved = new StopBuyOrder(ACCOUNT, 10, "AAAA", 105);
+				final StopBuyOrder first = new StopBuyOrder(ACCOUNT, 10, "AAAA", 110);
+				final StopBuyOrder second = new StopBuyOrder(ACCOUNT, 10, "AAAA", 110);
+				broker.placeOrder(moved);
+				broker.placeOrder(first);
+				broker.placeOrder(second);
+
+				final Order replacement = broker.amendOrder(moved.getOrderId(), 110);
+				fixture.tick("AAAA", 110);
+				assertFills(fixture, first, second, replacement);
+			}
+		}
+	}
+
+	/**
+	 * An order amended to a price the current price has already crossed is
+	 * executed at once.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testAmendTriggers() throws Exception {
+		for (SimpleBrokerConfig config : configs()) {
+			try (BrokerFixture fixture = new BrokerFixture(config)) {
+				final StopBuyOrder order = new StopBuyOrder(ACCOUNT, 10, "AAAA", 110);
+				fixture.getBroker().placeOrder(order);
+
+				final Order replacement = fixture.getBroker().amendOrder(order.getOrderId(), OPEN_PRICE);
+				assertFills(fixture, replacement);
+				assertNotResting(fixture.getBroker(), replacement);
+			}
+		}
+	}
+
+	/**
+	 * The replacement of an amended order stays in the order's
+	 * one-cancels-other group and keeps its expiry time.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testAmendKeepsGroupAndExpiry() throws Exception {
+		for (SimpleBrokerConfig config : configs()) {
+			try (BrokerFixture fixture = new BrokerFixture(config)) {
+				final SimpleBroker broker = fixture.getBroker();
+				final StopSellOrder stopLoss = new StopSellOrder(ACCOUNT, 10, "AAAA", 90);
+				final StopBuyOrder breakout = new StopBuyOrder(ACCOUNT, 10, "AAAA", 110);
+				broker.placeOcoGroup(Arrays.asList(stopLoss, breakout));
+				final Order replacement = broker.amendOrder(breakout.getOrderId(), 105);
+				fixture.tick("AAAA", 105);
+				assertFills(fixture, replacement);
+				assertNotResting(broker, stopLoss);
+
+				final long expiryMillis = System.currentTimeMillis() + 60000;
+				final StopBuyOrder expiring = new StopBuyOrder(ACCOUNT, 10, "AAAA", 120);
+				broker.placeOrder(expiring, expiryMillis);
+				final Order renewed = broker.amendOrder(expiring.getOrderId(), 125);
+				broker.expireOrders(expiryMillis + 60000);
+				assertNotResting(broker, renewed);
+				fixture.tick("AAAA", 130);
+				assertFills(fixture, replacement);
+			}
+		}
+	}
+
+	/**
+	 * A cancel racing the price change that triggers the order either
+	 * cancels the order, which is then never executed, or fails because the
+	 * order has been triggered, which is then executed once.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCancelRacesTrigger() throws Exception {
+		final ExecutorService threads = Executors.newFixedThreadPool(2);
+		try {
+			for (SimpleBrokerConfig config : configs()) {
+				try (BrokerFixture fixture = new BrokerFixture(config)) {
+					for (int i = 0; i < RACES; i++) {
+						final StopBuyOrder order = new StopBuyOrder(ACCOUNT, 10, "AAAA", 105);
+						fixture.getBroker().placeOrder(order);
+
+						final boolean cancelled = race(threads, fixture, () -> {
+							fixture.getBroker().cancelOrder(order.getOrderId());
+							return Boolean.TRUE;
+						}) != null;
+
+						assertEquals("Cancelled and executed", cancelled ? 0 : 1, countFills(fixture, order));
+						fixture.tick("AAAA", OPEN_PRICE);
+					}
+				}
+			}
+		} finally {
+			threads.shutdownNow();
+		}
+	}
+
+	/**
+	 * An amendment racing the price change that triggers the order either
+	 * replaces the order, which is then never executed, or fails because the
+	 * order has been triggered, which is then executed once.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testAmendRacesTrigger() throws Exception {
+		final ExecutorService threads = Executors.newFixedThreadPool(2);
+		try {
+			for (SimpleBrokerConfig config : configs()) {
+				try (BrokerFixture fixture = new BrokerFixture(config)) {
+					for (int i = 0; i < RACES; i++) {
+						final StopBuyOrder order = new StopBuyOrder(ACCOUNT, 10, "AAAA", 105);
+						fixture.getBroker().placeOrder(order);
+
+						final Order replacement = race(threads, fixture,
+								() -> fixture.getBroker().amendOrder(order.getOrderId(), 200));
+
+						assertEquals("Amended and executed", replacement != null ? 0 : 1,
+								countFills(fixture, order));
+						if (replacement != null) {
+							assertEquals(0, countFills(fixture, replacement));
+							fixture.getBroker().cancelOrder(replacement.getOrderId());
+						}
+						fixture.tick("AAAA", OPEN_PRICE);
+					}
+				}
+			}
+		} finally {
+			threads.shutdownNow();
+		}
+	}
+
+	/**
+	 * Places three orders, cancels the middle one and checks the others are
+	 * dispatched.
+	 *
+	 * @param queue
+	 *            - the queue under test
+	 * @param cancel
+	 *            - the queue's cancel operation
+	 */
+	private void checkCancel(final BatchOrderQueue<Integer, StopBuyOrder> queue, final Cancel cancel) {
+		final List<StopBuyOrder> fills = record(queue);
+		final StopBuyOrder low = new StopBuyOrder("acct", 10, "AAAA", 101);
+		final StopBuyOrder mid = new StopBuyOrder("acct", 10, "AAAA", 102);
+		final StopBuyOrder high = new StopBuyOrder("acct", 10, "AAAA", 103);
+		queue.enqueue(low);
+		queue.enqueue(mid);
+		queue.enqueue(high);
+
+		assertTrue(cancel.cancel(mid.getOrderId()));
+		assertFalse(cancel.cancel(mid.getOrderId()));
+
+		queue.setThreshold(103);
+		assertEquals(2, fills.size());
+		assertEquals(low.getOrderId(), fills.get(0).getOrderId());
+		assertEquals(high.getOrderId(), fills.get(1).getOrderId());
+		assertFalse("Dispatched order cancelled", cancel.cancel(low.getOrderId()));
+	}
+
+	/**
+	 * Places two orders and checks they can be looked up while resting.
+	 *
+	 * @param queue
+	 *            - the queue under test
+	 * @param get
+	 *            - the queue's lookup operation
+	 * @param cancel
+	 *            - the queue's cancel operation
+	 */
+	private void checkGet(final BatchOrderQueue<Integer, StopBuyOrder> queue, final Get get, final Cancel cancel) {
+		record(queue);
+		final StopBuyOrder low = new StopBuyOrder("acct", 10, "AAAA", 101);
+		final StopBuyOrder high = new StopBuyOrder("acct", 10, "AAAA", 110);
+		queue.enqueue(low);
+		queue.enqueue(high);
+
+		assertSame(low, get.get(low.getOrderId()));
+		assertSame(high, get.get(high.getOrderId()));
+		assertTrue(cancel.cancel(high.getOrderId()));
+		assertNull(get.get(high.getOrderId()));
+		queue.setThreshold(101);
+		assertNull("Dispatched order resting", get.get(low.getOrderId()));
+	}
+
+	/**
+	 * Runs an operation on an order concurrently with a price change to 105,
+	 * which triggers the order if it is still resting.
+	 *
+	 * @param <T>
+	 *            - the operation's result type
+	 * @param threads
+	 *            - the threads to race on
+	 * @param fixture
+	 *            - the broker fixture
+	 * @param operation
+	 *            - the operation, throwing BrokerException if the order isn't
+	 *            resting
+	 * @return the operation's result, null if it threw BrokerException
+	 * @throws Exception
+	 *             if the race fails
+	 */
+	private static <T> T race(final ExecutorService threads, final BrokerFixture fixture,
+			final Callable<T> operation) throws Exception {
+		final CyclicBarrier start = new CyclicBarrier(2);
+		final Future<?> tick = threads.submit(() -> {
+			start.await();
+			fixture.tick("AAAA", 105);
+			return null;
+		});
+		final Future<T> result = threads.submit(() -> {
+			start.await();
+			try {
+				return operation.call();
+			} catch (BrokerException e) {
+				return null;
+			}
+		});
+		tick.get(10, TimeUnit.SECONDS);
+		return result.get(10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Gets the broker configurations to test with, each order manager with and
+	 * without batch dispatch.
+	 *
+	 * @return the configurations
+	 */
+	private static List<SimpleBrokerConfig> configs() {
+		final SimpleBrokerConfig priceLevel = new SimpleBrokerConfig();
+		priceLevel.setPriceLevelOrderBook(true);
+		final SimpleBrokerConfig batched = new SimpleBrokerConfig();
+		batched.setBatchDispatch(true);
+		final SimpleBrokerConfig priceLevelBatched = new SimpleBrokerConfig();
+		priceLevelBatched.setPriceLevelOrderBook(true);
+		priceLevelBatched.setBatchDispatch(true);
+		return Arrays.asList(new SimpleBrokerConfig(), priceLevel, batched, priceLevelBatched);
+	}
+
+	/**
+	 * Checks the orders executed for AAAA.
+	 *
+	 * @param fixture
+	 *            - the broker fixture
+	 * @param expected
+	 *            - the orders expected to have been executed, in order
+	 */
+	private static void assertFills(final BrokerFixture fixture, final Order... expected) {
+		final List<Order> fills = fixture.getFills("AAAA");
+		assertEquals(expected.length, fills.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i].getOrderId(), fills.get(i).getOrderId());
+		}
+	}
+
+	/**
+	 * Counts the executions of an order.
+	 *
+	 * @param fixture
+	 *            - the broker fixture
+	 * @param order
+	 *            - the order
+	 * @return the number of times the order has been executed
+	 */
+	private static int countFills(final BrokerFixture fixture, final Order order) {
+		int count = 0;
+		for (Order fill : fixture.getFills("AAAA")) {
+			if (fill.getOrderId() == order.getOrderId()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Checks an order is no longer resting, so it can't be cancelled.
+	 *
+	 * @param broker
+	 *            - the broker
+	 * @param order
+	 *            - the order
+	 */
+	private static void assertNotResting(final SimpleBroker broker, final Order order) {
+		try {
+			broker.cancelOrder(order.getOrderId());
+			fail(String.format("Order %d still resting", order.getOrderId()));
+		} catch (BrokerException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Records the orders dispatched by a queue.
+	 *
+	 * @param queue
+	 *            - the queue
+	 * @return the dispatched orders, in dispatch order
+	 */
+	private List<StopBuyOrder> record(final BatchOrderQueue<Integer, StopBuyOrder> queue) {
+		final List<StopBuyOrder> fills = new ArrayList<>();
+		queue.setOrderProcessor(fills::add);
+		return fills;
+	}
+
+	/** A queue's cancel operation */
+	private interface Cancel {
+		boolean cancel(int orderId);
+	}
+
+	/** A queue's lookup operation */
+	private interface Get {
+		StopBuyOrder get(int orderId);
+	}
+}
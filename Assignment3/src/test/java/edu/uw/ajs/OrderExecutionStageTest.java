@@ -0,0 +1,257 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.Order;
+import main.java.edu.uw.ajs.broker.OrderExecutionStage;
+import main.java.edu.uw.ajs.broker.OrderExecutionStage.Backpressure;
+
+/**
+ * Tests OrderExecutionStage: waiting for room with BLOCK backpressure,
+ * rejecting with REJECT backpressure, and draining the queued orders on
+ * close while orders are still being submitted.
+ *
+ * @author chq-alexs
+ */
+public class OrderExecutionStageTest {
+
+	/** How long a thread is expected to stay blocked, in milliseconds */
+	private static final long BLOCKED_MILLIS = 200;
+
+	/** Orders executed, in execution order */
+	private List<Order> executed;
+
+	/** Counted down once the first order has started executing */
+	private CountDownLatch started;
+
+	/** Holds up the execution of every order until counted down */
+	private CountDownLatch gate;
+
+	/** Runs the test threads */
+	private ExecutorService threads;
+
+	/**
+	 * Creates the gate and the test threads.
+	 */
+	@Before
+	public void setUp() {
+		executed = Collections.synchronizedList(new ArrayList<>());
+		started = new CountDownLatch(1);
+		gate = new CountDownLatch(1);
+		threads = Executors.newCachedThreadPool();
+	}
+
+	/**
+	 * Opens the gate and stops the test threads.
+	 */
+	@After
+	public void tearDown() {
+		gate.countDown();
+		threads.shutdownNow();
+	}
+
+	/**
+	 * With BLOCK backpressure submitting to a full lane doesn't block, the
+	 * caller waits in awaitCapacity instead, until the lane has room.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testBlockWaitsForCapacity() throws Exception {
+		final OrderExecutionStage stage = new OrderExecutionStage("test", 1, 2, Backpressure.BLOCK,
+				this::gatedExecute);
+		final List<Order> orders = orders("acct", 4);
+		stage.submit(orders.get(0));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		stage.submit(orders.get(1));
+		stage.awaitCapacity();
+		stage.submit(orders.get(2));
+		stage.submit(orders.get(3));
+		assertEquals(3, stage.pending());
+
+		final Future<?> waiter = threads.submit(stage::awaitCapacity);
+		try {
+			waiter.get(BLOCKED_MILLIS, TimeUnit.MILLISECONDS);
+			fail("awaitCapacity returned with a full lane");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		gate.countDown();
+		waiter.get(5, TimeUnit.SECONDS);
+
+		stage.close();
+		assertEquals(orders, executed);
+	}
+
+	/**
+	 * With REJECT backpressure an order submitted to a full lane is rejected
+	 * and awaitCapacity doesn't wait.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testRejectWhenFull() throws Exception {
+		final OrderExecutionStage stage = new OrderExecutionStage("test", 1, 1, Backpressure.REJECT,
+				this::gatedExecute);
+		final List<Order> orders = orders("acct", 3);
+		stage.submit(orders.get(0));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		stage.submit(orders.get(1));
+		try {
+			stage.submit(orders.get(2));
+			fail("Order accepted by a full lane");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		threads.submit(stage::awaitCapacity).get(5, TimeUnit.SECONDS);
+
+		gate.countDown();
+		stage.close();
+		assertEquals(orders.subList(0, 2), executed);
+	}
+
+	/**
+	 * Closing executes the orders already queued, in order for each account,
+	 * and rejects the orders submitted afterwards; awaitCapacity doesn't wait
+	 * on a closed stage.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCloseDrains() throws Exception {
+		final OrderExecutionStage stage = new OrderExecutionStage("test", 2, 1, Backpressure.BLOCK,
+				this::gatedExecute);
+		final List<Order> first = orders("acct1", 20);
+		final List<Order> second = orders("acct2", 20);
+		for (int i = 0; i < first.size(); i++) {
+			stage.submit(first.get(i));
+			stage.submit(second.get(i));
+		}
+		final Future<?> closer = threads.submit(stage::close);
+		gate.countDown();
+		closer.get(5, TimeUnit.SECONDS);
+		assertEquals(40, executed.size());
+		assertEquals(first, forAccount("acct1"));
+		assertEquals(second, forAccount("acct2"));
+
+		try {
+			stage.submit(new MarketBuyOrder("acct1", 10, "AAAA"));
+			fail("Order accepted after close");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		threads.submit(stage::awaitCapacity).get(5, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Every order submitted while the stage is being closed is either
+	 * executed or rejected, none is left queued on a stopped lane.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCloseWhileSubmitting() throws Exception {
+		gate.countDown();
+		final OrderExecutionStage stage = new OrderExecutionStage("test", 4, 8, Backpressure.BLOCK,
+				this::gatedExecute);
+		final AtomicInteger accepted = new AtomicInteger();
+		final List<Future<?>> submitters = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final String acctId = "acct" + t;
+			submitters.add(threads.submit(() -> {
+				while (true) {
+					stage.awaitCapacity();
+					try {
+						stage.submit(new MarketBuyOrder(acctId, 10, "AAAA"));
+					} catch (RejectedExecutionException e) {
+						return;
+					}
+					accepted.incrementAndGet();
+				}
+			}));
+		}
+		Thread.sleep(50);
+		stage.close();
+		for (Future<?> submitter : submitters) {
+			submitter.get(5, TimeUnit.SECONDS);
+		}
+		assertFalse(executed.isEmpty());
+		assertEquals(accepted.get(), executed.size());
+	}
+
+	/**
+	 * Records an order once the gate is open.
+	 *
+	 * @param order
+	 *            - the order executed
+	 */
+	private void gatedExecute(final Order order) {
+		started.countDown();
+		try {
+			gate.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		executed.add(order);
+	}
+
+	/**
+	 * Gets the orders executed for an account.
+	 *
+	 * @param acctId
+	 *            - the account
+	 * @return the account's orders, in execution order
+	 */
+	private List<Order> forAccount(final String acctId) {
+		final List<Order> orders = new ArrayList<>();
+		synchronized (executed) {
+			for (Order order : executed) {
+				if (order.getAccountId().equals(acctId)) {
+					orders.add(order);
+				}
+			}
+		}
+		return orders;
+	}
+
+	/**
+	 * Creates market orders for an account.
+	 *
+	 * @param acctId
+	 *            - the account
+	 * @param count
+	 *            - the number of orders
+	 * @return the orders
+	 */
+	private static List<Order> orders(final String acctId, final int count) {
+		final List<Order> orders = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			orders.add(new MarketBuyOrder(acctId, 10 + i, "AAAA"));
+		}
+		return orders;
+	}
+}
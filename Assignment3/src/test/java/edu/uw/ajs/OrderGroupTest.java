@@ -0,0 +1,149 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static test.java.edu.uw.ajs.BrokerFixture.ACCOUNT;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.uw.ext.framework.broker.BrokerException;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+import main.java.edu.uw.ajs.broker.SimpleBrokerConfig;
+
+/**
+ * Tests one-cancels-other groups and bracket orders placed through
+ * SimpleBroker, with each order manager and with and without batch dispatch.
+ *
+ * @author chq-alexs
+ */
+public class OrderGroupTest {
+
+	/**
+	 * Triggering one order of a group cancels the other.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testOneCancelsOther() throws Exception {
+		for (SimpleBrokerConfig config : configs()) {
+			try (BrokerFixture fixture = new BrokerFixture(config)) {
+				final SimpleBroker broker = fixture.getBroker();
+				final StopSellOrder stopLoss = new StopSellOrder(ACCOUNT, 10, "AAAA", 90);
+				final StopBuyOrder breakout = new StopBuyOrder(ACCOUNT, 10, "AAAA", 110);
+				broker.placeOcoGroup(Arrays.asList(stopLoss, breakout));
+
+				fixture.tick("AAAA", 110);
+				fixture.tick("AAAA", 80);
+				assertFills(fixture, breakout);
+				try {
+					broker.cancelOrder(stopLoss.getOrderId());
+					fail("Sibling still resting");
+				} catch (BrokerException e) {
+					// expected
+				}
+			}
+		}
+	}
+
+	/**
+	 * Only one order of a group is executed when a single price change
+	 * triggers several of them.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testTriggeredTogether() throws Exception {
+		for (SimpleBrokerConfig config : configs()) {
+			try (BrokerFixture fixture = new BrokerFixture(config)) {
+				final StopBuyOrder first = new StopBuyOrder(ACCOUNT, 10, "AAAA", 105);
+				final StopBuyOrder second = new StopBuyOrder(ACCOUNT, 10, "AAAA", 108);
+				fixture.getBroker().placeOcoGroup(Arrays.asList(first, second));
+
+				fixture.tick("AAAA", 110);
+				assertEquals(1, fixture.getFills("AAAA").size());
+			}
+		}
+	}
+
+	/**
+	 * A bracket's exit orders are placed as a group once the entry order is
+	 * triggered.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testBracket() throws Exception {
+		for (SimpleBrokerConfig config : configs()) {
+			try (BrokerFixture fixture = new BrokerFixture(config)) {
+				final StopBuyOrder entry = new StopBuyOrder(ACCOUNT, 10, "AAAA", 105);
+				final StopSellOrder stopLoss = new StopSellOrder(ACCOUNT, 10, "AAAA", 95);
+				final StopBuyOrder addOn = new StopBuyOrder(ACCOUNT, 10, "AAAA", 120);
+				fixture.getBroker().placeBracketOrder(entry, Arrays.asList(stopLoss, addOn));
+
+				fixture.tick("AAAA", 94);
+				assertFills(fixture);
+				fixture.tick("AAAA", 105);
+				assertFills(fixture, entry);
+				fixture.tick("AAAA", 95);
+				fixture.tick("AAAA", 130);
+				assertFills(fixture, entry, stopLoss);
+			}
+		}
+	}
+
+	/**
+	 * Orders for different tickers can't be grouped.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test(expected = BrokerException.class)
+	public void testMixedTickers() throws Exception {
+		try (BrokerFixture fixture = new BrokerFixture(new SimpleBrokerConfig())) {
+			fixture.getBroker().placeOcoGroup(Arrays.asList(new StopSellOrder(ACCOUNT, 10, "AAAA", 90),
+					new StopBuyOrder(ACCOUNT, 10, "BBBB", 110)));
+		}
+	}
+
+	/**
+	 * Gets the broker configurations to test with, each order manager with and
+	 * without batch dispatch.
+	 *
+	 * @return the configurations
+	 */
+	private static List<SimpleBrokerConfig> configs() {
+		final SimpleBrokerConfig priceLevel = new SimpleBrokerConfig();
+		priceLevel.setPriceLevelOrderBook(true);
+		final SimpleBrokerConfig batched = new SimpleBrokerConfig();
+		batched.setBatchDispatch(true);
+		final SimpleBrokerConfig priceLevelBatched = new SimpleBrokerConfig();
+		priceLevelBatched.setPriceLevelOrderBook(true);
+		priceLevelBatched.setBatchDispatch(true);
+		return Arrays.asList(new SimpleBrokerConfig(), priceLevel, batched, priceLevelBatched);
+	}
+
+	/**
+	 * Checks the orders executed for AAAA.
+	 *
+	 * @param fixture
+	 *            - the broker fixture
+	 * @param expected
+	 *            - the orders expected to have been executed, in order
+	 */
+	private static void assertFills(final BrokerFixture fixture, final Order... expected) {
+		final List<Order> fills = fixture.getFills("AAAA");
+		assertEquals(expected.length, fills.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i].getOrderId(), fills.get(i).getOrderId());
+		}
+	}
+}
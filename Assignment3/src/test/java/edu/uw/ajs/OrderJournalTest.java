@@ -0,0 +1,306 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static test.java.edu.uw.ajs.BrokerFixture.ACCOUNT;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.broker.OrderJournal;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+import main.java.edu.uw.ajs.broker.SimpleBrokerConfig;
+
+/**
+ * Tests the order journal, directly and by restarting a SimpleBroker on the
+ * same journal directory.
+ *
+ * @author chq-alexs
+ */
+public class OrderJournalTest {
+
+	/** The journal directory */
+	private File journalDir;
+
+	/** The account manager, shared by the restarted brokers */
+	private InMemoryAccountManager acctMgr;
+
+	/** The broker under test */
+	private BrokerFixture fixture;
+
+	/**
+	 * Creates the journal directory and the account.
+	 *
+	 * @throws Exception
+	 *             if the directory can't be created
+	 */
+	@Before
+	public void setUp() throws Exception {
+		journalDir = Files.createTempDirectory("orders").toFile();
+		acctMgr = BrokerFixture.newAccountManager();
+	}
+
+	/**
+	 * Deletes the journal directory.
+	 */
+	@After
+	public void tearDown() {
+		final File[] files = journalDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		journalDir.delete();
+	}
+
+	/**
+	 * A restarted broker rebuilds its resting stop orders at their amended
+	 * prices, without the cancelled and executed orders.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testRestartRebuildsRestingOrders() throws Exception {
+		for (SimpleBrokerConfig config : configs()) {
+			SimpleBroker broker = open(config);
+			final StopBuyOrder amended = new StopBuyOrder(ACCOUNT, 10, "AAAA", 110);
+			final StopBuyOrder cancelled = new StopBuyOrder(ACCOUNT, 20, "AAAA", 105);
+			final StopBuyOrder executed = new StopBuyOrder(ACCOUNT, 30, "AAAA", 102);
+			broker.placeOrder(amended);
+			broker.placeOrder(cancelled);
+			broker.placeOrder(executed);
+			broker.placeOrder(new StopSellOrder(ACCOUNT, 40, "AAAA", 90));
+			broker.amendOrder(amended.getOrderId(), 120);
+			broker.cancelOrder(cancelled.getOrderId());
+			fixture.tick("AAAA", 103);
+			assertEquals(1, fixture.getFills("AAAA").size());
+			broker.close();
+
+			broker = open(config);
+			fixture.tick("AAAA", 115);
+			assertEquals(0, fixture.getFills("AAAA").size());
+			fixture.tick("AAAA", 120);
+			fixture.tick("AAAA", 90);
+			final List<Order> fills = fixture.getFills("AAAA");
+			assertEquals(2, fills.size());
+			assertEquals(10, fills.get(0).getNumberOfShares());
+			assertEquals(120, ((StopBuyOrder) fills.get(0)).getPrice());
+			assertEquals(40, fills.get(1).getNumberOfShares());
+			broker.close();
+
+			broker = open(config);
+			fixture.tick("AAAA", 200);
+			fixture.tick("AAAA", 1);
+			assertEquals(0, fixture.getFills("AAAA").size());
+			broker.close();
+		}
+	}
+
+	/**
+	 * A restarted broker rebuilds one-cancels-other groups, including an
+	 * amended member, bracket exits, good-till-date expiry times and trailing
+	 * stops, and maps the orders placed before the restart to the recovered
+	 * orders.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testRestartKeepsLinks() throws Exception {
+		for (SimpleBrokerConfig config : configs()) {
+			SimpleBroker broker = open(config);
+			final StopSellOrder stopLoss = new StopSellOrder(ACCOUNT, 10, "AAAA", 90);
+			final StopBuyOrder breakout = new StopBuyOrder(ACCOUNT, 11, "AAAA", 110);
+			broker.placeOcoGroup(Arrays.asList(stopLoss, breakout));
+			broker.amendOrder(breakout.getOrderId(), 108);
+			final StopBuyOrder entry = new StopBuyOrder(ACCOUNT, 12, "AAAA", 105);
+			broker.placeBracketOrder(entry, Arrays.asList(new StopSellOrder(ACCOUNT, 13, "AAAA", 95),
+					new StopBuyOrder(ACCOUNT, 14, "AAAA", 120)));
+			broker.placeOrder(new StopBuyOrder(ACCOUNT, 15, "AAAA", 130), System.currentTimeMillis() + 3600000);
+			broker.placeTrailingStop(new MarketSellOrder(ACCOUNT, 16, "BBBB"), 5, false);
+			broker.close();
+
+			broker = open(config);
+			assertNotEquals(-1, broker.getRecoveredOrderId(stopLoss.getOrderId()));
+			assertNotEquals(-1, broker.getRecoveredOrderId(entry.getOrderId()));
+			assertEquals(-1, broker.getRecoveredOrderId(breakout.getOrderId()));
+			broker.expireOrders(System.currentTimeMillis() + 7200000);
+			fixture.tick("AAAA", 108);
+			fixture.tick("AAAA", 80);
+			fixture.tick("AAAA", 200);
+			assertShares(fixture.getFills("AAAA"), 11, 12, 13);
+			fixture.tick("BBBB", 90);
+			assertShares(fixture.getFills("BBBB"), 16);
+			broker.close();
+
+			broker = open(config);
+			for (String ticker : BrokerFixture.TICKERS) {
+				fixture.tick(ticker, 1);
+				fixture.tick(ticker, 500);
+				assertEquals(0, fixture.getFills(ticker).size());
+			}
+			broker.close();
+		}
+	}
+
+	/**
+	 * The market order backlog accumulated while the exchange is closed,
+	 * including triggered stop orders, is executed in queue order by a broker
+	 * restarted with the exchange open.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testRestartRebuildsBacklog() throws Exception {
+		SimpleBroker broker = open(new SimpleBrokerConfig());
+		broker.exchangeClosed(ExchangeEvent.newClosedEvent(fixture.getExchange()));
+		broker.placeOrder(new MarketBuyOrder(ACCOUNT, 10, "AAAA"));
+		broker.placeOrder(new StopSellOrder(ACCOUNT, 20, "AAAA", 95));
+		broker.placeOrder(new MarketSellOrder(ACCOUNT, 30, "BBBB"));
+		fixture.tick("AAAA", 95);
+		broker.close();
+
+		broker = open(new SimpleBrokerConfig());
+		final List<Order> fills = fixture.getFills("AAAA");
+		assertEquals(2, fills.size());
+		assertEquals(10, fills.get(0).getNumberOfShares());
+		assertTrue(fills.get(1) instanceof StopSellOrder);
+		assertEquals(1, fixture.getFills("BBBB").size());
+		broker.close();
+
+		broker = open(new SimpleBrokerConfig());
+		assertEquals(0, fixture.getFills("AAAA").size());
+		assertEquals(0, fixture.getFills("BBBB").size());
+		broker.close();
+	}
+
+	/**
+	 * A torn record at the end of the journal is truncated, the records
+	 * before it are recovered and records appended after it are kept.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCorruptTailTruncated() throws Exception {
+		OrderJournal journal = new OrderJournal(journalDir, 1 << 20);
+		journal.takeRecovered();
+		journal.stopPlaced(new StopBuyOrder(ACCOUNT, 10, "AAAA", 110));
+		journal.close();
+
+		final File[] segments = journalDir.listFiles((dir, name) -> name.startsWith("segment-"));
+		assertEquals(1, segments.length);
+		try (FileOutputStream out = new FileOutputStream(segments[0], true)) {
+			out.write(new byte[] { 0, 0, 0, 40, 1, 2, 3 });
+		}
+
+		journal = new OrderJournal(journalDir, 1 << 20);
+		OrderJournal.Recovered recovered = journal.takeRecovered();
+		assertEquals(1, recovered.getResting().size());
+		journal.stopPlaced(new StopSellOrder(ACCOUNT, 20, "AAAA", 90));
+		journal.close();
+
+		journal = new OrderJournal(journalDir, 1 << 20);
+		recovered = journal.takeRecovered();
+		assertEquals(2, recovered.getResting().size());
+		assertEquals(110, ((StopBuyOrder) recovered.getResting().get(0)).getPrice());
+		assertEquals(90, ((StopSellOrder) recovered.getResting().get(1)).getPrice());
+		journal.close();
+	}
+
+	/**
+	 * Orders survive compaction into snapshots while orders are being placed
+	 * and removed, and compaction leaves files that aren't well formed
+	 * journal files alone.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCompaction() throws Exception {
+		final File stray = new File(journalDir, "segment-backup.log");
+		assertTrue(stray.createNewFile());
+		OrderJournal journal = new OrderJournal(journalDir, 512);
+		journal.takeRecovered();
+		for (int i = 0; i < 1000; i++) {
+			final StopBuyOrder order = new StopBuyOrder(ACCOUNT, i + 1, "AAAA", 110);
+			journal.stopPlaced(order);
+			if (i % 10 != 0) {
+				journal.removed(order.getOrderId());
+			}
+		}
+		journal.close();
+
+		journal = new OrderJournal(journalDir, 512);
+		final OrderJournal.Recovered recovered = journal.takeRecovered();
+		assertEquals(100, recovered.getResting().size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i * 10 + 1, recovered.getResting().get(i).getNumberOfShares());
+		}
+		journal.close();
+		assertTrue(stray.exists());
+	}
+
+	/**
+	 * Checks the numbers of shares of the orders executed, in any order.
+	 *
+	 * @param fills
+	 *            - the orders executed
+	 * @param expected
+	 *            - the numbers of shares expected, in ascending order
+	 */
+	private static void assertShares(final List<Order> fills, final int... expected) {
+		final List<Integer> shares = new ArrayList<>();
+		for (Order order : fills) {
+			shares.add(order.getNumberOfShares());
+		}
+		Collections.sort(shares);
+		assertEquals(expected.length, shares.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], shares.get(i).intValue());
+		}
+	}
+
+	/**
+	 * Gets the broker configurations tested, one for each order manager.
+	 *
+	 * @return the configurations
+	 */
+	private static List<SimpleBrokerConfig> configs() {
+		final SimpleBrokerConfig priceLevel = new SimpleBrokerConfig();
+		priceLevel.setPriceLevelOrderBook(true);
+		return Arrays.asList(new SimpleBrokerConfig(), priceLevel);
+	}
+
+	/**
+	 * Creates a broker journaling to the journal directory.
+	 *
+	 * @param config
+	 *            - the broker configuration
+	 * @return the broker
+	 */
+	private SimpleBroker open(final SimpleBrokerConfig config) {
+		config.setOrderJournalDir(journalDir.getPath());
+		fixture = new BrokerFixture(BrokerFixture.TICKERS, acctMgr, config);
+		return fixture.getBroker();
+	}
+}
@@ -0,0 +1,204 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.broker.PriceLevelOrderBook;
+import main.java.edu.uw.ajs.broker.PriceLevelOrderManager;
+
+/**
+ * Tests the price level order book and PriceLevelOrderManager: the trigger
+ * direction and boundaries on both sides, FIFO order within a level and the
+ * release of the triggered levels as one batch.
+ *
+ * @author chq-alexs
+ */
+public class PriceLevelOrderBookTest {
+
+	/** Threshold the books start at */
+	private static final int OPEN_PRICE = 100;
+
+	/**
+	 * Stop buys are triggered once the threshold rises to their price, the
+	 * order at exactly the threshold included, lowest price first.
+	 */
+	@Test
+	public void testStopBuyTriggersAtOrBelowThreshold() {
+		final PriceLevelOrderBook<StopBuyOrder> book = new PriceLevelOrderBook<>(OPEN_PRICE, StopBuyOrder::getPrice,
+				true);
+		final List<StopBuyOrder> fills = new ArrayList<>();
+		book.setOrderProcessor(fills::add);
+		final StopBuyOrder high = new StopBuyOrder("acct", 10, "AAAA", 105);
+		final StopBuyOrder mid = new StopBuyOrder("acct", 10, "AAAA", 102);
+		final StopBuyOrder low = new StopBuyOrder("acct", 10, "AAAA", 101);
+		book.enqueue(high);
+		book.enqueue(mid);
+		book.enqueue(low);
+
+		book.setThreshold(99);
+		assertEquals(0, fills.size());
+		book.setThreshold(101);
+		assertIds(fills, low);
+		book.setThreshold(104);
+		assertIds(fills, low, mid);
+		assertEquals(1, book.size());
+
+		final StopBuyOrder atThreshold = new StopBuyOrder("acct", 10, "AAAA", 104);
+		book.enqueue(atThreshold);
+		assertIds(fills, low, mid, atThreshold);
+
+		book.setThreshold(200);
+		assertIds(fills, low, mid, atThreshold, high);
+		assertEquals(0, book.size());
+		assertEquals(0, book.levelCount());
+	}
+
+	/**
+	 * Stop sells are triggered once the threshold falls to their price, the
+	 * order at exactly the threshold included, highest price first.
+	 */
+	@Test
+	public void testStopSellTriggersAtOrAboveThreshold() {
+		final PriceLevelOrderBook<StopSellOrder> book = new PriceLevelOrderBook<>(OPEN_PRICE,
+				StopSellOrder::getPrice, false);
+		final List<StopSellOrder> fills = new ArrayList<>();
+		book.setOrderProcessor(fills::add);
+		final StopSellOrder low = new StopSellOrder("acct", 10, "AAAA", 95);
+		final StopSellOrder mid = new StopSellOrder("acct", 10, "AAAA", 98);
+		final StopSellOrder high = new StopSellOrder("acct", 10, "AAAA", 99);
+		book.enqueue(low);
+		book.enqueue(mid);
+		book.enqueue(high);
+
+		book.setThreshold(101);
+		assertEquals(0, fills.size());
+		book.setThreshold(99);
+		assertIds(fills, high);
+		book.setThreshold(96);
+		assertIds(fills, high, mid);
+		assertEquals(1, book.size());
+
+		final StopSellOrder atThreshold = new StopSellOrder("acct", 10, "AAAA", 96);
+		book.enqueue(atThreshold);
+		assertIds(fills, high, mid, atThreshold);
+
+		book.setThreshold(1);
+		assertIds(fills, high, mid, atThreshold, low);
+		assertEquals(0, book.levelCount());
+	}
+
+	/**
+	 * Orders at the same price are dispatched in the order they were placed,
+	 * after the orders at better prices placed later.
+	 */
+	@Test
+	public void testFifoWithinLevel() {
+		final PriceLevelOrderBook<StopBuyOrder> book = new PriceLevelOrderBook<>(OPEN_PRICE, StopBuyOrder::getPrice,
+				true);
+		final List<StopBuyOrder> fills = new ArrayList<>();
+		book.setOrderProcessor(fills::add);
+		final StopBuyOrder first = new StopBuyOrder("acct", 30, "AAAA", 110);
+		final StopBuyOrder second = new StopBuyOrder("acct", 10, "AAAA", 110);
+		final StopBuyOrder third = new StopBuyOrder("acct", 20, "AAAA", 110);
+		final StopBuyOrder better = new StopBuyOrder("acct", 10, "AAAA", 105);
+		book.enqueue(first);
+		book.enqueue(second);
+		book.enqueue(third);
+		book.enqueue(better);
+		assertEquals(2, book.levelCount());
+
+		assertTrue(book.cancel(second.getOrderId()));
+		book.setThreshold(110);
+		assertIds(fills, better, first, third);
+	}
+
+	/**
+	 * A threshold move crossing several levels passes their orders to the
+	 * batch processor in one call, in dispatch order, and enqueueAll
+	 * dispatches once for all of its orders.
+	 */
+	@Test
+	public void testBatchRelease() {
+		final PriceLevelOrderBook<StopBuyOrder> book = new PriceLevelOrderBook<>(OPEN_PRICE, StopBuyOrder::getPrice,
+				true);
+		final List<List<StopBuyOrder>> batches = new ArrayList<>();
+		book.setBatchProcessor(batches::add);
+		final StopBuyOrder a = new StopBuyOrder("acct", 10, "AAAA", 103);
+		final StopBuyOrder b = new StopBuyOrder("acct", 10, "AAAA", 101);
+		final StopBuyOrder c = new StopBuyOrder("acct", 10, "AAAA", 103);
+		final StopBuyOrder d = new StopBuyOrder("acct", 10, "AAAA", 108);
+		book.enqueueAll(Arrays.asList(a, b, c, d));
+		assertEquals(0, batches.size());
+
+		book.setThreshold(102);
+		book.setThreshold(102);
+		assertEquals(1, batches.size());
+		assertIds(batches.get(0), b);
+
+		book.setThreshold(110);
+		assertEquals(2, batches.size());
+		assertIds(batches.get(1), a, c, d);
+		assertEquals(0, book.levelCount());
+
+		final StopBuyOrder e = new StopBuyOrder("acct", 10, "AAAA", 105);
+		final StopBuyOrder f = new StopBuyOrder("acct", 10, "AAAA", 102);
+		final StopBuyOrder g = new StopBuyOrder("acct", 10, "AAAA", 120);
+		book.enqueueAll(Arrays.asList(e, f, g));
+		assertEquals(3, batches.size());
+		assertIds(batches.get(2), f, e);
+		assertEquals(1, book.size());
+	}
+
+	/**
+	 * The order manager routes stop buys and sells to their books and a
+	 * price change releases both sides as batches.
+	 */
+	@Test
+	public void testOrderManager() {
+		final PriceLevelOrderManager orderMgr = new PriceLevelOrderManager("AAAA", OPEN_PRICE);
+		final List<List<StopBuyOrder>> buys = new ArrayList<>();
+		final List<List<StopSellOrder>> sells = new ArrayList<>();
+		orderMgr.setBuyBatchProcessor(buys::add);
+		orderMgr.setSellBatchProcessor(sells::add);
+		final StopBuyOrder buy = new StopBuyOrder("acct", 10, "AAAA", 110);
+		final StopSellOrder sell = new StopSellOrder("acct", 10, "AAAA", 90);
+		final StopSellOrder deepSell = new StopSellOrder("acct", 10, "AAAA", 80);
+		orderMgr.queueOrder(buy);
+		orderMgr.queueOrder(sell);
+		orderMgr.queueOrder(deepSell);
+
+		orderMgr.adjustPrice(110);
+		assertEquals(1, buys.size());
+		assertIds(buys.get(0), buy);
+		assertEquals(0, sells.size());
+
+		orderMgr.adjustPrice(80);
+		assertEquals(1, buys.size());
+		assertEquals(1, sells.size());
+		assertIds(sells.get(0), sell, deepSell);
+	}
+
+	/**
+	 * Checks the orders dispatched.
+	 *
+	 * @param actual
+	 *            - the orders dispatched, in dispatch order
+	 * @param expected
+	 *            - the orders expected, in dispatch order
+	 */
+	private static void assertIds(final List<? extends Order> actual, final Order... expected) {
+		assertEquals(expected.length, actual.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i].getOrderId(), actual.get(i).getOrderId());
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static test.java.edu.uw.ajs.BrokerFixture.OPEN_PRICE;
+
+import org.junit.Test;
+
+import edu.uw.ext.framework.broker.BrokerException;
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+import main.java.edu.uw.ajs.broker.SimpleBrokerConfig;
+
+/**
+ * Tests serving SimpleBroker's quotes from the prices received from the
+ * exchange.
+ *
+ * @author chq-alexs
+ */
+public class QuoteCacheTest {
+
+	/**
+	 * Creates a broker.
+	 *
+	 * @param maxAgeMillis
+	 *            - the maximum age of a cached quote, 0 to disable the cache
+	 * @return the broker fixture
+	 * @throws Exception
+	 *             if the broker can't be created
+	 */
+	private static BrokerFixture open(final long maxAgeMillis) throws Exception {
+		final SimpleBrokerConfig config = new SimpleBrokerConfig();
+		config.setQuoteCacheMaxAgeMillis(maxAgeMillis);
+		return new BrokerFixture(config);
+	}
+
+	/**
+	 * Quotes are served from the price changes without calling the exchange.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testServedFromPriceChanges() throws Exception {
+		try (BrokerFixture fixture = open(60000)) {
+			final SimpleBroker broker = fixture.getBroker();
+			final RecordingExchange exchange = fixture.getExchange();
+			final int quotes = exchange.getQuoteCount();
+			broker.priceChanged(ExchangeEvent.newPriceChangedEvent(exchange, "AAAA", 110));
+			for (int i = 0; i < 10; i++) {
+				assertEquals(110, broker.requestQuote("AAAA").getPrice());
+			}
+			broker.priceChanged(ExchangeEvent.newPriceChangedEvent(exchange, "AAAA", 120));
+			assertEquals(120, broker.requestQuote("AAAA").getPrice());
+			assertEquals(quotes, exchange.getQuoteCount());
+			assertEquals(11, broker.getQuoteCache().getHits());
+		}
+	}
+
+	/**
+	 * A ticker without a price change is quoted by the exchange once, and
+	 * then served from the cache.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testMissFallsBackToExchange() throws Exception {
+		try (BrokerFixture fixture = open(60000)) {
+			final SimpleBroker broker = fixture.getBroker();
+			final RecordingExchange exchange = fixture.getExchange();
+			final int quotes = exchange.getQuoteCount();
+			assertEquals(OPEN_PRICE, broker.requestQuote("BBBB").getPrice());
+			assertEquals(OPEN_PRICE, broker.requestQuote("BBBB").getPrice());
+			assertEquals(quotes + 1, exchange.getQuoteCount());
+			assertEquals(1, broker.getQuoteCache().getMisses());
+
+			try {
+				broker.requestQuote("NONE");
+				fail("Untraded ticker quoted");
+			} catch (BrokerException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * A quote older than the staleness bound is requested from the exchange
+	 * again.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testStaleQuoteRefreshed() throws Exception {
+		try (BrokerFixture fixture = open(20)) {
+			final SimpleBroker broker = fixture.getBroker();
+			final RecordingExchange exchange = fixture.getExchange();
+			broker.priceChanged(ExchangeEvent.newPriceChangedEvent(exchange, "AAAA", 110));
+			exchange.setPrice("AAAA", 130);
+			assertEquals(110, broker.requestQuote("AAAA").getPrice());
+
+			Thread.sleep(50);
+			final int quotes = exchange.getQuoteCount();
+			assertEquals(130, broker.requestQuote("AAAA").getPrice());
+			assertEquals(quotes + 1, exchange.getQuoteCount());
+		}
+	}
+
+	/**
+	 * A price change for a delisted ticker isn't cached, once listed again
+	 * the ticker is quoted by the exchange.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testDelistedNotCached() throws Exception {
+		try (BrokerFixture fixture = open(60000)) {
+			final SimpleBroker broker = fixture.getBroker();
+			final RecordingExchange exchange = fixture.getExchange();
+			broker.priceChanged(ExchangeEvent.newPriceChangedEvent(exchange, "AAAA", 110));
+			broker.delistTicker("AAAA");
+			broker.priceChanged(ExchangeEvent.newPriceChangedEvent(exchange, "AAAA", 120));
+			broker.listTicker("AAAA");
+
+			final int quotes = exchange.getQuoteCount();
+			assertEquals(OPEN_PRICE, broker.requestQuote("AAAA").getPrice());
+			assertEquals(quotes + 1, exchange.getQuoteCount());
+			assertEquals(1, broker.getQuoteCache().getMisses());
+		}
+	}
+
+	/**
+	 * Without a cache every quote is requested from the exchange.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testDisabled() throws Exception {
+		try (BrokerFixture fixture = open(0)) {
+			final SimpleBroker broker = fixture.getBroker();
+			final RecordingExchange exchange = fixture.getExchange();
+			assertNull(broker.getQuoteCache());
+			broker.priceChanged(ExchangeEvent.newPriceChangedEvent(exchange, "AAAA", 110));
+			final int quotes = exchange.getQuoteCount();
+			assertEquals(OPEN_PRICE, broker.requestQuote("AAAA").getPrice());
+			assertEquals(quotes + 1, exchange.getQuoteCount());
+		}
+	}
+}
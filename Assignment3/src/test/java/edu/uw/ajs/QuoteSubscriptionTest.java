@@ -0,0 +1,176 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static test.java.edu.uw.ajs.BrokerFixture.OPEN_PRICE;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.uw.ext.framework.broker.BrokerException;
+import edu.uw.ext.framework.exchange.StockQuote;
+import main.java.edu.uw.ajs.broker.QuoteListener;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+import main.java.edu.uw.ajs.broker.SimpleBrokerConfig;
+
+/**
+ * Tests pushing SimpleBroker's price updates to quote subscribers.
+ *
+ * @author chq-alexs
+ */
+public class QuoteSubscriptionTest {
+
+	/** Number of quote dispatch threads, so one slow listener leaves another */
+	private static final int DISPATCH_THREADS = 2;
+
+	/** Time to wait for a quote to be delivered, in milliseconds */
+	private static final long DELIVERY_TIMEOUT_MILLIS = 5000;
+
+	/**
+	 * A subscriber is sent the current quote and then each price change,
+	 * until it unsubscribes.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testPushesPriceChanges() throws Exception {
+		try (BrokerFixture fixture = open()) {
+			final SimpleBroker broker = fixture.getBroker();
+			final BlockingQueue<StockQuote> quotes = new LinkedBlockingQueue<>();
+			final QuoteListener listener = quotes::add;
+			assertTrue(broker.subscribe("AAAA", listener));
+			assertFalse(broker.subscribe("AAAA", listener));
+			assertEquals(OPEN_PRICE, next(quotes).getPrice());
+
+			fixture.tick("AAAA", 110);
+			assertEquals(110, next(quotes).getPrice());
+			fixture.tick("BBBB", 120);
+			fixture.tick("AAAA", 130);
+			final StockQuote quote = next(quotes);
+			assertEquals("AAAA", quote.getTicker());
+			assertEquals(130, quote.getPrice());
+
+			assertTrue(broker.unsubscribe("AAAA", listener));
+			assertFalse(broker.unsubscribe("AAAA", listener));
+			fixture.tick("AAAA", 140);
+			assertNull(quotes.poll(100, TimeUnit.MILLISECONDS));
+
+			try {
+				broker.subscribe("NONE", listener);
+				fail("Untraded ticker subscribed to");
+			} catch (BrokerException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * A listener that falls behind is sent the latest price, skipping the
+	 * prices it missed, and neither the price changes nor other listeners
+	 * wait on it.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testSlowListenerConflated() throws Exception {
+		try (BrokerFixture fixture = open()) {
+			final SimpleBroker broker = fixture.getBroker();
+			final CountDownLatch release = new CountDownLatch(1);
+			final List<StockQuote> slowQuotes = new CopyOnWriteArrayList<>();
+			broker.subscribe("AAAA", (quote) -> {
+				slowQuotes.add(quote);
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			final BlockingQueue<StockQuote> fastQuotes = new LinkedBlockingQueue<>();
+			broker.subscribe("AAAA", fastQuotes::add);
+
+			final int changes = 1000;
+			for (int i = 1; i <= changes; i++) {
+				fixture.tick("AAAA", OPEN_PRICE + i);
+			}
+
+			StockQuote last = next(fastQuotes);
+			while (last.getPrice() != OPEN_PRICE + changes) {
+				last = next(fastQuotes);
+			}
+			assertEquals(1, slowQuotes.size());
+
+			release.countDown();
+			final long deadline = System.currentTimeMillis() + DELIVERY_TIMEOUT_MILLIS;
+			while (slowQuotes.get(slowQuotes.size() - 1).getPrice() != OPEN_PRICE + changes) {
+				assertTrue("Latest price not delivered", System.currentTimeMillis() < deadline);
+				Thread.sleep(10);
+			}
+			assertTrue(slowQuotes.size() <= 3);
+			assertTrue(broker.getQuoteSubscriptions().getConflated() >= changes - 2);
+		}
+	}
+
+	/**
+	 * Delisting a ticker unsubscribes its listeners.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testDelistUnsubscribes() throws Exception {
+		try (BrokerFixture fixture = open()) {
+			final SimpleBroker broker = fixture.getBroker();
+			final BlockingQueue<StockQuote> quotes = new LinkedBlockingQueue<>();
+			final QuoteListener listener = quotes::add;
+			broker.subscribe("AAAA", listener);
+			assertEquals(OPEN_PRICE, next(quotes).getPrice());
+
+			broker.delistTicker("AAAA");
+			assertFalse(broker.unsubscribe("AAAA", listener));
+			assertTrue(broker.listTicker("AAAA"));
+			fixture.tick("AAAA", 110);
+			assertNull(quotes.poll(100, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	/**
+	 * Creates a broker.
+	 *
+	 * @return the broker fixture
+	 * @throws Exception
+	 *             if the broker can't be created
+	 */
+	private static BrokerFixture open() throws Exception {
+		final SimpleBrokerConfig config = new SimpleBrokerConfig();
+		config.setQuoteDispatchThreads(DISPATCH_THREADS);
+		return new BrokerFixture(config);
+	}
+
+	/**
+	 * Waits for the next quote delivered to a listener.
+	 *
+	 * @param quotes
+	 *            - the quotes delivered to the listener
+	 * @return the quote
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	private static StockQuote next(final BlockingQueue<StockQuote> quotes) throws InterruptedException {
+		final StockQuote quote = quotes.poll(DELIVERY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		if (quote == null) {
+			fail("Quote not delivered");
+		}
+		return quote;
+	}
+}
@@ -0,0 +1,164 @@
+package test.java.edu.uw.ajs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * An AccountDao keeping the accounts in memory and recording the accounts
+ * written, for the DAO and account manager tests. Writes can be made to fail,
+ * and reads and writes can be held up until released.
+ *
+ * @author chq-alexs
+ */
+final class RecordingAccountDao implements AccountDao {
+
+	/** The accounts */
+	private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+	/** Names of the accounts written, in order */
+	private final List<String> writes = new ArrayList<>();
+
+	/** Number of reads */
+	private int reads;
+
+	/** True if writes fail */
+	private volatile boolean failing;
+
+	/** True once closed */
+	private volatile boolean closed;
+
+	/** Holds up reads and writes until counted down, null if not held */
+	private volatile CountDownLatch gate;
+
+	/** Counted down each time a read or write reaches the gate */
+	private volatile CountDownLatch arrived = new CountDownLatch(1);
+
+	@Override
+	public Account getAccount(final String accountName) {
+		awaitGate();
+		synchronized (this) {
+			reads++;
+		}
+		return accounts.get(accountName);
+	}
+
+	@Override
+	public void setAccount(final Account account) throws AccountException {
+		awaitGate();
+		if (failing) {
+			throw new AccountException(String.format("Write of '%s' failed", account.getName()));
+		}
+		synchronized (this) {
+			writes.add(account.getName());
+		}
+		accounts.put(account.getName(), account);
+	}
+
+	@Override
+	public void deleteAccount(final String accountName) {
+		accounts.remove(accountName);
+	}
+
+	@Override
+	public void reset() {
+		accounts.clear();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * Stores an account without recording a write.
+	 *
+	 * @param account
+	 *            - the account
+	 */
+	void put(final Account account) {
+		accounts.put(account.getName(), account);
+	}
+
+	/**
+	 * Gets the names of the accounts written and clears them.
+	 *
+	 * @return the names, in the order written
+	 */
+	synchronized List<String> takeWrites() {
+		final List<String> taken = new ArrayList<>(writes);
+		writes.clear();
+		return taken;
+	}
+
+	/**
+	 * Gets the number of reads.
+	 *
+	 * @return the number of reads
+	 */
+	synchronized int getReads() {
+		return reads;
+	}
+
+	/**
+	 * Makes writes fail, or succeed again.
+	 *
+	 * @param failing
+	 *            - true to make writes fail
+	 */
+	void setFailing(final boolean failing) {
+		this.failing = failing;
+	}
+
+	/**
+	 * Determine if the DAO has been closed.
+	 *
+	 * @return true if closed
+	 */
+	boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Holds up the reads and writes that follow until released.
+	 *
+	 * @return counted down when a read or write is held up
+	 */
+	CountDownLatch hold() {
+		arrived = new CountDownLatch(1);
+		gate = new CountDownLatch(1);
+		return arrived;
+	}
+
+	/**
+	 * Releases the reads and writes held up.
+	 */
+	void release() {
+		final CountDownLatch held = gate;
+		gate = null;
+		if (held != null) {
+			held.countDown();
+		}
+	}
+
+	/**
+	 * Waits at the gate, if held.
+	 */
+	private void awaitGate() {
+		final CountDownLatch held = gate;
+		if (held != null) {
+			arrived.countDown();
+			try {
+				held.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package test.java.edu.uw.ajs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.uw.ext.framework.exchange.ExchangeListener;
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * An always open exchange for the broker tests. Stop orders are executed at
+ * their stop price, other orders at the ticker's current price, and the order
+ * of the fills is recorded for each ticker. Listeners are not retained, the
+ * tests deliver events to the broker directly.
+ *
+ * @author chq-alexs
+ */
+final class RecordingExchange implements StockExchange {
+
+	/** Fills for each ticker, in execution order */
+	private final Map<String, List<Order>> fills = new ConcurrentHashMap<>();
+
+	/** The current price of each ticker */
+	private final Map<String, Integer> prices = new ConcurrentHashMap<>();
+
+	/** The tickers traded */
+	private final String[] tickers;
+
+	/** Number of quotes requested */
+	private final AtomicInteger quoteCount = new AtomicInteger();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param tickers
+	 *            - the tickers traded
+	 * @param openPrice
+	 *            - the opening price of every ticker
+	 */
+	RecordingExchange(final String[] tickers, final int openPrice) {
+		this.tickers = tickers.clone();
+		for (String ticker : tickers) {
+			fills.put(ticker, Collections.synchronizedList(new ArrayList<>()));
+			prices.put(ticker, openPrice);
+		}
+	}
+
+	/**
+	 * Gets the fills for a ticker.
+	 *
+	 * @param ticker
+	 *            - the ticker
+	 * @return the fills, in execution order
+	 */
+	List<Order> getFills(final String ticker) {
+		return fills.get(ticker);
+	}
+
+	/**
+	 * Sets the current price of a ticker, quoting it if it wasn't already
+	 * quoted.
+	 *
+	 * @param ticker
+	 *            - the ticker
+	 * @param price
+	 *            - the new price
+	 */
+	void setPrice(final String ticker, final int price) {
+		fills.computeIfAbsent(ticker, (t) -> Collections.synchronizedList(new ArrayList<>()));
+		prices.put(ticker, price);
+	}
+
+	/**
+	 * Gets the number of quotes requested.
+	 *
+	 * @return the number of quotes
+	 */
+	int getQuoteCount() {
+		return quoteCount.get();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return true;
+	}
+
+	@Override
+	public String[] getTickers() {
+		return tickers.clone();
+	}
+
+	@Override
+	public StockQuote getQuote(final String ticker) {
+		quoteCount.incrementAndGet();
+		final Integer price = prices.get(ticker);
+		return price == null ? null : new StockQuote(ticker, price);
+	}
+
+	@Override
+	public void addExchangeListener(final ExchangeListener l) {
+	}
+
+	@Override
+	public void removeExchangeListener(final ExchangeListener l) {
+	}
+
+	@Override
+	public int executeTrade(final Order order) {
+		fills.get(order.getStockTicker()).add(order);
+		if (order instanceof StopBuyOrder) {
+			return ((StopBuyOrder) order).getPrice();
+		}
+		if (order instanceof StopSellOrder) {
+			return ((StopSellOrder) order).getPrice();
+		}
+		return prices.get(order.getStockTicker());
+	}
+}
@@ -0,0 +1,152 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import main.java.edu.uw.ajs.account.SimpleAccountManager;
+
+/**
+ * Tests the coalescing of account changes by SimpleAccountManager: changes
+ * reported by SimpleAccount.reflectOrder are held and reach the DAO as one
+ * write on flush, on the flush window timer and on close.
+ *
+ * @author chq-alexs
+ */
+public class SimpleAccountManagerTest {
+
+	/** The account traded */
+	private static final String ACCOUNT = "acctAAAA";
+
+	/** Opening balance of the account */
+	private static final int BALANCE = 1000000;
+
+	/** Flush window long enough that the timer never fires in a test */
+	private static final long NO_TIMER = TimeUnit.HOURS.toMillis(1);
+
+	/**
+	 * Several executions are written as one, on flush, and the pending
+	 * account is served until then.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCoalescedOnFlush() throws Exception {
+		final RecordingAccountDao dao = new RecordingAccountDao();
+		final SimpleAccountManager acctMgr = new SimpleAccountManager(dao, NO_TIMER);
+		final Account account = acctMgr.createAccount(ACCOUNT, "password", BALANCE);
+		assertEquals(Arrays.asList(ACCOUNT), dao.takeWrites());
+
+		trade(account);
+		assertEquals(Collections.emptyList(), dao.takeWrites());
+		assertSame(account, acctMgr.getAccount(ACCOUNT));
+
+		acctMgr.flush();
+		assertEquals(Arrays.asList(ACCOUNT), dao.takeWrites());
+		assertEquals(account.getBalance(), dao.getAccount(ACCOUNT).getBalance());
+		acctMgr.flush();
+		assertEquals(Collections.emptyList(), dao.takeWrites());
+		acctMgr.close();
+	}
+
+	/**
+	 * Pending changes are written when the flush window elapses.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCoalescedOnTimer() throws Exception {
+		final RecordingAccountDao dao = new RecordingAccountDao();
+		final SimpleAccountManager acctMgr = new SimpleAccountManager(dao, 20);
+		final Account account = acctMgr.createAccount(ACCOUNT, "password", BALANCE);
+		dao.takeWrites();
+
+		trade(account);
+		final long deadline = System.currentTimeMillis() + 5000;
+		List<String> writes = dao.takeWrites();
+		while (writes.isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			writes = dao.takeWrites();
+		}
+		assertEquals(Arrays.asList(ACCOUNT), writes);
+		assertEquals(account.getBalance(), dao.getAccount(ACCOUNT).getBalance());
+		acctMgr.close();
+	}
+
+	/**
+	 * Pending changes are written on close, before the DAO is closed, and a
+	 * failed write stays pending until a later flush.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testCoalescedOnClose() throws Exception {
+		final RecordingAccountDao dao = new RecordingAccountDao();
+		final SimpleAccountManager acctMgr = new SimpleAccountManager(dao, NO_TIMER);
+		final Account account = acctMgr.createAccount(ACCOUNT, "password", BALANCE);
+		dao.takeWrites();
+
+		trade(account);
+		dao.setFailing(true);
+		try {
+			acctMgr.flush();
+			fail("Flush succeeded with failing writes");
+		} catch (AccountException e) {
+			// expected
+		}
+		dao.setFailing(false);
+		assertEquals(Collections.emptyList(), dao.takeWrites());
+
+		acctMgr.close();
+		assertEquals(Arrays.asList(ACCOUNT), dao.takeWrites());
+		assertEquals(account.getBalance(), dao.getAccount(ACCOUNT).getBalance());
+		assertTrue(dao.isClosed());
+	}
+
+	/**
+	 * Without a flush window each execution is written immediately.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testWithoutWindow() throws Exception {
+		final RecordingAccountDao dao = new RecordingAccountDao();
+		final SimpleAccountManager acctMgr = new SimpleAccountManager(dao, 0);
+		final Account account = acctMgr.createAccount(ACCOUNT, "password", BALANCE);
+		dao.takeWrites();
+
+		trade(account);
+		assertEquals(Arrays.asList(ACCOUNT, ACCOUNT, ACCOUNT), dao.takeWrites());
+		acctMgr.close();
+	}
+
+	/**
+	 * Reflects three executions on an account and checks the balance.
+	 *
+	 * @param account
+	 *            - the account
+	 */
+	private static void trade(final Account account) {
+		final int before = account.getBalance();
+		account.reflectOrder(new MarketBuyOrder(ACCOUNT, 10, "AAAA"), 100);
+		account.reflectOrder(new MarketBuyOrder(ACCOUNT, 5, "AAAA"), 110);
+		account.reflectOrder(new MarketSellOrder(ACCOUNT, 15, "AAAA"), 120);
+		assertEquals(before - 1000 - 550 + 1800, account.getBalance());
+	}
+}
@@ -0,0 +1,232 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import edu.uw.ext.framework.broker.Broker;
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import edu.uw.ext.framework.exchange.ExchangeListener;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.broker.SimpleBrokerFactory;
+import main.java.edu.uw.ajs.exchange.LatencyDistribution;
+import main.java.edu.uw.ajs.exchange.ReplayPriceModel;
+import main.java.edu.uw.ajs.exchange.SimulatedExchangeConfig;
+import main.java.edu.uw.ajs.exchange.SimulatedStockExchange;
+
+/**
+ * Tests the simulated exchange, on its own and driving a broker created by
+ * SimpleBrokerFactory.
+ *
+ * @author chq-alexs
+ */
+public class SimulatedStockExchangeTest {
+
+	/** The account placing the orders */
+	private static final String ACCOUNT = "acctAAAA";
+
+	/**
+	 * Replayed ticks trigger the broker's stop orders, and orders placed
+	 * while the exchange is closed are executed when it opens.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testReplayDrivesBroker() throws Exception {
+		final SimulatedExchangeConfig config = new SimulatedExchangeConfig();
+		config.setTickers(new String[] { "AAAA", "BBBB" });
+		config.setOpeningPrice(100);
+		config.setPriceModel(new ReplayPriceModel(new int[][] { { 105, 110, 95, 90 }, { 100 } }));
+		final SimulatedStockExchange exchange = new SimulatedStockExchange(config);
+
+		final InMemoryAccountManager acctMgr = new InMemoryAccountManager();
+		acctMgr.createAccount(ACCOUNT, "password", 1000000);
+		final Broker broker = new SimpleBrokerFactory().newBroker("simulated", acctMgr, exchange);
+		try {
+			broker.placeOrder(new StopBuyOrder(ACCOUNT, 10, "AAAA", 110));
+			broker.placeOrder(new StopSellOrder(ACCOUNT, 10, "AAAA", 90));
+
+			exchange.publishTicks(4);
+			assertEquals(1, exchange.getTradeCount());
+			assertEquals(1000000 - 10 * 110, acctMgr.getAccount(ACCOUNT).getBalance());
+			exchange.publishTicks(4);
+			assertEquals(2, exchange.getTradeCount());
+			assertEquals(1000000 - 10 * 110 + 10 * 90, acctMgr.getAccount(ACCOUNT).getBalance());
+
+			exchange.closeMarket();
+			broker.placeOrder(new MarketBuyOrder(ACCOUNT, 5, "AAAA"));
+			assertEquals(2, exchange.getTradeCount());
+			exchange.openMarket();
+			assertEquals(3, exchange.getTradeCount());
+		} finally {
+			broker.close();
+		}
+		assertEquals(8, exchange.getTickCount());
+	}
+
+	/**
+	 * The open and close events are fired once for each change of state.
+	 */
+	@Test
+	public void testOpenCloseEvents() {
+		final SimulatedStockExchange exchange = new SimulatedStockExchange(new SimulatedExchangeConfig());
+		final CountingListener listener = new CountingListener();
+		exchange.addExchangeListener(listener);
+
+		exchange.openMarket();
+		exchange.closeMarket();
+		exchange.closeMarket();
+		assertFalse(exchange.isOpen());
+		exchange.openMarket();
+		assertTrue(exchange.isOpen());
+		assertEquals(1, listener.opened.get());
+		assertEquals(1, listener.closed.get());
+
+		exchange.removeExchangeListener(listener);
+		exchange.closeMarket();
+		assertEquals(1, listener.closed.get());
+	}
+
+	/**
+	 * Each ticker's ticks are published in order by a single tick thread, and
+	 * every tick is counted.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test(timeout = 30000)
+	public void testTickThreads() throws Exception {
+		final SimulatedExchangeConfig config = new SimulatedExchangeConfig();
+		config.setTickerCount(8);
+		config.setTickThreads(3);
+		final SimulatedStockExchange exchange = new SimulatedStockExchange(config);
+		final Map<String, String> publishers = new ConcurrentHashMap<>();
+		final AtomicLong ticks = new AtomicLong();
+		final AtomicInteger strays = new AtomicInteger();
+		exchange.addExchangeListener(new CountingListener() {
+			@Override
+			public void priceChanged(final ExchangeEvent event) {
+				ticks.incrementAndGet();
+				final String thread = Thread.currentThread().getName();
+				final String previous = publishers.putIfAbsent(event.getTicker(), thread);
+				if (previous != null && !previous.equals(thread)) {
+					strays.incrementAndGet();
+				}
+			}
+		});
+
+		exchange.start();
+		while (publishers.size() < 8) {
+			Thread.sleep(10);
+		}
+		exchange.stop();
+
+		assertEquals(0, strays.get());
+		assertEquals(ticks.get(), exchange.getTickCount());
+		assertEquals(3, publishers.values().stream().distinct().count());
+	}
+
+	/**
+	 * Paced tick threads publish near the configured rate, and publish
+	 * nothing while the exchange is closed.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test(timeout = 30000)
+	public void testPacedTicks() throws Exception {
+		final SimulatedExchangeConfig config = new SimulatedExchangeConfig();
+		config.setTicksPerSecond(2000);
+		config.setTickThreads(2);
+		final SimulatedStockExchange exchange = new SimulatedStockExchange(config);
+
+		exchange.start();
+		Thread.sleep(500);
+		exchange.closeMarket();
+		Thread.sleep(50);
+		final long published = exchange.getTickCount();
+		Thread.sleep(100);
+		assertEquals(published, exchange.getTickCount());
+		exchange.stop();
+
+		assertTrue("Published " + published, published > 200 && published < 2000);
+	}
+
+	/**
+	 * The exchange alternates between open sessions and closed periods once
+	 * started.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test(timeout = 30000)
+	public void testSessionSchedule() throws Exception {
+		final SimulatedExchangeConfig config = new SimulatedExchangeConfig();
+		config.setTicksPerSecond(1000);
+		config.setOpenMillis(20);
+		config.setClosedMillis(20);
+		final SimulatedStockExchange exchange = new SimulatedStockExchange(config);
+		final CountingListener listener = new CountingListener();
+		exchange.addExchangeListener(listener);
+
+		exchange.start();
+		while (listener.opened.get() < 2) {
+			Thread.sleep(5);
+		}
+		exchange.stop();
+
+		assertTrue(listener.closed.get() >= 2);
+	}
+
+	/**
+	 * A trade is held for the sampled execution latency.
+	 */
+	@Test
+	public void testExecutionLatency() {
+		final SimulatedExchangeConfig config = new SimulatedExchangeConfig();
+		config.setExecutionLatency(LatencyDistribution.fixed(TimeUnit.MILLISECONDS.toNanos(5)));
+		final SimulatedStockExchange exchange = new SimulatedStockExchange(config);
+
+		final long start = System.nanoTime();
+		assertEquals(config.getOpeningPrice(), exchange.executeTrade(new MarketBuyOrder(ACCOUNT, 1, "T0")));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(5));
+		assertEquals(0, exchange.executeTrade(new MarketBuyOrder(ACCOUNT, 1, "ZZZZ")));
+		assertEquals(1, exchange.getTradeCount());
+	}
+
+	/**
+	 * Counts the open and close events.
+	 */
+	private static class CountingListener implements ExchangeListener {
+		/** Number of opened events */
+		private final AtomicInteger opened = new AtomicInteger();
+
+		/** Number of closed events */
+		private final AtomicInteger closed = new AtomicInteger();
+
+		@Override
+		public void exchangeOpened(final ExchangeEvent event) {
+			opened.incrementAndGet();
+		}
+
+		@Override
+		public void exchangeClosed(final ExchangeEvent event) {
+			closed.incrementAndGet();
+		}
+
+		@Override
+		public void priceChanged(final ExchangeEvent event) {
+		}
+	}
+}
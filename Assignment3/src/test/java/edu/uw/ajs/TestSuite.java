@@ -9,6 +9,19 @@ import test.AccountManagerTest;
 import test.DaoTest;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses({ AccountTest.class, AccountManagerTest.class, DaoTest.class, BrokerTest.class })
+@Suite.SuiteClasses({ AccountTest.class, AccountManagerTest.class, DaoTest.class, BrokerTest.class,
+		BrokerConcurrencyTest.class, ConcurrentOrderQueueTest.class, OrderCancelAmendTest.class,
+		TimingWheelTest.class, TrailingStopQueueTest.class, OrderGroupTest.class,
+		OpenReleaseTest.class, OrderJournalTest.class, SimulatedStockExchangeTest.class,
+		TraceReplayTest.class, BacktestEngineTest.class,
+		TickerListingTest.class, LazyOrderManagerTest.class,
+		QuoteCacheTest.class, QuoteSubscriptionTest.class,
+		PriceLevelOrderBookTest.class,
+		OrderExecutionStageTest.class,
+		CachingAccountDaoTest.class,
+		SimpleAccountManagerTest.class,
+		JournalAccountDaoTest.class,
+		MappedAccountDaoTest.class,
+		IntPriceOrderQueueTest.class })
 public class TestSuite {
 }
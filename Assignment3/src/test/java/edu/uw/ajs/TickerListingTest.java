@@ -0,0 +1,190 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static test.java.edu.uw.ajs.BrokerFixture.ACCOUNT;
+import static test.java.edu.uw.ajs.BrokerFixture.OPEN_PRICE;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import edu.uw.ext.framework.broker.BrokerException;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+import main.java.edu.uw.ajs.broker.SimpleBrokerConfig;
+
+/**
+ * Tests listing and delisting tickers on a running SimpleBroker, with each
+ * order manager and with order managers created lazily.
+ *
+ * @author chq-alexs
+ */
+public class TickerListingTest {
+
+	/**
+	 * A listed ticker is traded like the tickers the broker was created with.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testList() throws Exception {
+		for (SimpleBrokerConfig config : configs()) {
+			try (BrokerFixture fixture = new BrokerFixture(config)) {
+				final SimpleBroker broker = fixture.getBroker();
+				final RecordingExchange exchange = fixture.getExchange();
+				try {
+					broker.placeOrder(new StopBuyOrder(ACCOUNT, 10, "CCCC", 110));
+					fail("Unlisted ticker traded");
+				} catch (BrokerException e) {
+					// expected
+				}
+				try {
+					broker.listTicker("CCCC");
+					fail("Unquoted ticker listed");
+				} catch (BrokerException e) {
+					// expected
+				}
+
+				exchange.setPrice("CCCC", OPEN_PRICE);
+				assertTrue(broker.listTicker("CCCC"));
+				assertFalse(broker.listTicker("CCCC"));
+				final StopBuyOrder order = new StopBuyOrder(ACCOUNT, 10, "CCCC", 110);
+				broker.placeOrder(order);
+				fixture.tick("CCCC", 110);
+				assertEquals(1, exchange.getFills("CCCC").size());
+				assertEquals(order.getOrderId(), exchange.getFills("CCCC").get(0).getOrderId());
+			}
+		}
+	}
+
+	/**
+	 * Delisting cancels and returns every resting order for the ticker,
+	 * rejects further orders and leaves the other tickers trading.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testDelistDrainsRestingOrders() throws Exception {
+		for (SimpleBrokerConfig config : configs()) {
+			try (BrokerFixture fixture = new BrokerFixture(config)) {
+				final SimpleBroker broker = fixture.getBroker();
+				final RecordingExchange exchange = fixture.getExchange();
+				final StopBuyOrder stopBuy = new StopBuyOrder(ACCOUNT, 10, "AAAA", 110);
+				final StopSellOrder ocoSell = new StopSellOrder(ACCOUNT, 10, "AAAA", 90);
+				final StopBuyOrder ocoBuy = new StopBuyOrder(ACCOUNT, 10, "AAAA", 120);
+				final StopBuyOrder entry = new StopBuyOrder(ACCOUNT, 10, "AAAA", 130);
+				final MarketSellOrder trailing = new MarketSellOrder(ACCOUNT, 10, "AAAA");
+				final StopBuyOrder other = new StopBuyOrder(ACCOUNT, 10, "BBBB", 110);
+				broker.placeOrder(stopBuy);
+				broker.placeOcoGroup(Arrays.asList(ocoSell, ocoBuy));
+				broker.placeBracketOrder(entry, Arrays.asList(new StopSellOrder(ACCOUNT, 10, "AAAA", 80)));
+				broker.placeTrailingStop(trailing, 5, false);
+				broker.placeOrder(other);
+
+				final Set<Integer> cancelled = new HashSet<>();
+				for (Order order : broker.delistTicker("AAAA")) {
+					cancelled.add(order.getOrderId());
+				}
+				assertEquals(new HashSet<>(Arrays.asList(stopBuy.getOrderId(), ocoSell.getOrderId(),
+						ocoBuy.getOrderId(), entry.getOrderId(), trailing.getOrderId())), cancelled);
+
+				fixture.tick("AAAA", 200);
+				fixture.tick("AAAA", 50);
+				assertEquals(0, exchange.getFills("AAAA").size());
+				try {
+					broker.placeOrder(new StopBuyOrder(ACCOUNT, 10, "AAAA", 110));
+					fail("Delisted ticker traded");
+				} catch (BrokerException e) {
+					// expected
+				}
+				try {
+					broker.cancelOrder(stopBuy.getOrderId());
+					fail("Drained order still resting");
+				} catch (BrokerException e) {
+					// expected
+				}
+				try {
+					broker.delistTicker("AAAA");
+					fail("Delisted twice");
+				} catch (BrokerException e) {
+					// expected
+				}
+
+				fixture.tick("BBBB", 110);
+				assertEquals(1, exchange.getFills("BBBB").size());
+
+				assertTrue(broker.listTicker("AAAA"));
+				broker.placeOrder(new StopBuyOrder(ACCOUNT, 10, "AAAA", 40));
+				assertEquals(1, exchange.getFills("AAAA").size());
+			}
+		}
+	}
+
+	/**
+	 * An order placed while its ticker is delisted is either rejected or
+	 * drained, it is never left in the retired order manager.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testDelistRacingPlacement() throws Exception {
+		try (BrokerFixture fixture = new BrokerFixture(new SimpleBrokerConfig())) {
+			final SimpleBroker broker = fixture.getBroker();
+			final Set<Integer> accepted = ConcurrentHashMap.newKeySet();
+			final AtomicBoolean rejected = new AtomicBoolean();
+			final CountDownLatch placing = new CountDownLatch(1);
+			final Thread placer = new Thread(() -> {
+				while (!rejected.get()) {
+					final StopBuyOrder order = new StopBuyOrder(ACCOUNT, 10, "AAAA", 1000);
+					try {
+						broker.placeOrder(order);
+						accepted.add(order.getOrderId());
+						placing.countDown();
+					} catch (BrokerException e) {
+						rejected.set(true);
+					}
+				}
+			});
+			placer.start();
+			placing.await();
+
+			final List<Order> drained = broker.delistTicker("AAAA");
+			placer.join();
+
+			final Set<Integer> cancelled = new HashSet<>();
+			for (Order order : drained) {
+				cancelled.add(order.getOrderId());
+			}
+			assertEquals(accepted, cancelled);
+		}
+	}
+
+	/**
+	 * Gets the broker configurations to test with.
+	 *
+	 * @return the configurations
+	 */
+	private List<SimpleBrokerConfig> configs() {
+		final SimpleBrokerConfig simple = new SimpleBrokerConfig();
+		final SimpleBrokerConfig priceLevel = new SimpleBrokerConfig();
+		priceLevel.setPriceLevelOrderBook(true);
+		final SimpleBrokerConfig lazy = new SimpleBrokerConfig();
+		lazy.setLazyOrderManagers(true);
+		return Arrays.asList(simple, priceLevel, lazy);
+	}
+}
@@ -0,0 +1,108 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import main.java.edu.uw.ajs.broker.TimingWheel;
+
+/**
+ * Tests the good-till-date expiry timing wheel. Expiry times are scheduled
+ * across every wheel and beyond the range of the top wheel, and the wheel is
+ * advanced in random steps checking that each order expires exactly once,
+ * never early and no more than a tick late.
+ *
+ * @author chq-alexs
+ */
+public class TimingWheelTest {
+
+	/** Length of a tick in milliseconds */
+	private static final long TICK = 10;
+
+	/** Time the wheel starts at */
+	private static final long START = 1000000L;
+
+	/**
+	 * Orders expire on the first advance at or after their expiry time.
+	 */
+	@Test
+	public void testExpiryTime() {
+		final TimingWheel wheel = new TimingWheel(TICK, START);
+		final Map<Integer, Long> expired = new HashMap<>();
+
+		assertFalse("Past expiry scheduled", wheel.schedule(1, START - 1));
+		assertTrue(wheel.schedule(2, START + 25));
+		assertEquals(1, wheel.size());
+
+		wheel.advance(START + 29, (id) -> expired.put(id, START + 29));
+		assertTrue("Expired early", expired.isEmpty());
+
+		wheel.advance(START + 30, (id) -> expired.put(id, START + 30));
+		assertEquals(Long.valueOf(START + 30), expired.get(2));
+		assertEquals(0, wheel.size());
+	}
+
+	/**
+	 * Random expiry times, up to beyond the range of the top wheel, each
+	 * expire exactly once within a tick of their expiry time.
+	 */
+	@Test(timeout = 30000)
+	public void testRandomExpiries() {
+		final Random rnd = new Random(42);
+		final TimingWheel wheel = new TimingWheel(TICK, START);
+		final Map<Integer, Long> deadlines = new HashMap<>();
+		final long horizon = TICK * (1L << 26);
+
+		for (int id = 0; id < 20000; id++) {
+			final long range = rnd.nextBoolean() ? TICK * 64 : horizon;
+			final long deadline = START + 1 + (long) (rnd.nextDouble() * range);
+			deadlines.put(id, deadline);
+			assertTrue(wheel.schedule(id, deadline));
+		}
+
+		final Map<Integer, Long> expired = new HashMap<>();
+		long now = START;
+		while (wheel.size() > 0) {
+			now += rnd.nextInt(3) == 0 ? TICK * rnd.nextInt(1 << 14) : rnd.nextInt((int) TICK * 4);
+			final long at = now;
+			wheel.advance(now, (id) -> assertNull("Expired twice " + id, expired.put(id, at)));
+		}
+
+		assertEquals(deadlines.size(), expired.size());
+		for (Map.Entry<Integer, Long> entry : expired.entrySet()) {
+			final long deadline = deadlines.get(entry.getKey());
+			assertTrue("Expired early " + entry.getKey(), entry.getValue() >= deadline);
+		}
+	}
+
+	/**
+	 * Advancing one tick at a time, each order expires on the tick it is due.
+	 */
+	@Test(timeout = 30000)
+	public void testExpiresWithinTick() {
+		final Random rnd = new Random(7);
+		final TimingWheel wheel = new TimingWheel(TICK, START);
+		final Map<Integer, Long> deadlines = new HashMap<>();
+		for (int id = 0; id < 5000; id++) {
+			final long deadline = START + 1 + rnd.nextInt((int) TICK * 64 * 64 * 2);
+			deadlines.put(id, deadline);
+			wheel.schedule(id, deadline);
+		}
+
+		for (long now = START; wheel.size() > 0; now += TICK) {
+			final long at = now;
+			wheel.advance(now, (id) -> {
+				final long deadline = deadlines.get(id);
+				assertTrue("Expired early " + id, at >= deadline);
+				assertTrue("Expired late " + id, at < deadline + TICK);
+			});
+		}
+	}
+}
@@ -0,0 +1,287 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import edu.uw.ext.framework.broker.Broker;
+import edu.uw.ext.framework.broker.BrokerException;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+import main.java.edu.uw.ajs.broker.SimpleBroker;
+import main.java.edu.uw.ajs.broker.SimpleBrokerConfig;
+import main.java.edu.uw.ajs.broker.SimpleBrokerFactory;
+import main.java.edu.uw.ajs.exchange.SimulatedExchangeConfig;
+import main.java.edu.uw.ajs.exchange.SimulatedStockExchange;
+import main.java.edu.uw.ajs.trace.RecordingBroker;
+import main.java.edu.uw.ajs.trace.TraceEvent;
+import main.java.edu.uw.ajs.trace.TraceReader;
+import main.java.edu.uw.ajs.trace.TraceReplayer;
+import main.java.edu.uw.ajs.trace.TraceWriter;
+
+/**
+ * Tests recording a broker's calls to a trace and replaying them into a
+ * fresh broker.
+ *
+ * @author chq-alexs
+ */
+public class TraceReplayTest {
+
+	/** Tickers traded */
+	private static final String[] TICKERS = { "AAAA", "BBBB" };
+
+	/** The account placing the orders */
+	private static final String ACCOUNT = "account1";
+
+	/** Opening balance of the account */
+	private static final int BALANCE = 10000000;
+
+	/** Number of price ticks recorded */
+	private static final int TICKS = 2000;
+
+	/**
+	 * A replay as fast as possible makes every recorded call and leaves the
+	 * account as the recorded broker did.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testRecordAndReplay() throws Exception {
+		final File traceFile = File.createTempFile("broker", ".trace");
+		try {
+			final SimpleBrokerConfig config = new SimpleBrokerConfig();
+			config.setTraceFile(traceFile.getPath());
+			final SimulatedStockExchange exchange = newExchange();
+			final InMemoryAccountManager acctMgr = new InMemoryAccountManager();
+			final SimpleBrokerFactory factory = new SimpleBrokerFactory();
+			factory.setConfig(config);
+			final Broker recorded = factory.newBroker("recorded", acctMgr, exchange);
+
+			recorded.createAccount(ACCOUNT, "password", BALANCE);
+			recorded.placeOrder(new StopBuyOrder(ACCOUNT, 10, "AAAA", 10010));
+			recorded.placeOrder(new StopSellOrder(ACCOUNT, 10, "BBBB", 9990));
+			recorded.placeOrder(new MarketBuyOrder(ACCOUNT, 5, "BBBB"));
+			exchange.publishTicks(TICKS);
+			exchange.closeMarket();
+			recorded.placeOrder(new MarketSellOrder(ACCOUNT, 5, "AAAA"));
+			exchange.openMarket();
+			recorded.requestQuote("AAAA");
+			recorded.getAccount(ACCOUNT, "password");
+			final int recordedBalance = acctMgr.getAccount(ACCOUNT).getBalance();
+			assertTrue(exchange.getTradeCount() >= 2);
+			recorded.close();
+
+			final int calls = 1 + 4 + TICKS + 2 + 2;
+			assertTrue("Trace of " + traceFile.length() + " bytes", traceFile.length() < TICKS * 8);
+			try (TraceReader reader = new TraceReader(new FileInputStream(traceFile))) {
+				final TraceEvent create = reader.next();
+				assertEquals(TraceEvent.Type.CREATE_ACCOUNT, create.getType());
+				assertEquals(ACCOUNT, create.getAccount());
+				assertEquals(BALANCE, create.getPrice());
+				final TraceEvent stop = reader.next();
+				assertEquals(TraceEvent.Type.STOP_BUY, stop.getType());
+				assertEquals(10, stop.getShares());
+				assertEquals("AAAA", stop.getTicker());
+				assertEquals(10010, stop.getPrice());
+				int count = 2;
+				while (reader.next() != null) {
+					count++;
+				}
+				assertEquals(calls, count);
+			}
+
+			final SimulatedStockExchange replayExchange = newExchange();
+			final InMemoryAccountManager replayAccounts = new InMemoryAccountManager();
+			final SimpleBroker replayBroker = new SimpleBroker("replay", replayAccounts, replayExchange,
+					new SimpleBrokerConfig());
+			try (TraceReader reader = new TraceReader(new FileInputStream(traceFile))) {
+				final TraceReplayer.Report report = new TraceReplayer(replayBroker, replayExchange).replay(reader,
+						false);
+				assertEquals(calls, report.getCalls());
+				assertEquals(0, report.getErrors());
+				assertTrue(report.getLatencyNanos(50) <= report.getLatencyNanos(99));
+				assertTrue(report.getLatencyNanos(99) <= report.getLatencyNanos(100));
+			} finally {
+				replayBroker.close();
+			}
+			assertEquals(recordedBalance, replayAccounts.getAccount(ACCOUNT).getBalance());
+			assertEquals(exchange.getTradeCount(), replayExchange.getTradeCount());
+		} finally {
+			traceFile.delete();
+		}
+	}
+
+	/**
+	 * The SimpleBroker order calls are recorded too, with the order ids a
+	 * replay needs to cancel and amend the orders it placed in their place.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testRecordOrderCalls() throws Exception {
+		final File traceFile = File.createTempFile("broker", ".trace");
+		try {
+			final SimpleBrokerConfig config = new SimpleBrokerConfig();
+			config.setTraceFile(traceFile.getPath());
+			final SimulatedStockExchange exchange = newExchange();
+			final InMemoryAccountManager acctMgr = new InMemoryAccountManager();
+			final SimpleBrokerFactory factory = new SimpleBrokerFactory();
+			factory.setConfig(config);
+			final RecordingBroker recorded = (RecordingBroker) factory.newBroker("recorded", acctMgr, exchange);
+
+			recorded.createAccount(ACCOUNT, "password", BALANCE);
+			final StopBuyOrder ocoBuy = new StopBuyOrder(ACCOUNT, 10, "AAAA", 10010);
+			recorded.placeOcoGroup(Arrays.asList(ocoBuy, new StopSellOrder(ACCOUNT, 10, "AAAA", 9990)));
+			recorded.placeBracketOrder(new StopBuyOrder(ACCOUNT, 20, "BBBB", 10010), Arrays.asList(
+					new StopSellOrder(ACCOUNT, 20, "BBBB", 9990), new StopSellOrder(ACCOUNT, 20, "BBBB", 9950)));
+			final StopSellOrder gtd = new StopSellOrder(ACCOUNT, 5, "AAAA", 9900);
+			recorded.placeOrder(gtd, System.currentTimeMillis() + 3600000L);
+			final Order amended = recorded.amendOrder(gtd.getOrderId(), 9950);
+			final StopBuyOrder cancelled = new StopBuyOrder(ACCOUNT, 5, "BBBB", 10100);
+			recorded.placeOrder(cancelled);
+			recorded.cancelOrder(cancelled.getOrderId());
+			recorded.placeTrailingStop(new MarketBuyOrder(ACCOUNT, 5, "AAAA"), 10, true);
+			recorded.placeTrailingStop(new MarketSellOrder(ACCOUNT, 5, "BBBB"), 20, false);
+			try {
+				recorded.cancelOrder(cancelled.getOrderId());
+			} catch (final BrokerException ex) {
+				// recorded, and fails again in the replay
+			}
+			exchange.publishTicks(TICKS);
+			final int recordedBalance = acctMgr.getAccount(ACCOUNT).getBalance();
+			assertTrue(exchange.getTradeCount() >= 2);
+			recorded.close();
+
+			final int calls = 1 + 9 + TICKS;
+			try (TraceReader reader = new TraceReader(new FileInputStream(traceFile))) {
+				reader.next();
+				final TraceEvent group = reader.next();
+				assertEquals(TraceEvent.Type.OCO_GROUP, group.getType());
+				assertEquals(2, group.getShares());
+				final TraceEvent member = reader.next();
+				assertEquals(TraceEvent.Type.STOP_BUY, member.getType());
+				assertEquals(ocoBuy.getOrderId(), member.getOrderId());
+				reader.next();
+				final TraceEvent bracket = reader.next();
+				assertEquals(TraceEvent.Type.BRACKET_ORDER, bracket.getType());
+				assertEquals(2, bracket.getShares());
+				for (int i = 0; i < 3; i++) {
+					reader.next();
+				}
+				final TraceEvent expiring = reader.next();
+				assertEquals(TraceEvent.Type.STOP_SELL_GTD, expiring.getType());
+				assertEquals(gtd.getOrderId(), expiring.getOrderId());
+				assertTrue(expiring.getExpiryMillis() > 3500000L && expiring.getExpiryMillis() <= 3600000L);
+				final TraceEvent amend = reader.next();
+				assertEquals(TraceEvent.Type.AMEND_ORDER, amend.getType());
+				assertEquals(gtd.getOrderId(), amend.getRefId());
+				assertEquals(amended.getOrderId(), amend.getOrderId());
+				assertEquals(9950, amend.getPrice());
+				reader.next();
+				final TraceEvent cancel = reader.next();
+				assertEquals(TraceEvent.Type.CANCEL_ORDER, cancel.getType());
+				assertEquals(cancelled.getOrderId(), cancel.getOrderId());
+				final TraceEvent trailing = reader.next();
+				assertEquals(TraceEvent.Type.TRAILING_BUY_PERCENT, trailing.getType());
+				assertEquals(10, trailing.getPrice());
+				assertEquals(TraceEvent.Type.TRAILING_SELL, reader.next().getType());
+			}
+
+			final SimulatedStockExchange replayExchange = newExchange();
+			final InMemoryAccountManager replayAccounts = new InMemoryAccountManager();
+			final SimpleBroker replayBroker = new SimpleBroker("replay", replayAccounts, replayExchange,
+					new SimpleBrokerConfig());
+			try (TraceReader reader = new TraceReader(new FileInputStream(traceFile))) {
+				final TraceReplayer.Report report = new TraceReplayer(replayBroker, replayExchange).replay(reader,
+						false);
+				assertEquals(calls, report.getCalls());
+				assertEquals(1, report.getErrors());
+			} finally {
+				replayBroker.close();
+			}
+			assertEquals(recordedBalance, replayAccounts.getAccount(ACCOUNT).getBalance());
+			assertEquals(exchange.getTradeCount(), replayExchange.getTradeCount());
+		} finally {
+			traceFile.delete();
+		}
+	}
+
+	/**
+	 * A replay at the recorded pace takes as long as the recording.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testRealTimeReplay() throws Exception {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (TraceWriter trace = new TraceWriter(bytes)) {
+			for (int price : Arrays.asList(10001, 10002, 10003)) {
+				trace.record(TraceEvent.Type.PRICE_CHANGED, null, "AAAA", 0, price);
+				Thread.sleep(50);
+			}
+		}
+
+		final SimulatedStockExchange exchange = newExchange();
+		final SimpleBroker broker = new SimpleBroker("replay", new InMemoryAccountManager(), exchange,
+				new SimpleBrokerConfig());
+		try (TraceReader reader = new TraceReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+			final TraceReplayer.Report report = new TraceReplayer(broker, exchange).replay(reader, true);
+			assertEquals(3, report.getCalls());
+			assertTrue(report.getElapsedNanos() >= 100000000L);
+		} finally {
+			broker.close();
+		}
+		assertEquals(10003, exchange.getQuote("AAAA").getPrice());
+	}
+
+	/**
+	 * A trace cut short in a record ends at the last complete record.
+	 *
+	 * @throws Exception
+	 *             if the test fails
+	 */
+	@Test
+	public void testTruncatedTrace() throws Exception {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (TraceWriter trace = new TraceWriter(bytes)) {
+			trace.record(TraceEvent.Type.MARKET_BUY, ACCOUNT, "AAAA", 10, 0);
+			trace.record(TraceEvent.Type.STOP_SELL, ACCOUNT, "AAAA", 10, -5);
+		}
+		final byte[] full = bytes.toByteArray();
+
+		try (TraceReader reader = new TraceReader(new ByteArrayInputStream(full))) {
+			reader.next();
+			assertEquals(-5, reader.next().getPrice());
+			assertNull(reader.next());
+		}
+		try (TraceReader reader = new TraceReader(new ByteArrayInputStream(Arrays.copyOf(full, full.length - 1)))) {
+			assertEquals(TraceEvent.Type.MARKET_BUY, reader.next().getType());
+			assertNull(reader.next());
+		}
+	}
+
+	/**
+	 * Creates an exchange trading AAAA and BBBB.
+	 *
+	 * @return the exchange
+	 */
+	private SimulatedStockExchange newExchange() {
+		final SimulatedExchangeConfig config = new SimulatedExchangeConfig();
+		config.setTickers(TICKERS);
+		return new SimulatedStockExchange(config);
+	}
+}
@@ -0,0 +1,171 @@
+package test.java.edu.uw.ajs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+import main.java.edu.uw.ajs.broker.TrailingStopQueue;
+
+/**
+ * Tests the trailing stop queue against a direct simulation which tracks the
+ * water mark of every order separately, over random price walks with orders
+ * placed throughout.
+ *
+ * @author chq-alexs
+ */
+public class TrailingStopQueueTest {
+
+	/** Price the walks start at */
+	private static final int OPEN_PRICE = 10000;
+
+	/**
+	 * A trailing sell fires when the price falls its trail below the high.
+	 */
+	@Test
+	public void testTrailingSell() {
+		final TrailingStopQueue<MarketSellOrder> queue = new TrailingStopQueue<>(100, true);
+		final List<MarketSellOrder> fills = new ArrayList<>();
+		queue.setOrderProcessor(fills::add);
+
+		final MarketSellOrder amount = new MarketSellOrder("acct", 10, "AAAA");
+		final MarketSellOrder percent = new MarketSellOrder("acct", 10, "AAAA");
+		queue.enqueue(amount, 5, false);
+		queue.setThreshold(120);
+		queue.enqueue(percent, 1000, true);
+		queue.setThreshold(116);
+		assertTrue(fills.isEmpty());
+		queue.setThreshold(115);
+		assertEquals(1, fills.size());
+		assertEquals(amount.getOrderId(), fills.get(0).getOrderId());
+
+		queue.setThreshold(130);
+		queue.setThreshold(118);
+		assertEquals(1, fills.size());
+		queue.setThreshold(117);
+		assertEquals(2, fills.size());
+		assertEquals(0, queue.size());
+	}
+
+	/**
+	 * A trailing buy fires when the price rises its trail above the low.
+	 */
+	@Test
+	public void testTrailingBuy() {
+		final TrailingStopQueue<MarketBuyOrder> queue = new TrailingStopQueue<>(100, false);
+		final List<MarketBuyOrder> fills = new ArrayList<>();
+		queue.setOrderProcessor(fills::add);
+
+		queue.enqueue(new MarketBuyOrder("acct", 10, "AAAA"), 5, false);
+		queue.setThreshold(90);
+		queue.setThreshold(94);
+		assertTrue(fills.isEmpty());
+		queue.setThreshold(95);
+		assertEquals(1, fills.size());
+	}
+
+	/**
+	 * Random walks trigger the same orders at the same price changes as the
+	 * direct simulation.
+	 */
+	@Test
+	public void testRandomWalks() {
+		final Random rnd = new Random(42);
+		for (int round = 0; round < 20; round++) {
+			walk(rnd, true);
+			walk(rnd, false);
+		}
+	}
+
+	/**
+	 * Replays a random walk, placing orders along the way, and compares the
+	 * triggered orders with the direct simulation after every step.
+	 *
+	 * @param rnd
+	 *            - the random source
+	 * @param sell
+	 *            - true for trailing sells
+	 */
+	private void walk(final Random rnd, final boolean sell) {
+		final TrailingStopQueue<Order> queue = new TrailingStopQueue<>(OPEN_PRICE, sell);
+		final Set<Integer> fired = new HashSet<>();
+		queue.setOrderProcessor((order) -> assertTrue("Fired twice", fired.add(order.getOrderId())));
+
+		final List<Expected> resting = new ArrayList<>();
+		final Set<Integer> expected = new HashSet<>();
+		int price = OPEN_PRICE;
+
+		for (int step = 0; step < 2000; step++) {
+			if (rnd.nextInt(3) == 0) {
+				final Order order = sell ? new MarketSellOrder("acct", 1, "AAAA")
+						: new MarketBuyOrder("acct", 1, "AAAA");
+				final boolean percent = rnd.nextBoolean();
+				final int trail = percent ? rnd.nextInt(300) : rnd.nextInt(40);
+				resting.add(new Expected(order, trail, percent, sell ? price : -price));
+				queue.enqueue(order, trail, percent);
+			} else {
+				price += rnd.nextInt(21) - 10;
+				queue.setThreshold(price);
+			}
+
+			final int level = sell ? price : -price;
+			for (Iterator<Expected> it = resting.iterator(); it.hasNext();) {
+				final Expected e = it.next();
+				e.mark = Math.max(e.mark, level);
+				final long offset = e.percent ? Math.abs((long) e.mark) * e.trail / 10000 : e.trail;
+				if (level <= e.mark - offset) {
+					expected.add(e.order.getOrderId());
+					it.remove();
+				}
+			}
+			assertEquals("Step " + step, expected, fired);
+		}
+		assertEquals(resting.size(), queue.size());
+	}
+
+	/**
+	 * A resting order in the direct simulation.
+	 */
+	private static final class Expected {
+		/** The order */
+		private final Order order;
+
+		/** The trail */
+		private final int trail;
+
+		/** True if the trail is in basis points */
+		private final boolean percent;
+
+		/** The order's water mark, negated for buys */
+		private int mark;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param order
+		 *            - the order
+		 * @param trail
+		 *            - the trail
+		 * @param percent
+		 *            - true if the trail is in basis points
+		 * @param mark
+		 *            - the initial water mark
+		 */
+		private Expected(final Order order, final int trail, final boolean percent, final int mark) {
+			this.order = order;
+			this.trail = trail;
+			this.percent = percent;
+			this.mark = mark;
+		}
+	}
+}